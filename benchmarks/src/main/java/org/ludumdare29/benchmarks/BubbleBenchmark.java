@@ -0,0 +1,77 @@
+package org.ludumdare29.benchmarks;
+
+import com.badlogic.gdx.math.Vector3;
+import org.ludumdare29.EntityFactory;
+import org.ludumdare29.Sea;
+import org.ludumdare29.particles.BubbleParticles;
+import org.ludumdare29.processors.BubbleProcessor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One step of the BubbleProcessor for bubble entities, compared with updating the same number of pooled bubble particles.
+ * The bubbles live longer than the benchmark runs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BubbleBenchmark {
+
+    private static final float LIFE_TIME_SECONDS = 1000000;
+
+    @Param({"1000", "10000"})
+    public int bubbleCount;
+
+    private WorldFixture fixture;
+    private BubbleParticles particles;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final Sea sea = new Sea();
+
+        // Bubble entities
+        fixture = new WorldFixture();
+        final EntityFactory entityFactory = new EntityFactory(fixture.world, sea);
+        fixture.add(new BubbleProcessor(sea));
+        fixture.world.init();
+
+        // Bubble particles
+        particles = new BubbleParticles(sea, bubbleCount);
+
+        final Random random = new Random(42);
+        final Vector3 pos = new Vector3();
+        for (int i = 0; i < bubbleCount; i++) {
+            pos.set((float) random.nextGaussian() * 100,
+                    -10 - random.nextFloat() * 1000,
+                    (float) random.nextGaussian() * 100);
+            final float diam = random.nextFloat() * 0.1f + 0.001f;
+            entityFactory.createBubble(pos, diam, LIFE_TIME_SECONDS);
+            particles.spawn(pos, diam, LIFE_TIME_SECONDS);
+        }
+
+        // Add the created entities
+        fixture.step();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.shutdown();
+    }
+
+    @Benchmark
+    public void bubbleProcessorStep() {
+        fixture.step();
+    }
+
+    @Benchmark
+    public void bubbleParticlesUpdate() {
+        fixture.time.advanceTime(5);
+        fixture.time.nextStep();
+        particles.update(fixture.time, 0.005f);
+    }
+}
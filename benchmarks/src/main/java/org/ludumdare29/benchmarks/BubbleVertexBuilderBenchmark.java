@@ -0,0 +1,80 @@
+package org.ludumdare29.benchmarks;
+
+import com.badlogic.gdx.graphics.PerspectiveCamera;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import org.flowutils.time.ManualTime;
+import org.ludumdare29.Sea;
+import org.ludumdare29.particles.BubbleParticles;
+import org.ludumdare29.particles.BubbleVertexBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the camera facing quads of the bubble particles for one frame, with the bubbles scattered around
+ * the camera, so that some of them are culled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BubbleVertexBuilderBenchmark {
+
+    private static final float LIFE_TIME_SECONDS = 10;
+
+    /**
+     * Updates run before building, long enough for the bubbles to fade in.
+     */
+    private static final int FADE_IN_UPDATES = 20;
+    private static final int UPDATE_MILLISECONDS = 100;
+
+    @Param({"1000", "10000"})
+    public int bubbleCount;
+
+    private BubbleParticles particles;
+    private BubbleVertexBuilder builder;
+    private PerspectiveCamera camera;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // The camera matrices are calculated with native code
+        GdxNativesLoader.load();
+
+        final Sea sea = new Sea();
+        particles = new BubbleParticles(sea, bubbleCount);
+        builder = new BubbleVertexBuilder(Math.min(bubbleCount, BubbleVertexBuilder.MAX_QUADS));
+
+        camera = new PerspectiveCamera(67, 1024, 768);
+        camera.position.set(0, -100, 0);
+        camera.direction.set(0, 0, -1);
+        camera.near = 1;
+        camera.far = 500;
+        camera.update();
+
+        final Random random = new Random(42);
+        final Vector3 pos = new Vector3();
+        for (int i = 0; i < bubbleCount; i++) {
+            pos.set((float) random.nextGaussian() * 100,
+                    -100 + (float) random.nextGaussian() * 50,
+                    (float) random.nextGaussian() * 100 - 100);
+            particles.spawn(pos, random.nextFloat() * 0.1f + 0.01f, LIFE_TIME_SECONDS);
+        }
+
+        // Fade the bubbles in
+        final ManualTime time = new ManualTime();
+        for (int i = 0; i < FADE_IN_UPDATES; i++) {
+            time.advanceTime(UPDATE_MILLISECONDS);
+            time.nextStep();
+            particles.update(time, UPDATE_MILLISECONDS / 1000f);
+        }
+    }
+
+    @Benchmark
+    public int build() {
+        return builder.build(particles, camera, 0.5f);
+    }
+}
@@ -0,0 +1,91 @@
+package org.ludumdare29.benchmarks;
+
+import com.badlogic.gdx.math.Vector3;
+import org.entityflow.entity.Entity;
+import org.flowutils.time.Time;
+import org.ludumdare29.EntityFactory;
+import org.ludumdare29.Sea;
+import org.ludumdare29.components.BubbleComponent;
+import org.ludumdare29.particles.BubbleParticles;
+import org.ludumdare29.processors.GameProcessor;
+import org.ludumdare29.processors.RecyclingProcessor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creating a cloud of varying size bubbles, as bubble entities and as bubble particles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EntityFactoryBenchmark {
+
+    @Param({"50", "150"})
+    public int bubblesPerCloud;
+
+    private WorldFixture fixture;
+    private EntityFactory entityFactory;
+    private EntityFactory particleFactory;
+    private BubbleParticles particles;
+
+    private final Vector3 pos = new Vector3(0, -100, 0);
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        final Sea sea = new Sea();
+
+        fixture = new WorldFixture();
+        entityFactory = new EntityFactory(fixture.world, sea);
+        fixture.add(new DeletingProcessor());
+        fixture.add(new RecyclingProcessor(entityFactory.getComponentPools()));
+        fixture.world.init();
+
+        particles = new BubbleParticles(sea);
+        particleFactory = new EntityFactory(fixture.world, sea);
+        particleFactory.setBubbleParticles(particles);
+    }
+
+    /**
+     * Adds the created bubble entities to the world, deletes them, and recycles their components,
+     * so that each invocation starts from an empty world, with the component pools filled as in the game.
+     */
+    @TearDown(Level.Invocation)
+    public void deleteCreatedEntities() {
+        fixture.step();
+        fixture.step();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        fixture.shutdown();
+    }
+
+    @Benchmark
+    public void createVaryingBubbleCloudEntities() {
+        entityFactory.createVaryingBubbleCloud(pos, bubblesPerCloud, 0.05f, 1f, 60f);
+    }
+
+    @Benchmark
+    public int createVaryingBubbleCloudParticles() {
+        particles.clear();
+        particleFactory.createVaryingBubbleCloud(pos, bubblesPerCloud, 0.05f, 1f, 60f);
+        return particles.size();
+    }
+
+    /**
+     * Deletes every bubble entity on the step it is added.
+     */
+    private static final class DeletingProcessor extends GameProcessor {
+        private DeletingProcessor() {
+            super(DeletingProcessor.class, BubbleComponent.class);
+        }
+
+        @Override protected void onProcessEntity(Time time, Entity entity) {
+            entity.delete();
+        }
+    }
+}
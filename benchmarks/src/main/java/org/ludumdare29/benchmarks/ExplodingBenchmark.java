@@ -0,0 +1,73 @@
+package org.ludumdare29.benchmarks;
+
+import org.ludumdare29.EntityFactory;
+import org.ludumdare29.Sea;
+import org.ludumdare29.components.DamageableComponent;
+import org.ludumdare29.components.ExplodingComponent;
+import org.ludumdare29.components.LocationComponent;
+import org.ludumdare29.processors.ExplodingProcessor;
+import org.ludumdare29.processors.SpatialIndexProcessor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Proximity scan of armed explosives among damageable targets, including the spatial index update.
+ * Explosives are placed between the targets, outside their trigger radius, so that nothing explodes
+ * and every step does the same work.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExplodingBenchmark {
+
+    private static final float TARGET_SPACING_M = 50;
+    private static final float PROXIMITY_RADIUS_M = 10;
+
+    @Param({"1000", "10000"})
+    public int targetCount;
+
+    @Param({"100", "1000"})
+    public int explosiveCount;
+
+    private WorldFixture fixture;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = new WorldFixture();
+        final EntityFactory entityFactory = new EntityFactory(fixture.world, new Sea());
+        final SpatialIndexProcessor spatialIndex = fixture.add(new SpatialIndexProcessor());
+        fixture.add(new ExplodingProcessor(entityFactory, spatialIndex));
+        fixture.world.init();
+
+        // Targets on a grid
+        final int side = (int) Math.ceil(Math.sqrt(targetCount));
+        for (int i = 0; i < targetCount; i++) {
+            fixture.world.createEntity(new LocationComponent((i % side) * TARGET_SPACING_M, -100, (i / side) * TARGET_SPACING_M),
+                                       new DamageableComponent(1000, 0, 0));
+        }
+
+        // Armed explosives halfway between targets, that do not time out during the benchmark
+        for (int i = 0; i < explosiveCount; i++) {
+            final int cell = (int) ((long) i * targetCount / explosiveCount);
+            fixture.world.createEntity(new LocationComponent((cell % side + 0.5f) * TARGET_SPACING_M, -100, (cell / side + 0.5f) * TARGET_SPACING_M),
+                                       new ExplodingComponent(null, Float.MAX_VALUE, 0, PROXIMITY_RADIUS_M, 100, 100));
+        }
+
+        // Add the created entities and index them
+        fixture.step();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.shutdown();
+    }
+
+    @Benchmark
+    public void step() {
+        fixture.step();
+    }
+}
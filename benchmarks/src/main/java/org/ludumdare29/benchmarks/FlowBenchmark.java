@@ -0,0 +1,100 @@
+package org.ludumdare29.benchmarks;
+
+import com.badlogic.gdx.math.Vector3;
+import org.ludumdare29.Sea;
+import org.ludumdare29.utils.CurlNoise;
+import org.ludumdare29.utils.LayeredFlow;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sampling the sea currents, one position at a time and in batches, with and without the flow cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FlowBenchmark {
+
+    private static final int POSITION_COUNT = 1024;
+
+    @Param({"false", "true"})
+    public boolean cached;
+
+    private CurlNoise curlNoise;
+    private LayeredFlow layeredFlow;
+
+    private final float[] posX = new float[POSITION_COUNT];
+    private final float[] posY = new float[POSITION_COUNT];
+    private final float[] posZ = new float[POSITION_COUNT];
+    private final float[] flowX = new float[POSITION_COUNT];
+    private final float[] flowZ = new float[POSITION_COUNT];
+    private final Vector3 pos = new Vector3();
+    private final Vector3 flow = new Vector3();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final Random random = new Random(42);
+        curlNoise = new CurlNoise(random);
+
+        // Same layers as the sea currents
+        layeredFlow = new LayeredFlow(random,
+                                      300, 1.5,
+                                      20, 0.3,
+                                      2, 0.2,
+                                      6000, 0.6,
+                                      300, 0.1,
+                                      10, 0.01,
+                                      2, 7, 20, 100, 300, 800, 2000, 6000);
+        if (cached) layeredFlow.enableCache(Sea.DEFAULT_CURRENT_CACHE_MAX_ERROR, Sea.DEFAULT_CURRENT_CACHE_MAX_TILES_PER_LAYER);
+
+        // Positions of a group of objects near each other
+        for (int i = 0; i < POSITION_COUNT; i++) {
+            posX[i] = (float) random.nextGaussian() * 200;
+            posY[i] = -random.nextFloat() * 100;
+            posZ[i] = (float) random.nextGaussian() * 200;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSITION_COUNT)
+    public float curlNoiseGetXZ() {
+        float sum = 0;
+        for (int i = 0; i < POSITION_COUNT; i++) {
+            pos.set(posX[i], posY[i], posZ[i]);
+            curlNoise.getXZ(pos, flow);
+            sum += flow.x + flow.z;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSITION_COUNT)
+    public float[] curlNoiseGetXZBatch() {
+        curlNoise.getXZ(posX, posY, posZ, flowX, flowZ, 0, POSITION_COUNT);
+        return flowX;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSITION_COUNT)
+    public float layeredFlowGetFlowXZ() {
+        float sum = 0;
+        for (int i = 0; i < POSITION_COUNT; i++) {
+            pos.set(posX[i], posY[i], posZ[i]);
+            layeredFlow.getFlowXZ(pos, flow);
+            sum += flow.x + flow.z;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSITION_COUNT)
+    public float[] layeredFlowGetFlowXZBatch() {
+        layeredFlow.getFlowXZ(posX, posY, posZ, flowX, flowZ, 0, POSITION_COUNT);
+        return flowX;
+    }
+}
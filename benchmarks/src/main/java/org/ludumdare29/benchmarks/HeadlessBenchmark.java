@@ -0,0 +1,42 @@
+package org.ludumdare29.benchmarks;
+
+import org.ludumdare29.HeadlessRunner;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole simulation steps of the headless runner, with all simulation processors.
+ * The enemy AI keeps spawning submarines, so later iterations may have more entities.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HeadlessBenchmark {
+
+    @Param({"10", "100"})
+    public int enemyCount;
+
+    @Param({"20"})
+    public int bubbleCloudCount;
+
+    private HeadlessRunner runner;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        runner = new HeadlessRunner(enemyCount, bubbleCloudCount, HeadlessRunner.DEFAULT_SEED);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        runner.shutdown();
+    }
+
+    @Benchmark
+    public void step() {
+        runner.step();
+    }
+}
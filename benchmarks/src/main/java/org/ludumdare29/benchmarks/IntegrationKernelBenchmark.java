@@ -0,0 +1,78 @@
+package org.ludumdare29.benchmarks;
+
+import org.ludumdare29.Sea;
+import org.ludumdare29.physics.IntegratorType;
+import org.ludumdare29.physics.PhysicsIntegrator;
+import org.ludumdare29.physics.PhysicsState;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One integration step of packed bodies with the vector kernel, compared with the scalar kernel.
+ *
+ * The vector kernel is only available when the game is installed with the vector profile, and the benchmark is run
+ * on Java 17 or later with --add-modules jdk.incubator.vector, see the benchmarks pom.
+ * The bodies are reset before each iteration, so that they don't drift far away.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IntegrationKernelBenchmark {
+
+    private static final float DELTA_TIME_SECONDS = 0.02f;
+
+    @Param({"100000"})
+    public int bodyCount;
+
+    @Param({"false", "true"})
+    public boolean vectorKernel;
+
+    @Param({"EXPLICIT_EULER", "SEMI_IMPLICIT"})
+    public IntegratorType integratorType;
+
+    private final Sea sea = new Sea();
+    private final PhysicsIntegrator integrator = new PhysicsIntegrator();
+    private PhysicsState state;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if (vectorKernel && !PhysicsIntegrator.isVectorKernelAvailable()) {
+            throw new IllegalStateException("The vector kernel is not available, see the benchmarks pom");
+        }
+        integrator.setVectorKernelEnabled(vectorKernel);
+        integrator.setType(integratorType);
+    }
+
+    @Setup(Level.Iteration)
+    public void createBodies() {
+        state = new PhysicsState(bodyCount);
+
+        final Random random = new Random(42);
+        final float spread = 2000;
+        for (int i = 0; i < bodyCount; i++) {
+            final int slot = state.add();
+            state.posX[slot] = (float) random.nextGaussian() * spread;
+            state.posY[slot] = -random.nextFloat() * spread;
+            state.posZ[slot] = (float) random.nextGaussian() * spread;
+            state.thrustX[slot] = (random.nextFloat() - 0.5f) * 1000;
+            state.thrustZ[slot] = (random.nextFloat() - 0.5f) * 1000;
+
+            final float radius = random.nextFloat() * 2 + 0.1f;
+            state.radius_m[slot] = radius;
+            state.volume_m3[slot] = 4f / 3f * (float) Math.PI * radius * radius * radius;
+            state.crossArea_m2[slot] = (float) Math.PI * radius * radius;
+            state.mass_kg[slot] = state.volume_m3[slot] * (900 + random.nextFloat() * 250);
+            state.dragCoefficient[slot] = 0.3f;
+        }
+    }
+
+    @Benchmark
+    public void integrate() {
+        integrator.integrate(state, sea, DELTA_TIME_SECONDS, 0, bodyCount);
+    }
+}
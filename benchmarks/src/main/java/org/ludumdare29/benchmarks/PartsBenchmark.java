@@ -0,0 +1,59 @@
+package org.ludumdare29.benchmarks;
+
+import org.ludumdare29.parts.Controllable;
+import org.ludumdare29.parts.Tank;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Updating ship controls and tanks, as done by the ship and submarine processors every step.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PartsBenchmark {
+
+    private static final int COUNT = 1024;
+    private static final float STEP_SECONDS = 0.005f;
+
+    private final Controllable[] controllables = new Controllable[COUNT];
+    private final Tank[] tanks = new Tank[COUNT];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final Random random = new Random(42);
+        for (int i = 0; i < COUNT; i++) {
+            controllables[i] = new Controllable("control" + i);
+            controllables[i].setTarget(random.nextFloat() * 2 - 1);
+
+            tanks[i] = new Tank("tank" + i, 1000, random.nextFloat(), random.nextFloat() * 2 - 1);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void controllableUpdate() {
+        for (int i = 0; i < COUNT; i++) {
+            // Keep the controls moving
+            final Controllable controllable = controllables[i];
+            if (!controllable.changing()) controllable.setTarget(-controllable.getTargetPos());
+            controllable.update(STEP_SECONDS);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void tankUpdate() {
+        for (int i = 0; i < COUNT; i++) {
+            // Keep the tanks filling and emptying
+            final Tank tank = tanks[i];
+            if (tank.isEmpty() || tank.isFull()) tank.setChange_per_second(-tank.getChange_per_second());
+            tank.update(STEP_SECONDS);
+        }
+    }
+}
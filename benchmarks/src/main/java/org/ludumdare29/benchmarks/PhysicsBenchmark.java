@@ -0,0 +1,69 @@
+package org.ludumdare29.benchmarks;
+
+import com.badlogic.gdx.math.Vector3;
+import org.ludumdare29.Sea;
+import org.ludumdare29.components.LocationComponent;
+import org.ludumdare29.components.PhysicalComponent;
+import org.ludumdare29.physics.IntegratorType;
+import org.ludumdare29.processors.PhysicsProcessor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One step of the PhysicsProcessor for a number of bodies spread out in the sea.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PhysicsBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int bodyCount;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    @Param({"EXPLICIT_EULER", "SEMI_IMPLICIT"})
+    public IntegratorType integratorType;
+
+    private WorldFixture fixture;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = new WorldFixture();
+        final PhysicsProcessor physics = fixture.add(new PhysicsProcessor(new Sea()));
+        physics.setParallel(parallel);
+        physics.setIntegratorType(integratorType);
+        fixture.world.init();
+
+        final Random random = new Random(42);
+        final Vector3 pos = new Vector3();
+        final float spread = 2000;
+        for (int i = 0; i < bodyCount; i++) {
+            pos.set((float) random.nextGaussian() * spread,
+                    -random.nextFloat() * spread,
+                    (float) random.nextGaussian() * spread);
+            final PhysicalComponent physical = new PhysicalComponent(random.nextFloat() * 1000 + 1, 1000f, 0.3f);
+            physical.thrust.set(random.nextFloat() - 0.5f, 0, random.nextFloat() - 0.5f).scl(1000);
+            fixture.world.createEntity(new LocationComponent(pos), physical);
+        }
+
+        // Add the created entities
+        fixture.step();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.shutdown();
+    }
+
+    @Benchmark
+    public void step() {
+        fixture.step();
+    }
+}
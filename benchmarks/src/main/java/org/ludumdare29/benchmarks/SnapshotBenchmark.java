@@ -0,0 +1,75 @@
+package org.ludumdare29.benchmarks;
+
+import org.ludumdare29.Game;
+import org.ludumdare29.HeadlessRunner;
+import org.ludumdare29.Simulation;
+import org.ludumdare29.snapshot.SnapshotWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saving and restoring world snapshots with submarines and bubble particles.
+ * Loading includes creating the entities in a new simulation, but not initializing it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SnapshotBenchmark {
+
+    @Param({"1000", "10000"})
+    public int enemyCount;
+
+    @Param({"100"})
+    public int bubbleCloudCount;
+
+    private Simulation savedSimulation;
+    private Simulation loadedSimulation;
+    private File file;
+    private final SnapshotWriter writer = new SnapshotWriter();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        savedSimulation = new Simulation(Game.SIMULATION_STEP_MILLISECONDS, false, HeadlessRunner.DEFAULT_SEED);
+        savedSimulation.getWorld().init();
+        savedSimulation.populate(bubbleCloudCount, enemyCount);
+
+        // The snapshot is written at the start of the step, once the created entities are added
+        file = File.createTempFile("snapshot", ".bin");
+        file.deleteOnExit();
+        savedSimulation.saveSnapshot(file);
+        savedSimulation.step();
+    }
+
+    @Setup(Level.Invocation)
+    public void createSimulation() {
+        loadedSimulation = new Simulation(Game.SIMULATION_STEP_MILLISECONDS, false, HeadlessRunner.DEFAULT_SEED);
+        loadedSimulation.getWorld().init();
+    }
+
+    @TearDown(Level.Invocation)
+    public void shutdownSimulation() {
+        loadedSimulation.getWorld().shutdown();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        savedSimulation.getWorld().shutdown();
+        file.delete();
+    }
+
+    @Benchmark
+    public long save() throws IOException {
+        return writer.write(savedSimulation, file);
+    }
+
+    @Benchmark
+    public int load() throws IOException {
+        return loadedSimulation.loadSnapshot(file);
+    }
+}
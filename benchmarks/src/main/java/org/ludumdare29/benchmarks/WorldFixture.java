@@ -0,0 +1,32 @@
+package org.ludumdare29.benchmarks;
+
+import org.entityflow.system.Processor;
+import org.entityflow.world.ConcurrentWorld;
+import org.flowutils.time.ManualTime;
+import org.ludumdare29.Game;
+
+/**
+ * A world with manually advanced time, for benchmarking a few processors at a time without a display.
+ */
+public final class WorldFixture {
+
+    public final ManualTime time = new ManualTime();
+    public final ConcurrentWorld world = new ConcurrentWorld(time, Game.SIMULATION_STEP_MILLISECONDS);
+
+    public <T extends Processor> T add(T processor) {
+        return world.addProcessor(processor);
+    }
+
+    /**
+     * Advances the time one simulation step and processes the world.
+     */
+    public void step() {
+        time.advanceTime(Game.SIMULATION_STEP_MILLISECONDS);
+        time.nextStep();
+        world.process();
+    }
+
+    public void shutdown() {
+        world.shutdown();
+    }
+}
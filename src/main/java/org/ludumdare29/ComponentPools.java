@@ -0,0 +1,88 @@
+package org.ludumdare29;
+
+import com.badlogic.gdx.graphics.Color;
+import org.entityflow.entity.Entity;
+import org.ludumdare29.components.BubbleComponent;
+import org.ludumdare29.components.LocationComponent;
+import org.ludumdare29.components.PhysicalComponent;
+import org.ludumdare29.components.appearance.AppearanceComponent;
+import org.ludumdare29.components.appearance.BubbleAppearance;
+import org.ludumdare29.utils.CountingPool;
+
+/**
+ * Pools of reusable components for short lived entities such as bubbles and torpedoes.
+ * Components are reset when they are returned to the pools.
+ */
+public final class ComponentPools {
+
+    public static final int DEFAULT_MAX_FREE = 4096;
+
+    private static final Color BUBBLE_COLOR = new Color(0.6f, 0.6f, 0.6f, 0.5f);
+
+    public final CountingPool<LocationComponent> locations;
+    public final CountingPool<PhysicalComponent> physicals;
+    public final CountingPool<BubbleComponent> bubbles;
+    public final CountingPool<BubbleAppearance> bubbleAppearances;
+
+    public ComponentPools() {
+        this(DEFAULT_MAX_FREE);
+    }
+
+    /**
+     * @param maxFree maximum number of free components to keep of each type.
+     */
+    public ComponentPools(int maxFree) {
+        locations = new CountingPool<LocationComponent>(maxFree) {
+            @Override protected LocationComponent newObject() {
+                return new LocationComponent();
+            }
+        };
+        physicals = new CountingPool<PhysicalComponent>(maxFree) {
+            @Override protected PhysicalComponent newObject() {
+                return new PhysicalComponent();
+            }
+        };
+        bubbles = new CountingPool<BubbleComponent>(maxFree) {
+            @Override protected BubbleComponent newObject() {
+                return new BubbleComponent();
+            }
+        };
+        bubbleAppearances = new CountingPool<BubbleAppearance>(maxFree) {
+            @Override protected BubbleAppearance newObject() {
+                return new BubbleAppearance(BUBBLE_COLOR);
+            }
+        };
+    }
+
+    /**
+     * Returns the pooled types of components of a removed entity to the pools.
+     * The entity should not be used after this.
+     */
+    public void recycle(Entity entity) {
+        final LocationComponent location = entity.getComponent(LocationComponent.class);
+        if (location != null) locations.free(location);
+
+        final PhysicalComponent physical = entity.getComponent(PhysicalComponent.class);
+        if (physical != null) physicals.free(physical);
+
+        final BubbleComponent bubble = entity.getComponent(BubbleComponent.class);
+        if (bubble != null) bubbles.free(bubble);
+
+        final AppearanceComponent appearance = entity.getComponent(AppearanceComponent.class);
+        if (appearance instanceof BubbleAppearance) bubbleAppearances.free((BubbleAppearance) appearance);
+    }
+
+    /**
+     * @return total number of components reused from the pools.
+     */
+    public long getHits() {
+        return locations.getHits() + physicals.getHits() + bubbles.getHits() + bubbleAppearances.getHits();
+    }
+
+    /**
+     * @return total number of components that had to be created because the pools were empty.
+     */
+    public long getMisses() {
+        return locations.getMisses() + physicals.getMisses() + bubbles.getMisses() + bubbleAppearances.getMisses();
+    }
+}
@@ -4,12 +4,17 @@ import com.badlogic.gdx.InputMultiplexer;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.math.Quaternion;
 import com.badlogic.gdx.math.Vector3;
+import org.entityflow.component.Component;
 import org.entityflow.entity.Entity;
 import org.entityflow.world.World;
 import org.ludumdare29.components.*;
 import org.ludumdare29.components.appearance.*;
+import org.ludumdare29.particles.BubbleParticles;
 import org.ludumdare29.processors.BubbleProcessor;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Random;
 
 import static org.flowutils.MathUtils.*;
@@ -21,16 +26,54 @@ public final class EntityFactory {
 
     private final World world;
     private final Sea sea;
-    private final Random random = new Random();
+    private final Random random;
+    private BubbleParticles bubbleParticles = null;
+    private final ComponentPools componentPools = new ComponentPools();
+    private final Vector3 bubblePos = new Vector3();
 
     public EntityFactory(World world, Sea sea) {
+        this(world, sea, new Random());
+    }
+
+    /**
+     * @param random random number stream used for the properties of created entities.
+     */
+    public EntityFactory(World world, Sea sea, Random random) {
         this.world = world;
         this.sea = sea;
+        this.random = random;
+    }
+
+    public Sea getSea() {
+        return sea;
+    }
+
+    /**
+     * @return pools that components of bubbles and torpedoes are taken from.  Deleted entities should be recycled to them.
+     */
+    public ComponentPools getComponentPools() {
+        return componentPools;
+    }
+
+    /**
+     * @return particle system that bubbles are created in, or null if bubbles are created as entities.
+     */
+    public BubbleParticles getBubbleParticles() {
+        return bubbleParticles;
+    }
+
+    /**
+     * @param bubbleParticles particle system to create bubbles in, or null to create bubbles as entities.
+     */
+    public void setBubbleParticles(BubbleParticles bubbleParticles) {
+        this.bubbleParticles = bubbleParticles;
     }
 
     public Entity createTorpedo(Entity sourceEntity, Vector3 pos, Quaternion direction, float sizeFactor, float speedFactor, Color accentColor) {
         // Location
-        final LocationComponent location = new LocationComponent(pos, direction);
+        final LocationComponent location = componentPools.locations.obtain();
+        location.position.set(pos);
+        location.direction.set(direction);
 
         // Appearance
         float length = mixAndClamp(sizeFactor + speedFactor / 2, 1, 15);
@@ -42,7 +85,8 @@ public final class EntityFactory {
         final float mass_kg = mix(sizeFactor, 100, 1000);
         final float density_kg_per_m3 = 900f;
         final float dragCoefficient = mix(speedFactor, 0.3f, 0.05f);
-        final PhysicalComponent physical = new PhysicalComponent(mass_kg, density_kg_per_m3, dragCoefficient);
+        final PhysicalComponent physical = componentPools.physicals.obtain();
+        physical.set(mass_kg, density_kg_per_m3, dragCoefficient);
         if (sourceEntity != null) {
             final PhysicalComponent sourcePhysical = sourceEntity.getComponent(PhysicalComponent.class);
             physical.velocity.set(sourcePhysical.velocity);
@@ -70,13 +114,16 @@ public final class EntityFactory {
     public Entity createEnemySubmarine(Vector3 pos, float sizeFactor, float sleekness) {
         Color accentColor = new Color(0.95f, 0.05f * random.nextFloat(), 0.2f, 1);
 
-        final Entity submarine = createSubmarine(pos, sizeFactor, sleekness, accentColor);
-        submarine.addComponent(new EnemyAi());
-        return submarine;
+        // Enemies are simulated at a reduced rate when far from the camera
+        return createSubmarine(pos, sizeFactor, sleekness, accentColor, new EnemyAi(), new RelevanceComponent());
     }
 
 
     public Entity createSubmarine(Vector3 pos, float sizeFactor, float sleekness, Color accentColor) {
+        return createSubmarine(pos, sizeFactor, sleekness, accentColor, new Component[0]);
+    }
+
+    private Entity createSubmarine(Vector3 pos, float sizeFactor, float sleekness, Color accentColor, Component... extraComponents) {
         LocationComponent location = new LocationComponent(pos);
         location.direction.setFromAxisRad(0, 1, 0, random.nextFloat() * TauFloat);
 
@@ -84,7 +131,8 @@ public final class EntityFactory {
         SubmarineAppearance appearance = new SubmarineAppearance(mixAndClamp(sizeFactor, 5f, 100f),
                                                                  mixAndClamp(sizeFactor, 3f, 16f) * mixAndClamp(sleekness, 1.5f, 0.5f),
                                                                  baseColor,
-                                                                 accentColor);
+                                                                 accentColor,
+                                                                 random.nextLong());
 
         final float mass_kg = mixAndClamp(sizeFactor, 10000f, 100000f);
         final float dragCoefficient  = mixAndClamp(sleekness, 0.5f, 0.03f);
@@ -108,7 +156,10 @@ public final class EntityFactory {
         final TorpedoTubeComponent torpedoTube = new TorpedoTubeComponent(reloadTime_s, torpedoSizeFactor, torpedoSpeedFactor);
 
         final ColorAccented colorAccented = new ColorAccented(accentColor);
-        return world.createEntity(location, appearance, bubbling, physical, ship, submarine, damageable, torpedoTube, colorAccented);
+        final List<Component> components = new ArrayList<Component>();
+        Collections.addAll(components, location, appearance, bubbling, physical, ship, submarine, damageable, torpedoTube, colorAccented);
+        Collections.addAll(components, extraComponents);
+        return world.createEntity(components.toArray(new Component[components.size()]));
     }
 
     private Color createBaseColor() {
@@ -121,8 +172,13 @@ public final class EntityFactory {
         return baseColor;
     }
 
+    /**
+     * @param inputMultiplexer input handler to add the controls of the submarine to, or null to create only the submarine,
+     *                         without controls, cameras and gauges, e.g. for headless runs.
+     */
     public Entity createPlayerSubmarine(Vector3 pos, float sizeFactor, float sleekness, InputMultiplexer inputMultiplexer) {
         final Entity playerSubmarine = createSubmarine(pos, sizeFactor, sleekness, new Color(0.3f, 0.3f, 0.95f, 1f));
+        if (inputMultiplexer == null) return playerSubmarine;
 
         final ShipComponent ship = playerSubmarine.getComponent(ShipComponent.class);
         final SubmarineComponent submarine = playerSubmarine.getComponent(SubmarineComponent.class);
@@ -196,8 +252,6 @@ public final class EntityFactory {
                                          float bubbleCloudDiam_m,
                                          float lifeTime_seconds) {
 
-        Vector3 bubblePos = new Vector3();
-
         for (int i = 0; i < numBubbles; i++) {
             float relPos = (i + 1f) / numBubbles;
             float size = mix(relPos * relPos * relPos, averageBubbleDiam_m * 0.25f, averageBubbleDiam_m * 4f);
@@ -225,8 +279,6 @@ public final class EntityFactory {
      * @param bubbleCloudDiam_m maximum size of the bubble cloud along each coordinate axis.
      */
     public void createBubbleCloud(Vector3 pos, int numBubbles, float averageBubbleDiam_m, float bubbleCloudDiam_m, float lifeTime_seconds) {
-        Vector3 bubblePos = new Vector3();
-
         for (int i = 0; i < numBubbles; i++) {
             bubblePos.set(pos);
             bubblePos.add(randomNormalDistributed(bubbleCloudDiam_m),
@@ -241,14 +293,27 @@ public final class EntityFactory {
         }
     }
 
+    /**
+     * Creates a bubble, if it is under the surface.
+     * If a bubble particle system is set, the bubble is created in it instead of as an entity.
+     *
+     * @return the created bubble entity, or null if no entity was created.
+     */
     public Entity createBubble(Vector3 pos, float diam_m, float lifeTime_seconds) {
-        if (diam_m > 0 && lifeTime_seconds > 0 && sea.getDepth(pos) > BubbleProcessor.BUBBLE_POP_DEPTH) {
+        if (bubbleParticles != null) {
+            bubbleParticles.spawn(pos, diam_m, lifeTime_seconds);
+            return null;
+        }
+        else if (diam_m > 0 && lifeTime_seconds > 0 && sea.getDepth(pos) > BubbleProcessor.BUBBLE_POP_DEPTH) {
             final float radius = diam_m * 0.5f;
-            final Color color = new Color(0.6f, 0.6f, 0.6f, 0.5f);
-            final BubbleAppearance appearance = new BubbleAppearance(color);
-            final LocationComponent location = new LocationComponent(pos);
-            final PhysicalComponent physical = PhysicalComponent.fromRadiusAndDensity(radius, Sea.AIR_DENSITY_AT_SEA_LEVEL);
-            final BubbleComponent bubble = new BubbleComponent(lifeTime_seconds);
+            final BubbleAppearance appearance = componentPools.bubbleAppearances.obtain();
+            final LocationComponent location = componentPools.locations.obtain();
+            location.position.set(pos);
+            final PhysicalComponent physical = componentPools.physicals.obtain();
+            physical.setRadiusAndDensity(radius, Sea.AIR_DENSITY_AT_SEA_LEVEL);
+            final BubbleComponent bubble = componentPools.bubbles.obtain();
+            bubble.lifeTime_seconds = lifeTime_seconds;
+            bubble.wobbleStart = random.nextDouble();
 
             return world.createEntity(appearance, location, bubble, physical);
 
@@ -2,16 +2,18 @@ package org.ludumdare29;
 
 import com.badlogic.gdx.ApplicationAdapter;
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Input;
+import com.badlogic.gdx.InputAdapter;
 import com.badlogic.gdx.InputMultiplexer;
 import com.badlogic.gdx.backends.lwjgl.LwjglApplication;
-import com.badlogic.gdx.math.Vector3;
-import org.entityflow.entity.Entity;
-import org.entityflow.world.ConcurrentWorld;
-import org.flowutils.time.RealTime;
 import org.ludumdare29.processors.*;
 import org.ludumdare29.shader.OceanShader;
+import org.ludumdare29.utils.FixedStepAccumulator;
 
-import java.util.Random;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Main entrypoint.
@@ -20,15 +22,31 @@ public class Game extends ApplicationAdapter {
 
     public static final String NAME = "Crushing Depth";
     public static final int SIMULATION_STEP_MILLISECONDS = 5;
-    private ConcurrentWorld world;
-    private RealTime time;
-    private Sea sea;
-    private BubbleProcessor bubbleProcessor;
-    private PhysicsProcessor physicsProcessor;
+
+    /**
+     * Maximum number of simulation steps to run for one rendered frame, if the simulation falls further behind it slows down.
+     */
+    public static final int MAX_SIMULATION_STEPS_PER_FRAME = 20;
+
+    /**
+     * Key that toggles the processor timing overlay, and tracking of the memory allocated by the processors.
+     */
+    public static final int TIMING_OVERLAY_KEY = Input.Keys.F3;
+
+    /**
+     * Key that starts and stops recording a replay to the working directory.
+     */
+    public static final int RECORD_REPLAY_KEY = Input.Keys.F9;
+
+    /**
+     * Steps between the keyframes of recorded replays.
+     */
+    public static final int REPLAY_KEYFRAME_INTERVAL_STEPS = 2000;
+
+    private Simulation simulation;
+    private FixedStepAccumulator stepAccumulator;
+    private final List<GameProcessor> renderProcessors = new ArrayList<GameProcessor>();
     private RenderingProcessor renderingProcessor;
-    private Vector3 tempPos;
-    private EntityFactory entityFactory;
-    private ShipProcessor shipProcessor;
     private final InputMultiplexer inputHandler = new InputMultiplexer();
 
     public static void main(String[] args) {
@@ -45,75 +63,107 @@ public class Game extends ApplicationAdapter {
 
 
     private void start() {
-        // Create world
-        time = new RealTime();
-        world = new ConcurrentWorld(time, SIMULATION_STEP_MILLISECONDS);
-        sea = new Sea();
-
-        entityFactory = new EntityFactory(world, sea);
-
-        // Add processors
-        world.addProcessor(new TrackingProcessor());
-        world.addProcessor(new EnemyProcessor(entityFactory));
-        world.addProcessor(new BubblingProcessor(entityFactory));
-        world.addProcessor(new TorpedoTubeProcessor(entityFactory));
-        bubbleProcessor = world.addProcessor(new BubbleProcessor(sea));
-        physicsProcessor = world.addProcessor(new PhysicsProcessor(sea));
-        shipProcessor = world.addProcessor(new ShipProcessor());
-        world.addProcessor(new SubmarineProcessor(sea));
-        world.addProcessor(new RocketProcessor());
-        world.addProcessor(new ExplodingProcessor(entityFactory));
-        world.addProcessor(new DamageProcessor(entityFactory));
-        renderingProcessor = new RenderingProcessor(new OceanShader(sea), sea);
+        // Create world with the simulation processors
+        simulation = new Simulation(SIMULATION_STEP_MILLISECONDS, true);
+        stepAccumulator = new FixedStepAccumulator(SIMULATION_STEP_MILLISECONDS / 1000.0, MAX_SIMULATION_STEPS_PER_FRAME);
+
+        // Add rendering processors
+        final Sea sea = simulation.getSea();
+        renderingProcessor = new RenderingProcessor(new OceanShader(sea), sea, simulation.getBubbleParticles());
         final UiProcessor uiProcessor = new UiProcessor();
-        world.addProcessor(new CameraProcessor(renderingProcessor, inputHandler, uiProcessor));
-        world.addProcessor(renderingProcessor);
-        world.addProcessor(uiProcessor);
+        addRenderProcessor(new CameraProcessor(renderingProcessor, inputHandler, uiProcessor, simulation.getRelevanceProcessor()));
+        addRenderProcessor(renderingProcessor);
+        addRenderProcessor(uiProcessor);
+
+        // Show processor timings on top of the UI
+        uiProcessor.setTimedProcessors(getProcessors());
+        inputHandler.addProcessor(new InputAdapter() {
+            @Override public boolean keyDown(int keycode) {
+                if (keycode == TIMING_OVERLAY_KEY) {
+                    final boolean visible = !uiProcessor.isTimingOverlayVisible();
+                    uiProcessor.setTimingOverlayVisible(visible);
+                    for (GameProcessor processor : getProcessors()) {
+                        processor.setAllocationTrackingEnabled(visible);
+                    }
+                    return true;
+                }
+                if (keycode == RECORD_REPLAY_KEY) {
+                    toggleRecording();
+                    return true;
+                }
+                return false;
+            }
+        });
 
         // Create 3D application
         new LwjglApplication(this, NAME, 1024, 768);
     }
 
 
-    @Override public void create() {
-        // Setup input handler
-        Gdx.input.setInputProcessor(inputHandler);
-
-        // Initialize processors
-        world.init();
-
-        tempPos = new Vector3();
+    private void toggleRecording() {
+        try {
+            if (simulation.isRecording()) {
+                simulation.stopRecording();
+                Gdx.app.log(NAME, "Stopped recording");
+            }
+            else {
+                final File file = new File("replay-" + System.currentTimeMillis() + ".bin");
+                simulation.startRecording(file, REPLAY_KEYFRAME_INTERVAL_STEPS);
+                Gdx.app.log(NAME, "Recording to " + file.getAbsolutePath());
+            }
+        } catch (IOException e) {
+            Gdx.app.error(NAME, "Could not record the replay: " + e.getMessage(), e);
+        }
+    }
 
-        // Create player submarine
-        final Entity player = entityFactory.createPlayerSubmarine(tempPos.set(0, 0, 0), 0.3f, 0.7f, inputHandler);
+    private <T extends GameProcessor> T addRenderProcessor(T processor) {
+        renderProcessors.add(processor);
+        return simulation.getWorld().addProcessor(processor);
+    }
 
-        // Create some bubbles
-        Random random = new Random();
-        float spread = 2000;
-        for (int i = 0; i < 20; i++) {
+    /**
+     * @return the accumulator that decides how many simulation steps are run per frame, with statistics on steps and dropped time.
+     */
+    public FixedStepAccumulator getStepAccumulator() {
+        return stepAccumulator;
+    }
 
-            final float diam = random.nextFloat() * 0.1f + 0.001f;
+    /**
+     * @return all processors of the game in processing order, with their timings.
+     */
+    public List<GameProcessor> getProcessors() {
+        final List<GameProcessor> processors = new ArrayList<GameProcessor>(simulation.getProcessors());
+        processors.addAll(renderProcessors);
+        return processors;
+    }
 
-            tempPos.set((float) random.nextGaussian() * spread,
-                        (float) random.nextGaussian() * spread - 10,
-                        (float) random.nextGaussian() * spread);
+    /**
+     * @return the simulated world and its simulation processors.
+     */
+    public Simulation getSimulation() {
+        return simulation;
+    }
 
-            entityFactory.createVaryingBubbleCloud(tempPos, 50 + random.nextInt(100), diam, random.nextFloat() * 1, 60f);
-        }
+    @Override public void create() {
+        // Setup input handler
+        Gdx.input.setInputProcessor(inputHandler);
 
-        // Create some submarines
-        spread = 300;
-        for (int i = 0; i < 10; i++) {
+        // Initialize processors
+        simulation.getWorld().init();
 
-            tempPos.set((float) random.nextGaussian() * spread,
-                        (float) random.nextGaussian() * spread ,
-                        (float) random.nextGaussian() * spread);
+        // Create player submarine, that the enemies react to
+        simulation.createPlayer(inputHandler);
 
-            //tempPos.set((i% 10) * 10 - 100, -i * 2 + 100, (i / 10) * 10 -100  );
+        // Create some bubbles and submarines
+        simulation.populate(20, 10);
+    }
 
-            entityFactory.createEnemySubmarine(tempPos,
-                                          random.nextFloat() * random.nextFloat(),
-                                          random.nextFloat() * random.nextFloat());
+    @Override public void dispose() {
+        // Finish any replay being recorded
+        try {
+            simulation.stopRecording();
+        } catch (IOException e) {
+            Gdx.app.error(NAME, "Could not close the replay: " + e.getMessage(), e);
         }
     }
 
@@ -122,11 +172,27 @@ public class Game extends ApplicationAdapter {
     }
 
     @Override public void render() {
-        // Tick
-        time.nextStep();
+        // Run the simulation steps that fit in the time since the last frame
+        final int steps = stepAccumulator.advance(Gdx.graphics.getDeltaTime());
+        setRenderingEnabled(false);
+        simulation.setSimulationEnabled(true);
+        for (int i = 0; i < steps; i++) {
+            simulation.step();
+        }
 
-        // Update world
-        world.process();
+        // Render between the last two simulation steps
+        final float interpolationAlpha = stepAccumulator.getInterpolationAlpha();
+        simulation.setSimulationEnabled(false);
+        setRenderingEnabled(true);
+        simulation.getInterpolationProcessor().beginRenderPass(interpolationAlpha);
+        renderingProcessor.setInterpolationAlpha(interpolationAlpha);
+        simulation.getWorld().process();
+    }
+
+    private void setRenderingEnabled(boolean enabled) {
+        for (GameProcessor processor : renderProcessors) {
+            processor.setEnabled(enabled);
+        }
     }
 
 }
@@ -0,0 +1,472 @@
+package org.ludumdare29;
+
+import org.ludumdare29.physics.IntegratorType;
+import org.ludumdare29.processors.AllocationGuard;
+import org.ludumdare29.processors.GameProcessor;
+import org.ludumdare29.processors.ProcessorTimings;
+import org.ludumdare29.replay.ReplayPlayer;
+import org.ludumdare29.snapshot.SnapshotReader;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the simulation without rendering, camera or ui, as fast as possible, and reports the throughput.
+ * Does not need a graphics context, so it can be used for soak tests and measurements on machines without a display.
+ *
+ * The player submarine is created without controls, it drifts where it starts while the enemies hunt it.
+ *
+ * The simulation is deterministic, runs with the same seed produce the same state hash after each step.
+ * The hashes can be written to a file, and compared against in a later run, e.g. on another machine or after a change.
+ *
+ * Usage: HeadlessRunner [enemyCount] [bubbleCloudCount] [durationSeconds] [seed] [options]
+ *
+ * Options:
+ *   --track-allocations                  record the bytes allocated by each processor and print them in the summary.
+ *   --fail-on-allocation=Name1,Name2     fail if the named processors, e.g. PhysicsProcessor, allocate memory
+ *                                        after the warmup steps.  Processors that run in parallel can not be checked.
+ *   --write-hashes=FILE                  write the state hash of each step to the file.
+ *   --check-hashes=FILE                  compare the state hash of each step to the ones in the file,
+ *                                        and fail at the first step that differs.
+ *   --load-snapshot=FILE                 start from a world snapshot instead of creating enemies and bubble clouds.
+ *                                        The seed is taken from the snapshot.
+ *   --save-snapshot=FILE                 save a world snapshot at the end of the run.
+ *   --record=FILE                        record the control events of the run to a replay file.
+ *   --replay=FILE                        play a replay file instead of creating enemies and bubble clouds.
+ *                                        The seed is taken from the replay.
+ *   --start-step=N                       seek the replay to step N before running.
+ *   --step-ms=N                          simulate with steps of N milliseconds instead of the step of the game.
+ *                                        Replays use the step they were recorded with.
+ *   --integrator=NAME                    integrate physics with EXPLICIT_EULER or SEMI_IMPLICIT, see IntegratorType.
+ *                                        SEMI_IMPLICIT stays stable with steps of 20 to 50 ms.
+ *   --ai-threads=N                       make the decisions of the enemies in parallel on N threads.
+ *                                        Gives different, but still deterministic, decisions than the default serial mode.
+ *   --ai-agents-per-run=N                decide at most N enemies on each run of the enemy processor, round-robin.
+ */
+public final class HeadlessRunner {
+
+    public static final int DEFAULT_ENEMY_COUNT = 10;
+    public static final int DEFAULT_BUBBLE_CLOUD_COUNT = 20;
+    public static final double DEFAULT_DURATION_SECONDS = 60;
+    public static final long DEFAULT_SEED = 42;
+
+    /**
+     * Steps to run before allocations of processors checked with --fail-on-allocation are treated as errors.
+     */
+    public static final int ALLOCATION_WARMUP_STEPS = 2000;
+
+    /**
+     * Steps between the keyframes of recorded replays.
+     */
+    public static final int REPLAY_KEYFRAME_INTERVAL_STEPS = 2000;
+
+    private static final String TRACK_ALLOCATIONS_OPTION = "--track-allocations";
+    private static final String FAIL_ON_ALLOCATION_OPTION = "--fail-on-allocation=";
+    private static final String WRITE_HASHES_OPTION = "--write-hashes=";
+    private static final String CHECK_HASHES_OPTION = "--check-hashes=";
+    private static final String LOAD_SNAPSHOT_OPTION = "--load-snapshot=";
+    private static final String SAVE_SNAPSHOT_OPTION = "--save-snapshot=";
+    private static final String RECORD_OPTION = "--record=";
+    private static final String REPLAY_OPTION = "--replay=";
+    private static final String START_STEP_OPTION = "--start-step=";
+    private static final String STEP_MS_OPTION = "--step-ms=";
+    private static final String INTEGRATOR_OPTION = "--integrator=";
+    private static final String AI_THREADS_OPTION = "--ai-threads=";
+    private static final String AI_AGENTS_PER_RUN_OPTION = "--ai-agents-per-run=";
+
+    /**
+     * Real time between progress reports.
+     */
+    private static final long REPORT_INTERVAL_NANOSECONDS = 5000000000L;
+
+    private final Simulation simulation;
+    private final ReplayPlayer replayPlayer;
+    private final int enemyCount;
+    private final int bubbleCloudCount;
+    private final long seed;
+
+    private long stepCount = 0;
+    private long elapsedNanoseconds = 0;
+    private AllocationGuard allocationGuard = null;
+    private DataOutputStream hashOutput = null;
+    private DataInputStream expectedHashInput = null;
+
+    public static void main(String[] commandLine) throws IOException {
+        // Separate options from positional parameters
+        final List<String> parameters = new ArrayList<String>();
+        boolean trackAllocations = false;
+        String allocationFreeProcessors = null;
+        String writeHashesFile = null;
+        String checkHashesFile = null;
+        String loadSnapshotFile = null;
+        String saveSnapshotFile = null;
+        String recordFile = null;
+        String replayFile = null;
+        long startStep = -1;
+        int stepMilliseconds = Game.SIMULATION_STEP_MILLISECONDS;
+        IntegratorType integratorType = null;
+        int aiThreadCount = 0;
+        int aiAgentsPerRun = 0;
+        for (String arg : commandLine) {
+            if (arg.equals(TRACK_ALLOCATIONS_OPTION)) trackAllocations = true;
+            else if (arg.startsWith(FAIL_ON_ALLOCATION_OPTION)) allocationFreeProcessors = arg.substring(FAIL_ON_ALLOCATION_OPTION.length());
+            else if (arg.startsWith(WRITE_HASHES_OPTION)) writeHashesFile = arg.substring(WRITE_HASHES_OPTION.length());
+            else if (arg.startsWith(CHECK_HASHES_OPTION)) checkHashesFile = arg.substring(CHECK_HASHES_OPTION.length());
+            else if (arg.startsWith(LOAD_SNAPSHOT_OPTION)) loadSnapshotFile = arg.substring(LOAD_SNAPSHOT_OPTION.length());
+            else if (arg.startsWith(SAVE_SNAPSHOT_OPTION)) saveSnapshotFile = arg.substring(SAVE_SNAPSHOT_OPTION.length());
+            else if (arg.startsWith(RECORD_OPTION)) recordFile = arg.substring(RECORD_OPTION.length());
+            else if (arg.startsWith(REPLAY_OPTION)) replayFile = arg.substring(REPLAY_OPTION.length());
+            else if (arg.startsWith(START_STEP_OPTION)) startStep = Long.parseLong(arg.substring(START_STEP_OPTION.length()));
+            else if (arg.startsWith(STEP_MS_OPTION)) stepMilliseconds = Integer.parseInt(arg.substring(STEP_MS_OPTION.length()));
+            else if (arg.startsWith(INTEGRATOR_OPTION)) integratorType = IntegratorType.valueOf(arg.substring(INTEGRATOR_OPTION.length()));
+            else if (arg.startsWith(AI_THREADS_OPTION)) aiThreadCount = Integer.parseInt(arg.substring(AI_THREADS_OPTION.length()));
+            else if (arg.startsWith(AI_AGENTS_PER_RUN_OPTION)) aiAgentsPerRun = Integer.parseInt(arg.substring(AI_AGENTS_PER_RUN_OPTION.length()));
+            else if (arg.startsWith("--")) throw new IllegalArgumentException("Unknown option " + arg);
+            else parameters.add(arg);
+        }
+        final String[] args = parameters.toArray(new String[parameters.size()]);
+
+        final int enemyCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ENEMY_COUNT;
+        final int bubbleCloudCount = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_BUBBLE_CLOUD_COUNT;
+        final double durationSeconds = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_DURATION_SECONDS;
+        final long seed = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_SEED;
+
+        final HeadlessRunner runner;
+        if (replayFile != null) runner = HeadlessRunner.fromReplay(new File(replayFile), startStep);
+        else if (loadSnapshotFile != null) runner = HeadlessRunner.fromSnapshot(new File(loadSnapshotFile), stepMilliseconds);
+        else runner = new HeadlessRunner(enemyCount, bubbleCloudCount, seed, stepMilliseconds);
+        if (integratorType != null) runner.getSimulation().setIntegratorType(integratorType);
+        if (aiThreadCount > 0) runner.getSimulation().getEnemyProcessor().setParallelism(aiThreadCount);
+        if (aiAgentsPerRun > 0) runner.getSimulation().getEnemyProcessor().getTimeSlicer().setMaxAgentsPerRun(aiAgentsPerRun);
+        if (trackAllocations) runner.setAllocationTrackingEnabled(true);
+        if (allocationFreeProcessors != null) {
+            final AllocationGuard guard = new AllocationGuard(ALLOCATION_WARMUP_STEPS);
+            for (String name : allocationFreeProcessors.split(",")) {
+                guard.watch(runner.getProcessor(name.trim()));
+            }
+            runner.setAllocationGuard(guard);
+        }
+        if (writeHashesFile != null) runner.writeHashes(new File(writeHashesFile));
+        if (checkHashesFile != null) runner.checkHashes(new File(checkHashesFile));
+        if (recordFile != null) runner.getSimulation().startRecording(new File(recordFile), REPLAY_KEYFRAME_INTERVAL_STEPS);
+
+        System.out.println("Running " + durationSeconds + " simulated seconds with " + enemyCount + " enemies, " +
+                           bubbleCloudCount + " bubble clouds, seed " + runner.getSimulation().getRandomStreams().getMasterSeed() +
+                           ", " + runner.getSimulation().getStepMilliseconds() + " ms steps, " + runner.getSimulation().getIntegratorType() + " integrator" +
+                           (runner.getSimulation().getPhysicsProcessor().isVectorKernelEnabled() ? " with the vector kernel" : ""));
+        runner.run(durationSeconds, true);
+        runner.printProcessorSummary();
+        System.out.println(String.format("Final state hash %016x", runner.getSimulation().getStateHash()));
+        if (saveSnapshotFile != null) runner.saveSnapshot(new File(saveSnapshotFile));
+        runner.shutdown();
+    }
+
+    /**
+     * Creates and populates the world, with the player submarine at the origin.
+     *
+     * @param enemyCount number of enemy submarines to start with.
+     * @param bubbleCloudCount number of bubble clouds to start with.
+     * @param seed master seed of the simulation, runs with the same seed and counts are identical.
+     */
+    public HeadlessRunner(int enemyCount, int bubbleCloudCount, long seed) {
+        this(enemyCount, bubbleCloudCount, seed, Game.SIMULATION_STEP_MILLISECONDS);
+    }
+
+    /**
+     * Creates and populates the world, with the player submarine at the origin.
+     *
+     * @param enemyCount number of enemy submarines to start with.
+     * @param bubbleCloudCount number of bubble clouds to start with.
+     * @param seed master seed of the simulation, runs with the same seed, counts and step are identical.
+     * @param stepMilliseconds length of a simulation step.  Steps longer than the one of the game should be used with
+     *                         the semi-implicit integrator, see Simulation.setIntegratorType.
+     */
+    public HeadlessRunner(int enemyCount, int bubbleCloudCount, long seed, int stepMilliseconds) {
+        this(enemyCount, bubbleCloudCount, seed, stepMilliseconds, true);
+    }
+
+    /**
+     * Creates the world with the master seed of a snapshot and restores it from the snapshot.
+     *
+     * @param snapshotFile world snapshot written with saveSnapshot.
+     */
+    public static HeadlessRunner fromSnapshot(File snapshotFile) throws IOException {
+        return fromSnapshot(snapshotFile, Game.SIMULATION_STEP_MILLISECONDS);
+    }
+
+    /**
+     * Creates the world with the master seed of a snapshot and the specified step length, and restores it from the snapshot.
+     */
+    public static HeadlessRunner fromSnapshot(File snapshotFile, int stepMilliseconds) throws IOException {
+        final long seed = SnapshotReader.readMasterSeed(snapshotFile);
+        final HeadlessRunner runner = new HeadlessRunner(0, 0, seed, stepMilliseconds, false);
+
+        final long start = System.nanoTime();
+        final int entityCount = runner.simulation.loadSnapshot(snapshotFile);
+        System.out.println(String.format("Loaded %d entities and %d bubble particles from %s in %.1f ms",
+                                         entityCount, runner.simulation.getBubbleParticles().size(), snapshotFile,
+                                         (System.nanoTime() - start) / 1000000.0));
+        return runner;
+    }
+
+    /**
+     * Plays a replay recorded with the --record option, or by the game.
+     *
+     * @param replayFile replay file to play.
+     * @param startStep step to seek the replay to before running, or a negative value to start from the beginning.
+     */
+    public static HeadlessRunner fromReplay(File replayFile, long startStep) throws IOException {
+        final long start = System.nanoTime();
+        final ReplayPlayer player = new ReplayPlayer(replayFile);
+        if (startStep >= 0) player.seek(startStep);
+        System.out.println(String.format("Opened the replay %s with %d keyframes and steps %d to %d at step %d in %.1f ms",
+                                         replayFile, player.getKeyframeCount(), player.getFirstStep(), player.getLastStep(),
+                                         player.getStep(), (System.nanoTime() - start) / 1000000.0));
+
+        return new HeadlessRunner(player);
+    }
+
+    private HeadlessRunner(ReplayPlayer player) {
+        enemyCount = 0;
+        bubbleCloudCount = 0;
+        seed = player.getMasterSeed();
+        simulation = player.getSimulation();
+        replayPlayer = player;
+    }
+
+    private HeadlessRunner(int enemyCount, int bubbleCloudCount, long seed, int stepMilliseconds, boolean populate) {
+        if (stepMilliseconds <= 0) throw new IllegalArgumentException("stepMilliseconds should be positive, but was " + stepMilliseconds);
+        if (enemyCount < 0) throw new IllegalArgumentException("enemyCount should not be negative, but was " + enemyCount);
+        if (bubbleCloudCount < 0) throw new IllegalArgumentException("bubbleCloudCount should not be negative, but was " + bubbleCloudCount);
+
+        this.enemyCount = enemyCount;
+        this.bubbleCloudCount = bubbleCloudCount;
+        this.seed = seed;
+        replayPlayer = null;
+
+        simulation = new Simulation(stepMilliseconds, false, seed);
+        simulation.getWorld().init();
+        if (populate) {
+            simulation.createPlayer(null);
+            simulation.populate(bubbleCloudCount, enemyCount);
+        }
+    }
+
+    /**
+     * Runs simulation steps as fast as possible until the specified amount of simulated time has passed.
+     *
+     * @param durationSeconds simulated time to run.
+     * @param report if true, progress is printed regularly, and a summary at the end.
+     */
+    public void run(double durationSeconds, boolean report) {
+        final long steps = (long) Math.ceil(durationSeconds * 1000.0 / simulation.getStepMilliseconds());
+
+        final long runStart = System.nanoTime();
+        long lastReport = runStart;
+        long lastReportSteps = 0;
+        for (long i = 0; i < steps; i++) {
+            step();
+
+            if (report) {
+                final long now = System.nanoTime();
+                if (now - lastReport >= REPORT_INTERVAL_NANOSECONDS) {
+                    System.out.println(formatReport(i + 1 - lastReportSteps, now - lastReport));
+                    lastReport = now;
+                    lastReportSteps = i + 1;
+                }
+            }
+        }
+
+        if (report) {
+            System.out.println("Total: " + formatReport(steps, System.nanoTime() - runStart));
+        }
+    }
+
+    /**
+     * Runs one simulation step.
+     */
+    public void step() {
+        final long start = System.nanoTime();
+        if (replayPlayer != null) replayPlayer.step();
+        else simulation.step();
+        elapsedNanoseconds += System.nanoTime() - start;
+        stepCount++;
+
+        if (allocationGuard != null) allocationGuard.check();
+        if (hashOutput != null || expectedHashInput != null) handleStateHash(simulation.getStateHash());
+    }
+
+    /**
+     * Writes the state hash of each following step to the file, until shutdown.
+     */
+    public void writeHashes(File file) throws IOException {
+        if (hashOutput != null) throw new IllegalStateException("Already writing hashes");
+        hashOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    }
+
+    /**
+     * Compares the state hash of each following step to the next hash in the file, until shutdown.
+     * The file should have been written with writeHashes by a run with the same seed and counts.
+     */
+    public void checkHashes(File file) throws IOException {
+        if (expectedHashInput != null) throw new IllegalStateException("Already checking hashes");
+        expectedHashInput = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    }
+
+    private void handleStateHash(long hash) {
+        try {
+            if (hashOutput != null) hashOutput.writeLong(hash);
+
+            if (expectedHashInput != null) {
+                final long expectedHash;
+                try {
+                    expectedHash = expectedHashInput.readLong();
+                } catch (EOFException e) {
+                    // The run is longer than the recorded one, nothing more to compare against
+                    expectedHashInput.close();
+                    expectedHashInput = null;
+                    return;
+                }
+
+                if (hash != expectedHash) {
+                    throw new IllegalStateException(String.format("The simulation diverged on step %d, the state hash was %016x but expected %016x",
+                                                                  stepCount, hash, expectedHash));
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read or write the state hashes: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param allocationGuard guard to check after each step, or null for none.
+     */
+    public void setAllocationGuard(AllocationGuard allocationGuard) {
+        this.allocationGuard = allocationGuard;
+    }
+
+    /**
+     * @param enabled true to record the bytes allocated by each simulation processor.
+     */
+    public void setAllocationTrackingEnabled(boolean enabled) {
+        for (GameProcessor processor : simulation.getProcessors()) {
+            processor.setAllocationTrackingEnabled(enabled);
+        }
+    }
+
+    /**
+     * @param simpleClassName class name of the processor without the package, e.g. PhysicsProcessor.
+     * @return the simulation processor with the specified class name.
+     */
+    public GameProcessor getProcessor(String simpleClassName) {
+        for (GameProcessor processor : simulation.getProcessors()) {
+            if (processor.getClass().getSimpleName().equals(simpleClassName)) return processor;
+        }
+        throw new IllegalArgumentException("No processor named " + simpleClassName);
+    }
+
+    /**
+     * Prints the timings and allocations of each simulation processor.
+     */
+    public void printProcessorSummary() {
+        System.out.println(String.format("%-24s %10s %10s %10s %10s %12s",
+                                         "processor", "runs", "avg us", "p99 us", "max us", "avg bytes"));
+        for (GameProcessor processor : simulation.getProcessors()) {
+            final ProcessorTimings timings = processor.getTimings();
+            System.out.println(String.format("%-24s %10d %10.1f %10.1f %10.1f %12s",
+                                             processor.getClass().getSimpleName(),
+                                             timings.getRunCount(),
+                                             timings.getAverageNanoseconds() / 1000.0,
+                                             timings.getPercentileNanoseconds(99) / 1000.0,
+                                             timings.getMaxNanoseconds() / 1000.0,
+                                             processor.isAllocationTrackingEnabled() ? String.format("%.0f", timings.getAverageAllocatedBytes()) : "-"));
+        }
+    }
+
+    /**
+     * Saves a snapshot of the world, and prints its size and the time it took.
+     * Runs one more simulation step, as the snapshot is taken at the start of the next step, see Simulation.saveSnapshot.
+     * The snapshot has the state before that step.
+     */
+    public void saveSnapshot(File file) {
+        final long start = System.nanoTime();
+        simulation.saveSnapshot(file);
+        simulation.step();
+        System.out.println(String.format("Saved %d bytes to %s in %.1f ms", file.length(), file, (System.nanoTime() - start) / 1000000.0));
+    }
+
+    public void shutdown() {
+        try {
+            simulation.stopRecording();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not close the replay: " + e.getMessage(), e);
+        }
+        simulation.getWorld().shutdown();
+
+        try {
+            if (hashOutput != null) hashOutput.close();
+            if (expectedHashInput != null) expectedHashInput.close();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not close the state hash file: " + e.getMessage(), e);
+        } finally {
+            hashOutput = null;
+            expectedHashInput = null;
+        }
+    }
+
+    /**
+     * @return the replay being played, or null if the run is not a replay.
+     *         It should not be seeked, as seeking creates a new simulation.
+     */
+    public ReplayPlayer getReplayPlayer() {
+        return replayPlayer;
+    }
+
+    public Simulation getSimulation() {
+        return simulation;
+    }
+
+    public int getEnemyCount() {
+        return enemyCount;
+    }
+
+    public int getBubbleCloudCount() {
+        return bubbleCloudCount;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return number of steps run so far.
+     */
+    public long getStepCount() {
+        return stepCount;
+    }
+
+    /**
+     * @return average number of steps run per real second so far.
+     */
+    public double getStepsPerSecond() {
+        return elapsedNanoseconds == 0 ? 0 : stepCount * 1000000000.0 / elapsedNanoseconds;
+    }
+
+    private String formatReport(long steps, long nanoseconds) {
+        final double stepsPerSecond = nanoseconds == 0 ? 0 : steps * 1000000000.0 / nanoseconds;
+        final double simulatedSeconds = simulation.getTime().getSecondsSinceStart();
+        return String.format("t=%.1fs  %.0f steps/s (%.1fx real time)  " +
+                             "enemies %d  bubble entities %d  bubble particles %d  torpedoes %d  physical bodies %d (%d asleep)  deferred %d",
+                             simulatedSeconds,
+                             stepsPerSecond,
+                             stepsPerSecond * simulation.getStepMilliseconds() / 1000.0,
+                             simulation.getEnemyProcessor().getEntityCount(),
+                             simulation.getBubbleProcessor().getEntityCount(),
+                             simulation.getBubbleParticles().size(),
+                             simulation.getRocketProcessor().getEntityCount(),
+                             simulation.getPhysicsProcessor().getEntityCount(),
+                             simulation.getPhysicsProcessor().getSleepingCount(),
+                             simulation.getScheduler().getDeferredCount());
+    }
+}
@@ -28,6 +28,31 @@ public class Sea {
     public static final float SEA_DENSITY_AT_SEA_LEVEL = 1026;
     public static final float SEA_DENSITY_INCREASE_PER_M = 0.004f;
 
+    /**
+     * Default largest allowed error in the cached water current velocities, in m/s.
+     */
+    public static final float DEFAULT_CURRENT_CACHE_MAX_ERROR = 0.05f;
+
+    /**
+     * Default number of cache tiles kept for each depth layer of the water currents.
+     */
+    public static final int DEFAULT_CURRENT_CACHE_MAX_TILES_PER_LAYER = 4096;
+
+    /**
+     * Default spacing of the depth indexed lookup tables for the water properties, in meters.
+     */
+    public static final float DEFAULT_TABLE_RESOLUTION_M = 1f;
+
+    /**
+     * Depth down to which the lookup tables reach.  Deeper values are calculated directly.
+     */
+    public static final float TABLE_MAX_DEPTH_M = 11000f;
+
+    /**
+     * Density of the gas in an air bubble at the surface.
+     */
+    private static final float SURFACE_BUBBLE_GAS_DENSITY = calculateBubbleGasDensity(AIR_PRESSURE_AT_SEA_LEVEL, AIR_TEMPERATURE_AT_SEA_LEVEL_K);
+
     private final float seaLevel = 0;
 
     private static final Gradient seaTemperatureAtDepth_K = new Gradient(
@@ -45,8 +70,75 @@ public class Sea {
     private Vector3 sunDirection = new Vector3(0.2f, 1, 0.1f).nor();
     private Color sunLightColor = new Color(1, 0.9f, 0.8f, 0.8f);
 
+    private final float tableResolution_m;
+    private final float inverseTableResolution;
+    private final float tableDepth_m;
+    private final float[] densityTable;
+    private final float[] pressureTable;
+    private final float[] temperatureTable;
+    private final float[] bubbleGasDensityTable;
+
     public Sea() {
-        waterFlow = new LayeredFlow(new Random(),
+        this(DEFAULT_TABLE_RESOLUTION_M);
+    }
+
+    /**
+     * @param tableResolution_m spacing of the depth indexed lookup tables used for the water density, pressure,
+     *                          temperature, and bubble gas density, in meters.
+     *                          Zero to calculate the values directly instead.
+     */
+    public Sea(float tableResolution_m) {
+        this(new Random(), tableResolution_m);
+    }
+
+    /**
+     * @param random random number stream used to generate the sea currents.
+     * @param tableResolution_m see Sea(float).
+     */
+    public Sea(Random random, float tableResolution_m) {
+        this(random, tableResolution_m, DEFAULT_CURRENT_CACHE_MAX_ERROR, DEFAULT_CURRENT_CACHE_MAX_TILES_PER_LAYER);
+    }
+
+    /**
+     * @param random random number stream used to generate the sea currents.
+     * @param tableResolution_m see Sea(float).
+     * @param currentCacheMaxError largest allowed error in the cached water current velocities, in m/s.
+     *                             Zero to calculate the currents directly instead.
+     * @param currentCacheMaxTilesPerLayer number of cache tiles kept for each depth layer of the water currents.
+     */
+    public Sea(Random random, float tableResolution_m, float currentCacheMaxError, int currentCacheMaxTilesPerLayer) {
+        if (tableResolution_m < 0) throw new IllegalArgumentException("tableResolution_m should not be negative, but was " + tableResolution_m);
+        if (currentCacheMaxError < 0) throw new IllegalArgumentException("currentCacheMaxError should not be negative, but was " + currentCacheMaxError);
+        if (currentCacheMaxTilesPerLayer <= 0) throw new IllegalArgumentException("currentCacheMaxTilesPerLayer should be positive, but was " + currentCacheMaxTilesPerLayer);
+
+        // Precalculate water properties at regular depth intervals
+        this.tableResolution_m = tableResolution_m;
+        if (tableResolution_m > 0) {
+            final int tableSize = (int) Math.ceil(TABLE_MAX_DEPTH_M / tableResolution_m) + 1;
+            inverseTableResolution = 1f / tableResolution_m;
+            tableDepth_m = (tableSize - 1) * tableResolution_m;
+            densityTable = new float[tableSize];
+            pressureTable = new float[tableSize];
+            temperatureTable = new float[tableSize];
+            bubbleGasDensityTable = new float[tableSize];
+            for (int i = 0; i < tableSize; i++) {
+                final float depth = i * tableResolution_m;
+                densityTable[i] = calculateWaterDensity(depth);
+                pressureTable[i] = calculateWaterPressure(depth);
+                temperatureTable[i] = calculateWaterTemperature_K(depth);
+                bubbleGasDensityTable[i] = calculateBubbleGasDensity(pressureTable[i], temperatureTable[i]);
+            }
+        }
+        else {
+            inverseTableResolution = 0;
+            tableDepth_m = 0;
+            densityTable = null;
+            pressureTable = null;
+            temperatureTable = null;
+            bubbleGasDensityTable = null;
+        }
+
+        waterFlow = new LayeredFlow(random,
                                     300, 1.5,
                                     20, 0.3,
                                     2, 0.2,
@@ -54,6 +146,7 @@ public class Sea {
                                     300, 0.1,
                                     10, 0.01,
                                     2, 7, 20, 100, 300, 800, 2000, 6000);
+        if (currentCacheMaxError > 0) waterFlow.enableCache(currentCacheMaxError, currentCacheMaxTilesPerLayer);
     }
 
     public boolean isUnderWater(Vector3 pos) {
@@ -104,6 +197,51 @@ public class Sea {
         return currentOut;
     }
 
+    /**
+     * Get the sea or air currents at several positions at once.
+     * Can be called from several threads at once.
+     *
+     * @param posX x coordinates of the positions.
+     * @param posY y coordinates of the positions.
+     * @param posZ z coordinates of the positions.
+     * @param currentXOut array to store the x components of the current velocities in.
+     * @param currentYOut array to store the y components of the current velocities in.
+     * @param currentZOut array to store the z components of the current velocities in.
+     * @param start first index to calculate.
+     * @param end index after the last index to calculate.
+     */
+    public void getCurrents(float[] posX, float[] posY, float[] posZ,
+                            float[] currentXOut, float[] currentYOut, float[] currentZOut,
+                            int start, int end) {
+        int runStart = start;
+        while (runStart < end) {
+            // Find run of positions that are all in the water or all in the air
+            final boolean inWater = seaLevel - posY[runStart] >= -1;
+            int runEnd = runStart + 1;
+            while (runEnd < end && (seaLevel - posY[runEnd] >= -1) == inWater) {
+                runEnd++;
+            }
+
+            if (inWater) {
+                // Ocean currents
+                waterFlow.getFlowXZ(posX, posY, posZ, currentXOut, currentZOut, runStart, runEnd);
+                for (int i = runStart; i < runEnd; i++) {
+                    currentYOut[i] = 0;
+                }
+            }
+            else {
+                // No wind
+                for (int i = runStart; i < runEnd; i++) {
+                    currentXOut[i] = 0;
+                    currentYOut[i] = 0;
+                    currentZOut[i] = 0;
+                }
+            }
+
+            runStart = runEnd;
+        }
+    }
+
     /**
      * @return fluid density at the specified position, in kg/m^3.
      */
@@ -114,8 +252,11 @@ public class Sea {
         if (depth <= 0) {
             return AIR_DENSITY_AT_SEA_LEVEL;
         }
+        else if (depth < tableDepth_m) {
+            return lookup(densityTable, depth);
+        }
         else {
-            return SEA_DENSITY_AT_SEA_LEVEL + depth * SEA_DENSITY_INCREASE_PER_M;
+            return calculateWaterDensity(depth);
         }
     }
 
@@ -128,8 +269,11 @@ public class Sea {
         if (depth <= 0) {
             return AIR_PRESSURE_AT_SEA_LEVEL;
         }
+        else if (depth < tableDepth_m) {
+            return lookup(pressureTable, depth);
+        }
         else {
-            return AIR_PRESSURE_AT_SEA_LEVEL + getDensity(pos) * GRAVITY_AT_SEA_LEVEL * depth;
+            return calculateWaterPressure(depth);
         }
     }
 
@@ -142,11 +286,99 @@ public class Sea {
         if (depth <= 0) {
             return AIR_TEMPERATURE_AT_SEA_LEVEL_K;
         }
+        else if (depth < tableDepth_m) {
+            return lookup(temperatureTable, depth);
+        }
+        else {
+            return calculateWaterTemperature_K(depth);
+        }
+    }
+
+    /**
+     * @return density of the gas in an air bubble at the specified position, in kg/m^3.
+     */
+    public float getBubbleGasDensity(Vector3 pos) {
+        float depth = getDepth(pos);
+
+        if (depth <= 0) {
+            return SURFACE_BUBBLE_GAS_DENSITY;
+        }
+        else if (depth < tableDepth_m) {
+            return lookup(bubbleGasDensityTable, depth);
+        }
         else {
-            return (float) seaTemperatureAtDepth_K.getValue(depth);
+            return calculateBubbleGasDensity(calculateWaterPressure(depth), calculateWaterTemperature_K(depth));
         }
     }
 
+    /**
+     * @return spacing of the depth indexed lookup tables, or zero if they are not used.
+     */
+    public float getTableResolution_m() {
+        return tableResolution_m;
+    }
+
+    /**
+     * Compares the values interpolated from the lookup tables with directly calculated values,
+     * at several points between each pair of table entries.
+     *
+     * @return the largest relative error found in any of the tables, or zero if the tables are not used.
+     */
+    public float getMaxRelativeTableError() {
+        final int samplesPerEntry = 4;
+        final int tableSize = densityTable == null ? 0 : densityTable.length;
+
+        float maxError = 0;
+        for (int i = 0; i < tableSize - 1; i++) {
+            for (int s = 1; s < samplesPerEntry; s++) {
+                final float depth = (i + (float) s / samplesPerEntry) * tableResolution_m;
+                final float pressure = calculateWaterPressure(depth);
+                final float temperature = calculateWaterTemperature_K(depth);
+
+                maxError = Math.max(maxError, relativeError(lookup(densityTable, depth), calculateWaterDensity(depth)));
+                maxError = Math.max(maxError, relativeError(lookup(pressureTable, depth), pressure));
+                maxError = Math.max(maxError, relativeError(lookup(temperatureTable, depth), temperature));
+                maxError = Math.max(maxError, relativeError(lookup(bubbleGasDensityTable, depth), calculateBubbleGasDensity(pressure, temperature)));
+            }
+        }
+
+        return maxError;
+    }
+
+    /**
+     * @return density of the gas in an air bubble at the specified pressure and temperature, according to the ideal gas law.
+     */
+    public static float calculateBubbleGasDensity(float pressure, float temperature_k) {
+        final float newDensity = pressure / (temperature_k * DRY_AIR_SPECIFIC_GAS_CONSTANT);
+        return Math.max(AIR_DENSITY_AT_SEA_LEVEL + 0.1f, newDensity);
+    }
+
+    private float calculateWaterDensity(float depth) {
+        return SEA_DENSITY_AT_SEA_LEVEL + depth * SEA_DENSITY_INCREASE_PER_M;
+    }
+
+    private float calculateWaterPressure(float depth) {
+        return AIR_PRESSURE_AT_SEA_LEVEL + calculateWaterDensity(depth) * GRAVITY_AT_SEA_LEVEL * depth;
+    }
+
+    private float calculateWaterTemperature_K(float depth) {
+        return (float) seaTemperatureAtDepth_K.getValue(depth);
+    }
+
+    /**
+     * @return value linearly interpolated from the table at the specified depth.  The depth should be inside the table.
+     */
+    private float lookup(float[] table, float depth) {
+        final float index = depth * inverseTableResolution;
+        final int i = (int) index;
+        final float t = index - i;
+        return table[i] + (table[i + 1] - table[i]) * t;
+    }
+
+    private static float relativeError(float value, float expected) {
+        return Math.abs(value - expected) / Math.max(Math.abs(expected), Float.MIN_NORMAL);
+    }
+
     private double calculateAirDensity(double altitude_m) {
         final double airPressureAtAltitude = calculateAirPressure(altitude_m);
 
@@ -0,0 +1,422 @@
+package org.ludumdare29;
+
+import com.badlogic.gdx.InputMultiplexer;
+import com.badlogic.gdx.math.Vector3;
+import org.entityflow.entity.Entity;
+import org.entityflow.world.ConcurrentWorld;
+import org.flowutils.time.ManualTime;
+import org.ludumdare29.particles.BubbleParticles;
+import org.ludumdare29.physics.IntegratorType;
+import org.ludumdare29.processors.*;
+import org.ludumdare29.replay.ReplayRecorder;
+import org.ludumdare29.snapshot.SnapshotReader;
+import org.ludumdare29.snapshot.SnapshotWriter;
+import org.ludumdare29.utils.RandomStreams;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The simulated world with its simulation processors, advanced one fixed length step at a time.
+ * Does not need a graphics context, rendering processors can be added to the world separately.
+ */
+public final class Simulation {
+
+    /**
+     * Time a simulation step should take at most before low priority processors are postponed.
+     */
+    public static final double STEP_BUDGET_SECONDS = 0.004;
+
+    /**
+     * Maximum number of steps in a row that a low priority processor can be postponed.
+     */
+    public static final int MAX_DEFERRED_STEPS = 10;
+
+    private static final float PLAYER_SIZE_FACTOR = 0.3f;
+    private static final float PLAYER_SLEEKNESS = 0.7f;
+
+    private final int stepMilliseconds;
+    private final ManualTime time;
+    private final ConcurrentWorld world;
+    private final Sea sea;
+    private final EntityFactory entityFactory;
+    private final BubbleParticles bubbleParticles;
+    private final ProcessorScheduler scheduler;
+    private final RandomStreams randomStreams;
+    private final Random scenarioRandom;
+    private final boolean deterministic;
+
+    private final InterpolationProcessor interpolationProcessor;
+    private final RelevanceProcessor relevanceProcessor;
+    private final EnemyProcessor enemyProcessor;
+    private final BubbleProcessor bubbleProcessor;
+    private final PhysicsProcessor physicsProcessor;
+    private final RocketProcessor rocketProcessor;
+    private final StateHashProcessor stateHashProcessor;
+    private final SnapshotProcessor snapshotProcessor;
+    private final ReplayProcessor replayProcessor;
+    private final List<GameProcessor> simulationProcessors = new ArrayList<GameProcessor>();
+    private final List<GameProcessor> processors = new ArrayList<GameProcessor>();
+
+    private ReplayRecorder recorder = null;
+    private boolean stepping = false;
+
+    /**
+     * @param stepMilliseconds length of a simulation step.
+     * @param interpolated true if the positions of entities should be stored for interpolated rendering.
+     */
+    public Simulation(int stepMilliseconds, boolean interpolated) {
+        this(stepMilliseconds, interpolated, new RandomStreams(), false);
+    }
+
+    /**
+     * Creates a deterministic simulation, that runs exactly the same way each time it is created with the same seed
+     * and given the same input.  Low priority processors are never postponed, and a hash of the state is calculated
+     * after each step, see getStateHash.
+     *
+     * @param stepMilliseconds length of a simulation step.
+     * @param interpolated true if the positions of entities should be stored for interpolated rendering.
+     * @param seed master seed of the random number streams.
+     */
+    public Simulation(int stepMilliseconds, boolean interpolated, long seed) {
+        this(stepMilliseconds, interpolated, new RandomStreams(seed), true);
+    }
+
+    private Simulation(int stepMilliseconds, boolean interpolated, RandomStreams randomStreams, boolean deterministic) {
+        this.stepMilliseconds = stepMilliseconds;
+        this.randomStreams = randomStreams;
+        this.deterministic = deterministic;
+        scenarioRandom = randomStreams.get("Scenario");
+
+        // Create world
+        time = new ManualTime();
+        world = new ConcurrentWorld(time, stepMilliseconds);
+        sea = new Sea(randomStreams.get("Sea"), Sea.DEFAULT_TABLE_RESOLUTION_M);
+
+        entityFactory = new EntityFactory(world, sea, randomStreams.get("EntityFactory"));
+        bubbleParticles = new BubbleParticles(sea, BubbleParticles.DEFAULT_CAPACITY, randomStreams.get("BubbleParticles"));
+        entityFactory.setBubbleParticles(bubbleParticles);
+
+        scheduler = new ProcessorScheduler(STEP_BUDGET_SECONDS, MAX_DEFERRED_STEPS);
+
+        // Add processors
+        interpolationProcessor = interpolated ? world.addProcessor(new InterpolationProcessor()) : null;
+        if (interpolationProcessor != null) processors.add(interpolationProcessor);
+        snapshotProcessor = world.addProcessor(new SnapshotProcessor());
+        relevanceProcessor = addSimulationProcessor(new RelevanceProcessor(scheduler));
+        addSimulationProcessor(new TrackingProcessor());
+        enemyProcessor = addSimulationProcessor(new EnemyProcessor(entityFactory, randomStreams.get("EnemyProcessor"), randomStreams.get("EnemySpawning")));
+        final BubblingProcessor bubblingProcessor = addSimulationProcessor(new BubblingProcessor(entityFactory, randomStreams.get("BubblingProcessor")));
+        final TorpedoTubeProcessor torpedoTubeProcessor = addSimulationProcessor(new TorpedoTubeProcessor(entityFactory));
+        bubbleProcessor = addSimulationProcessor(new BubbleProcessor(sea));
+        addSimulationProcessor(new BubbleParticleProcessor(bubbleParticles));
+        physicsProcessor = addSimulationProcessor(new PhysicsProcessor(sea));
+        final SpatialIndexProcessor spatialIndex = addSimulationProcessor(new SpatialIndexProcessor());
+        addSimulationProcessor(new ShipProcessor());
+        addSimulationProcessor(new SubmarineProcessor(sea));
+        rocketProcessor = addSimulationProcessor(new RocketProcessor());
+        addSimulationProcessor(new ExplodingProcessor(entityFactory, spatialIndex, physicsProcessor));
+        final DamageProcessor damageProcessor = addSimulationProcessor(new DamageProcessor(entityFactory));
+        addSimulationProcessor(new RecyclingProcessor(entityFactory.getComponentPools()));
+        stateHashProcessor = addSimulationProcessor(new StateHashProcessor(bubbleParticles));
+        replayProcessor = world.addProcessor(new ReplayProcessor());
+
+        // Run processors that do not need every step less often, spread over different steps,
+        // and postpone low priority work when a step runs long.
+        // Tracking runs every step, as the cameras and the hatch follow the player with it.
+        scheduler.scheduleDeferrable(enemyProcessor);
+        scheduler.schedule(bubblingProcessor, 2, 0, true);
+        scheduler.schedule(torpedoTubeProcessor, 2, 1, false);
+        scheduler.schedule(damageProcessor, 4, 3, false);
+        scheduler.setDeferringEnabled(!deterministic);
+
+        // Only hash the state when runs are expected to be reproducible
+        stateHashProcessor.setEnabled(deterministic);
+
+        // The wall clock budget would make the decided enemies depend on the speed of the machine
+        enemyProcessor.getTimeSlicer().setTimeBudgetEnabled(!deterministic);
+    }
+
+    private <T extends GameProcessor> T addSimulationProcessor(T processor) {
+        simulationProcessors.add(processor);
+        processors.add(processor);
+        return world.addProcessor(processor);
+    }
+
+    /**
+     * Creates the submarine of the player at the origin, and makes the enemies react to it.
+     * The world should be initialized first.
+     *
+     * @param inputMultiplexer input handler to add the controls of the submarine to, or null to create the submarine
+     *                         without controls, cameras and gauges, e.g. for headless runs.
+     */
+    public Entity createPlayer(InputMultiplexer inputMultiplexer) {
+        final Entity player = entityFactory.createPlayerSubmarine(new Vector3(0, 0, 0), PLAYER_SIZE_FACTOR, PLAYER_SLEEKNESS, inputMultiplexer);
+        enemyProcessor.setPlayer(player);
+        return player;
+    }
+
+    /**
+     * Creates bubble clouds and enemy submarines at random locations around the origin.
+     * The world should be initialized first.
+     */
+    public void populate(Random random, int bubbleCloudCount, int enemyCount) {
+        final Vector3 tempPos = new Vector3();
+
+        // Create some bubbles
+        float spread = 2000;
+        for (int i = 0; i < bubbleCloudCount; i++) {
+
+            final float diam = random.nextFloat() * 0.1f + 0.001f;
+
+            tempPos.set((float) random.nextGaussian() * spread,
+                        (float) random.nextGaussian() * spread - 10,
+                        (float) random.nextGaussian() * spread);
+
+            entityFactory.createVaryingBubbleCloud(tempPos, 50 + random.nextInt(100), diam, random.nextFloat() * 1, 60f);
+        }
+
+        // Create some submarines
+        spread = 300;
+        for (int i = 0; i < enemyCount; i++) {
+
+            tempPos.set((float) random.nextGaussian() * spread,
+                        (float) random.nextGaussian() * spread ,
+                        (float) random.nextGaussian() * spread);
+
+            entityFactory.createEnemySubmarine(tempPos,
+                                               random.nextFloat() * random.nextFloat(),
+                                               random.nextFloat() * random.nextFloat());
+        }
+    }
+
+    /**
+     * Advances the time by one step and runs the simulation processors.
+     */
+    public void step() {
+        // Tick
+        time.advanceTime(stepMilliseconds);
+        time.nextStep();
+
+        // Update world
+        if (interpolationProcessor != null) interpolationProcessor.beginSimulationStep();
+        snapshotProcessor.beginSimulationStep();
+        scheduler.beginStep();
+        if (recorder != null) recorder.beginStep();
+        stepping = true;
+        try {
+            world.process();
+        } finally {
+            stepping = false;
+        }
+        scheduler.endStep();
+        if (recorder != null) recorder.endStep();
+    }
+
+    /**
+     * @param enabled true to run the simulation processors when the world is processed,
+     *                false when processing the world for rendering only.
+     */
+    public void setSimulationEnabled(boolean enabled) {
+        for (GameProcessor processor : simulationProcessors) {
+            processor.setEnabled(enabled);
+        }
+        stateHashProcessor.setEnabled(enabled && deterministic);
+    }
+
+    /**
+     * Creates bubble clouds and enemy submarines using the scenario random number stream of the simulation.
+     */
+    public void populate(int bubbleCloudCount, int enemyCount) {
+        populate(scenarioRandom, bubbleCloudCount, enemyCount);
+    }
+
+    /**
+     * Writes the simulated entities and bubble particles to a binary snapshot file at the start of the next step,
+     * once the entities created and deleted on the previous step have been added and removed, see SnapshotProcessor.
+     * The snapshot has the state before the next step.  Should be called between steps.
+     *
+     * @throws IllegalStateException from the next step, if the snapshot could not be written.
+     */
+    public void saveSnapshot(final File file) {
+        snapshotProcessor.runAtStepStart(new Runnable() {
+            @Override public void run() {
+                try {
+                    new SnapshotWriter().write(Simulation.this, file);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Could not save the snapshot to " + file + ": " + e.getMessage(), e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Restores the entities and bubble particles of a snapshot written by saveSnapshot.
+     * Should be called on a new, initialized simulation instead of populating it.
+     *
+     * @return number of restored entities.
+     */
+    public int loadSnapshot(File file) throws IOException {
+        return new SnapshotReader().read(file, this);
+    }
+
+    /**
+     * Starts recording the control events of the player and the AI to a replay file, with a keyframe of the complete
+     * state before the next step and before every keyframeIntervalSteps:th step.  Should be called between steps.
+     *
+     * Low priority processors are not postponed, and all entities are simulated at the full rate whatever the
+     * viewer, while recording, as replays are played back without postponing them and without a viewer.
+     */
+    public void startRecording(File file, int keyframeIntervalSteps) throws IOException {
+        if (recorder != null) throw new IllegalStateException("Already recording");
+        recorder = new ReplayRecorder(this, file, keyframeIntervalSteps);
+        scheduler.setDeferringEnabled(false);
+        relevanceProcessor.setTiersEnabled(false);
+    }
+
+    /**
+     * Stops recording and closes the replay file, if recording.
+     */
+    public void stopRecording() throws IOException {
+        if (recorder != null) {
+            try {
+                recorder.close();
+            } finally {
+                recorder = null;
+                scheduler.setDeferringEnabled(!deterministic);
+                relevanceProcessor.setTiersEnabled(true);
+            }
+        }
+    }
+
+    /**
+     * @return true if control events are being recorded.
+     */
+    public boolean isRecording() {
+        return recorder != null;
+    }
+
+    /**
+     * @return true if the simulation was created with a seed, and runs the same way each time.
+     */
+    public boolean isDeterministic() {
+        return deterministic;
+    }
+
+    /**
+     * @return hash of the simulation state after the last step, or 0 if the simulation is not deterministic.
+     */
+    public long getStateHash() {
+        return stateHashProcessor.getLastHash();
+    }
+
+    /**
+     * @return the random number streams used by the simulation, derived from its master seed.
+     */
+    public RandomStreams getRandomStreams() {
+        return randomStreams;
+    }
+
+    /**
+     * @return the processors added by the simulation, in processing order.
+     */
+    public List<GameProcessor> getProcessors() {
+        return processors;
+    }
+
+    public int getStepMilliseconds() {
+        return stepMilliseconds;
+    }
+
+    /**
+     * @return simulated time before the step being processed, or before the next step between steps, in milliseconds.
+     */
+    public long getStepStartMilliseconds() {
+        final long milliseconds = Math.round(time.getSecondsSinceStart() * 1000);
+        return stepping ? milliseconds - stepMilliseconds : milliseconds;
+    }
+
+    public IntegratorType getIntegratorType() {
+        return physicsProcessor.getIntegratorType();
+    }
+
+    /**
+     * Selects the method used to advance the bodies and bubble particles of this simulation.
+     * The semi-implicit integrator stays stable at longer steps, so fewer steps are needed for the same simulated time.
+     */
+    public void setIntegratorType(IntegratorType integratorType) {
+        physicsProcessor.setIntegratorType(integratorType);
+        bubbleParticles.setIntegratorType(integratorType);
+    }
+
+    public ManualTime getTime() {
+        return time;
+    }
+
+    public ConcurrentWorld getWorld() {
+        return world;
+    }
+
+    public Sea getSea() {
+        return sea;
+    }
+
+    public EntityFactory getEntityFactory() {
+        return entityFactory;
+    }
+
+    public BubbleParticles getBubbleParticles() {
+        return bubbleParticles;
+    }
+
+    /**
+     * @return processor that keeps track of the entities included in snapshots.
+     */
+    public SnapshotProcessor getSnapshotProcessor() {
+        return snapshotProcessor;
+    }
+
+    /**
+     * @return processor that gives the controlled entities the ids used in replays.
+     */
+    public ReplayProcessor getReplayProcessor() {
+        return replayProcessor;
+    }
+
+    public ProcessorScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * @return the interpolation processor, or null if the simulation is not interpolated.
+     */
+    public InterpolationProcessor getInterpolationProcessor() {
+        return interpolationProcessor;
+    }
+
+    /**
+     * @return processor that decides how often entities are updated based on their distance to the viewer.
+     */
+    public RelevanceProcessor getRelevanceProcessor() {
+        return relevanceProcessor;
+    }
+
+    public EnemyProcessor getEnemyProcessor() {
+        return enemyProcessor;
+    }
+
+    public BubbleProcessor getBubbleProcessor() {
+        return bubbleProcessor;
+    }
+
+    public PhysicsProcessor getPhysicsProcessor() {
+        return physicsProcessor;
+    }
+
+    public RocketProcessor getRocketProcessor() {
+        return rocketProcessor;
+    }
+}
@@ -0,0 +1,15 @@
+package org.ludumdare29.ai;
+
+/**
+ * Leaf of a BehaviourTree that issues commands for the agent.
+ *
+ * Actions are shared by all agents, and evaluated concurrently in parallel mode, so they should not have mutable state.
+ * They should only write commands of the current agent of the context.
+ */
+public interface Action {
+
+    /**
+     * @return SUCCESS if the action is done, RUNNING if it continues on later evaluations, or FAILURE if it could not be done.
+     */
+    BehaviourStatus run(BehaviourContext context);
+}
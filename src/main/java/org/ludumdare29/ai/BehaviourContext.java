@@ -0,0 +1,147 @@
+package org.ludumdare29.ai;
+
+import com.badlogic.gdx.math.Vector3;
+import org.ludumdare29.processors.EnemyAiView;
+import org.ludumdare29.processors.EnemyCommands;
+
+import java.util.Random;
+
+/**
+ * The agent a BehaviourTree is evaluated for, with the view it decides against and the commands it writes to.
+ *
+ * The values of the agent that most leaves need are read from the view once when the agent is selected.
+ * Holds scratch vectors, so an instance should only be used by one thread at a time.
+ */
+public final class BehaviourContext {
+
+    private EnemyAiView view;
+    private EnemyCommands commands;
+    private float secondsPerEvaluation;
+
+    private int agent = -1;
+    private Random random;
+    private float distanceToPlayer = Float.POSITIVE_INFINITY;
+
+    private final Vector3 position = new Vector3();
+    private final Vector3 velocity = new Vector3();
+    private final Vector3 forward = new Vector3();
+    private final Vector3 playerPosition = new Vector3();
+    private final Vector3 playerVelocity = new Vector3();
+    private final Vector3 toPlayer = new Vector3();
+
+    /**
+     * Scratch vector for the leaves.
+     */
+    public final Vector3 temp = new Vector3();
+
+    /**
+     * Sets up the context for a run over the agents of a view.
+     *
+     * @param secondsPerEvaluation expected time between two evaluations of the same agent.
+     */
+    public void prepare(EnemyAiView view, EnemyCommands commands, float secondsPerEvaluation) {
+        this.view = view;
+        this.commands = commands;
+        this.secondsPerEvaluation = secondsPerEvaluation;
+        agent = -1;
+    }
+
+    /**
+     * Selects the agent to evaluate next.
+     *
+     * @param random random number stream for the decisions of the agent.
+     */
+    public void setAgent(int agent, Random random) {
+        this.agent = agent;
+        this.random = random;
+
+        view.getPosition(agent, position);
+        view.getVelocity(agent, velocity);
+        view.getForward(agent, forward);
+        view.getPlayerPosition(playerPosition);
+        view.getPlayerVelocity(playerVelocity);
+        if (view.hasPlayer()) {
+            toPlayer.set(playerPosition).sub(position);
+            distanceToPlayer = toPlayer.len();
+        }
+        else {
+            toPlayer.set(0, 0, 0);
+            distanceToPlayer = Float.POSITIVE_INFINITY;
+        }
+    }
+
+    public EnemyAiView getView() {
+        return view;
+    }
+
+    public EnemyCommands getCommands() {
+        return commands;
+    }
+
+    /**
+     * @return index of the agent in the view and the commands.
+     */
+    public int getAgent() {
+        return agent;
+    }
+
+    public Random getRandom() {
+        return random;
+    }
+
+    /**
+     * @return expected time between two evaluations of the same agent, for actions that happen at some rate.
+     */
+    public float getSecondsPerEvaluation() {
+        return secondsPerEvaluation;
+    }
+
+    /**
+     * @return position of the agent.  Should not be modified.
+     */
+    public Vector3 getPosition() {
+        return position;
+    }
+
+    /**
+     * @return velocity of the agent.  Should not be modified.
+     */
+    public Vector3 getVelocity() {
+        return velocity;
+    }
+
+    /**
+     * @return unit length heading of the agent.  Should not be modified.
+     */
+    public Vector3 getForward() {
+        return forward;
+    }
+
+    /**
+     * @return position of the player, or zero if there is no player.  Should not be modified.
+     */
+    public Vector3 getPlayerPosition() {
+        return playerPosition;
+    }
+
+    /**
+     * @return velocity of the player, or zero if there is no player.  Should not be modified.
+     */
+    public Vector3 getPlayerVelocity() {
+        return playerVelocity;
+    }
+
+    /**
+     * @return vector from the agent to the player, or zero if there is no player.  Should not be modified.
+     */
+    public Vector3 getToPlayer() {
+        return toPlayer;
+    }
+
+    /**
+     * @return distance from the agent to the player, or positive infinity if there is no player.
+     */
+    public float getDistanceToPlayer() {
+        return distanceToPlayer;
+    }
+}
@@ -0,0 +1,22 @@
+package org.ludumdare29.ai;
+
+/**
+ * Result of evaluating a node of a BehaviourTree.
+ */
+public enum BehaviourStatus {
+
+    /**
+     * The condition holds, or the action is done.
+     */
+    SUCCESS,
+
+    /**
+     * The condition does not hold, or the action can not be done.
+     */
+    FAILURE,
+
+    /**
+     * The action is in progress, and should be evaluated again on a later run.
+     */
+    RUNNING
+}
@@ -0,0 +1,92 @@
+package org.ludumdare29.ai;
+
+/**
+ * Behaviour tree compiled into flat arrays, built with a BehaviourTreeBuilder.
+ *
+ * The nodes are stored in depth first order, so the first child of a node follows it directly,
+ * and each node stores the index after its subtree, where its next sibling starts.
+ * The tree has no state of its own, all agents are evaluated from the root on each evaluation,
+ * and the controls they set stay in effect between evaluations.
+ *
+ * Node types:
+ * a selector evaluates its children in order until one does not fail, and returns the status of that child,
+ * a sequence evaluates its children in order until one does not succeed, and returns the status of that child,
+ * an inverter swaps the success and failure of its child, a succeeder evaluates its child and succeeds,
+ * and conditions and actions are the leaves.
+ */
+public final class BehaviourTree {
+
+    static final byte SELECTOR = 0;
+    static final byte SEQUENCE = 1;
+    static final byte INVERTER = 2;
+    static final byte SUCCEEDER = 3;
+    static final byte CONDITION = 4;
+    static final byte ACTION = 5;
+
+    private final byte[] types;
+    private final int[] ends;
+    private final Condition[] conditions;
+    private final Action[] actions;
+
+    /**
+     * @param types type of each node.
+     * @param ends index after the subtree of each node.
+     * @param conditions condition of each condition node, null for the other nodes.
+     * @param actions action of each action node, null for the other nodes.
+     */
+    BehaviourTree(byte[] types, int[] ends, Condition[] conditions, Action[] actions) {
+        this.types = types;
+        this.ends = ends;
+        this.conditions = conditions;
+        this.actions = actions;
+    }
+
+    /**
+     * @return number of nodes in the tree.
+     */
+    public int getNodeCount() {
+        return types.length;
+    }
+
+    /**
+     * Evaluates the tree for the current agent of the context.
+     */
+    public BehaviourStatus evaluate(BehaviourContext context) {
+        return evaluate(0, context);
+    }
+
+    private BehaviourStatus evaluate(int node, BehaviourContext context) {
+        switch (types[node]) {
+            case SELECTOR:
+                for (int child = node + 1; child < ends[node]; child = ends[child]) {
+                    final BehaviourStatus status = evaluate(child, context);
+                    if (status != BehaviourStatus.FAILURE) return status;
+                }
+                return BehaviourStatus.FAILURE;
+
+            case SEQUENCE:
+                for (int child = node + 1; child < ends[node]; child = ends[child]) {
+                    final BehaviourStatus status = evaluate(child, context);
+                    if (status != BehaviourStatus.SUCCESS) return status;
+                }
+                return BehaviourStatus.SUCCESS;
+
+            case INVERTER: {
+                final BehaviourStatus status = evaluate(node + 1, context);
+                if (status == BehaviourStatus.SUCCESS) return BehaviourStatus.FAILURE;
+                else if (status == BehaviourStatus.FAILURE) return BehaviourStatus.SUCCESS;
+                else return status;
+            }
+
+            case SUCCEEDER:
+                evaluate(node + 1, context);
+                return BehaviourStatus.SUCCESS;
+
+            case CONDITION:
+                return conditions[node].test(context) ? BehaviourStatus.SUCCESS : BehaviourStatus.FAILURE;
+
+            default:
+                return actions[node].run(context);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package org.ludumdare29.ai;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import static org.ludumdare29.ai.BehaviourTree.*;
+
+/**
+ * Builds and compiles a BehaviourTree.
+ *
+ * Composite and decorator nodes are opened with selector, sequence, inverter or succeeder, and closed with end.
+ * The nodes added between them are their children.  For example:
+ *
+ *   new BehaviourTreeBuilder()
+ *       .selector()
+ *           .sequence().condition(enemyNear).action(flee).end()
+ *           .action(wander)
+ *       .end()
+ *       .build();
+ */
+public final class BehaviourTreeBuilder {
+
+    private final List<Byte> types = new ArrayList<>();
+    private final List<Integer> ends = new ArrayList<>();
+    private final List<Integer> childCounts = new ArrayList<>();
+    private final List<Condition> conditions = new ArrayList<>();
+    private final List<Action> actions = new ArrayList<>();
+    private final Deque<Integer> openNodes = new ArrayDeque<>();
+
+    /**
+     * Opens a selector, that evaluates its children in order until one does not fail.
+     */
+    public BehaviourTreeBuilder selector() {
+        return open(SELECTOR);
+    }
+
+    /**
+     * Opens a sequence, that evaluates its children in order until one does not succeed.
+     */
+    public BehaviourTreeBuilder sequence() {
+        return open(SEQUENCE);
+    }
+
+    /**
+     * Opens an inverter, that swaps the success and failure of its single child.
+     */
+    public BehaviourTreeBuilder inverter() {
+        return open(INVERTER);
+    }
+
+    /**
+     * Opens a succeeder, that evaluates its single child and succeeds regardless of its status.
+     */
+    public BehaviourTreeBuilder succeeder() {
+        return open(SUCCEEDER);
+    }
+
+    /**
+     * Adds a condition leaf.
+     */
+    public BehaviourTreeBuilder condition(Condition condition) {
+        if (condition == null) throw new IllegalArgumentException("condition should not be null");
+        add(CONDITION, condition, null);
+        return this;
+    }
+
+    /**
+     * Adds an action leaf.
+     */
+    public BehaviourTreeBuilder action(Action action) {
+        if (action == null) throw new IllegalArgumentException("action should not be null");
+        add(ACTION, null, action);
+        return this;
+    }
+
+    /**
+     * Closes the latest opened node.
+     */
+    public BehaviourTreeBuilder end() {
+        if (openNodes.isEmpty()) throw new IllegalStateException("No open node to end");
+
+        final int node = openNodes.pop();
+        final int childCount = childCounts.get(node);
+        final byte type = types.get(node);
+        if ((type == INVERTER || type == SUCCEEDER) && childCount != 1) {
+            throw new IllegalStateException("A decorator node should have exactly one child, but node " + node + " has " + childCount);
+        }
+        if (childCount == 0) throw new IllegalStateException("A composite node should have children, but node " + node + " has none");
+
+        ends.set(node, types.size());
+        return this;
+    }
+
+    /**
+     * @return the compiled tree.
+     */
+    public BehaviourTree build() {
+        if (types.isEmpty()) throw new IllegalStateException("The tree has no nodes");
+        if (!openNodes.isEmpty()) throw new IllegalStateException(openNodes.size() + " nodes were not ended");
+
+        final int nodeCount = types.size();
+        final byte[] typeArray = new byte[nodeCount];
+        final int[] endArray = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            typeArray[i] = types.get(i);
+            endArray[i] = ends.get(i);
+        }
+        return new BehaviourTree(typeArray,
+                                 endArray,
+                                 conditions.toArray(new Condition[nodeCount]),
+                                 actions.toArray(new Action[nodeCount]));
+    }
+
+    private BehaviourTreeBuilder open(byte type) {
+        openNodes.push(add(type, null, null));
+        return this;
+    }
+
+    private int add(byte type, Condition condition, Action action) {
+        if (openNodes.isEmpty() && !types.isEmpty()) throw new IllegalStateException("The tree can only have one root node");
+
+        if (!openNodes.isEmpty()) {
+            final int parent = openNodes.peek();
+            childCounts.set(parent, childCounts.get(parent) + 1);
+        }
+
+        final int node = types.size();
+        types.add(type);
+        ends.add(node + 1);
+        childCounts.add(0);
+        conditions.add(condition);
+        actions.add(action);
+        return node;
+    }
+}
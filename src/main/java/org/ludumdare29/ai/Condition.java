@@ -0,0 +1,14 @@
+package org.ludumdare29.ai;
+
+/**
+ * Leaf of a BehaviourTree that checks something about the agent or its surroundings.
+ *
+ * Conditions are shared by all agents, and evaluated concurrently in parallel mode, so they should not have mutable state.
+ */
+public interface Condition {
+
+    /**
+     * @return true if the condition holds for the current agent of the context.
+     */
+    boolean test(BehaviourContext context);
+}
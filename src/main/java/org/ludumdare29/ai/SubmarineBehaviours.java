@@ -0,0 +1,264 @@
+package org.ludumdare29.ai;
+
+import com.badlogic.gdx.math.Vector3;
+import org.ludumdare29.parts.AlarmStatus;
+import org.ludumdare29.processors.EnemyAiView;
+import org.ludumdare29.processors.EnemyCommands;
+
+import static org.flowutils.MathUtils.clamp;
+
+/**
+ * Conditions, actions and the behaviour tree of enemy submarines.
+ *
+ * Each evaluation, a submarine fires if the player is in front of it within range, and then either:
+ * surfaces to recharge its batteries when their alarm goes off, staying at the surface until they are full,
+ * and turning the charger off again with any other action,
+ * evades the player by turning away and diving when the player closes in,
+ * approaches the player when it detects it,
+ * dives to its patrol depth when it is shallower,
+ * or patrols at that depth, turning now and then.
+ */
+public final class SubmarineBehaviours {
+
+    public static final float DETECTION_RANGE_M = 800;
+    public static final float FIRE_RANGE_M = 400;
+    public static final float EVADE_RANGE_M = 150;
+
+    /**
+     * Depth enemies attack from, deep enough to use the electric motor, and shallow enough to hit ships.
+     */
+    public static final float ATTACK_DEPTH_M = 15;
+    public static final float PATROL_DEPTH_M = 60;
+    public static final float EVADE_DIVE_M = 50;
+
+    /**
+     * Cosine of the largest angle between the heading and the direction to the player that a torpedo is fired at.
+     */
+    private static final float FIRE_ANGLE_COS = 0.985f;
+
+    private static final float DEPTH_TOLERANCE_M = 10;
+    private static final float MAX_PITCH = 0.5f;
+    private static final float PITCH_DEPTH_RANGE_M = 40;
+    private static final float FIN_GAIN = 4;
+    private static final float RUDDER_GAIN = 3;
+    private static final float TURN_PERCENT_PER_SECOND = 2;
+
+    public static final Condition NEEDS_RECHARGE = new Condition() {
+        @Override public boolean test(BehaviourContext context) {
+            final EnemyAiView view = context.getView();
+            final AlarmStatus alarm = view.getBatteryAlarm(context.getAgent());
+
+            // Keep charging until full once started
+            return alarm.getCriticality() >= AlarmStatus.WARNING.getCriticality() ||
+                   view.isCharging(context.getAgent()) && alarm != AlarmStatus.GREAT;
+        }
+    };
+
+    public static final Condition SURFACED = new Condition() {
+        @Override public boolean test(BehaviourContext context) {
+            return context.getView().isSurfaced(context.getAgent());
+        }
+    };
+
+    public static final Condition PLAYER_DETECTED = new Condition() {
+        @Override public boolean test(BehaviourContext context) {
+            return context.getDistanceToPlayer() < DETECTION_RANGE_M;
+        }
+    };
+
+    public static final Condition PLAYER_CLOSING_IN = new Condition() {
+        @Override public boolean test(BehaviourContext context) {
+            if (context.getDistanceToPlayer() >= EVADE_RANGE_M) return false;
+
+            // The player moves towards us faster than we move towards it
+            final Vector3 relativeVelocity = context.temp.set(context.getPlayerVelocity()).sub(context.getVelocity());
+            return relativeVelocity.dot(context.getToPlayer()) < 0;
+        }
+    };
+
+    public static final Condition IN_FIRING_POSITION = new Condition() {
+        @Override public boolean test(BehaviourContext context) {
+            final float distance = context.getDistanceToPlayer();
+            return distance < FIRE_RANGE_M &&
+                   context.getForward().dot(context.getToPlayer()) > FIRE_ANGLE_COS * distance;
+        }
+    };
+
+    public static final Condition READY_TO_FIRE = new Condition() {
+        @Override public boolean test(BehaviourContext context) {
+            return context.getView().isReadyToFire(context.getAgent());
+        }
+    };
+
+    public static final Condition TOO_SHALLOW = new Condition() {
+        @Override public boolean test(BehaviourContext context) {
+            return context.getView().getDepth(context.getAgent()) < PATROL_DEPTH_M - DEPTH_TOLERANCE_M;
+        }
+    };
+
+    public static final Action FIRE = new Action() {
+        @Override public BehaviourStatus run(BehaviourContext context) {
+            context.getCommands().requestLaunch(context.getAgent());
+            return BehaviourStatus.SUCCESS;
+        }
+    };
+
+    public static final Action CHARGE = new Action() {
+        @Override public BehaviourStatus run(BehaviourContext context) {
+            final EnemyCommands commands = context.getCommands();
+            final int agent = context.getAgent();
+            setThrottle(context, 0);
+            commands.setTarget(agent, EnemyCommands.RUDDER, 0);
+            commands.setTarget(agent, EnemyCommands.DIVE_FINS, 0);
+            commands.setTarget(agent, EnemyCommands.BATTERY_CHARGER, 1);
+            emptyBallast(context);
+            return BehaviourStatus.RUNNING;
+        }
+    };
+
+    public static final Action SURFACE = new Action() {
+        @Override public BehaviourStatus run(BehaviourContext context) {
+            setThrottle(context, 1);
+            context.getCommands().setTarget(context.getAgent(), EnemyCommands.RUDDER, 0);
+            stopCharging(context);
+            holdDepth(context, 0);
+            emptyBallast(context);
+            return BehaviourStatus.RUNNING;
+        }
+    };
+
+    public static final Action EVADE = new Action() {
+        @Override public BehaviourStatus run(BehaviourContext context) {
+            final Vector3 toPlayer = context.getToPlayer();
+            steerTowards(context, -toPlayer.x, -toPlayer.z);
+            setThrottle(context, 1);
+            stopCharging(context);
+            final float depth = context.getView().getDepth(context.getAgent());
+            holdDepth(context, Math.max(depth, context.getView().getPlayerDepth()) + EVADE_DIVE_M);
+            return BehaviourStatus.RUNNING;
+        }
+    };
+
+    public static final Action APPROACH = new Action() {
+        @Override public BehaviourStatus run(BehaviourContext context) {
+            final Vector3 toPlayer = context.getToPlayer();
+            steerTowards(context, toPlayer.x, toPlayer.z);
+            setThrottle(context, context.getDistanceToPlayer() < FIRE_RANGE_M ? 0.5f : 1f);
+            stopCharging(context);
+            holdDepth(context, Math.max(context.getView().getPlayerDepth(), ATTACK_DEPTH_M));
+            return BehaviourStatus.RUNNING;
+        }
+    };
+
+    public static final Action DIVE = new Action() {
+        @Override public BehaviourStatus run(BehaviourContext context) {
+            context.getCommands().setTarget(context.getAgent(), EnemyCommands.RUDDER, 0);
+            setThrottle(context, 0.5f);
+            stopCharging(context);
+            holdDepth(context, PATROL_DEPTH_M);
+            return BehaviourStatus.RUNNING;
+        }
+    };
+
+    public static final Action PATROL = new Action() {
+        @Override public BehaviourStatus run(BehaviourContext context) {
+            if (onProbability(context, TURN_PERCENT_PER_SECOND)) {
+                context.getCommands().setTarget(context.getAgent(), EnemyCommands.RUDDER, context.getRandom().nextFloat() * 2 - 1);
+            }
+            setThrottle(context, 0.3f);
+            stopCharging(context);
+            holdDepth(context, PATROL_DEPTH_M);
+            return BehaviourStatus.RUNNING;
+        }
+    };
+
+    private SubmarineBehaviours() {
+    }
+
+    /**
+     * @return a new behaviour tree for enemy submarines.
+     */
+    public static BehaviourTree createTree() {
+        return new BehaviourTreeBuilder()
+                .sequence()
+                    .succeeder()
+                        .sequence().condition(READY_TO_FIRE).condition(IN_FIRING_POSITION).action(FIRE).end()
+                    .end()
+                    .selector()
+                        .sequence()
+                            .condition(NEEDS_RECHARGE)
+                            .selector()
+                                .sequence().condition(SURFACED).action(CHARGE).end()
+                                .action(SURFACE)
+                            .end()
+                        .end()
+                        .sequence().condition(PLAYER_CLOSING_IN).action(EVADE).end()
+                        .sequence().condition(PLAYER_DETECTED).action(APPROACH).end()
+                        .sequence().condition(TOO_SHALLOW).action(DIVE).end()
+                        .action(PATROL)
+                    .end()
+                .end()
+                .build();
+    }
+
+    /**
+     * Sets the electric motor, used when dived, and the diesel engine, used at the surface.
+     */
+    private static void setThrottle(BehaviourContext context, float throttle) {
+        context.getCommands().setTarget(context.getAgent(), EnemyCommands.ELECTRIC_MOTOR, throttle);
+        context.getCommands().setTarget(context.getAgent(), EnemyCommands.DIESEL_ENGINE, throttle);
+    }
+
+    /**
+     * Turns the battery charger off, it is only turned on while charging at the surface.
+     */
+    private static void stopCharging(BehaviourContext context) {
+        context.getCommands().setTarget(context.getAgent(), EnemyCommands.BATTERY_CHARGER, 0);
+    }
+
+    /**
+     * Turns the rudder towards a horizontal direction, all the way if it is behind.
+     */
+    private static void steerTowards(BehaviourContext context, float directionX, float directionZ) {
+        final Vector3 forward = context.getForward();
+        final float forwardLength = (float) Math.sqrt(forward.x * forward.x + forward.z * forward.z);
+        final float directionLength = (float) Math.sqrt(directionX * directionX + directionZ * directionZ);
+        if (forwardLength == 0 || directionLength == 0) return;
+
+        // Positive rudder turns from the x axis towards the negative z axis, see ShipProcessor
+        final float scale = 1f / (forwardLength * directionLength);
+        final float cross = (forward.z * directionX - forward.x * directionZ) * scale;
+        final float dot = (forward.x * directionX + forward.z * directionZ) * scale;
+        final float rudder = dot < 0 ? (cross >= 0 ? 1 : -1) : clamp(cross * RUDDER_GAIN, -1, 1);
+        context.getCommands().setTarget(context.getAgent(), EnemyCommands.RUDDER, rudder);
+    }
+
+    /**
+     * Pitches with the dive fins and pumps ballast to move towards the target depth.
+     */
+    private static void holdDepth(BehaviourContext context, float targetDepth_m) {
+        final EnemyAiView view = context.getView();
+        final EnemyCommands commands = context.getCommands();
+        final int agent = context.getAgent();
+
+        // Negative when too shallow, pitch down then, positive fins pitch up
+        final float depthError = view.getDepth(agent) - targetDepth_m;
+        final float targetPitch = clamp(depthError / PITCH_DEPTH_RANGE_M, -MAX_PITCH, MAX_PITCH);
+        commands.setTarget(agent, EnemyCommands.DIVE_FINS, clamp((targetPitch - context.getForward().y) * FIN_GAIN, -1, 1));
+
+        // Filling the ballast tank makes the submarine heavier, the pump fills it at negative targets
+        final float ballast = view.getBallastLevel(agent);
+        if (depthError < -DEPTH_TOLERANCE_M && ballast < 1) commands.setTarget(agent, EnemyCommands.BALLAST_PUMP, -1);
+        else if (depthError > DEPTH_TOLERANCE_M && ballast > 0) commands.setTarget(agent, EnemyCommands.BALLAST_PUMP, 1);
+        else commands.setTarget(agent, EnemyCommands.BALLAST_PUMP, 0);
+    }
+
+    private static void emptyBallast(BehaviourContext context) {
+        final int agent = context.getAgent();
+        context.getCommands().setTarget(agent, EnemyCommands.BALLAST_PUMP, context.getView().getBallastLevel(agent) > 0 ? 1 : 0);
+    }
+
+    private static boolean onProbability(BehaviourContext context, float percentPerSecond) {
+        return context.getRandom().nextFloat() < percentPerSecond * context.getSecondsPerEvaluation() / 100f;
+    }
+}
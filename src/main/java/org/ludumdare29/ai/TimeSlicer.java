@@ -0,0 +1,137 @@
+package org.ludumdare29.ai;
+
+/**
+ * Decides how many agents are evaluated on each run, and which, so that the evaluation stays within a time budget.
+ *
+ * The agents are evaluated round-robin, each run continues from the agent after the last one evaluated on the previous run.
+ * At most maxAgentsPerRun agents are evaluated on a run, and when the time budget is enabled, only as many as fit in
+ * the budget, but at least one.  When agents are evaluated one at a time, the time is checked after each agent.
+ * When they are evaluated in a batch on several threads, the batch size is estimated from the average time per agent
+ * on earlier runs.
+ *
+ * The time budget makes the evaluated agents depend on the speed of the machine, so it should be disabled for
+ * deterministic simulations, which then evaluate maxAgentsPerRun agents on each run.
+ */
+public final class TimeSlicer {
+
+    public static final long DEFAULT_BUDGET_MICROSECONDS = 500;
+    public static final int DEFAULT_MAX_AGENTS_PER_RUN = 50;
+
+    /**
+     * Weight of the latest run in the average time per agent.
+     */
+    private static final double AVERAGE_WEIGHT = 0.2;
+
+    private long budgetNanoseconds = DEFAULT_BUDGET_MICROSECONDS * 1000;
+    private int maxAgentsPerRun = DEFAULT_MAX_AGENTS_PER_RUN;
+    private boolean timeBudgetEnabled = true;
+
+    private int cursor = 0;
+    private int agentCount = 0;
+    private int lastEvaluatedCount = 0;
+    private double averageAgentNanoseconds = 0;
+    private long runStartNanoseconds = 0;
+
+    public long getBudgetMicroseconds() {
+        return budgetNanoseconds / 1000;
+    }
+
+    /**
+     * @param budgetMicroseconds time that the agents evaluated on one run may take.
+     */
+    public void setBudgetMicroseconds(long budgetMicroseconds) {
+        if (budgetMicroseconds <= 0) throw new IllegalArgumentException("budgetMicroseconds should be positive, but was " + budgetMicroseconds);
+        budgetNanoseconds = budgetMicroseconds * 1000;
+    }
+
+    public int getMaxAgentsPerRun() {
+        return maxAgentsPerRun;
+    }
+
+    /**
+     * @param maxAgentsPerRun maximum number of agents evaluated on one run.
+     */
+    public void setMaxAgentsPerRun(int maxAgentsPerRun) {
+        if (maxAgentsPerRun <= 0) throw new IllegalArgumentException("maxAgentsPerRun should be positive, but was " + maxAgentsPerRun);
+        this.maxAgentsPerRun = maxAgentsPerRun;
+    }
+
+    public boolean isTimeBudgetEnabled() {
+        return timeBudgetEnabled;
+    }
+
+    /**
+     * @param timeBudgetEnabled false to evaluate maxAgentsPerRun agents on each run regardless of the time they take.
+     */
+    public void setTimeBudgetEnabled(boolean timeBudgetEnabled) {
+        this.timeBudgetEnabled = timeBudgetEnabled;
+    }
+
+    /**
+     * Starts a run.
+     *
+     * @param agentCount number of agents.
+     * @param threadCount number of threads the agents are evaluated on in a batch, or 0 if they are evaluated one at a time,
+     *                    checking hasTimeLeft after each.
+     * @return maximum number of agents to evaluate on this run.
+     */
+    public int begin(int agentCount, int threadCount) {
+        this.agentCount = agentCount;
+        if (agentCount > 0) cursor %= agentCount;
+        else cursor = 0;
+        runStartNanoseconds = System.nanoTime();
+
+        int count = Math.min(agentCount, maxAgentsPerRun);
+        if (timeBudgetEnabled && threadCount > 0) {
+            // Measure with one agent per thread until the time per agent is known
+            final long estimate = averageAgentNanoseconds > 0 ? (long) (budgetNanoseconds * threadCount / averageAgentNanoseconds) : threadCount;
+            count = (int) Math.min(count, Math.max(1, estimate));
+        }
+        return count;
+    }
+
+    /**
+     * @param index index of an agent within this run.
+     * @return index of the agent among all agents.
+     */
+    public int getAgent(int index) {
+        return (cursor + index) % agentCount;
+    }
+
+    /**
+     * @return true if more agents can be evaluated on this run when they are evaluated one at a time.
+     */
+    public boolean hasTimeLeft() {
+        return !timeBudgetEnabled || System.nanoTime() - runStartNanoseconds < budgetNanoseconds;
+    }
+
+    /**
+     * Ends a run, and continues from the next agent on the following run.
+     *
+     * @param evaluatedCount number of agents evaluated on this run.
+     * @param threadCount the thread count passed to begin.
+     */
+    public void end(int evaluatedCount, int threadCount) {
+        if (agentCount > 0) cursor = (cursor + evaluatedCount) % agentCount;
+        lastEvaluatedCount = evaluatedCount;
+
+        if (evaluatedCount > 0) {
+            final double agentNanoseconds = (double) (System.nanoTime() - runStartNanoseconds) * Math.max(1, threadCount) / evaluatedCount;
+            averageAgentNanoseconds = averageAgentNanoseconds > 0 ? averageAgentNanoseconds + (agentNanoseconds - averageAgentNanoseconds) * AVERAGE_WEIGHT : agentNanoseconds;
+        }
+    }
+
+    /**
+     * @return number of agents evaluated on the latest run.
+     */
+    public int getLastEvaluatedCount() {
+        return lastEvaluatedCount;
+    }
+
+    /**
+     * @return average time it took to evaluate an agent, or 0 if no agents have been evaluated yet.
+     */
+    public double getAverageAgentNanoseconds() {
+        return averageAgentNanoseconds;
+    }
+}
@@ -1,15 +1,19 @@
 package org.ludumdare29.components;
 
+import com.badlogic.gdx.utils.Pool;
 import org.entityflow.component.BaseComponent;
 
 /**
  *
  */
-public final class BubbleComponent extends BaseComponent {
+public final class BubbleComponent extends BaseComponent implements Pool.Poolable {
 
     private static final int DEFAULT_LIFE_TIME = 60;
 
-    public final double wobbleStart = Math.random();
+    /**
+     * Phase of the sideways wobble, set to a random value by the creator of the bubble.
+     */
+    public double wobbleStart = 0;
 
     public float lifeTime_seconds;
     public float age_seconds = 0;
@@ -28,4 +32,11 @@ public final class BubbleComponent extends BaseComponent {
         return lifeTime_seconds - age_seconds;
     }
 
+    @Override public void reset() {
+        wobbleStart = 0;
+        lifeTime_seconds = DEFAULT_LIFE_TIME;
+        age_seconds = 0;
+        floating = false;
+    }
+
 }
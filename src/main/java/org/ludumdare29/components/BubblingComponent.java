@@ -19,7 +19,15 @@ public final class BubblingComponent extends BaseComponent {
     public boolean clusterBubbles = true;
     public Vector3 bubblingPosOffset = new Vector3();
 
-    public float secondsUntilNextBubbles = (float) Math.random() * bubblingInterval_seconds;
+    /**
+     * Starts at a random point of the interval when the BubblingProcessor first gets the entity.
+     */
+    public float secondsUntilNextBubbles = bubblingInterval_seconds;
+
+    /**
+     * True once the BubblingProcessor has picked the start point, so that it is kept when a saved entity is restored.
+     */
+    public boolean started = false;
 
     public BubblingComponent() {
         this(10, 20, 0.05f, 1);
@@ -48,6 +56,6 @@ public final class BubblingComponent extends BaseComponent {
         this.varyingInterval = varyingInterval;
         this.clusterBubbles = clusterBubbles;
 
-        secondsUntilNextBubbles = (float) Math.random() * bubblingInterval_seconds;
+        secondsUntilNextBubbles = bubblingInterval_seconds;
     }
 }
@@ -2,16 +2,29 @@ package org.ludumdare29.components;
 
 import com.badlogic.gdx.math.Quaternion;
 import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Pool;
 import org.entityflow.component.BaseComponent;
 
 /**
  * Represents position and direction of the entity
  */
-public class LocationComponent extends BaseComponent {
+public class LocationComponent extends BaseComponent implements Pool.Poolable {
 
     public final Vector3 position = new Vector3();
     public final Quaternion direction = new Quaternion();
 
+    /**
+     * Position and direction at the end of the previous simulation step.
+     */
+    public final Vector3 previousPosition = new Vector3();
+    public final Quaternion previousDirection = new Quaternion();
+
+    /**
+     * Position and direction to render with, interpolated between the previous and the current simulation step.
+     */
+    public final Vector3 renderPosition = new Vector3();
+    public final Quaternion renderDirection = new Quaternion();
+
     public LocationComponent() {
     }
 
@@ -33,6 +46,20 @@ public class LocationComponent extends BaseComponent {
         this.direction.set(direction);
     }
 
+    /**
+     * Sets the previous and rendered position and direction to the current ones, so that no movement is interpolated.
+     */
+    public void resetInterpolation() {
+        previousPosition.set(position);
+        previousDirection.set(direction);
+        renderPosition.set(position);
+        renderDirection.set(direction);
+    }
 
+    @Override public void reset() {
+        position.set(0, 0, 0);
+        direction.idt();
+        resetInterpolation();
+    }
 
 }
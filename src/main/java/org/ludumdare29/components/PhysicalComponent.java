@@ -2,16 +2,23 @@ package org.ludumdare29.components;
 
 import com.badlogic.gdx.math.Quaternion;
 import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Pool;
 import org.entityflow.component.BaseComponent;
 import org.flowutils.MathUtils;
 
 /**
  * Component with physics simulation applied.
+ *
+ * The physics simulation puts bodies that stay at rest to sleep, and skips them until they are woken up.
+ * Changing the mass, density or size of a body, or giving it thrust, wakes it up.
+ * Bodies that another processor holds in place, such as bubbles floating at the surface, are marked as held,
+ * and are put to sleep even if they still move slightly.
  */
-public final class PhysicalComponent extends BaseComponent {
+public final class PhysicalComponent extends BaseComponent implements Pool.Poolable {
 
-    private static final float SPHERE_VOLUME_FACTOR = (2f / 3f) * MathUtils.TauFloat;
-    private static final float CIRCLE_AREA_FACTOR = MathUtils.TauFloat * 0.5f;
+    public static final float SPHERE_VOLUME_FACTOR = (2f / 3f) * MathUtils.TauFloat;
+    public static final float CIRCLE_AREA_FACTOR = MathUtils.TauFloat * 0.5f;
+    public static final float DEFAULT_DRAG_COEFFICIENT = 0.47f;
 
     public final Vector3 velocity = new Vector3();
     public final Vector3 thrust = new Vector3();
@@ -22,6 +29,7 @@ public final class PhysicalComponent extends BaseComponent {
     private float mass_kg = 1f;
     private float density_kg_per_m3 = 1000f;
     private float radius_m = 1f;
+    private boolean wakeUpRequested = false;
 
     /**
      * Drag constant for this object.
@@ -29,7 +37,12 @@ public final class PhysicalComponent extends BaseComponent {
      * A sphere has a dragCoefficient of 0.47 and a cube has 1.05 (when moving head on) or 0.8 (when angled).
      * See https://en.wikipedia.org/wiki/Drag_coefficient
      */
-    public float dragCoefficient = 0.47f;
+    public float dragCoefficient = DEFAULT_DRAG_COEFFICIENT;
+
+    /**
+     * True if a processor holds the body in place, so the physics simulation treats it as at rest.
+     */
+    public boolean held = false;
 
     public PhysicalComponent() {
         this(1, 1000);
@@ -44,9 +57,7 @@ public final class PhysicalComponent extends BaseComponent {
     public PhysicalComponent(float mass_kg,
                              float density_kg_per_m3,
                              float dragCoefficient) {
-        this.mass_kg = mass_kg;
-        setDensity_kg_per_m3(density_kg_per_m3);
-        this.dragCoefficient = dragCoefficient;
+        set(mass_kg, density_kg_per_m3, dragCoefficient);
     }
 
     /**
@@ -54,12 +65,7 @@ public final class PhysicalComponent extends BaseComponent {
      */
     public static PhysicalComponent fromRadiusAndDensity(float radius_m, float density_kg_per_m3) {
         final PhysicalComponent physicalComponent = new PhysicalComponent();
-
-        float volume_m3 = SPHERE_VOLUME_FACTOR * radius_m * radius_m * radius_m;
-        physicalComponent.mass_kg = volume_m3 * density_kg_per_m3;
-        physicalComponent.radius_m = radius_m;
-        physicalComponent.density_kg_per_m3 = density_kg_per_m3;
-
+        physicalComponent.setRadiusAndDensity(radius_m, density_kg_per_m3);
         return physicalComponent;
     }
 
@@ -112,6 +118,67 @@ public final class PhysicalComponent extends BaseComponent {
         return physicalComponent;
     }
 
+    /**
+     * Sets the mass, density and drag coefficient of the object, and recalculates its radius.
+     */
+    public void set(float mass_kg, float density_kg_per_m3, float dragCoefficient) {
+        this.mass_kg = mass_kg;
+        setDensity_kg_per_m3(density_kg_per_m3);
+        this.dragCoefficient = dragCoefficient;
+    }
+
+    /**
+     * Sets the mass, density, radius and drag coefficient as they are, without recalculating any of them from the others.
+     * Used when restoring saved state, so that the values are not changed by rounding.
+     */
+    public void setAll(float mass_kg, float density_kg_per_m3, float radius_m, float dragCoefficient) {
+        this.mass_kg = mass_kg;
+        this.density_kg_per_m3 = density_kg_per_m3;
+        this.radius_m = radius_m;
+        this.dragCoefficient = dragCoefficient;
+        wakeUp();
+    }
+
+    /**
+     * Sets the radius and density of the object, and recalculates its mass.
+     */
+    public void setRadiusAndDensity(float radius_m, float density_kg_per_m3) {
+        float volume_m3 = SPHERE_VOLUME_FACTOR * radius_m * radius_m * radius_m;
+        this.mass_kg = volume_m3 * density_kg_per_m3;
+        this.radius_m = radius_m;
+        this.density_kg_per_m3 = density_kg_per_m3;
+        wakeUp();
+    }
+
+    /**
+     * Returns the object to the state of a newly created default component, so that it can be reused.
+     */
+    @Override public void reset() {
+        velocity.set(0, 0, 0);
+        thrust.set(0, 0, 0);
+        rotation.idt();
+        torque.idt();
+        set(1, 1000, DEFAULT_DRAG_COEFFICIENT);
+        held = false;
+        wakeUpRequested = false;
+    }
+
+    /**
+     * Wakes the body up if the physics simulation has put it to sleep, e.g. when something other than thrust moves it.
+     */
+    public void wakeUp() {
+        wakeUpRequested = true;
+    }
+
+    /**
+     * @return true if the body has been changed or woken up since the last call.  Used by the physics simulation.
+     */
+    public boolean consumeWakeUp() {
+        final boolean requested = wakeUpRequested;
+        wakeUpRequested = false;
+        return requested;
+    }
+
     /**
      * @return mass of the object.
      */
@@ -126,6 +193,7 @@ public final class PhysicalComponent extends BaseComponent {
     public void setMass_kg(float mass_kg) {
         this.mass_kg = mass_kg;
         density_kg_per_m3 = mass_kg / getVolume_m3();
+        wakeUp();
     }
 
     /**
@@ -140,6 +208,9 @@ public final class PhysicalComponent extends BaseComponent {
      * Keeps the mass, recalculates the radius.
      */
     public void setDensity_kg_per_m3(float density_kg_per_m3) {
+        // Called every step for some bodies, so only wake them up on an actual change
+        if (density_kg_per_m3 != this.density_kg_per_m3) wakeUp();
+
         this.density_kg_per_m3 = density_kg_per_m3;
 
         float volume_m3 = mass_kg / density_kg_per_m3;
@@ -155,6 +226,7 @@ public final class PhysicalComponent extends BaseComponent {
 
         // Recalculate mass
         mass_kg = getVolume_m3() * density_kg_per_m3;
+        wakeUp();
     }
 
     /**
@@ -174,6 +246,7 @@ public final class PhysicalComponent extends BaseComponent {
 
         // Recalculate density
         density_kg_per_m3 = mass_kg / getVolume_m3();
+        wakeUp();
     }
 
     /**
@@ -185,6 +258,7 @@ public final class PhysicalComponent extends BaseComponent {
 
         // Recalculate mass
         mass_kg = getVolume_m3() * density_kg_per_m3;
+        wakeUp();
     }
 
     /**
@@ -202,6 +276,7 @@ public final class PhysicalComponent extends BaseComponent {
     public void setVolume_m3(float volume_m3) {
         radius_m = calculateRadiusFromVolume(volume_m3);
         density_kg_per_m3 = mass_kg / volume_m3;
+        wakeUp();
     }
 
     /**
@@ -212,7 +287,10 @@ public final class PhysicalComponent extends BaseComponent {
     }
 
 
-    private static float calculateRadiusFromVolume(float volume_m3) {
+    /**
+     * @return radius of a sphere with the specified volume.
+     */
+    public static float calculateRadiusFromVolume(float volume_m3) {
         return (float) Math.pow(volume_m3 / SPHERE_VOLUME_FACTOR, 1.0 / 3.0);
     }
 }
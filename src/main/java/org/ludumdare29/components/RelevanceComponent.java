@@ -0,0 +1,37 @@
+package org.ludumdare29.components;
+
+import org.entityflow.component.BaseComponent;
+
+/**
+ * Something that is simulated at a reduced rate when it is far from the camera.
+ * Updated by the RelevanceProcessor at the start of each step.
+ */
+public final class RelevanceComponent extends BaseComponent {
+
+    /**
+     * Phase of an entity that has not yet been given one by the RelevanceProcessor.
+     */
+    public static final int NO_PHASE = -1;
+
+    public RelevanceTier tier = RelevanceTier.NEAR;
+
+    /**
+     * Offset of the steps the entity is updated on, so that entities in the same tier are not all updated on the same step.
+     */
+    public int phase = NO_PHASE;
+
+    /**
+     * True if the entity is updated on the current step.
+     */
+    public boolean due = true;
+
+    /**
+     * Time since the entity was last updated, valid when it is due.
+     */
+    public float deltaSeconds = 0;
+
+    /**
+     * Simulation time of the last update, or NaN if the entity has not been updated yet.
+     */
+    public double lastUpdateSeconds = Double.NaN;
+}
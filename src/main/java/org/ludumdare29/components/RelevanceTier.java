@@ -0,0 +1,42 @@
+package org.ludumdare29.components;
+
+/**
+ * How closely an entity is simulated, depending on its distance to the camera.
+ * Entities further away are updated less often, with the time since their last update.
+ */
+public enum RelevanceTier {
+    NEAR(0, 1, true),
+    MEDIUM(400, 4, true),
+    FAR(1200, 16, false);
+
+    private final float minDistance_m;
+    private final int updateIntervalSteps;
+    private final boolean bubbling;
+
+    RelevanceTier(float minDistance_m, int updateIntervalSteps, boolean bubbling) {
+        this.minDistance_m = minDistance_m;
+        this.updateIntervalSteps = updateIntervalSteps;
+        this.bubbling = bubbling;
+    }
+
+    /**
+     * @return distance to the camera where the tier starts.
+     */
+    public float getMinDistance_m() {
+        return minDistance_m;
+    }
+
+    /**
+     * @return number of simulation steps between updates of entities in this tier.
+     */
+    public int getUpdateIntervalSteps() {
+        return updateIntervalSteps;
+    }
+
+    /**
+     * @return true if entities in this tier emit bubbles.
+     */
+    public boolean isBubbling() {
+        return bubbling;
+    }
+}
@@ -45,6 +45,20 @@ public abstract class SystemComponent extends BaseComponent {
         return tank;
     }
 
+    /**
+     * @return the controllables of this component, in the order they were created.  Should not be modified.
+     */
+    public final List<Controllable> getControllables() {
+        return controllables;
+    }
+
+    /**
+     * @return the tanks of this component, in the order they were created.  Should not be modified.
+     */
+    public final List<Tank> getTanks() {
+        return tanks;
+    }
+
     public final InputMultiplexer getInputHandler() {
         return inputHandler;
     }
@@ -3,6 +3,7 @@ package org.ludumdare29.components;
 import com.badlogic.gdx.Input;
 import com.badlogic.gdx.InputAdapter;
 import org.entityflow.component.BaseComponent;
+import org.ludumdare29.parts.ControlListener;
 
 /**
  * Can launch torpedoes.
@@ -16,6 +17,11 @@ public class TorpedoTubeComponent extends BaseComponent {
     public int launchKeyCode = Input.Keys.SPACE;
     public boolean launchRequested = false;
 
+    /**
+     * Notified of launch requests, or null for none.
+     */
+    public ControlListener controlListener = null;
+
     public final InputAdapter inputHandler = new InputAdapter() {
         @Override public boolean keyDown(int keycode) {
             if (keycode == launchKeyCode) {
@@ -36,6 +42,8 @@ public class TorpedoTubeComponent extends BaseComponent {
     }
 
     public void requestLaunch() {
+        if (controlListener != null) controlListener.onControl(ControlListener.LAUNCH, 0);
+
         if (isReadyToFire()) {
             launchRequested = true;
         }
@@ -9,12 +9,13 @@ import com.badlogic.gdx.graphics.g3d.ModelInstance;
 import com.badlogic.gdx.graphics.g3d.attributes.BlendingAttribute;
 import com.badlogic.gdx.graphics.g3d.attributes.ColorAttribute;
 import com.badlogic.gdx.graphics.g3d.utils.ModelBuilder;
+import com.badlogic.gdx.utils.Pool;
 import org.ludumdare29.shader.SpecialAttribute;
 
 /**
  * Spherical appearance
  */
-public class BubbleAppearance extends ModelAppearance {
+public class BubbleAppearance extends ModelAppearance implements Pool.Poolable {
 
     private static final Color DEFAULT_COLOR = new Color(0.5f, 0.5f, 0.5f, 0.5f);
     private final Color color;
@@ -42,4 +43,13 @@ public class BubbleAppearance extends ModelAppearance {
 
         setScale(0);
     }
+
+    /**
+     * Hides the bubble until it is next updated, and keeps the created model instance for reuse.
+     */
+    @Override public void reset() {
+        setScale(0);
+        setOffset(0, 0, 0);
+        setVisible(true);
+    }
 }
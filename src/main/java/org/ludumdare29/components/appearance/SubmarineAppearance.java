@@ -58,7 +58,7 @@ public class SubmarineAppearance extends AppearanceComponent {
     private Color color;
     private final Color accentColor;
 
-    private static final Random random = new Random();
+    private final long shapeSeed;
 
     public SubmarineAppearance() {
         this(40, 10);
@@ -69,13 +69,37 @@ public class SubmarineAppearance extends AppearanceComponent {
     }
 
     public SubmarineAppearance(float length, float width, Color color, Color accentColor) {
+        this(length, width, color, accentColor, 0);
+    }
+
+    /**
+     * @param shapeSeed seed for the random variations in the shape, submarines with the same seed get the same shape.
+     */
+    public SubmarineAppearance(float length, float width, Color color, Color accentColor, long shapeSeed) {
+        this.shapeSeed = shapeSeed;
         this.length = length;
         this.width = width;
         this.color = color;
         this.accentColor = accentColor;
     }
 
+    public Color getColor() {
+        return color;
+    }
+
+    public Color getAccentColor() {
+        return accentColor;
+    }
+
+    /**
+     * @return seed for the random variations in the shape.
+     */
+    public long getShapeSeed() {
+        return shapeSeed;
+    }
+
     @Override protected ModelInstance createAppearance() {
+        final Random random = new Random(shapeSeed);
         ModelBuilder modelBuilder = new ModelBuilder();
 
         modelBuilder.begin();
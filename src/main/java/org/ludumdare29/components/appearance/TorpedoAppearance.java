@@ -12,8 +12,6 @@ import com.badlogic.gdx.graphics.g3d.utils.ModelBuilder;
 import com.badlogic.gdx.math.Matrix4;
 import com.badlogic.gdx.math.Vector3;
 
-import java.util.Random;
-
 import static org.flowutils.MathUtils.TauFloat;
 import static org.flowutils.MathUtils.mix;
 
@@ -45,8 +43,6 @@ public class TorpedoAppearance extends AppearanceComponent {
     private Color color;
     private final Color accentColor;
 
-    private static final Random random = new Random();
-
     public TorpedoAppearance() {
         this(5, 1);
     }
@@ -62,6 +58,14 @@ public class TorpedoAppearance extends AppearanceComponent {
         this.accentColor = accentColor;
     }
 
+    public Color getColor() {
+        return color;
+    }
+
+    public Color getAccentColor() {
+        return accentColor;
+    }
+
     @Override protected ModelInstance createAppearance() {
         ModelBuilder modelBuilder = new ModelBuilder();
 
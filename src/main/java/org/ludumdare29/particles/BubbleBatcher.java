@@ -0,0 +1,94 @@
+package org.ludumdare29.particles;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.g3d.Material;
+import com.badlogic.gdx.graphics.g3d.Renderable;
+import com.badlogic.gdx.graphics.g3d.RenderableProvider;
+import com.badlogic.gdx.graphics.g3d.attributes.BlendingAttribute;
+import com.badlogic.gdx.graphics.g3d.attributes.ColorAttribute;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.Pool;
+import org.ludumdare29.shader.SpecialAttribute;
+
+/**
+ * Renders all visible bubble particles as one mesh of camera facing quads, with the air bubble shading.
+ * The mesh is rebuilt each frame by calling update before rendering.
+ */
+public final class BubbleBatcher implements RenderableProvider, Disposable {
+
+    private static final Color BUBBLE_COLOR = new Color(0.6f, 0.6f, 0.6f, 0.5f);
+
+    private final BubbleParticles bubbles;
+    private final BubbleVertexBuilder vertexBuilder;
+    private final Mesh mesh;
+    private final Material material;
+
+    /**
+     * Needs a graphics context.
+     *
+     * @param bubbles bubbles to render.
+     */
+    public BubbleBatcher(BubbleParticles bubbles) {
+        this.bubbles = bubbles;
+
+        vertexBuilder = new BubbleVertexBuilder(Math.min(bubbles.getCapacity(), BubbleVertexBuilder.MAX_QUADS));
+
+        final int maxQuads = vertexBuilder.getMaxQuads();
+        mesh = new Mesh(false,
+                        maxQuads * BubbleVertexBuilder.VERTICES_PER_QUAD,
+                        maxQuads * BubbleVertexBuilder.INDICES_PER_QUAD,
+                        new VertexAttribute(VertexAttributes.Usage.Position, 3, ShaderProgram.POSITION_ATTRIBUTE),
+                        new VertexAttribute(VertexAttributes.Usage.Normal, 3, ShaderProgram.NORMAL_ATTRIBUTE),
+                        new VertexAttribute(VertexAttributes.Usage.TextureCoordinates, 2, ShaderProgram.TEXCOORD_ATTRIBUTE + "0"));
+        mesh.setIndices(vertexBuilder.getIndices());
+
+        material = new Material(SpecialAttribute.airBubble(),
+                                new BlendingAttribute(true, 0.5f),
+                                ColorAttribute.createDiffuse(BUBBLE_COLOR));
+    }
+
+    /**
+     * @return number of bubbles in the mesh after the last update.
+     */
+    public int getVisibleBubbleCount() {
+        return vertexBuilder.getQuadCount();
+    }
+
+    /**
+     * Rebuilds the mesh from the current bubble positions and sizes, facing the specified camera.
+     *
+     * @param interpolationAlpha position between the previous and the current simulation step to place the bubbles at, 0..1.
+     */
+    public void update(Camera camera, float interpolationAlpha) {
+        vertexBuilder.build(bubbles, camera, interpolationAlpha);
+        mesh.setVertices(vertexBuilder.getVertices(), 0, vertexBuilder.getVertexFloatCount());
+    }
+
+    @Override public void getRenderables(Array<Renderable> renderables, Pool<Renderable> pool) {
+        if (vertexBuilder.getQuadCount() <= 0) return;
+
+        final Renderable renderable = pool.obtain();
+        renderable.mesh = mesh;
+        renderable.meshPartOffset = 0;
+        renderable.meshPartSize = vertexBuilder.getIndexCount();
+        renderable.primitiveType = GL20.GL_TRIANGLES;
+        renderable.material = material;
+        renderable.worldTransform.idt();
+        renderable.environment = null;
+        renderable.bones = null;
+        renderable.shader = null;
+        renderable.userData = null;
+        renderables.add(renderable);
+    }
+
+    @Override public void dispose() {
+        mesh.dispose();
+    }
+}
@@ -0,0 +1,347 @@
+package org.ludumdare29.particles;
+
+import com.badlogic.gdx.math.Vector3;
+import org.flowutils.time.Time;
+import org.ludumdare29.Sea;
+import org.ludumdare29.components.PhysicalComponent;
+import org.ludumdare29.physics.IntegratorType;
+import org.ludumdare29.physics.PhysicsIntegrator;
+import org.ludumdare29.physics.PhysicsState;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.ludumdare29.processors.BubbleProcessor.*;
+
+/**
+ * Bubbles stored in preallocated primitive arrays instead of as entities.
+ *
+ * Applies the same simulation as the BubbleProcessor and PhysicsProcessor do for bubble entities:
+ * the gas density follows the surrounding pressure and temperature, rising bubbles wobble sideways,
+ * bubbles reaching the surface float there, and bubbles fade in and out over their lifetime.
+ *
+ * Bubbles occupy the indexes 0 until size, removing a bubble moves the last one into its place.
+ * When the capacity is full, new bubbles are dropped.
+ */
+public final class BubbleParticles {
+
+    public static final int DEFAULT_CAPACITY = 16 * 1024;
+
+    /**
+     * Bytes used by one bubble in saved state, see writeBubble.
+     */
+    public static final int SAVED_BUBBLE_BYTES = 10 * 4 + 8 + 1;
+
+    private final Sea sea;
+    private final int capacity;
+
+    private final PhysicsState physics;
+    private final PhysicsIntegrator integrator = new PhysicsIntegrator();
+
+    private final float[] prevPosX;
+    private final float[] prevPosY;
+    private final float[] prevPosZ;
+    private final float[] age_seconds;
+    private final float[] lifeTime_seconds;
+    private final double[] wobbleStart;
+    private final boolean[] floating;
+    private final float[] visibleScale;
+
+    private final Random random;
+    private final Vector3 position = new Vector3();
+
+    private long droppedCount = 0;
+
+    public BubbleParticles(Sea sea) {
+        this(sea, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param sea the environment the bubbles are in.
+     * @param capacity maximum number of bubbles.
+     */
+    public BubbleParticles(Sea sea, int capacity) {
+        this(sea, capacity, new Random());
+    }
+
+    /**
+     * @param sea the environment the bubbles are in.
+     * @param capacity maximum number of bubbles.
+     * @param random random number stream used for the bubble wobble.
+     */
+    public BubbleParticles(Sea sea, int capacity, Random random) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity should be positive, but was " + capacity);
+
+        this.sea = sea;
+        this.capacity = capacity;
+        this.random = random;
+
+        physics = new PhysicsState(capacity);
+        prevPosX = new float[capacity];
+        prevPosY = new float[capacity];
+        prevPosZ = new float[capacity];
+        age_seconds = new float[capacity];
+        lifeTime_seconds = new float[capacity];
+        wobbleStart = new double[capacity];
+        floating = new boolean[capacity];
+        visibleScale = new float[capacity];
+    }
+
+    /**
+     * @return number of live bubbles.
+     */
+    public int size() {
+        return physics.size();
+    }
+
+    /**
+     * @return maximum number of bubbles.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return number of bubbles that were not created because the capacity was full.
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    public IntegratorType getIntegratorType() {
+        return integrator.getType();
+    }
+
+    /**
+     * @param integratorType method used to advance the bubbles.
+     */
+    public void setIntegratorType(IntegratorType integratorType) {
+        integrator.setType(integratorType);
+    }
+
+    /**
+     * @return positions, velocities and physical properties of the bubbles.  Should not be modified by the caller.
+     */
+    public PhysicsState getPhysicsState() {
+        return physics;
+    }
+
+    /**
+     * @return visible diameter of the bubble at the specified index, taking fading in and out into account.
+     */
+    public float getVisibleScale(int index) {
+        return visibleScale[index];
+    }
+
+    /**
+     * Gets the position to render the bubble at, interpolated between the previous and the current update.
+     *
+     * @param index index of the bubble.
+     * @param interpolationAlpha 0 for the position before the last update, 1 for the current position.
+     * @param positionOut vector to store the position in.
+     */
+    public void getRenderPosition(int index, float interpolationAlpha, Vector3 positionOut) {
+        positionOut.x = prevPosX[index] + (physics.posX[index] - prevPosX[index]) * interpolationAlpha;
+        positionOut.y = prevPosY[index] + (physics.posY[index] - prevPosY[index]) * interpolationAlpha;
+        positionOut.z = prevPosZ[index] + (physics.posZ[index] - prevPosZ[index]) * interpolationAlpha;
+    }
+
+    /**
+     * Creates a new bubble, if it is under the surface, its size and lifetime are positive, and there is space for it.
+     *
+     * @return true if the bubble was created.
+     */
+    public boolean spawn(Vector3 pos, float diam_m, float lifeTime_seconds) {
+        if (diam_m <= 0 || lifeTime_seconds <= 0 || sea.getDepth(pos) <= BUBBLE_POP_DEPTH) return false;
+
+        if (physics.size() >= capacity) {
+            droppedCount++;
+            return false;
+        }
+
+        final int i = physics.add();
+
+        final float radius = diam_m * 0.5f;
+        final float density = Sea.AIR_DENSITY_AT_SEA_LEVEL;
+        physics.posX[i] = pos.x;
+        physics.posY[i] = pos.y;
+        physics.posZ[i] = pos.z;
+        prevPosX[i] = pos.x;
+        prevPosY[i] = pos.y;
+        prevPosZ[i] = pos.z;
+        physics.velX[i] = 0;
+        physics.velY[i] = 0;
+        physics.velZ[i] = 0;
+        physics.thrustX[i] = 0;
+        physics.thrustY[i] = 0;
+        physics.thrustZ[i] = 0;
+        physics.dragCoefficient[i] = PhysicalComponent.DEFAULT_DRAG_COEFFICIENT;
+        setRadius(i, radius);
+        physics.mass_kg[i] = physics.volume_m3[i] * density;
+
+        age_seconds[i] = 0;
+        this.lifeTime_seconds[i] = lifeTime_seconds;
+        wobbleStart[i] = random.nextDouble();
+        floating[i] = false;
+        visibleScale[i] = 0;
+
+        return true;
+    }
+
+    /**
+     * Writes the state of the bubble at the specified index, using SAVED_BUBBLE_BYTES bytes.
+     * Values derived from the state, such as the volume and drift, are not written.
+     */
+    public void writeBubble(int index, ByteBuffer buffer) {
+        buffer.putFloat(physics.posX[index]);
+        buffer.putFloat(physics.posY[index]);
+        buffer.putFloat(physics.posZ[index]);
+        buffer.putFloat(physics.velX[index]);
+        buffer.putFloat(physics.velY[index]);
+        buffer.putFloat(physics.velZ[index]);
+        buffer.putFloat(physics.mass_kg[index]);
+        buffer.putFloat(physics.radius_m[index]);
+        buffer.putFloat(age_seconds[index]);
+        buffer.putFloat(lifeTime_seconds[index]);
+        buffer.putDouble(wobbleStart[index]);
+        buffer.put(floating[index] ? (byte) 1 : (byte) 0);
+    }
+
+    /**
+     * Adds a bubble written with writeBubble.
+     *
+     * @return true if the bubble was added, false if the capacity was full.
+     */
+    public boolean readBubble(ByteBuffer buffer) {
+        if (physics.size() >= capacity) {
+            buffer.position(buffer.position() + SAVED_BUBBLE_BYTES);
+            droppedCount++;
+            return false;
+        }
+
+        final int i = physics.add();
+        physics.posX[i] = buffer.getFloat();
+        physics.posY[i] = buffer.getFloat();
+        physics.posZ[i] = buffer.getFloat();
+        physics.velX[i] = buffer.getFloat();
+        physics.velY[i] = buffer.getFloat();
+        physics.velZ[i] = buffer.getFloat();
+        physics.mass_kg[i] = buffer.getFloat();
+        setRadius(i, buffer.getFloat());
+        age_seconds[i] = buffer.getFloat();
+        lifeTime_seconds[i] = buffer.getFloat();
+        wobbleStart[i] = buffer.getDouble();
+        floating[i] = buffer.get() != 0;
+
+        prevPosX[i] = physics.posX[i];
+        prevPosY[i] = physics.posY[i];
+        prevPosZ[i] = physics.posZ[i];
+        physics.thrustX[i] = 0;
+        physics.thrustY[i] = 0;
+        physics.thrustZ[i] = 0;
+        physics.dragCoefficient[i] = PhysicalComponent.DEFAULT_DRAG_COEFFICIENT;
+        visibleScale[i] = calculateVisibleScale(age_seconds[i], lifeTime_seconds[i], physics.radius_m[i]);
+
+        return true;
+    }
+
+    /**
+     * Removes all bubbles.
+     */
+    public void clear() {
+        while (physics.size() > 0) {
+            remove(physics.size() - 1);
+        }
+    }
+
+    /**
+     * Ages, wobbles, and moves the bubbles, and removes the ones that have dissipated or left the water.
+     *
+     * @param deltaTime seconds since the previous update, which can be longer than a step if updates are skipped.
+     */
+    public void update(Time time, float deltaTime) {
+        final double secondsSinceStart = time.getSecondsSinceStart();
+
+        // Remember positions before the update for interpolated rendering
+        System.arraycopy(physics.posX, 0, prevPosX, 0, physics.size());
+        System.arraycopy(physics.posY, 0, prevPosY, 0, physics.size());
+        System.arraycopy(physics.posZ, 0, prevPosZ, 0, physics.size());
+
+        int i = 0;
+        while (i < physics.size()) {
+            position.set(physics.posX[i], physics.posY[i], physics.posZ[i]);
+
+            // Dissipate bubbles over time
+            age_seconds[i] += deltaTime;
+            final float secondsLeft = lifeTime_seconds[i] - age_seconds[i];
+
+            // Calculate density inside the bubble, keeping the mass
+            final float density = sea.getBubbleGasDensity(position);
+            setRadius(i, PhysicalComponent.calculateRadiusFromVolume(physics.mass_kg[i] / density));
+
+            // Update appearance size
+            final float radius = physics.radius_m[i];
+            visibleScale[i] = calculateVisibleScale(age_seconds[i], lifeTime_seconds[i], radius);
+
+            // Wobble rising bubbles
+            physics.thrustX[i] = 0;
+            physics.thrustY[i] = 0;
+            physics.thrustZ[i] = 0;
+            if (!floating[i]) {
+                physics.thrustX[i] = calculateDriftX(secondsSinceStart, wobbleStart[i], radius);
+                physics.thrustZ[i] = calculateDriftZ(secondsSinceStart, wobbleStart[i], radius);
+            }
+
+            // Float bubbles that reach the surface
+            final float depth = sea.getDepth(position);
+            if (!floating[i] && depth <= 1) {
+                floating[i] = true;
+
+                // Make large ones smaller, keeping the density
+                if (radius > MAX_SURFACE_BUBBLE_RADIUS) {
+                    setRadius(i, MAX_SURFACE_BUBBLE_RADIUS);
+                    physics.mass_kg[i] = physics.volume_m3[i] * density;
+                }
+            }
+
+            // Keep floating bubbles at sea level
+            if (floating[i]) {
+                physics.velY[i] *= 0.1f;
+            }
+
+            // Remove bubbles that are above the surface or have dissipated
+            if (depth < -1 || secondsLeft <= 0f) {
+                remove(i);
+            }
+            else {
+                i++;
+            }
+        }
+
+        // Move the remaining bubbles
+        final int count = physics.size();
+        integrator.sampleCurrents(physics, sea, 0, count);
+        integrator.integrate(physics, sea, deltaTime, 0, count);
+    }
+
+    private void setRadius(int i, float radius) {
+        physics.radius_m[i] = radius;
+        physics.volume_m3[i] = PhysicalComponent.SPHERE_VOLUME_FACTOR * radius * radius * radius;
+        physics.crossArea_m2[i] = PhysicalComponent.CIRCLE_AREA_FACTOR * radius * radius;
+    }
+
+    private void remove(int i) {
+        final int last = physics.size() - 1;
+        if (i != last) {
+            prevPosX[i] = prevPosX[last];
+            prevPosY[i] = prevPosY[last];
+            prevPosZ[i] = prevPosZ[last];
+            age_seconds[i] = age_seconds[last];
+            lifeTime_seconds[i] = lifeTime_seconds[last];
+            wobbleStart[i] = wobbleStart[last];
+            floating[i] = floating[last];
+            visibleScale[i] = visibleScale[last];
+        }
+        physics.remove(i);
+    }
+}
@@ -0,0 +1,167 @@
+package org.ludumdare29.particles;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.math.Vector3;
+
+/**
+ * Builds camera facing quads for visible bubble particles into a vertex array, ready to be uploaded as one mesh.
+ *
+ * Each vertex has a position, a normal, and texture coordinates.
+ * The normals bend outwards towards the edges of the quad, so that lighting makes the quad look like a sphere.
+ * The indices are fixed, two triangles per quad, so only the vertices change between frames.
+ *
+ * Does not need a graphics context, so it can be used and inspected headless.
+ */
+public final class BubbleVertexBuilder {
+
+    /**
+     * Floats per vertex: position, normal, texture coordinates.
+     */
+    public static final int VERTEX_SIZE = 3 + 3 + 2;
+    public static final int VERTICES_PER_QUAD = 4;
+    public static final int INDICES_PER_QUAD = 6;
+
+    /**
+     * Largest number of quads whose vertices can be addressed with short indices.
+     */
+    public static final int MAX_QUADS = 65536 / VERTICES_PER_QUAD;
+
+    /**
+     * Bubbles with a smaller visible diameter than this are skipped.
+     */
+    private static final float MIN_VISIBLE_SCALE = 0.001f;
+
+    private static final float[] CORNER_X = {-1,  1, 1, -1};
+    private static final float[] CORNER_Y = {-1, -1, 1,  1};
+    private static final float[] CORNER_U = { 0,  1, 1,  0};
+    private static final float[] CORNER_V = { 1,  1, 0,  0};
+
+    private final int maxQuads;
+    private final float[] vertices;
+    private final short[] indices;
+    private int quadCount = 0;
+
+    private final Vector3 right = new Vector3();
+    private final Vector3 up = new Vector3();
+    private final Vector3 towardsCamera = new Vector3();
+    private final Vector3 center = new Vector3();
+
+    /**
+     * @param maxQuads maximum number of bubbles to build quads for.  At most MAX_QUADS.
+     */
+    public BubbleVertexBuilder(int maxQuads) {
+        if (maxQuads <= 0 || maxQuads > MAX_QUADS) throw new IllegalArgumentException("maxQuads should be in the range 1.." + MAX_QUADS + ", but was " + maxQuads);
+
+        this.maxQuads = maxQuads;
+        vertices = new float[maxQuads * VERTICES_PER_QUAD * VERTEX_SIZE];
+        indices = new short[maxQuads * INDICES_PER_QUAD];
+
+        for (int quad = 0; quad < maxQuads; quad++) {
+            final int firstVertex = quad * VERTICES_PER_QUAD;
+            final int i = quad * INDICES_PER_QUAD;
+            indices[i    ] = (short) (firstVertex);
+            indices[i + 1] = (short) (firstVertex + 1);
+            indices[i + 2] = (short) (firstVertex + 2);
+            indices[i + 3] = (short) (firstVertex + 2);
+            indices[i + 4] = (short) (firstVertex + 3);
+            indices[i + 5] = (short) (firstVertex);
+        }
+    }
+
+    /**
+     * @return maximum number of quads that can be built.
+     */
+    public int getMaxQuads() {
+        return maxQuads;
+    }
+
+    /**
+     * @return number of quads built by the last call to build.
+     */
+    public int getQuadCount() {
+        return quadCount;
+    }
+
+    /**
+     * @return number of floats of vertex data built by the last call to build.
+     */
+    public int getVertexFloatCount() {
+        return quadCount * VERTICES_PER_QUAD * VERTEX_SIZE;
+    }
+
+    /**
+     * @return number of indices needed to draw the quads built by the last call to build.
+     */
+    public int getIndexCount() {
+        return quadCount * INDICES_PER_QUAD;
+    }
+
+    /**
+     * @return vertex data, valid up to getVertexFloatCount.
+     */
+    public float[] getVertices() {
+        return vertices;
+    }
+
+    /**
+     * @return indices for all quads, two counter clockwise triangles per quad.
+     */
+    public short[] getIndices() {
+        return indices;
+    }
+
+    /**
+     * Builds quads facing the camera for the bubbles that are large enough, closer than the far plane,
+     * and inside the view frustum.  If there are more than the maximum number of quads, the rest are skipped.
+     *
+     * @param bubbles bubbles to build quads for.
+     * @param camera camera to face.  Its frustum should be up to date.
+     * @param interpolationAlpha position between the previous and the current simulation step to place the bubbles at, 0..1.
+     * @return number of quads built.
+     */
+    public int build(BubbleParticles bubbles, Camera camera, float interpolationAlpha) {
+        // Camera space axes, the quads are spanned by right and up
+        right.set(camera.direction).crs(camera.up).nor();
+        up.set(right).crs(camera.direction).nor();
+        towardsCamera.set(camera.direction).scl(-1);
+
+        final float maxDistance2 = camera.far * camera.far;
+        final int bubbleCount = bubbles.size();
+
+        int quad = 0;
+        for (int i = 0; i < bubbleCount && quad < maxQuads; i++) {
+            final float scale = bubbles.getVisibleScale(i);
+            if (scale < MIN_VISIBLE_SCALE) continue;
+
+            bubbles.getRenderPosition(i, interpolationAlpha, center);
+            final float halfSize = scale * 0.5f;
+            if (center.dst2(camera.position) > maxDistance2 ||
+                !camera.frustum.sphereInFrustum(center, halfSize)) continue;
+
+            int v = quad * VERTICES_PER_QUAD * VERTEX_SIZE;
+            for (int corner = 0; corner < VERTICES_PER_QUAD; corner++) {
+                final float cx = CORNER_X[corner];
+                final float cy = CORNER_Y[corner];
+
+                // Position
+                vertices[v++] = center.x + (right.x * cx + up.x * cy) * halfSize;
+                vertices[v++] = center.y + (right.y * cx + up.y * cy) * halfSize;
+                vertices[v++] = center.z + (right.z * cx + up.z * cy) * halfSize;
+
+                // Normal, normalized in the shader
+                vertices[v++] = right.x * cx + up.x * cy + towardsCamera.x;
+                vertices[v++] = right.y * cx + up.y * cy + towardsCamera.y;
+                vertices[v++] = right.z * cx + up.z * cy + towardsCamera.z;
+
+                // Texture coordinates
+                vertices[v++] = CORNER_U[corner];
+                vertices[v++] = CORNER_V[corner];
+            }
+
+            quad++;
+        }
+
+        quadCount = quad;
+        return quad;
+    }
+}
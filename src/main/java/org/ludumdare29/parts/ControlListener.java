@@ -0,0 +1,34 @@
+package org.ludumdare29.parts;
+
+/**
+ * Notified when a control is operated from outside, by the player or the AI, e.g. for recording the controls.
+ * Changes made by the control itself while it updates are not reported.
+ */
+public interface ControlListener {
+
+    /**
+     * A control key was pressed, the value is the key code.
+     */
+    int KEY_DOWN = 0;
+
+    /**
+     * A control key was released, the value is the key code.
+     */
+    int KEY_UP = 1;
+
+    /**
+     * The target position was set, the value is the requested target.
+     */
+    int TARGET = 2;
+
+    /**
+     * A launch was requested, the value is not used.
+     */
+    int LAUNCH = 3;
+
+    /**
+     * @param event one of the event types defined in this interface.
+     * @param value value of the event, depends on the type.
+     */
+    void onControl(int event, float value);
+}
@@ -45,6 +45,8 @@ public final class Controllable extends InputAdapter {
     private boolean increaseKeyPressed = false;
     private boolean decreaseKeyPressed = false;
 
+    private ControlListener controlListener = null;
+
 
     /**
      * A new controllable with a minimum value of -1, a zero value of 0, and a max value of 1, and 0 second controller lag.
@@ -116,7 +118,9 @@ public final class Controllable extends InputAdapter {
      * @param newTargetPos new position to move towards.  Should be in range -1..1 if the control is bi-directional, or 0..1 if unidirectional.
      */
     public void setTarget(float newTargetPos) {
-        targetPos = clamp(newTargetPos, minPos, maxPos);
+        applyTarget(newTargetPos);
+
+        if (controlListener != null) controlListener.onControl(ControlListener.TARGET, newTargetPos);
     }
 
     /**
@@ -232,6 +236,57 @@ public final class Controllable extends InputAdapter {
         init(zeroValue, zeroValue, maxValue, false);
     }
 
+    /**
+     * Sets the value range and the target and current positions directly, e.g. when restoring saved state.
+     *
+     * @param minValue minimum value (for -1 position)
+     * @param zeroValue value for zero position
+     * @param maxValue maximum value (for 1 position)
+     * @param allowNegativeTargetPos true if the control is bi-directional.
+     * @param targetPos user defined target position.
+     * @param currentPos current position.
+     */
+    public void restoreState(float minValue, float zeroValue, float maxValue, boolean allowNegativeTargetPos, float targetPos, float currentPos) {
+        init(minValue, zeroValue, maxValue, allowNegativeTargetPos);
+        applyTarget(targetPos);
+        this.currentPos = clamp(currentPos, minPos, maxPos);
+        updateCurrentValueFromCurrentPos();
+    }
+
+    /**
+     * @return true if the key that increases the target is held down.
+     */
+    public boolean isIncreaseKeyPressed() {
+        return increaseKeyPressed;
+    }
+
+    /**
+     * @return true if the key that decreases the target is held down.
+     */
+    public boolean isDecreaseKeyPressed() {
+        return decreaseKeyPressed;
+    }
+
+    /**
+     * @return seconds until the target is moved another step by a held key.
+     */
+    public float getSecondsUntilNextControlStep() {
+        return secondsUntilNextControlStep;
+    }
+
+    /**
+     * Sets which keys are held down directly, e.g. when restoring saved state.
+     *
+     * @param increaseKeyPressed true if the key that increases the target is held down.
+     * @param decreaseKeyPressed true if the key that decreases the target is held down.
+     * @param secondsUntilNextControlStep seconds until the target is moved another step by a held key.
+     */
+    public void restoreKeyState(boolean increaseKeyPressed, boolean decreaseKeyPressed, float secondsUntilNextControlStep) {
+        this.increaseKeyPressed = increaseKeyPressed;
+        this.decreaseKeyPressed = decreaseKeyPressed;
+        this.secondsUntilNextControlStep = secondsUntilNextControlStep;
+    }
+
     /**
      * @return seconds it takes to go from the zero position to the full position after commanded so.
      */
@@ -301,6 +356,18 @@ public final class Controllable extends InputAdapter {
         this.secondsToMoveAControlStepWhenKeyPressed = secondsToMoveAControlStepWhenKeyPressed;
     }
 
+    public ControlListener getControlListener() {
+        return controlListener;
+    }
+
+    /**
+     * @param controlListener listener to notify when the control is operated by key presses or by setting the target,
+     *                        or null for none.
+     */
+    public void setControlListener(ControlListener controlListener) {
+        this.controlListener = controlListener;
+    }
+
     public boolean isReturnToZeroWhenKeyReleased() {
         return returnToZeroWhenKeyReleased;
     }
@@ -346,22 +413,13 @@ public final class Controllable extends InputAdapter {
                 secondsUntilNextControlStep = secondsToMoveAControlStepWhenKeyPressed;
 
                 // Update target based on key
-                if (increaseKeyPressed) {
-                    increaseTarget();
-                }
-                else {
-                    decreaseTarget();
-                }
+                final float stepDelta = 1f / controlSteps;
+                applyTarget(targetPos + (increaseKeyPressed ? stepDelta : -stepDelta));
             }
         }
         else {
             // No key or both keys pressed
             secondsUntilNextControlStep = 0;
-
-            // Return to zero when keys released, if configured that way
-            if (returnToZeroWhenKeyReleased && !increaseKeyPressed && !decreaseKeyPressed) {
-                setTarget(0);
-            }
         }
     }
 
@@ -374,6 +432,10 @@ public final class Controllable extends InputAdapter {
             decreaseKeyPressed = true;
         }
 
+        if (controlListener != null && (keycode == increaseKeyCode || keycode == decreaseKeyCode)) {
+            controlListener.onControl(ControlListener.KEY_DOWN, keycode);
+        }
+
         return false;
     }
 
@@ -386,9 +448,24 @@ public final class Controllable extends InputAdapter {
             decreaseKeyPressed = false;
         }
 
+        // Return to zero when the keys are released, if configured that way.
+        // Only on release, so that targets set in other ways, e.g. by the AI, are kept.
+        if (returnToZeroWhenKeyReleased && (keycode == increaseKeyCode || keycode == decreaseKeyCode) &&
+            !increaseKeyPressed && !decreaseKeyPressed) {
+            applyTarget(0);
+        }
+
+        if (controlListener != null && (keycode == increaseKeyCode || keycode == decreaseKeyCode)) {
+            controlListener.onControl(ControlListener.KEY_UP, keycode);
+        }
+
         return false;
     }
 
+    private void applyTarget(float newTargetPos) {
+        targetPos = clamp(newTargetPos, minPos, maxPos);
+    }
+
     private float calculateActualTargetPos() {
         float actualTargetPos;
         if (!functional) {
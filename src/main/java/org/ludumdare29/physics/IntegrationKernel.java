@@ -0,0 +1,22 @@
+package org.ludumdare29.physics;
+
+/**
+ * The lane-wise arithmetic of the PhysicsIntegrator, applied to the bodies in a slot range of a PhysicsState.
+ *
+ * Each body is advanced by its deltaTime, bodies with a delta time of zero are left unchanged.
+ * Implementations should give exactly the same results as ScalarIntegrationKernel, so that the choice of kernel
+ * does not affect deterministic simulations.  They are shared between threads, so they should not have mutable state.
+ */
+interface IntegrationKernel {
+
+    /**
+     * Applies thrust, buoyancy, gravity and drag to the velocities of the bodies.
+     * The fluid velocities and surrounding densities of the bodies should be sampled before.
+     */
+    void integrateVelocities(PhysicsState state, IntegratorType type, int start, int end);
+
+    /**
+     * Moves the bodies with their velocities.
+     */
+    void integratePositions(PhysicsState state, int start, int end);
+}
@@ -0,0 +1,19 @@
+package org.ludumdare29.physics;
+
+/**
+ * Method used by the PhysicsIntegrator to advance the bodies.
+ */
+public enum IntegratorType {
+
+    /**
+     * Applies the forces and the drag of the current velocity directly, with the drag clamped so that it can not reverse
+     * the direction of travel.  Needs short steps, around 5 ms, for light objects in dense water.
+     */
+    EXPLICIT_EULER,
+
+    /**
+     * Applies the forces first, and then solves the quadratic drag for the velocity at the end of the step in closed form.
+     * Stays stable and keeps the correct terminal velocity at steps of 20 to 50 ms.
+     */
+    SEMI_IMPLICIT
+}
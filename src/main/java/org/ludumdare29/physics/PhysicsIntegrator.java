@@ -0,0 +1,207 @@
+package org.ludumdare29.physics;
+
+import com.badlogic.gdx.math.Vector3;
+import org.flowutils.MathUtils;
+import org.ludumdare29.Sea;
+
+import java.util.Arrays;
+
+/**
+ * Integrates the bodies in a PhysicsState with explicit Euler or semi-implicit steps, see IntegratorType,
+ * applying thrust, buoyancy, gravity, and drag relative to the surrounding water or air.
+ *
+ * The water currents are sampled for a whole slot range in one batch before integrating it.
+ * Disjoint slot ranges can be sampled and integrated in parallel.
+ * Holds scratch vectors, so an instance should only be used by one thread at a time.
+ *
+ * The sea is sampled one body at a time, and the rest of the arithmetic is done by an IntegrationKernel.
+ * When the game is built with the vector profile and run on Java 17 or later with --add-modules jdk.incubator.vector,
+ * a kernel using the Vector API is loaded, otherwise the scalar kernel is used.  Both give the same results.
+ * The vector kernel can be turned off with -Dludumdare29.vectorKernel=false.
+ *
+ * When integrating gathered bodies, bodies that stay slower than SLEEP_SPEED_M_PER_S, with their velocity changing
+ * less than SLEEP_ACCELERATION_M_PER_S2, for SLEEP_DELAY_SECONDS are put to sleep, see PhysicsState.
+ * Held bodies are put to sleep after SLEEP_DELAY_SECONDS however they move.
+ */
+public final class PhysicsIntegrator {
+
+    public static final float SLEEP_SPEED_M_PER_S = 0.01f;
+    public static final float SLEEP_ACCELERATION_M_PER_S2 = 0.02f;
+    public static final float SLEEP_DELAY_SECONDS = 1f;
+
+    /**
+     * System property that turns the vector kernel off when set to false.
+     */
+    public static final String VECTOR_KERNEL_PROPERTY = "ludumdare29.vectorKernel";
+
+    private static final String VECTOR_KERNEL_CLASS = "org.ludumdare29.physics.VectorIntegrationKernel";
+    private static final IntegrationKernel SCALAR_KERNEL = new ScalarIntegrationKernel();
+    private static final IntegrationKernel VECTOR_KERNEL = loadVectorKernel();
+
+    private final Vector3 position = new Vector3();
+    private IntegratorType type = IntegratorType.EXPLICIT_EULER;
+    private IntegrationKernel kernel = VECTOR_KERNEL != null ? VECTOR_KERNEL : SCALAR_KERNEL;
+
+    /**
+     * @return true if the vector kernel could be loaded.
+     */
+    public static boolean isVectorKernelAvailable() {
+        return VECTOR_KERNEL != null;
+    }
+
+    /**
+     * @return true if this integrator uses the vector kernel.
+     */
+    public boolean isVectorKernelEnabled() {
+        return kernel == VECTOR_KERNEL;
+    }
+
+    /**
+     * @param enabled true to use the vector kernel if it is available, false to use the scalar kernel.
+     */
+    public void setVectorKernelEnabled(boolean enabled) {
+        kernel = enabled && VECTOR_KERNEL != null ? VECTOR_KERNEL : SCALAR_KERNEL;
+    }
+
+    public IntegratorType getType() {
+        return type;
+    }
+
+    /**
+     * @param type method used to advance the bodies.
+     */
+    public void setType(IntegratorType type) {
+        if (type == null) throw new IllegalArgumentException("type should not be null");
+        this.type = type;
+    }
+
+    /**
+     * Samples the water or air current at the bodies in the specified slot range.
+     */
+    public void sampleCurrents(PhysicsState state, Sea sea, int start, int end) {
+        sea.getCurrents(state.posX, state.posY, state.posZ,
+                        state.fluidVelX, state.fluidVelY, state.fluidVelZ,
+                        start, end);
+    }
+
+    /**
+     * Samples the water or air current at the bodies in the specified slot range that are integrated on this step,
+     * according to the delta times set when they were gathered.
+     */
+    public void sampleCurrentsGathered(PhysicsState state, Sea sea, int start, int end) {
+        final float[] deltaTime = state.deltaTime;
+        int i = start;
+        while (i < end) {
+            // Skip bodies that are asleep or not due
+            while (i < end && deltaTime[i] == 0) i++;
+
+            // Sample a run of integrated bodies together
+            final int runStart = i;
+            while (i < end && deltaTime[i] != 0) i++;
+            if (i > runStart) sampleCurrents(state, sea, runStart, i);
+        }
+    }
+
+    /**
+     * Integrates the bodies in the specified slot range.
+     *
+     * @param state packed physics state, should be gathered and have its currents sampled before, and scattered after.
+     * @param sea the environment.
+     * @param deltaTime seconds to advance.
+     * @param start first slot to integrate.
+     * @param end slot after the last slot to integrate.
+     */
+    public void integrate(PhysicsState state, Sea sea, float deltaTime, int start, int end) {
+        Arrays.fill(state.deltaTime, start, end, deltaTime);
+        integrate(state, sea, start, end, false);
+    }
+
+    /**
+     * Integrates the bodies in the specified slot range, each by the delta time set for it when it was gathered.
+     * Bodies with a delta time of zero are skipped, and bodies that have stayed at rest are put to sleep.
+     */
+    public void integrateGathered(PhysicsState state, Sea sea, int start, int end) {
+        integrate(state, sea, start, end, true);
+    }
+
+    private void integrate(PhysicsState state, Sea sea, int start, int end, boolean trackSleep) {
+        sampleSurroundingDensities(state, sea, start, end);
+
+        if (trackSleep) {
+            System.arraycopy(state.velX, start, state.startVelX, start, end - start);
+            System.arraycopy(state.velY, start, state.startVelY, start, end - start);
+            System.arraycopy(state.velZ, start, state.startVelZ, start, end - start);
+        }
+
+        kernel.integrateVelocities(state, type, start, end);
+
+        // Put bodies that stay at rest to sleep
+        if (trackSleep) {
+            for (int i = start; i < end; i++) {
+                final float deltaTime = state.deltaTime[i];
+                if (deltaTime != 0) updateSleep(state, i, deltaTime, state.startVelX[i], state.startVelY[i], state.startVelZ[i]);
+            }
+        }
+
+        kernel.integratePositions(state, start, end);
+    }
+
+    private void sampleSurroundingDensities(PhysicsState state, Sea sea, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (state.deltaTime[i] == 0) continue;
+
+            position.set(state.posX[i], state.posY[i], state.posZ[i]);
+            final float environment_density = sea.getDensity(position);
+            final float depth = sea.getDepth(position);
+            final float radius_m = state.radius_m[i];
+
+            // Determine relative density of surroundings, depending on how much in the water / air the thing is
+            if (depth <= -radius_m || depth >= radius_m) {
+                // Completely in water or air
+                state.surroundingDensity[i] = environment_density;
+            }
+            else {
+                // Part in water, part in air
+                final float waterPart = (0.5f * depth / radius_m) + 0.5f;
+                state.surroundingDensity[i] = MathUtils.mix(waterPart, Sea.AIR_DENSITY_AT_SEA_LEVEL, Sea.SEA_DENSITY_AT_SEA_LEVEL);
+            }
+        }
+    }
+
+    private static void updateSleep(PhysicsState state, int i, float deltaTime, float startVelX, float startVelY, float startVelZ) {
+        final float velX = state.velX[i];
+        final float velY = state.velY[i];
+        final float velZ = state.velZ[i];
+        final float changeX = velX - startVelX;
+        final float changeY = velY - startVelY;
+        final float changeZ = velZ - startVelZ;
+        final float maxChange = SLEEP_ACCELERATION_M_PER_S2 * deltaTime;
+
+        if (state.held[i] ||
+            velX * velX + velY * velY + velZ * velZ < SLEEP_SPEED_M_PER_S * SLEEP_SPEED_M_PER_S &&
+            changeX * changeX + changeY * changeY + changeZ * changeZ < maxChange * maxChange) {
+            state.restSeconds[i] += deltaTime;
+            if (state.restSeconds[i] >= SLEEP_DELAY_SECONDS) {
+                // Stop completely, so that the body stays where it is
+                state.sleeping[i] = true;
+                state.velX[i] = 0;
+                state.velY[i] = 0;
+                state.velZ[i] = 0;
+            }
+        }
+        else {
+            state.restSeconds[i] = 0;
+        }
+    }
+
+    private static IntegrationKernel loadVectorKernel() {
+        if (!Boolean.parseBoolean(System.getProperty(VECTOR_KERNEL_PROPERTY, "true"))) return null;
+
+        try {
+            // Only included in builds with the vector profile, and needs the incubator module at runtime
+            return (IntegrationKernel) Class.forName(VECTOR_KERNEL_CLASS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
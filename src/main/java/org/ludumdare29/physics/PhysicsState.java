@@ -0,0 +1,333 @@
+package org.ludumdare29.physics;
+
+import org.entityflow.entity.Entity;
+import org.ludumdare29.components.LocationComponent;
+import org.ludumdare29.components.PhysicalComponent;
+import org.ludumdare29.components.RelevanceComponent;
+
+import java.util.Arrays;
+
+/**
+ * Packed structure-of-arrays copy of the physics state of all simulated bodies.
+ *
+ * The components stay the authoritative state that other processors read and modify,
+ * each step the state is gathered into the arrays, integrated with a linear sweep, and scattered back.
+ * Bodies occupy the slots 0 until size, removal moves the last body into the freed slot.
+ *
+ * Bodies can also be added without components, e.g. for particles.  For those the arrays are the authoritative state,
+ * and they should not be gathered or scattered.
+ *
+ * Bodies with a RelevanceComponent are only integrated on the steps they are due, with the time since their last update,
+ * gather sets the time each body is advanced by in deltaTime.
+ *
+ * Bodies that stay nearly at rest for a while are put to sleep by the integrator, and are not gathered, integrated or
+ * scattered until they are woken up, by thrust, by changes to their physical component, or by wakeBodiesNear.
+ * Held bodies, see PhysicalComponent.held, count as at rest however they move.
+ * Sleep is only tracked for gathered bodies.
+ *
+ * Gathering and scattering disjoint slot ranges can be done from different threads.
+ */
+public final class PhysicsState {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private int size = 0;
+
+    private Entity[] entities;
+    private LocationComponent[] locations;
+    private PhysicalComponent[] physicals;
+    private RelevanceComponent[] relevances;
+
+    public float[] posX;
+    public float[] posY;
+    public float[] posZ;
+
+    public float[] velX;
+    public float[] velY;
+    public float[] velZ;
+
+    public float[] thrustX;
+    public float[] thrustY;
+    public float[] thrustZ;
+
+    public float[] mass_kg;
+    public float[] radius_m;
+    public float[] volume_m3;
+    public float[] crossArea_m2;
+    public float[] dragCoefficient;
+
+    /**
+     * Velocity of the water or air current at each body, sampled before integration.
+     */
+    public float[] fluidVelX;
+    public float[] fluidVelY;
+    public float[] fluidVelZ;
+
+    /**
+     * Seconds to advance each body on this step, or 0 if it is not updated on this step.  Set by gather.
+     */
+    public float[] deltaTime;
+
+    /**
+     * Time each body has been nearly at rest, see PhysicsIntegrator.SLEEP_DELAY_SECONDS.
+     */
+    public float[] restSeconds;
+
+    /**
+     * True for bodies that are asleep.
+     */
+    public boolean[] sleeping;
+
+    /**
+     * True for bodies that are held in place by another processor, see PhysicalComponent.held.  Set by gather.
+     */
+    public boolean[] held;
+
+    /**
+     * Scratch values of the integrator, only valid during integration, and not moved when bodies are removed:
+     * the density of the water or air around each body, and the velocity of each body at the start of the step.
+     */
+    public float[] surroundingDensity;
+    public float[] startVelX;
+    public float[] startVelY;
+    public float[] startVelZ;
+
+    public PhysicsState() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of bodies to allocate space for.  Grows when exceeded.
+     */
+    public PhysicsState(int capacity) {
+        allocate(Math.max(1, capacity));
+    }
+
+    /**
+     * @return number of bodies in the state.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return entity of the body in the specified slot.
+     */
+    public Entity getEntity(int slot) {
+        return entities[slot];
+    }
+
+    /**
+     * Adds a body.
+     * @param relevance relevance of the body if it is updated at a reduced rate when far away, or null to update it every step.
+     * @return slot of the body.  Changes if another body is removed, see remove.
+     */
+    public int add(Entity entity, LocationComponent location, PhysicalComponent physical, RelevanceComponent relevance) {
+        if (size == entities.length) allocate(entities.length * 2);
+
+        final int slot = size++;
+        entities[slot] = entity;
+        locations[slot] = location;
+        physicals[slot] = physical;
+        relevances[slot] = relevance;
+        restSeconds[slot] = 0;
+        sleeping[slot] = false;
+        held[slot] = false;
+        return slot;
+    }
+
+    /**
+     * Adds a body that is not backed by components.
+     * The caller should initialize its values in the arrays.
+     * @return slot of the body.  Changes if another body is removed, see remove.
+     */
+    public int add() {
+        return add(null, null, null, null);
+    }
+
+    /**
+     * Removes the body in the specified slot, and moves the last body, including its array values, into the slot.
+     * @return the entity whose body was moved into the slot, or null if the removed body was the last one,
+     *         or the moved body has no entity.
+     */
+    public Entity remove(int slot) {
+        final int last = --size;
+
+        Entity movedEntity = null;
+        if (slot != last) {
+            entities[slot] = entities[last];
+            locations[slot] = locations[last];
+            physicals[slot] = physicals[last];
+            relevances[slot] = relevances[last];
+            movedEntity = entities[slot];
+
+            posX[slot] = posX[last];
+            posY[slot] = posY[last];
+            posZ[slot] = posZ[last];
+            velX[slot] = velX[last];
+            velY[slot] = velY[last];
+            velZ[slot] = velZ[last];
+            thrustX[slot] = thrustX[last];
+            thrustY[slot] = thrustY[last];
+            thrustZ[slot] = thrustZ[last];
+            mass_kg[slot] = mass_kg[last];
+            radius_m[slot] = radius_m[last];
+            volume_m3[slot] = volume_m3[last];
+            crossArea_m2[slot] = crossArea_m2[last];
+            dragCoefficient[slot] = dragCoefficient[last];
+            fluidVelX[slot] = fluidVelX[last];
+            fluidVelY[slot] = fluidVelY[last];
+            fluidVelZ[slot] = fluidVelZ[last];
+            deltaTime[slot] = deltaTime[last];
+            restSeconds[slot] = restSeconds[last];
+            sleeping[slot] = sleeping[last];
+            held[slot] = held[last];
+        }
+
+        entities[last] = null;
+        locations[last] = null;
+        physicals[last] = null;
+        relevances[last] = null;
+
+        return movedEntity;
+    }
+
+    /**
+     * Copies the component state of the bodies in the specified slot range into the arrays.
+     *
+     * @param stepDeltaTime seconds to advance the bodies that are updated every step.
+     */
+    public void gather(int start, int end, float stepDeltaTime) {
+        for (int i = start; i < end; i++) {
+            final LocationComponent location = locations[i];
+            final PhysicalComponent physical = physicals[i];
+            final RelevanceComponent relevance = relevances[i];
+
+            // Wake up bodies that are pushed or changed, the integrator decides when awake bodies are at rest
+            final boolean disturbed = physical.consumeWakeUp() ||
+                                      !physical.thrust.isZero() ||
+                                      physical.velocity.len2() > PhysicsIntegrator.SLEEP_SPEED_M_PER_S * PhysicsIntegrator.SLEEP_SPEED_M_PER_S;
+            if (sleeping[i]) {
+                if (disturbed) {
+                    sleeping[i] = false;
+                    restSeconds[i] = 0;
+                }
+                else {
+                    // Sleeping bodies keep the values they had when they fell asleep
+                    deltaTime[i] = 0;
+                    continue;
+                }
+            }
+
+            held[i] = physical.held;
+            if (relevance == null) deltaTime[i] = stepDeltaTime;
+            else deltaTime[i] = relevance.due ? relevance.deltaSeconds : 0;
+
+            posX[i] = location.position.x;
+            posY[i] = location.position.y;
+            posZ[i] = location.position.z;
+
+            velX[i] = physical.velocity.x;
+            velY[i] = physical.velocity.y;
+            velZ[i] = physical.velocity.z;
+
+            thrustX[i] = physical.thrust.x;
+            thrustY[i] = physical.thrust.y;
+            thrustZ[i] = physical.thrust.z;
+
+            mass_kg[i] = physical.getMass_kg();
+            radius_m[i] = physical.getRadius_m();
+            volume_m3[i] = physical.getVolume_m3();
+            crossArea_m2[i] = physical.getCrossArea_m2();
+            dragCoefficient[i] = physical.dragCoefficient;
+        }
+    }
+
+    /**
+     * Copies the integrated positions and velocities of the bodies in the specified slot range back to the components,
+     * and zeroes their thrust and torque so that propulsion processors can update them for the next step.
+     * Bodies that were not updated on this step keep their thrust until they are.
+     */
+    public void scatter(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (deltaTime[i] == 0) continue;
+
+            final LocationComponent location = locations[i];
+            final PhysicalComponent physical = physicals[i];
+
+            location.position.set(posX[i], posY[i], posZ[i]);
+            physical.velocity.set(velX[i], velY[i], velZ[i]);
+
+            physical.thrust.set(0, 0, 0);
+            physical.torque.idt();
+        }
+    }
+
+    /**
+     * Wakes up the bodies within the specified distance of a point, e.g. around an explosion.
+     * @return number of bodies that were woken up.
+     */
+    public int wakeBodiesNear(float x, float y, float z, float radius_m) {
+        final float radius2 = radius_m * radius_m;
+        int wokenCount = 0;
+        for (int i = 0; i < size; i++) {
+            final float dx = posX[i] - x;
+            final float dy = posY[i] - y;
+            final float dz = posZ[i] - z;
+            if (dx * dx + dy * dy + dz * dz <= radius2) {
+                if (sleeping[i]) wokenCount++;
+                sleeping[i] = false;
+                restSeconds[i] = 0;
+            }
+        }
+        return wokenCount;
+    }
+
+    /**
+     * @return number of bodies that are asleep.
+     */
+    public int getSleepingCount() {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (sleeping[i]) count++;
+        }
+        return count;
+    }
+
+    private void allocate(int capacity) {
+        entities = entities == null ? new Entity[capacity] : Arrays.copyOf(entities, capacity);
+        locations = locations == null ? new LocationComponent[capacity] : Arrays.copyOf(locations, capacity);
+        physicals = physicals == null ? new PhysicalComponent[capacity] : Arrays.copyOf(physicals, capacity);
+        relevances = relevances == null ? new RelevanceComponent[capacity] : Arrays.copyOf(relevances, capacity);
+
+        posX = resize(posX, capacity);
+        posY = resize(posY, capacity);
+        posZ = resize(posZ, capacity);
+        velX = resize(velX, capacity);
+        velY = resize(velY, capacity);
+        velZ = resize(velZ, capacity);
+        thrustX = resize(thrustX, capacity);
+        thrustY = resize(thrustY, capacity);
+        thrustZ = resize(thrustZ, capacity);
+        mass_kg = resize(mass_kg, capacity);
+        radius_m = resize(radius_m, capacity);
+        volume_m3 = resize(volume_m3, capacity);
+        crossArea_m2 = resize(crossArea_m2, capacity);
+        dragCoefficient = resize(dragCoefficient, capacity);
+        fluidVelX = resize(fluidVelX, capacity);
+        fluidVelY = resize(fluidVelY, capacity);
+        fluidVelZ = resize(fluidVelZ, capacity);
+        deltaTime = resize(deltaTime, capacity);
+        restSeconds = resize(restSeconds, capacity);
+        held = held == null ? new boolean[capacity] : Arrays.copyOf(held, capacity);
+        sleeping = sleeping == null ? new boolean[capacity] : Arrays.copyOf(sleeping, capacity);
+        surroundingDensity = new float[capacity];
+        startVelX = new float[capacity];
+        startVelY = new float[capacity];
+        startVelZ = new float[capacity];
+    }
+
+    private static float[] resize(float[] array, int capacity) {
+        return array == null ? new float[capacity] : Arrays.copyOf(array, capacity);
+    }
+}
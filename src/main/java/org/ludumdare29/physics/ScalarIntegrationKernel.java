@@ -0,0 +1,118 @@
+package org.ludumdare29.physics;
+
+import org.ludumdare29.Sea;
+
+/**
+ * Integration kernel that advances one body at a time.  Runs on any Java version.
+ */
+final class ScalarIntegrationKernel implements IntegrationKernel {
+
+    @Override public void integrateVelocities(PhysicsState state, IntegratorType type, int start, int end) {
+        final float[] velX = state.velX;
+        final float[] velY = state.velY;
+        final float[] velZ = state.velZ;
+        final boolean semiImplicit = type == IntegratorType.SEMI_IMPLICIT;
+
+        for (int i = start; i < end; i++) {
+            final float deltaTime = state.deltaTime[i];
+            if (deltaTime == 0) continue;
+
+            final float surroundingDensity = state.surroundingDensity[i];
+            final float volume_m3 = state.volume_m3[i];
+            final float crossArea_m2 = state.crossArea_m2[i];
+            final float mass_kg = state.mass_kg[i];
+
+            // Calculate relative velocity in the fluid (water or air)
+            final float relativeX = velX[i] - state.fluidVelX[i];
+            final float relativeY = velY[i] - state.fluidVelY[i];
+            final float relativeZ = velZ[i] - state.fluidVelZ[i];
+
+            // Apply buoyancy and gravitation
+            float buoyancyForce = surroundingDensity * volume_m3 * Sea.GRAVITY_AT_SEA_LEVEL;
+            float gravitationForce = mass_kg * Sea.GRAVITY_AT_SEA_LEVEL;
+            float forceX = state.thrustX[i];
+            float forceY = state.thrustY[i] + buoyancyForce;
+            float forceZ = state.thrustZ[i];
+            forceY += -gravitationForce;
+
+            // Update movement based on forces
+            float movedMass = mass_kg + 0.01f * crossArea_m2 * surroundingDensity; // Include some of the mass of the displaced medium, otherwise very light objects move too easily through a heavy medium
+            final float velocityScale = deltaTime / movedMass; // delta V = (Force * delta Time) / mass
+
+            if (semiImplicit) {
+                // Relative velocity in the fluid after the forces
+                final float forcedX = relativeX + forceX * velocityScale;
+                final float forcedY = relativeY + forceY * velocityScale;
+                final float forcedZ = relativeZ + forceZ * velocityScale;
+                final float forcedSpeed = (float) Math.sqrt(forcedX * forcedX + forcedY * forcedY + forcedZ * forcedZ);
+
+                // Solve the drag at the end of the step, v * (1 + c * |v|) = forced velocity, where
+                // c = 0.5 * surroundingDensity * dragCoefficient * crossSection * deltaTime / mass.
+                // The result has the direction of the forced velocity, and never reverses it, whatever the step length.
+                // The drag is divided by the mass of the body without the displaced medium, as in the explicit drag,
+                // so that both integrators reach the same terminal velocity.
+                final float dragFactor = 0.5f * surroundingDensity * state.dragCoefficient[i] * crossArea_m2 * (deltaTime / mass_kg);
+                final float speedScale = 2f / (1f + (float) Math.sqrt(1f + 4f * dragFactor * forcedSpeed));
+
+                velX[i] = state.fluidVelX[i] + forcedX * speedScale;
+                velY[i] = state.fluidVelY[i] + forcedY * speedScale;
+                velZ[i] = state.fluidVelZ[i] + forcedZ * speedScale;
+            }
+            else {
+                velX[i] += forceX * velocityScale;
+                velY[i] += forceY * velocityScale;
+                velZ[i] += forceZ * velocityScale;
+                applyExplicitDrag(state, i, deltaTime, relativeX, relativeY, relativeZ, surroundingDensity);
+            }
+        }
+    }
+
+    @Override public void integratePositions(PhysicsState state, int start, int end) {
+        for (int i = start; i < end; i++) {
+            final float deltaTime = state.deltaTime[i];
+            if (deltaTime == 0) continue;
+
+            state.posX[i] += state.velX[i] * deltaTime;
+            state.posY[i] += state.velY[i] * deltaTime;
+            state.posZ[i] += state.velZ[i] * deltaTime;
+        }
+    }
+
+    private static void applyExplicitDrag(PhysicsState state, int i, float deltaTime,
+                                          float relativeX, float relativeY, float relativeZ,
+                                          float surroundingDensity) {
+        final float[] velX = state.velX;
+        final float[] velY = state.velY;
+        final float[] velZ = state.velZ;
+        final float crossArea_m2 = state.crossArea_m2[i];
+        final float mass_kg = state.mass_kg[i];
+
+        // Apply water or air resistance
+        // DragForce = -0.5 * surroundingDensity * velocityComparedToSurroundings^2 * entityDragConstant * entityCrossSection
+        final float relativeSpeed2 = relativeX * relativeX + relativeY * relativeY + relativeZ * relativeZ;
+        float dragMagnitude = 0.5f *
+                              relativeSpeed2 *  // Square velocity
+                              surroundingDensity * // Fluid density
+                              state.dragCoefficient[i] *
+                              crossArea_m2;
+
+        // Clamp drag so that it doesn't reverse the direction of travel
+        dragMagnitude *= deltaTime / mass_kg;
+        final float relativeSpeed = (float) Math.sqrt(relativeSpeed2);
+        if (dragMagnitude > relativeSpeed) dragMagnitude = relativeSpeed;
+
+        // Apply drag in the opposite direction of the relative velocity
+        float dragScale = -dragMagnitude;
+        if (relativeSpeed2 != 0f && relativeSpeed2 != 1f) {
+            final float normalizeScale = 1f / (float) Math.sqrt(relativeSpeed2);
+            velX[i] += relativeX * normalizeScale * dragScale;
+            velY[i] += relativeY * normalizeScale * dragScale;
+            velZ[i] += relativeZ * normalizeScale * dragScale;
+        }
+        else {
+            velX[i] += relativeX * dragScale;
+            velY[i] += relativeY * dragScale;
+            velZ[i] += relativeZ * dragScale;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.ludumdare29.processors;
+
+import org.ludumdare29.utils.AllocationCounter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fails when chosen processors allocate memory once the simulation has reached a steady state.
+ * Used to make sure that hot loops such as physics and AI stay allocation free.
+ *
+ * Call check after each simulation step.  The first warmup steps are not checked,
+ * so that pools, caches and the JIT compiler have time to settle.
+ *
+ * Processors that run in parallel can not be checked, as the allocations on their worker threads are not counted,
+ * and their fork-join tasks are allocated on each run anyway.
+ */
+public final class AllocationGuard {
+
+    private final int warmupSteps;
+    private final List<GameProcessor> processors = new ArrayList<GameProcessor>();
+    private long[] lastRunCounts = new long[0];
+
+    private long stepCount = 0;
+
+    /**
+     * @param warmupSteps number of steps to run before allocations are treated as errors.
+     */
+    public AllocationGuard(int warmupSteps) {
+        if (warmupSteps < 0) throw new IllegalArgumentException("warmupSteps should not be negative, but was " + warmupSteps);
+        if (!AllocationCounter.isSupported()) throw new IllegalStateException("This JVM does not support counting allocated bytes per thread");
+
+        this.warmupSteps = warmupSteps;
+    }
+
+    /**
+     * Enables allocation tracking for the processor and checks it on each step after the warmup.
+     *
+     * @throws IllegalArgumentException if the processor runs in parallel.
+     */
+    public void watch(GameProcessor processor) {
+        checkNotParallel(processor);
+        processor.setAllocationTrackingEnabled(true);
+        processors.add(processor);
+        lastRunCounts = Arrays.copyOf(lastRunCounts, processors.size());
+        lastRunCounts[processors.size() - 1] = processor.getTimings().getRunCount();
+    }
+
+    /**
+     * Checks the watched processors that ran since the previous check.
+     *
+     * @throws IllegalStateException if a watched processor allocated memory after the warmup, or was made parallel.
+     */
+    public void check() {
+        stepCount++;
+
+        for (int i = 0; i < processors.size(); i++) {
+            final GameProcessor processor = processors.get(i);
+            if (processor.isParallel()) throw new IllegalStateException(parallelMessage(processor));
+
+            final ProcessorTimings timings = processor.getTimings();
+            final long runCount = timings.getRunCount();
+            final boolean ran = runCount != lastRunCounts[i];
+            lastRunCounts[i] = runCount;
+
+            if (ran && stepCount > warmupSteps && timings.getLastAllocatedBytes() > 0) {
+                throw new IllegalStateException(processor.getClass().getSimpleName() + " allocated " +
+                                                timings.getLastAllocatedBytes() + " bytes on step " + stepCount +
+                                                ", after the " + warmupSteps + " warmup steps");
+            }
+        }
+    }
+
+    private static void checkNotParallel(GameProcessor processor) {
+        if (processor.isParallel()) throw new IllegalArgumentException(parallelMessage(processor));
+    }
+
+    private static String parallelMessage(GameProcessor processor) {
+        return processor.getClass().getSimpleName() + " runs in parallel, its allocations on the worker threads can not be checked";
+    }
+
+    public int getWarmupSteps() {
+        return warmupSteps;
+    }
+
+    /**
+     * @return number of steps checked so far, including the warmup.
+     */
+    public long getStepCount() {
+        return stepCount;
+    }
+}
@@ -0,0 +1,36 @@
+package org.ludumdare29.processors;
+
+import org.entityflow.entity.Entity;
+import org.flowutils.time.Time;
+import org.ludumdare29.particles.BubbleParticles;
+
+/**
+ * Updates the bubble particles each step.
+ * Does not handle any entities, the bubbles live in the particle system.
+ */
+public class BubbleParticleProcessor extends GameProcessor {
+
+    private final BubbleParticles bubbleParticles;
+
+    public BubbleParticleProcessor(BubbleParticles bubbleParticles) {
+        super(BubbleParticleProcessor.class);
+
+        this.bubbleParticles = bubbleParticles;
+    }
+
+    public BubbleParticles getBubbleParticles() {
+        return bubbleParticles;
+    }
+
+    @Override protected boolean shouldHandle(Entity entity) {
+        return false;
+    }
+
+    @Override protected void onPreProcess(Time time) {
+        bubbleParticles.update(time, (float) getSecondsSinceLastRun());
+    }
+
+    @Override protected void onProcessEntity(Time time, Entity entity) {
+        // No entities handled
+    }
+}
@@ -1,7 +1,6 @@
 package org.ludumdare29.processors;
 
 import org.entityflow.entity.Entity;
-import org.entityflow.system.BaseEntityProcessor;
 import org.flowutils.SimplexGradientNoise;
 import org.flowutils.time.Time;
 import org.ludumdare29.Sea;
@@ -15,11 +14,11 @@ import static org.flowutils.MathUtils.*;
 /**
  *
  */
-public class BubbleProcessor extends BaseEntityProcessor {
+public class BubbleProcessor extends GameProcessor {
 
     public static final float BUBBLE_POP_DEPTH = 0.1f;
     private static final float BUBBLE_DRIFT_FORCE = 1f;
-    private static final float MAX_SURFACE_BUBBLE_RADIUS = 0.2f;
+    public static final float MAX_SURFACE_BUBBLE_RADIUS = 0.2f;
 
     private static final float BUBBLE_FADE_OUT_FACTION = 0.2f;
     private static final float BUBBLE_FADE_IN_FACTION = 0.1f;
@@ -35,38 +34,28 @@ public class BubbleProcessor extends BaseEntityProcessor {
         this.sea = sea;
     }
 
-    @Override protected void processEntity(Time time, Entity entity) {
+    @Override protected void onProcessEntity(Time time, Entity entity) {
         final LocationComponent location = entity.getComponent(LocationComponent.class);
         final PhysicalComponent physical = entity.getComponent(PhysicalComponent.class);
         final AppearanceComponent appearance = entity.getComponent(AppearanceComponent.class);
         final BubbleComponent bubble = entity.getComponent(BubbleComponent.class);
 
         // Dissipate bubbles over time
-        final float timeSinceLastStep = (float) time.getSecondsSinceLastStep();
+        final float timeSinceLastStep = (float) getSecondsSinceLastRun();
         bubble.age_seconds += timeSinceLastStep;
         final float secondsLeft = bubble.getSecondsLeft();
 
-        // Calculate density inside the bubble
-        final float pressure      = sea.getPressure(location.position);
-        final float temperature_k = sea.getTemperature_K(location.position);
-        final float newDensity = pressure / (temperature_k * Sea.DRY_AIR_SPECIFIC_GAS_CONSTANT);
-        physical.setDensity_kg_per_m3(Math.max(Sea.AIR_DENSITY_AT_SEA_LEVEL + 0.1f, newDensity));
+        // Calculate density inside the bubble, floating bubbles keep theirs so that they do not wake up
+        if (!bubble.floating) physical.setDensity_kg_per_m3(sea.getBubbleGasDensity(location.position));
 
         // Update appearance size
         final float radius = physical.getRadius_m();
-        final float fadeInFactor = mapAndClamp(bubble.age_seconds, 0, bubble.lifeTime_seconds * BUBBLE_FADE_IN_FACTION, 0.000001f, 1f);
-        final float fadeOutFactor = mapAndClamp(secondsLeft, bubble.lifeTime_seconds * (1f - BUBBLE_FADE_OUT_FACTION), 0, 1f, 0.000001f);
-        final float visibleScale = fadeInFactor * fadeOutFactor * radius * 2 * APPEARANCE_SCALE_FACTOR;
-        appearance.setScale(visibleScale);
+        appearance.setScale(calculateVisibleScale(bubble.age_seconds, bubble.lifeTime_seconds, radius));
 
         // Wobble rising bubbles
         if (!bubble.floating) {
-            final double wobbleFrequency = BASIC_WOBBLES_PER_SEC * mapAndClamp(radius, 0, 1, 1f, 0.3f); // Larger wobble slower
-            final float driftForce = BUBBLE_DRIFT_FORCE * mapAndClamp(radius, 0, 1f, 0f, 2f); // Larger bubbles drift more
-            final float xDrift = driftForce * (float) SimplexGradientNoise.sdnoise1(time.getSecondsSinceStart() * wobbleFrequency + bubble.wobbleStart * 134.321f + 12.12f);
-            final float yDrift = driftForce * (float) SimplexGradientNoise.sdnoise1(time.getSecondsSinceStart() * wobbleFrequency + bubble.wobbleStart * 732.132f + 43.32f);
-            physical.thrust.x += xDrift;
-            physical.thrust.z += yDrift;
+            physical.thrust.x += calculateDriftX(time.getSecondsSinceStart(), bubble.wobbleStart, radius);
+            physical.thrust.z += calculateDriftZ(time.getSecondsSinceStart(), bubble.wobbleStart, radius);
         }
 
         // Pop bubbles when they reach the surface
@@ -81,11 +70,12 @@ public class BubbleProcessor extends BaseEntityProcessor {
             }
         }
 
-        // Lock floating bubbles to sea level
+        // Lock floating bubbles to sea level, and let them fall asleep there
         if (bubble.floating) {
             //location.position.y = sea.getSeaLevel(location.position) - 0.01f;
             physical.velocity.y *= 0.1f;
         }
+        physical.held = bubble.floating;
 
 
         // Destroy bubbles that are emitted above the surface
@@ -95,6 +85,36 @@ public class BubbleProcessor extends BaseEntityProcessor {
         }
     }
 
+    /**
+     * @return visible diameter of a bubble, fading it in at the start and out at the end of its life.
+     */
+    public static float calculateVisibleScale(float age_seconds, float lifeTime_seconds, float radius) {
+        final float secondsLeft = lifeTime_seconds - age_seconds;
+        final float fadeInFactor = mapAndClamp(age_seconds, 0, lifeTime_seconds * BUBBLE_FADE_IN_FACTION, 0.000001f, 1f);
+        final float fadeOutFactor = mapAndClamp(secondsLeft, lifeTime_seconds * (1f - BUBBLE_FADE_OUT_FACTION), 0, 1f, 0.000001f);
+        return fadeInFactor * fadeOutFactor * radius * 2 * APPEARANCE_SCALE_FACTOR;
+    }
+
+    /**
+     * @return sideways wobble force along the x axis for a rising bubble.
+     */
+    public static float calculateDriftX(double secondsSinceStart, double wobbleStart, float radius) {
+        return calculateDriftForce(radius) * (float) SimplexGradientNoise.sdnoise1(secondsSinceStart * calculateWobbleFrequency(radius) + wobbleStart * 134.321f + 12.12f);
+    }
+
+    /**
+     * @return sideways wobble force along the z axis for a rising bubble.
+     */
+    public static float calculateDriftZ(double secondsSinceStart, double wobbleStart, float radius) {
+        return calculateDriftForce(radius) * (float) SimplexGradientNoise.sdnoise1(secondsSinceStart * calculateWobbleFrequency(radius) + wobbleStart * 732.132f + 43.32f);
+    }
+
+    private static double calculateWobbleFrequency(float radius) {
+        return BASIC_WOBBLES_PER_SEC * mapAndClamp(radius, 0, 1, 1f, 0.3f); // Larger wobble slower
+    }
 
+    private static float calculateDriftForce(float radius) {
+        return BUBBLE_DRIFT_FORCE * mapAndClamp(radius, 0, 1f, 0f, 2f); // Larger bubbles drift more
+    }
 
 }
@@ -2,39 +2,60 @@ package org.ludumdare29.processors;
 
 import com.badlogic.gdx.math.Vector3;
 import org.entityflow.entity.Entity;
-import org.entityflow.system.BaseEntityProcessor;
 import org.flowutils.time.Time;
 import org.ludumdare29.EntityFactory;
 import org.ludumdare29.components.BubblingComponent;
 import org.ludumdare29.components.LocationComponent;
+import org.ludumdare29.components.RelevanceComponent;
 
 import java.util.Random;
 
 /**
  *
  */
-public class BubblingProcessor extends BaseEntityProcessor {
+public class BubblingProcessor extends GameProcessor {
 
     private final EntityFactory entityFactory;
 
     public BubblingProcessor(EntityFactory entityFactory) {
+        this(entityFactory, new Random());
+    }
+
+    /**
+     * @param random random number stream used for the bubbling.
+     */
+    public BubblingProcessor(EntityFactory entityFactory, Random random) {
         super(BubblingProcessor.class, LocationComponent.class, BubblingComponent.class);
 
         this.entityFactory = entityFactory;
+        this.random = random;
     }
 
     private float timeSinceLastCall = 0;
-    private final Random random = new Random();
+    private final Random random;
     private final Vector3 pos = new Vector3();
 
-    @Override protected void preProcess(Time time) {
-        timeSinceLastCall = (float) time.getSecondsSinceLastStep();
+    @Override protected void handleAddedEntity(Entity entity) {
+        // Start at a random point of the bubbling interval, so that things created at the same time do not bubble in sync
+        final BubblingComponent bubbling = entity.getComponent(BubblingComponent.class);
+        if (!bubbling.started) {
+            bubbling.secondsUntilNextBubbles = random.nextFloat() * bubbling.bubblingInterval_seconds;
+            bubbling.started = true;
+        }
     }
 
-    @Override protected void processEntity(Time time, Entity entity) {
+    @Override protected void onPreProcess(Time time) {
+        timeSinceLastCall = (float) getSecondsSinceLastRun();
+    }
+
+    @Override protected void onProcessEntity(Time time, Entity entity) {
         final LocationComponent location = entity.getComponent(LocationComponent.class);
         final BubblingComponent bubbling = entity.getComponent(BubblingComponent.class);
 
+        // Far away entities do not bubble, the countdown continues when they come closer
+        final RelevanceComponent relevance = entity.getComponent(RelevanceComponent.class);
+        if (relevance != null && !relevance.tier.isBubbling()) return;
+
         // Count down to the next bubbling
         bubbling.secondsUntilNextBubbles -= timeSinceLastCall;
 
@@ -10,7 +10,6 @@ import com.badlogic.gdx.math.Matrix4;
 import com.badlogic.gdx.math.Quaternion;
 import com.badlogic.gdx.math.Vector3;
 import org.entityflow.entity.Entity;
-import org.entityflow.system.BaseEntityProcessor;
 import org.flowutils.MathUtils;
 import org.flowutils.time.Time;
 import org.ludumdare29.components.CameraComponent;
@@ -20,10 +19,11 @@ import org.ludumdare29.components.appearance.AppearanceComponent;
 /**
  * Manages the cameras available in the world for the player
  */
-public class CameraProcessor extends BaseEntityProcessor {
+public class CameraProcessor extends GameProcessor {
 
     private final RenderingProcessor renderingProcessor;
     private final UiProcessor uiProcessor;
+    private final RelevanceProcessor relevanceProcessor;
 
     private Entity currentCameraEntity = null;
 
@@ -47,9 +47,20 @@ public class CameraProcessor extends BaseEntityProcessor {
     public CameraProcessor(RenderingProcessor renderingProcessor,
                            InputMultiplexer inputHandler,
                            UiProcessor uiProcessor) {
+        this(renderingProcessor, inputHandler, uiProcessor, null);
+    }
+
+    /**
+     * @param relevanceProcessor processor that simulates entities far from the current camera at a reduced rate, or null if none.
+     */
+    public CameraProcessor(RenderingProcessor renderingProcessor,
+                           InputMultiplexer inputHandler,
+                           UiProcessor uiProcessor,
+                           RelevanceProcessor relevanceProcessor) {
         super(CameraProcessor.class, LocationComponent.class, CameraComponent.class);
         this.renderingProcessor = renderingProcessor;
         this.uiProcessor = uiProcessor;
+        this.relevanceProcessor = relevanceProcessor;
 
         inputHandler.addProcessor(cameraInputHandler);
     }
@@ -67,12 +78,13 @@ public class CameraProcessor extends BaseEntityProcessor {
         if (entity == currentCameraEntity) setCurrentCameraEntity(null);
     }
 
-    @Override protected void processEntity(Time time, Entity entity) {
+    @Override protected void onProcessEntity(Time time, Entity entity) {
         if (currentCameraEntity == null) setCurrentCameraEntity(entity);
     }
 
-    @Override protected void postProcess(Time time) {
+    @Override protected void onPostProcess(Time time) {
         renderingProcessor.setCameraHostEntity(currentCameraEntity);
+        if (relevanceProcessor != null) relevanceProcessor.setViewer(currentCameraEntity);
 
         if (currentCameraEntity != null) {
             final CameraComponent camera = currentCameraEntity.getComponent(CameraComponent.class);
@@ -124,11 +136,11 @@ public class CameraProcessor extends BaseEntityProcessor {
                 final PerspectiveCamera camera = getCamera();
 
                 // Set camera position to middle of sub
-                camera.position.set(location.position);
+                camera.position.set(location.renderPosition);
 
                 // Look in direction of sub
                 tempV.set(-1, 0, 0);
-                location.direction.transform(tempV);
+                location.renderDirection.transform(tempV);
                 camera.direction.set(tempV);
 
                 if (cameraComponent.keepUpright) {
@@ -137,7 +149,7 @@ public class CameraProcessor extends BaseEntityProcessor {
                 } else {
                     // Keep camera up aligned to the sub
                     tempV.set(UP_VECTOR);
-                    location.direction.transform(tempV);
+                    location.renderDirection.transform(tempV);
                     camera.up.set(tempV);
                 }
 
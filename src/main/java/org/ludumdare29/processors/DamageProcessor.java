@@ -1,7 +1,6 @@
 package org.ludumdare29.processors;
 
 import org.entityflow.entity.Entity;
-import org.entityflow.system.BaseEntityProcessor;
 import org.flowutils.time.Time;
 import org.ludumdare29.EntityFactory;
 import org.ludumdare29.components.DamageableComponent;
@@ -10,7 +9,7 @@ import org.ludumdare29.components.LocationComponent;
 /**
  *
  */
-public class DamageProcessor extends BaseEntityProcessor {
+public class DamageProcessor extends GameProcessor {
 
     private final EntityFactory entityFactory;
 
@@ -19,7 +18,7 @@ public class DamageProcessor extends BaseEntityProcessor {
         this.entityFactory = entityFactory;
     }
 
-    @Override protected void processEntity(Time time, Entity entity) {
+    @Override protected void onProcessEntity(Time time, Entity entity) {
         final DamageableComponent damageable = entity.getComponent(DamageableComponent.class);
         final LocationComponent location = entity.getComponent(LocationComponent.class);
 
@@ -0,0 +1,252 @@
+package org.ludumdare29.processors;
+
+import com.badlogic.gdx.math.Vector3;
+import org.entityflow.entity.Entity;
+import org.ludumdare29.Sea;
+import org.ludumdare29.components.DamageableComponent;
+import org.ludumdare29.components.LocationComponent;
+import org.ludumdare29.components.PhysicalComponent;
+import org.ludumdare29.components.SubmarineComponent;
+import org.ludumdare29.components.TorpedoTubeComponent;
+import org.ludumdare29.parts.AlarmStatus;
+
+import java.util.Arrays;
+
+/**
+ * Read-only copy of the parts of the world that the decisions of the enemies depend on.
+ *
+ * Gathered by the EnemyProcessor on the world thread before the decisions are made, so that the decisions can be
+ * made concurrently without touching the entities or their components.  Enemies are identified by their index.
+ */
+public final class EnemyAiView {
+
+    private static final int INITIAL_CAPACITY = 32;
+
+    private int size = 0;
+    private Entity[] entities = new Entity[INITIAL_CAPACITY];
+    private float[] posX = new float[INITIAL_CAPACITY];
+    private float[] posY = new float[INITIAL_CAPACITY];
+    private float[] posZ = new float[INITIAL_CAPACITY];
+    private float[] velX = new float[INITIAL_CAPACITY];
+    private float[] velY = new float[INITIAL_CAPACITY];
+    private float[] velZ = new float[INITIAL_CAPACITY];
+    private float[] forwardX = new float[INITIAL_CAPACITY];
+    private float[] forwardY = new float[INITIAL_CAPACITY];
+    private float[] forwardZ = new float[INITIAL_CAPACITY];
+    private float[] depth = new float[INITIAL_CAPACITY];
+    private boolean[] surfaced = new boolean[INITIAL_CAPACITY];
+    private float[] batteryCharge = new float[INITIAL_CAPACITY];
+    private AlarmStatus[] batteryAlarm = new AlarmStatus[INITIAL_CAPACITY];
+    private boolean[] charging = new boolean[INITIAL_CAPACITY];
+    private float[] ballastLevel = new float[INITIAL_CAPACITY];
+    private boolean[] readyToFire = new boolean[INITIAL_CAPACITY];
+
+    private final Vector3 forward = new Vector3();
+
+    private boolean hasPlayer = false;
+    private final Vector3 playerPosition = new Vector3();
+    private final Vector3 playerVelocity = new Vector3();
+    private float playerDepth = 0;
+
+    /**
+     * @return number of enemies in the view.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param positionOut vector to store the position of the enemy in.
+     * @return the position of the enemy.
+     */
+    public Vector3 getPosition(int index, Vector3 positionOut) {
+        return positionOut.set(posX[index], posY[index], posZ[index]);
+    }
+
+    /**
+     * @param velocityOut vector to store the velocity of the enemy in.
+     * @return the velocity of the enemy, or zero if it has no physical component.
+     */
+    public Vector3 getVelocity(int index, Vector3 velocityOut) {
+        return velocityOut.set(velX[index], velY[index], velZ[index]);
+    }
+
+    /**
+     * @param forwardOut vector to store the direction the enemy is heading in.
+     * @return the unit length direction the enemy is heading in.
+     */
+    public Vector3 getForward(int index, Vector3 forwardOut) {
+        return forwardOut.set(forwardX[index], forwardY[index], forwardZ[index]);
+    }
+
+    /**
+     * @return depth of the enemy below the sea level, negative if above it.
+     */
+    public float getDepth(int index) {
+        return depth[index];
+    }
+
+    /**
+     * @return true if the enemy is above its dive depth, where it uses its diesel engine and can charge its batteries.
+     */
+    public boolean isSurfaced(int index) {
+        return surfaced[index];
+    }
+
+    /**
+     * @return charge of the batteries of the enemy, from 0 for empty to 1 for full.
+     */
+    public float getBatteryCharge(int index) {
+        return batteryCharge[index];
+    }
+
+    /**
+     * @return alarm level of the batteries of the enemy.
+     */
+    public AlarmStatus getBatteryAlarm(int index) {
+        return batteryAlarm[index];
+    }
+
+    /**
+     * @return true if the enemy has its battery charger turned on.
+     */
+    public boolean isCharging(int index) {
+        return charging[index];
+    }
+
+    /**
+     * @return fill level of the ballast tank of the enemy, from 0 for empty, and lightest, to 1 for full.
+     */
+    public float getBallastLevel(int index) {
+        return ballastLevel[index];
+    }
+
+    /**
+     * @return true if the torpedo tube of the enemy is loaded.
+     */
+    public boolean isReadyToFire(int index) {
+        return readyToFire[index];
+    }
+
+    /**
+     * @return true if there is a player the enemies can react to.
+     */
+    public boolean hasPlayer() {
+        return hasPlayer;
+    }
+
+    /**
+     * @param positionOut vector to store the position of the player in.
+     * @return the position of the player, or zero if there is no player.
+     */
+    public Vector3 getPlayerPosition(Vector3 positionOut) {
+        return positionOut.set(playerPosition);
+    }
+
+    /**
+     * @param velocityOut vector to store the velocity of the player in.
+     * @return the velocity of the player, or zero if there is no player.
+     */
+    public Vector3 getPlayerVelocity(Vector3 velocityOut) {
+        return velocityOut.set(playerVelocity);
+    }
+
+    /**
+     * @return depth of the player below the sea level, or zero if there is no player.
+     */
+    public float getPlayerDepth() {
+        return playerDepth;
+    }
+
+    Entity getEntity(int index) {
+        return entities[index];
+    }
+
+    /**
+     * Removes the enemies and the player, releasing the references to their entities.
+     */
+    void clear() {
+        Arrays.fill(entities, 0, size, null);
+        Arrays.fill(batteryAlarm, 0, size, null);
+        size = 0;
+        hasPlayer = false;
+        playerPosition.set(0, 0, 0);
+        playerVelocity.set(0, 0, 0);
+        playerDepth = 0;
+    }
+
+    void setPlayer(Entity player, Sea sea) {
+        hasPlayer = false;
+        playerPosition.set(0, 0, 0);
+        playerVelocity.set(0, 0, 0);
+        playerDepth = 0;
+        if (player == null) return;
+
+        // A destroyed player is gone, even if the entity is not deleted yet
+        final LocationComponent location = player.getComponent(LocationComponent.class);
+        final DamageableComponent damageable = player.getComponent(DamageableComponent.class);
+        if (location == null || damageable != null && damageable.isDestroyed()) return;
+
+        hasPlayer = true;
+        playerPosition.set(location.position);
+        playerDepth = sea.getDepth(location.position);
+        final PhysicalComponent physical = player.getComponent(PhysicalComponent.class);
+        if (physical != null) playerVelocity.set(physical.velocity);
+    }
+
+    /**
+     * Copies the state of an enemy into the view.
+     * @return index of the enemy.
+     */
+    int add(Entity entity, LocationComponent location, SubmarineComponent submarine, TorpedoTubeComponent tube, Sea sea) {
+        if (size == entities.length) allocate(entities.length * 2);
+
+        final int index = size++;
+        entities[index] = entity;
+        posX[index] = location.position.x;
+        posY[index] = location.position.y;
+        posZ[index] = location.position.z;
+
+        final PhysicalComponent physical = entity.getComponent(PhysicalComponent.class);
+        velX[index] = physical != null ? physical.velocity.x : 0;
+        velY[index] = physical != null ? physical.velocity.y : 0;
+        velZ[index] = physical != null ? physical.velocity.z : 0;
+
+        forward.set(1, 0, 0);
+        location.direction.transform(forward);
+        forwardX[index] = forward.x;
+        forwardY[index] = forward.y;
+        forwardZ[index] = forward.z;
+
+        depth[index] = sea.getDepth(location.position);
+        surfaced[index] = depth[index] <= submarine.diveDepth_m;
+
+        final float batteryCapacity = submarine.batteries_Wh.getMaxCapacity();
+        batteryCharge[index] = batteryCapacity > 0 ? submarine.batteries_Wh.getCurrentAmount() / batteryCapacity : 0;
+        batteryAlarm[index] = submarine.batteries_Wh.getAlarmStatus();
+        charging[index] = submarine.batteryChargeDelta_Wh_per_s.getTargetPos() > 0;
+        ballastLevel[index] = submarine.altitudeTank_m3.getCurrentPos();
+        readyToFire[index] = tube.isReadyToFire();
+        return index;
+    }
+
+    private void allocate(int capacity) {
+        entities = Arrays.copyOf(entities, capacity);
+        posX = Arrays.copyOf(posX, capacity);
+        posY = Arrays.copyOf(posY, capacity);
+        posZ = Arrays.copyOf(posZ, capacity);
+        velX = Arrays.copyOf(velX, capacity);
+        velY = Arrays.copyOf(velY, capacity);
+        velZ = Arrays.copyOf(velZ, capacity);
+        forwardX = Arrays.copyOf(forwardX, capacity);
+        forwardY = Arrays.copyOf(forwardY, capacity);
+        forwardZ = Arrays.copyOf(forwardZ, capacity);
+        depth = Arrays.copyOf(depth, capacity);
+        surfaced = Arrays.copyOf(surfaced, capacity);
+        batteryCharge = Arrays.copyOf(batteryCharge, capacity);
+        batteryAlarm = Arrays.copyOf(batteryAlarm, capacity);
+        charging = Arrays.copyOf(charging, capacity);
+        ballastLevel = Arrays.copyOf(ballastLevel, capacity);
+        readyToFire = Arrays.copyOf(readyToFire, capacity);
+    }
+}
@@ -0,0 +1,100 @@
+package org.ludumdare29.processors;
+
+import org.entityflow.entity.Entity;
+import org.ludumdare29.components.ShipComponent;
+import org.ludumdare29.components.SubmarineComponent;
+import org.ludumdare29.components.TorpedoTubeComponent;
+import org.ludumdare29.parts.Controllable;
+
+import java.util.Arrays;
+
+/**
+ * Control changes decided for the enemies in an EnemyAiView, applied to their entities in one batch on the world thread.
+ *
+ * Each enemy has its own slots, so the decisions of different enemies can be written concurrently.
+ */
+public final class EnemyCommands {
+
+    // Controls, in the order they are applied
+    public static final int RUDDER = 0;
+    public static final int DIESEL_ENGINE = 1;
+    public static final int BALLAST_PUMP = 2;
+    public static final int DIVE_FINS = 3;
+    public static final int ELECTRIC_MOTOR = 4;
+    public static final int BATTERY_CHARGER = 5;
+    public static final int CONTROL_COUNT = 6;
+
+    private int size = 0;
+    private float[] targets = new float[0];
+    private boolean[] launches = new boolean[0];
+
+    /**
+     * Sets the target of a control of an enemy, replacing any target set for it before.
+     *
+     * @param index index of the enemy in the view.
+     * @param control the control, e.g. RUDDER.
+     * @param target target position of the control, see Controllable.setTarget.
+     */
+    public void setTarget(int index, int control, float target) {
+        checkIndex(index);
+        if (control < 0 || control >= CONTROL_COUNT) throw new IllegalArgumentException("Unknown control " + control);
+        targets[index * CONTROL_COUNT + control] = target;
+    }
+
+    /**
+     * Requests the enemy to launch a torpedo.
+     */
+    public void requestLaunch(int index) {
+        checkIndex(index);
+        launches[index] = true;
+    }
+
+    /**
+     * Removes all commands, and makes room for the specified number of enemies.
+     */
+    void clear(int size) {
+        if (launches.length < size) {
+            final int capacity = Math.max(size, launches.length * 2);
+            targets = new float[capacity * CONTROL_COUNT];
+            launches = new boolean[capacity];
+        }
+        this.size = size;
+        Arrays.fill(targets, 0, size * CONTROL_COUNT, Float.NaN);
+        Arrays.fill(launches, 0, size, false);
+    }
+
+    /**
+     * Applies the commands of one enemy to its entity.  Should be called on the world thread.
+     */
+    void apply(int index, Entity entity) {
+        checkIndex(index);
+
+        if (launches[index]) {
+            final TorpedoTubeComponent tube = entity.getComponent(TorpedoTubeComponent.class);
+            if (tube != null) tube.requestLaunch();
+        }
+
+        final ShipComponent ship = entity.getComponent(ShipComponent.class);
+        final SubmarineComponent submarine = entity.getComponent(SubmarineComponent.class);
+        final int offset = index * CONTROL_COUNT;
+        if (ship != null) {
+            applyTarget(ship.rudder_turns_per_second, targets[offset + RUDDER]);
+            applyTarget(ship.dieselEngineForwardThrust_N, targets[offset + DIESEL_ENGINE]);
+        }
+        if (submarine != null) {
+            applyTarget(submarine.altitudeTankPumpSpeed_m3_per_s, targets[offset + BALLAST_PUMP]);
+            applyTarget(submarine.diveFins_turns_per_sec, targets[offset + DIVE_FINS]);
+            applyTarget(submarine.electricalMotorThrust_N, targets[offset + ELECTRIC_MOTOR]);
+            applyTarget(submarine.batteryChargeDelta_Wh_per_s, targets[offset + BATTERY_CHARGER]);
+        }
+    }
+
+    private static void applyTarget(Controllable controllable, float target) {
+        // Leave out unchanged targets, so that decisions repeated on each run are not recorded in replays again
+        if (!Float.isNaN(target) && target != controllable.getTargetPos()) controllable.setTarget(target);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("No enemy " + index + ", there are " + size);
+    }
+}
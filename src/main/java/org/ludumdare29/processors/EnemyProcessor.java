@@ -3,95 +3,273 @@ package org.ludumdare29.processors;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.math.Vector3;
 import org.entityflow.entity.Entity;
-import org.entityflow.system.BaseEntityProcessor;
 import org.flowutils.time.Time;
 import org.ludumdare29.EntityFactory;
+import org.ludumdare29.Sea;
+import org.ludumdare29.ai.BehaviourContext;
+import org.ludumdare29.ai.BehaviourTree;
+import org.ludumdare29.ai.SubmarineBehaviours;
+import org.ludumdare29.ai.TimeSlicer;
 import org.ludumdare29.components.*;
+import org.ludumdare29.utils.RandomStreams;
+import org.ludumdare29.utils.SplitMixRandom;
 
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
+ * Spawns enemy submarines, and decides how they steer and when they fire with a behaviour tree,
+ * see SubmarineBehaviours.
  *
+ * The state the decisions depend on is gathered into an EnemyAiView while the enemies are processed,
+ * the decisions are made against the view after that, and the resulting EnemyCommands are applied to the entities
+ * in one batch on the world thread.  The TimeSlicer picks the enemies decided on each run, round-robin,
+ * so that the decisions stay within a time budget however many enemies there are.
+ *
+ * In parallel mode the decisions are made on a fork-join pool.  Each enemy then draws from its own random number stream,
+ * derived from one number drawn from the decision stream on each run, so the decisions do not depend on the threads,
+ * but they differ from the serial mode, where all enemies draw from the decision stream in turn.
  */
-public class EnemyProcessor extends BaseEntityProcessor {
+public class EnemyProcessor extends GameProcessor {
 
     private static final float PROCESSING_INTERVAL_SECONDS = 0.1f;
     private static final int MAX_ENEMIES = 100;
+    private static final float SPAWN_PERCENT_PER_SECOND = 0.1f;
+
+    /**
+     * Number of enemies decided by one parallel task.
+     */
+    private static final int PARALLEL_CHUNK_SIZE = 8;
+
     private Entity player;
 
     private final Vector3 tempPos = new Vector3();
 
     private final EntityFactory entityFactory;
+    private final Sea sea;
+    private final Random random;
+    private final Random spawnRandom;
+    private boolean decisionsEnabled = true;
+
+    private final EnemyAiView view = new EnemyAiView();
+    private final EnemyCommands commands = new EnemyCommands();
+    private final TimeSlicer timeSlicer = new TimeSlicer();
+    private BehaviourTree tree = SubmarineBehaviours.createTree();
+    private final BehaviourContext context = new BehaviourContext();
+
+    private ForkJoinPool pool;
+    private long runSeed;
+    private final ThreadLocal<SplitMixRandom> workerRandoms = new ThreadLocal<SplitMixRandom>() {
+        @Override protected SplitMixRandom initialValue() {
+            return new SplitMixRandom(0);
+        }
+    };
+    private final ThreadLocal<BehaviourContext> workerContexts = new ThreadLocal<BehaviourContext>() {
+        @Override protected BehaviourContext initialValue() {
+            return new BehaviourContext();
+        }
+    };
+    private float secondsPerEvaluation;
 
     public EnemyProcessor(EntityFactory entityFactory) {
+        this(entityFactory, new Random(), new Random());
+    }
+
+    /**
+     * @param random random number stream used for the decisions of the enemies.
+     * @param spawnRandom random number stream used for spawning enemies.  Separate from the decisions,
+     *                    so that spawning stays the same when the decisions are replayed instead.
+     */
+    public EnemyProcessor(EntityFactory entityFactory, Random random, Random spawnRandom) {
         super(EnemyProcessor.class,
               PROCESSING_INTERVAL_SECONDS, EnemyAi.class, ShipComponent.class, SubmarineComponent.class, TorpedoTubeComponent.class, LocationComponent.class);
         this.entityFactory = entityFactory;
+        this.sea = entityFactory.getSea();
+        this.random = random;
+        this.spawnRandom = spawnRandom;
+    }
+
+    public boolean isDecisionsEnabled() {
+        return decisionsEnabled;
+    }
+
+    /**
+     * @param decisionsEnabled false to only spawn enemies, and leave their controls alone, e.g. when replaying recorded controls.
+     */
+    public void setDecisionsEnabled(boolean decisionsEnabled) {
+        this.decisionsEnabled = decisionsEnabled;
+    }
+
+    /**
+     * @return true if the decisions are made in parallel on several threads.
+     */
+    @Override public boolean isParallel() {
+        return pool != null;
+    }
+
+    /**
+     * @param parallel if true, decisions are made in parallel on a pool with one thread per available processor.
+     */
+    public void setParallel(boolean parallel) {
+        setParallelism(parallel ? Runtime.getRuntime().availableProcessors() : 0);
+    }
+
+    /**
+     * @param threadCount number of threads to make the decisions with, or 0 for the serial mode on the world thread.
+     *                    The parallel mode makes the same decisions with any number of threads.
+     */
+    public void setParallelism(int threadCount) {
+        if (threadCount < 0) throw new IllegalArgumentException("threadCount should not be negative, but was " + threadCount);
+
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+
+        if (threadCount > 0) {
+            pool = new ForkJoinPool(threadCount);
+        }
+    }
+
+    /**
+     * @return the view of the world the decisions are made against.  Only valid while the processor is processing.
+     */
+    public EnemyAiView getView() {
+        return view;
+    }
+
+    /**
+     * @return the time slicer that decides how many enemies are decided on each run.
+     */
+    public TimeSlicer getTimeSlicer() {
+        return timeSlicer;
+    }
+
+    public BehaviourTree getTree() {
+        return tree;
+    }
+
+    /**
+     * @param tree behaviour tree the enemies decide with.
+     */
+    public void setTree(BehaviourTree tree) {
+        if (tree == null) throw new IllegalArgumentException("tree should not be null");
+        this.tree = tree;
     }
 
     public Entity getPlayer() {
         return player;
     }
 
+    /**
+     * @param player submarine that the enemies detect, approach, evade and fire at, or null for none.
+     *               It is marked in snapshots, so it is restored with them.
+     */
     public void setPlayer(Entity player) {
         this.player = player;
     }
 
-    private Random random = new Random();
-
-    @Override protected void preProcess(Time time) {
+    @Override protected void onPreProcess(Time time) {
         float spread = 1000;
-        if (onProbability(0.1f) && getHandledEntities().size() < MAX_ENEMIES) {
-            tempPos.set((float) random.nextGaussian() * spread,
-                        (float) random.nextGaussian() * spread ,
-                        (float) random.nextGaussian() * spread);
+        if (spawnRandom.nextFloat() < SPAWN_PERCENT_PER_SECOND * PROCESSING_INTERVAL_SECONDS / 100f &&
+            getHandledEntities().size() < MAX_ENEMIES) {
+            tempPos.set((float) spawnRandom.nextGaussian() * spread,
+                        (float) spawnRandom.nextGaussian() * spread ,
+                        (float) spawnRandom.nextGaussian() * spread);
 
             entityFactory.createEnemySubmarine(tempPos,
-                                               random.nextFloat() * random.nextFloat(),
-                                               random.nextFloat() * random.nextFloat());
+                                               spawnRandom.nextFloat() * spawnRandom.nextFloat(),
+                                               spawnRandom.nextFloat() * spawnRandom.nextFloat());
         }
-    }
 
-    @Override protected void processEntity(Time time, Entity entity) {
-        final ShipComponent ship = entity.getComponent(ShipComponent.class);
-        final TorpedoTubeComponent tube = entity.getComponent(TorpedoTubeComponent.class);
-        final LocationComponent location = entity.getComponent(LocationComponent.class);
-        SubmarineComponent submarine = entity.getComponent(SubmarineComponent.class);
-
-        if (onProbability(3)) {
-            tube.requestLaunch();
+        if (decisionsEnabled) {
+            view.setPlayer(player, sea);
+            if (pool != null) runSeed = random.nextLong();
         }
+    }
 
-        if (onProbability(2)) {
-            ship.rudder_turns_per_second.setTarget(randomMinusOneToOne());
-        }
+    @Override protected void onProcessEntity(Time time, Entity entity) {
+        if (!decisionsEnabled) return;
 
-        if (onProbability(1)) {
-            ship.dieselEngineForwardThrust_N.setTarget(randomMinusOneToOne());
-        }
+        view.add(entity,
+                 entity.getComponent(LocationComponent.class),
+                 entity.getComponent(SubmarineComponent.class),
+                 entity.getComponent(TorpedoTubeComponent.class),
+                 sea);
+    }
 
-        if (onProbability(1)) {
-            submarine.altitudeTankPumpSpeed_m3_per_s.setTarget(randomMinusOneToOne());
-        }
+    @Override protected void onPostProcess(Time time) {
+        if (decisionsEnabled) {
+            final int enemyCount = view.size();
+            commands.clear(enemyCount);
 
-        if (onProbability(1)) {
-            submarine.diveFins_turns_per_sec.setTarget(randomMinusOneToOne());
-        }
+            // Each enemy is decided on every few runs when there are more than fit in one run
+            final int previousCount = timeSlicer.getLastEvaluatedCount();
+            secondsPerEvaluation = (float) getSecondsSinceLastRun() * Math.max(1f, (float) enemyCount / Math.max(1, previousCount));
 
-        if (onProbability(1)) {
-            submarine.electricalMotorThrust_N.setTarget(randomMinusOneToOne());
-        }
+            final int threadCount = pool != null ? pool.getParallelism() : 0;
+            final int maxCount = timeSlicer.begin(enemyCount, threadCount);
+            int decidedCount = 0;
+            if (pool == null) {
+                context.prepare(view, commands, secondsPerEvaluation);
+                while (decidedCount < maxCount && (decidedCount == 0 || timeSlicer.hasTimeLeft())) {
+                    context.setAgent(timeSlicer.getAgent(decidedCount), random);
+                    tree.evaluate(context);
+                    decidedCount++;
+                }
+            }
+            else {
+                pool.invoke(new DecideTask(0, maxCount));
+                decidedCount = maxCount;
+            }
 
-        if (player != null) {
-            final LocationComponent playerLocation = player.getComponent(LocationComponent.class);
+            // Apply the decisions on the world thread
+            for (int i = 0; i < decidedCount; i++) {
+                final int index = timeSlicer.getAgent(i);
+                commands.apply(index, view.getEntity(index));
+            }
+            timeSlicer.end(decidedCount, threadCount);
         }
 
-
+        view.clear();
     }
 
-    private boolean onProbability(final float percentPerSecond) {
-        return random.nextFloat() < percentPerSecond * PROCESSING_INTERVAL_SECONDS / 100f;
+    @Override public void shutdown() {
+        if (pool != null) pool.shutdown();
     }
 
-    private float randomMinusOneToOne() {return random.nextFloat()*2 -1;}
+    /**
+     * Decides the control changes of a range of the enemies of a run, splitting it into chunks.
+     * Each enemy gets its own random number stream, derived from the seed of the run and its index.
+     */
+    private final class DecideTask extends RecursiveAction {
+        private final int start;
+        private final int end;
+
+        private DecideTask(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override protected void compute() {
+            if (end - start <= PARALLEL_CHUNK_SIZE) {
+                final SplitMixRandom enemyRandom = workerRandoms.get();
+                final BehaviourContext workerContext = workerContexts.get();
+                workerContext.prepare(view, commands, secondsPerEvaluation);
+                for (int i = start; i < end; i++) {
+                    final int index = timeSlicer.getAgent(i);
+                    // Scramble the index, seeds a multiple of the increment of the generator apart give overlapping streams
+                    enemyRandom.setSeed(RandomStreams.mix(runSeed ^ RandomStreams.mix(index)));
+                    workerContext.setAgent(index, enemyRandom);
+                    tree.evaluate(workerContext);
+                }
+            }
+            else {
+                final int middle = (start + end) >>> 1;
+                invokeAll(new DecideTask(start, middle),
+                          new DecideTask(middle, end));
+            }
+        }
+    }
 }
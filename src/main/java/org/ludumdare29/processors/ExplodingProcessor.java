@@ -2,7 +2,6 @@ package org.ludumdare29.processors;
 
 import com.badlogic.gdx.math.Vector3;
 import org.entityflow.entity.Entity;
-import org.entityflow.system.BaseEntityProcessor;
 import org.flowutils.MathUtils;
 import org.flowutils.time.Time;
 import org.ludumdare29.EntityFactory;
@@ -11,34 +10,48 @@ import org.ludumdare29.components.ExplodingComponent;
 import org.ludumdare29.components.LocationComponent;
 import org.ludumdare29.components.PhysicalComponent;
 
-import javax.xml.stream.Location;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  *
  */
-public class ExplodingProcessor extends BaseEntityProcessor {
+public class ExplodingProcessor extends GameProcessor {
+
+    /**
+     * Sleeping bodies within this many damage radiuses of an explosion are woken up.
+     */
+    private static final float WAKE_RADIUS_FACTOR = 2f;
 
     private final EntityFactory entityFactory;
+    private final SpatialIndexProcessor spatialIndex;
+    private final PhysicsProcessor physicsProcessor;
+
+    private final List<Entity> nearbyEntities = new ArrayList<>();
+
+    public ExplodingProcessor(EntityFactory entityFactory, SpatialIndexProcessor spatialIndex) {
+        this(entityFactory, spatialIndex, null);
+    }
 
     /**
-     * Do not constantly process all entities, as we do brute force proximity checking.
+     * @param physicsProcessor physics whose sleeping bodies near explosions are woken up, or null if none.
      */
-    private static final float PROCESSING_INTERVAL_SECONDS = 0.2f;
-
-    public ExplodingProcessor(EntityFactory entityFactory) {
-        super(ExplodingProcessor.class, PROCESSING_INTERVAL_SECONDS, LocationComponent.class, ExplodingComponent.class, DamageableComponent.class);
+    public ExplodingProcessor(EntityFactory entityFactory, SpatialIndexProcessor spatialIndex, PhysicsProcessor physicsProcessor) {
+        super(ExplodingProcessor.class, LocationComponent.class, ExplodingComponent.class, DamageableComponent.class);
         this.entityFactory = entityFactory;
+        this.spatialIndex = spatialIndex;
+        this.physicsProcessor = physicsProcessor;
     }
 
-    @Override protected void processEntity(Time time, Entity entity) {
-        final double lastStepDurationSeconds = time.getLastStepDurationSeconds();
+    @Override protected void onProcessEntity(Time time, Entity entity) {
+        final double secondsSinceLastRun = getSecondsSinceLastRun();
 
         final ExplodingComponent exploding = entity.getComponent(ExplodingComponent.class);
         final LocationComponent explodingLocation = entity.getComponent(LocationComponent.class);
         if (exploding != null) {
             // Decrease timers
-            exploding.secondsUntilArmed -= lastStepDurationSeconds;
-            exploding.secondsUntilExplode -= lastStepDurationSeconds;
+            exploding.secondsUntilArmed -= secondsSinceLastRun;
+            exploding.secondsUntilExplode -= secondsSinceLastRun;
 
             if (exploding.shouldExplode()) {
                 // Timer ended
@@ -48,14 +61,16 @@ public class ExplodingProcessor extends BaseEntityProcessor {
                 // Scan nearby entities
                 final Vector3 explodingPosition = explodingLocation.position;
                 final float proximityRadius2 = exploding.proximityTriggerRadius_m * exploding.proximityTriggerRadius_m;
-                for (Entity otherEntity : getHandledEntities()) {
+                nearbyEntities.clear();
+                spatialIndex.getEntitiesNear(explodingPosition, exploding.proximityTriggerRadius_m, DamageableComponent.class, nearbyEntities);
+                for (int i = 0; i < nearbyEntities.size(); i++) {
+                    final Entity otherEntity = nearbyEntities.get(i);
                     if (otherEntity != entity &&
-                        otherEntity != exploding.entityToIgnoreForProximity &&
-                        otherEntity.containsComponent(DamageableComponent.class)) {
+                        otherEntity != exploding.entityToIgnoreForProximity) {
 
                         final LocationComponent otherEntityLocation = otherEntity.getComponent(LocationComponent.class);
-                        final PhysicalComponent otherPhysical = otherEntity.getComponent(PhysicalComponent.class);
-                        if (otherEntityLocation.position.dst2(explodingPosition) <= proximityRadius2 + otherPhysical.getRadius_m()* otherPhysical.getRadius_m()) {
+                        final float otherRadius_m = getRadius_m(otherEntity);
+                        if (otherEntityLocation.position.dst2(explodingPosition) <= proximityRadius2 + otherRadius_m * otherRadius_m) {
                             explode(entity);
                             break;
                         }
@@ -73,21 +88,25 @@ public class ExplodingProcessor extends BaseEntityProcessor {
 
         // Scan for entities that get damaged
         float explosionRadius2 = exploding.damageRadius_m * exploding.damageRadius_m;
-        for (Entity otherEntity : getHandledEntities()) {
+        nearbyEntities.clear();
+        spatialIndex.getEntitiesNear(explodingPosition, exploding.damageRadius_m, DamageableComponent.class, nearbyEntities);
+        for (int i = 0; i < nearbyEntities.size(); i++) {
+            final Entity otherEntity = nearbyEntities.get(i);
             if (otherEntity != entity) {
                 final DamageableComponent damageable = otherEntity.getComponent(DamageableComponent.class);
                 final LocationComponent damageableLocation = otherEntity.getComponent(LocationComponent.class);
-                if (damageable != null) {
-                    float distance2 = explodingPosition.dst2(damageableLocation.position);
-                    if (distance2 < explosionRadius2) {
-                        // Add damage to the entity
-                        float damage = MathUtils.map(distance2, 0, explosionRadius2, exploding.explosiveDamage, 0);
-                        damageable.addDamage(damage);
-                    }
+                float distance2 = explodingPosition.dst2(damageableLocation.position);
+                if (distance2 < explosionRadius2) {
+                    // Add damage to the entity
+                    float damage = MathUtils.map(distance2, 0, explosionRadius2, exploding.explosiveDamage, 0);
+                    damageable.addDamage(damage);
                 }
             }
         }
 
+        // Wake up resting things nearby
+        if (physicsProcessor != null) physicsProcessor.wakeBodiesNear(explodingPosition, exploding.damageRadius_m * WAKE_RADIUS_FACTOR);
+
         // Spawn some bubbles
         entityFactory.createExplosion(explodingLocation.position, exploding.explosiveDamage, exploding.damageRadius_m);
 
@@ -95,6 +114,11 @@ public class ExplodingProcessor extends BaseEntityProcessor {
         entity.delete();
     }
 
+    private float getRadius_m(Entity entity) {
+        final PhysicalComponent physical = entity.getComponent(PhysicalComponent.class);
+        return physical != null ? physical.getRadius_m() : 0;
+    }
+
     @Override protected boolean shouldHandle(Entity entity) {
         return entity.containsComponent(LocationComponent.class) && (
                 entity.containsComponent(ExplodingComponent.class) ||
@@ -0,0 +1,182 @@
+package org.ludumdare29.processors;
+
+import org.entityflow.component.BaseComponent;
+import org.entityflow.entity.Entity;
+import org.entityflow.system.BaseEntityProcessor;
+import org.flowutils.time.Time;
+import org.ludumdare29.utils.AllocationCounter;
+
+/**
+ * Base class for the processors of the game.
+ *
+ * The game loop can turn the processing of a processor on and off, e.g. so that a simulation step only runs the
+ * simulation processors, and a rendered frame only runs the rendering processors.
+ * Entities are still added to and removed from a processor while its processing is turned off.
+ *
+ * A ProcessorScheduler can make the processor run less often than every step.  Processors should use
+ * getSecondsSinceLastRun instead of the step duration of the time, so that skipped steps are accounted for.
+ *
+ * The time spent in each part of the processing, and the number of processed entities, is recorded in the timings.
+ * The bytes allocated by the processing are also recorded, if allocation tracking is enabled,
+ * apart from the ones allocated on other threads by parallel processors.
+ */
+public abstract class GameProcessor extends BaseEntityProcessor {
+
+    private boolean enabled = true;
+    private boolean running = false;
+    private boolean processing = false;
+
+    private ProcessorScheduler scheduler = null;
+    private ProcessorScheduler.Schedule schedule = null;
+
+    private boolean hasRun = false;
+    private double lastRunSecondsSinceStart = 0;
+    private double secondsSinceLastRun = 0;
+
+    private final ProcessorTimings timings = new ProcessorTimings();
+    private long preProcessStartNanoseconds = 0;
+    private long loopStartNanoseconds = 0;
+    private int processedEntityCount = 0;
+    private boolean allocationTrackingEnabled = false;
+    private long allocatedBytesAtStart = 0;
+
+    @SafeVarargs
+    protected GameProcessor(Class<? extends GameProcessor> type, Class<? extends BaseComponent>... handledComponentTypes) {
+        super(type, handledComponentTypes);
+    }
+
+    /**
+     * @param processingIntervalSeconds minimum time between processing the entities.
+     */
+    @SafeVarargs
+    protected GameProcessor(Class<? extends GameProcessor> type, double processingIntervalSeconds, Class<? extends BaseComponent>... handledComponentTypes) {
+        super(type, processingIntervalSeconds, handledComponentTypes);
+    }
+
+    /**
+     * @return true if the processor processes its entities when the world is processed.
+     */
+    public final boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param enabled if false, the processor skips processing when the world is processed.
+     */
+    public final void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return true while the processor is processing its entities, from the pre processing to the post processing.
+     */
+    public final boolean isProcessing() {
+        return processing;
+    }
+
+    /**
+     * @return number of entities handled by this processor.
+     */
+    public final int getEntityCount() {
+        return getHandledEntities().size();
+    }
+
+    /**
+     * @return time spent processing and number of processed entities on the latest runs.
+     */
+    public final ProcessorTimings getTimings() {
+        return timings;
+    }
+
+    public final boolean isAllocationTrackingEnabled() {
+        return allocationTrackingEnabled;
+    }
+
+    /**
+     * @param allocationTrackingEnabled true to record the bytes allocated by each run in the timings.
+     *                                  Has no effect if the JVM does not support AllocationCounter.
+     */
+    public final void setAllocationTrackingEnabled(boolean allocationTrackingEnabled) {
+        this.allocationTrackingEnabled = allocationTrackingEnabled;
+    }
+
+    /**
+     * @return true if the processor does part of its processing on other threads than the one processing the world.
+     *         The allocation tracking only counts the bytes allocated by the thread processing the world.
+     */
+    public boolean isParallel() {
+        return false;
+    }
+
+    /**
+     * @return time since the processor last processed its entities.  If it has not run before, the time since it was
+     *         last due according to its schedule, or the last step duration if it has no earlier due step.
+     */
+    protected final double getSecondsSinceLastRun() {
+        return secondsSinceLastRun;
+    }
+
+    final void setSchedule(ProcessorScheduler scheduler, ProcessorScheduler.Schedule schedule) {
+        this.scheduler = scheduler;
+        this.schedule = schedule;
+    }
+
+    @Override protected final void preProcess(Time time) {
+        running = enabled && (scheduler == null || scheduler.shouldRun(schedule));
+        if (running) {
+            // Accumulate the time of skipped steps, a restored world continues from the steps run before it was saved
+            final double secondsSinceStart = time.getSecondsSinceStart();
+            secondsSinceLastRun = hasRun ? secondsSinceStart - lastRunSecondsSinceStart :
+                                  scheduler != null ? scheduler.getStepsSincePreviousRun(schedule) * time.getSecondsSinceLastStep() :
+                                  time.getSecondsSinceLastStep();
+            lastRunSecondsSinceStart = secondsSinceStart;
+            hasRun = true;
+
+            if (allocationTrackingEnabled) allocatedBytesAtStart = AllocationCounter.getAllocatedBytes();
+            preProcessStartNanoseconds = System.nanoTime();
+            processing = true;
+            onPreProcess(time);
+            loopStartNanoseconds = System.nanoTime();
+            processedEntityCount = 0;
+        }
+    }
+
+    @Override protected final void processEntity(Time time, Entity entity) {
+        if (running) {
+            onProcessEntity(time, entity);
+            processedEntityCount++;
+        }
+    }
+
+    @Override protected final void postProcess(Time time) {
+        if (running) {
+            final long postProcessStartNanoseconds = System.nanoTime();
+            onPostProcess(time);
+            processing = false;
+            final long postProcessEndNanoseconds = System.nanoTime();
+            final long allocatedBytes = allocationTrackingEnabled ? AllocationCounter.getAllocatedBytesSince(allocatedBytesAtStart) : 0;
+            timings.record(loopStartNanoseconds - preProcessStartNanoseconds,
+                           postProcessStartNanoseconds - loopStartNanoseconds,
+                           postProcessEndNanoseconds - postProcessStartNanoseconds,
+                           processedEntityCount,
+                           allocatedBytes);
+        }
+    }
+
+    /**
+     * Called before the entities are processed, if the processor is enabled.
+     */
+    protected void onPreProcess(Time time) {
+    }
+
+    /**
+     * Called for each handled entity, if the processor is enabled.
+     */
+    protected abstract void onProcessEntity(Time time, Entity entity);
+
+    /**
+     * Called after the entities are processed, if the processor is enabled.
+     */
+    protected void onPostProcess(Time time) {
+    }
+}
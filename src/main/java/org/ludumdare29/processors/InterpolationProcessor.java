@@ -0,0 +1,63 @@
+package org.ludumdare29.processors;
+
+import org.entityflow.entity.Entity;
+import org.flowutils.time.Time;
+import org.ludumdare29.components.LocationComponent;
+
+/**
+ * Interpolates the rendered position and direction of entities between the last two simulation steps,
+ * so that movement looks smooth when the frame rate differs from the simulation step rate.
+ * Should be the first processor, and be enabled for both simulation steps and rendered frames.
+ */
+public class InterpolationProcessor extends GameProcessor {
+
+    private boolean renderPass = false;
+    private float interpolationAlpha = 1f;
+
+    public InterpolationProcessor() {
+        super(InterpolationProcessor.class, LocationComponent.class);
+    }
+
+    /**
+     * Call before processing the world for a simulation step.
+     * The current positions and directions are stored as the previous ones.
+     */
+    public void beginSimulationStep() {
+        renderPass = false;
+    }
+
+    /**
+     * Call before processing the world for a rendered frame.
+     * The rendered positions and directions are interpolated between the previous and the current ones.
+     *
+     * @param interpolationAlpha 0 to render the state of the previous step, 1 to render the state of the current step.
+     */
+    public void beginRenderPass(float interpolationAlpha) {
+        renderPass = true;
+        this.interpolationAlpha = interpolationAlpha;
+    }
+
+    /**
+     * @return interpolation position between the previous and the current simulation step used for the last rendered frame.
+     */
+    public float getInterpolationAlpha() {
+        return interpolationAlpha;
+    }
+
+    @Override protected void handleAddedEntity(Entity entity) {
+        entity.getComponent(LocationComponent.class).resetInterpolation();
+    }
+
+    @Override protected void onProcessEntity(Time time, Entity entity) {
+        final LocationComponent location = entity.getComponent(LocationComponent.class);
+
+        if (renderPass) {
+            location.renderPosition.set(location.previousPosition).lerp(location.position, interpolationAlpha);
+            location.renderDirection.set(location.previousDirection).slerp(location.direction, interpolationAlpha);
+        }
+        else {
+            location.previousPosition.set(location.position);
+            location.previousDirection.set(location.direction);
+        }
+    }
+}
@@ -2,25 +2,50 @@ package org.ludumdare29.processors;
 
 import com.badlogic.gdx.math.Vector3;
 import org.entityflow.entity.Entity;
-import org.entityflow.system.BaseEntityProcessor;
-import org.flowutils.MathUtils;
 import org.flowutils.time.Time;
 import org.ludumdare29.Sea;
 import org.ludumdare29.components.LocationComponent;
 import org.ludumdare29.components.PhysicalComponent;
+import org.ludumdare29.components.RelevanceComponent;
+import org.ludumdare29.physics.IntegratorType;
+import org.ludumdare29.physics.PhysicsIntegrator;
+import org.ludumdare29.physics.PhysicsState;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
+ * Moves physical entities.
+ * The state of all bodies is gathered into a packed PhysicsState, integrated in one linear sweep, and written back,
+ * so other processors keep using the Location and Physical components as before.
+ * Bodies far from the camera are only integrated on the steps they are due, see RelevanceProcessor,
+ * and bodies that stay at rest are put to sleep until something wakes them up, see PhysicsState.
  *
+ * In parallel mode the bodies are split into chunks that are gathered, sampled, integrated and scattered on a fork-join pool.
+ * Each worker thread uses its own integrator, and the per body math is the same, so the results are identical
+ * to the serial mode.
  */
-public class PhysicsProcessor extends BaseEntityProcessor {
+public class PhysicsProcessor extends GameProcessor {
+
+    /**
+     * Number of bodies handled by one parallel task.
+     */
+    private static final int PARALLEL_CHUNK_SIZE = 512;
 
     private Sea sea;
 
-    private final Vector3 velocityDelta = new Vector3();
-    private final Vector3 positionDelta = new Vector3();
-    private final Vector3 fluidVelocity = new Vector3();
-    private final Vector3 relativeVelocity = new Vector3();
-    private final Vector3 dragForce = new Vector3();
+    private final PhysicsState state = new PhysicsState();
+    private final PhysicsIntegrator integrator = new PhysicsIntegrator();
+    private final Map<Entity, Integer> slots = new HashMap<>();
+
+    private ForkJoinPool pool;
+    private final ThreadLocal<PhysicsIntegrator> workerIntegrators = new ThreadLocal<PhysicsIntegrator>() {
+        @Override protected PhysicsIntegrator initialValue() {
+            return new PhysicsIntegrator();
+        }
+    };
 
     public PhysicsProcessor(Sea sea) {
         super(PhysicsProcessor.class, LocationComponent.class, PhysicalComponent.class);
@@ -35,76 +60,175 @@ public class PhysicsProcessor extends BaseEntityProcessor {
         this.sea = sea;
     }
 
-    @Override protected void processEntity(Time time, Entity entity) {
-        final float deltaTime = (float) time.getSecondsSinceLastStep();
+    /**
+     * @return true if bodies are integrated in parallel on several threads.
+     */
+    @Override public boolean isParallel() {
+        return pool != null;
+    }
+
+    /**
+     * @param parallel if true, bodies are integrated in parallel on a pool with one thread per available processor.
+     */
+    public void setParallel(boolean parallel) {
+        setParallelism(parallel ? Runtime.getRuntime().availableProcessors() : 1);
+    }
+
+    /**
+     * @param threadCount number of threads to integrate bodies with.  1 integrates serially on the calling thread.
+     */
+    public void setParallelism(int threadCount) {
+        if (threadCount < 1) throw new IllegalArgumentException("threadCount should be at least 1, but was " + threadCount);
+
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+
+        if (threadCount > 1) {
+            pool = new ForkJoinPool(threadCount);
+        }
+    }
+
+    public IntegratorType getIntegratorType() {
+        return integrator.getType();
+    }
+
+    /**
+     * @param integratorType method used to advance the bodies.
+     */
+    public void setIntegratorType(IntegratorType integratorType) {
+        integrator.setType(integratorType);
+    }
+
+    /**
+     * @return true if the bodies are integrated with the vector kernel, see PhysicsIntegrator.
+     */
+    public boolean isVectorKernelEnabled() {
+        return integrator.isVectorKernelEnabled();
+    }
+
+    /**
+     * @param enabled true to integrate the bodies with the vector kernel if it is available, false to use the scalar kernel.
+     *                Both give the same results.
+     */
+    public void setVectorKernelEnabled(boolean enabled) {
+        integrator.setVectorKernelEnabled(enabled);
+    }
+
+    /**
+     * @return packed state of the simulated bodies.
+     */
+    public PhysicsState getState() {
+        return state;
+    }
+
+    /**
+     * Wakes up the bodies within the specified distance, e.g. around an explosion.
+     */
+    public void wakeBodiesNear(Vector3 position, float radius_m) {
+        state.wakeBodiesNear(position.x, position.y, position.z, radius_m);
+    }
 
-        final LocationComponent location = entity.getComponent(LocationComponent.class);
-        final PhysicalComponent physical = entity.getComponent(PhysicalComponent.class);
+    /**
+     * @return number of bodies that are asleep.
+     */
+    public int getSleepingCount() {
+        return state.getSleepingCount();
+    }
 
-        final Vector3 force = physical.thrust;
-        final Vector3 velocity = physical.velocity;
-        final Vector3 position = location.position;
-        final float environment_density = sea.getDensity(position);
-        final float depth = sea.getDepth(position);
-        final float radius_m = physical.getRadius_m();
-        final float volume_m3 = physical.getVolume_m3();
-        final float crossArea_m2 = physical.getCrossArea_m2();
+    @Override protected void handleAddedEntity(Entity entity) {
+        final int slot = state.add(entity,
+                                   entity.getComponent(LocationComponent.class),
+                                   entity.getComponent(PhysicalComponent.class),
+                                   entity.getComponent(RelevanceComponent.class));
+        slots.put(entity, slot);
+    }
 
-        // Determine relative density of surroundings, depending on how much in the water / air the thing is
-        final float surroundingDensity;
-        if (depth <= -radius_m || depth >= radius_m) {
-            // Completely in water or air
-            surroundingDensity = environment_density;
+    @Override protected void handleRemovedEntity(Entity entity) {
+        final Integer slot = slots.remove(entity);
+        if (slot != null) {
+            final Entity movedEntity = state.remove(slot);
+            if (movedEntity != null) slots.put(movedEntity, slot);
+        }
+    }
+
+    @Override protected void onPreProcess(Time time) {
+        final float deltaTime = (float) getSecondsSinceLastRun();
+        final int bodyCount = state.size();
+
+        if (pool == null || bodyCount <= PARALLEL_CHUNK_SIZE) {
+            state.gather(0, bodyCount, deltaTime);
+            integrator.sampleCurrentsGathered(state, sea, 0, bodyCount);
+            integrator.integrateGathered(state, sea, 0, bodyCount);
+            state.scatter(0, bodyCount);
         }
         else {
-            // Part in water, part in air
-            final float waterPart = (0.5f * depth / radius_m) + 0.5f;
-            surroundingDensity = MathUtils.mix(waterPart, Sea.AIR_DENSITY_AT_SEA_LEVEL, Sea.SEA_DENSITY_AT_SEA_LEVEL);
+            pool.invoke(new GatherTask(deltaTime, 0, bodyCount));
+            pool.invoke(new IntegrateTask(0, bodyCount));
+        }
+    }
+
+    @Override protected void onProcessEntity(Time time, Entity entity) {
+        // All bodies are integrated together in preProcess
+    }
+
+    @Override public void shutdown() {
+        if (pool != null) pool.shutdown();
+    }
+
+    /**
+     * Gathers the component state of a range of bodies, splitting it into chunks.
+     */
+    private final class GatherTask extends RecursiveAction {
+        private final float deltaTime;
+        private final int start;
+        private final int end;
+
+        private GatherTask(float deltaTime, int start, int end) {
+            this.deltaTime = deltaTime;
+            this.start = start;
+            this.end = end;
         }
 
+        @Override protected void compute() {
+            if (end - start <= PARALLEL_CHUNK_SIZE) {
+                state.gather(start, end, deltaTime);
+            }
+            else {
+                final int middle = (start + end) >>> 1;
+                invokeAll(new GatherTask(deltaTime, start, middle),
+                          new GatherTask(deltaTime, middle, end));
+            }
+        }
+    }
+
+    /**
+     * Samples currents for and integrates a range of bodies, and writes them back to their components, splitting the range into chunks.
+     */
+    private final class IntegrateTask extends RecursiveAction {
+        private final int start;
+        private final int end;
 
-        // Calculate relative velocity in the fluid (water or air)
-        sea.getCurrent(position, fluidVelocity);
-        relativeVelocity.set(velocity).sub(fluidVelocity);
-
-        // Apply buoyancy
-        float buoyancyForce = surroundingDensity * volume_m3 * Sea.GRAVITY_AT_SEA_LEVEL;
-        force.add(0, buoyancyForce, 0);
-
-        // Apply gravitation
-        float gravitationForce = physical.getMass_kg() * Sea.GRAVITY_AT_SEA_LEVEL;
-        force.add(0, -gravitationForce, 0);
-
-        // Update movement based on forces
-        float movedMass = physical.getMass_kg() + 0.01f * crossArea_m2 * surroundingDensity; // Include some of the mass of the displaced medium, otherwise very light objects move too easily through a heavy medium
-        force.scl(deltaTime / movedMass); // delta V = (Force * delta Time) / mass
-        velocity.add(force);
-
-        // Apply water or air resistance
-        // DragForce = -0.5 * surroundingDensity * velocityComparedToSurroundings^2 * entityDragConstant * entityCrossSection
-        float dragMagnitude = 0.5f *
-                              relativeVelocity.len2() *  // Square velocity
-                              surroundingDensity * // Fluid density
-                              physical.dragCoefficient *
-                              crossArea_m2;
-
-        // Clamp drag so that it doesn't reverse the direction of travel
-        dragMagnitude *= deltaTime / physical.getMass_kg();
-        final float relativeVelocity = this.relativeVelocity.len();
-        if (dragMagnitude > relativeVelocity) dragMagnitude = relativeVelocity;
-
-        // Apply drag
-        dragForce.set(this.relativeVelocity).nor();
-        dragForce.scl(-dragMagnitude);
-        velocity.add(dragForce);
-
-        // Update position
-        positionDelta.set(velocity);
-        positionDelta.scl(deltaTime);
-        position.add(positionDelta);
-
-        // Zero thrust and torque.  Any motor or other propulsion processors can update them.
-        physical.thrust.set(0,0,0);
-        physical.torque.idt();
+        private IntegrateTask(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override protected void compute() {
+            if (end - start <= PARALLEL_CHUNK_SIZE) {
+                final PhysicsIntegrator workerIntegrator = workerIntegrators.get();
+                workerIntegrator.setType(integrator.getType());
+                workerIntegrator.setVectorKernelEnabled(integrator.isVectorKernelEnabled());
+                workerIntegrator.sampleCurrentsGathered(state, sea, start, end);
+                workerIntegrator.integrateGathered(state, sea, start, end);
+                state.scatter(start, end);
+            }
+            else {
+                final int middle = (start + end) >>> 1;
+                invokeAll(new IntegrateTask(start, middle),
+                          new IntegrateTask(middle, end));
+            }
+        }
     }
 }
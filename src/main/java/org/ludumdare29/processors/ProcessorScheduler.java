@@ -0,0 +1,202 @@
+package org.ludumdare29.processors;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides which processors run on each simulation step.
+ *
+ * Each scheduled processor has a rate, running once every n steps, and a phase offset, so that heavy processors
+ * with the same rate can be spread out over different steps.  Processors that are not scheduled run every step.
+ *
+ * Processors marked as deferrable are low priority work, such as AI or bubbling.  If the previous step took longer
+ * than the budget, or the current step has already used up the budget, they are deferred to the next step,
+ * but at most maxDeferredSteps steps in a row, so that they are not starved.
+ *
+ * Processors that skip steps get the time since they last ran from GameProcessor.getSecondsSinceLastRun.
+ */
+public final class ProcessorScheduler {
+
+    private final long stepBudgetNanoseconds;
+    private final int maxDeferredSteps;
+    private final List<Schedule> schedules = new ArrayList<>();
+
+    private long stepStartNanoseconds = 0;
+    private long lastStepDurationNanoseconds = 0;
+    private long stepCount = 0;
+    private long overBudgetStepCount = 0;
+    private long deferredCount = 0;
+    private boolean deferringEnabled = true;
+
+    /**
+     * @param stepBudgetSeconds time a simulation step should take at most before deferrable processors are postponed.
+     * @param maxDeferredSteps maximum number of steps in a row that a deferrable processor can be postponed.
+     */
+    public ProcessorScheduler(double stepBudgetSeconds, int maxDeferredSteps) {
+        if (stepBudgetSeconds <= 0) throw new IllegalArgumentException("stepBudgetSeconds should be positive, but was " + stepBudgetSeconds);
+        if (maxDeferredSteps < 0) throw new IllegalArgumentException("maxDeferredSteps should not be negative, but was " + maxDeferredSteps);
+
+        this.stepBudgetNanoseconds = (long) (stepBudgetSeconds * 1000000000L);
+        this.maxDeferredSteps = maxDeferredSteps;
+    }
+
+    /**
+     * Runs the processor every step, but allows it to be deferred when the step budget is used up.
+     */
+    public void scheduleDeferrable(GameProcessor processor) {
+        schedule(processor, 1, 0, true);
+    }
+
+    /**
+     * @param processor processor to schedule.
+     * @param everyNSteps the processor runs once every this many steps.
+     * @param phase step offset of the runs, 0 until everyNSteps.
+     * @param deferrable true if the processor can be postponed when the step budget is used up.
+     */
+    public void schedule(GameProcessor processor, int everyNSteps, int phase, boolean deferrable) {
+        if (everyNSteps < 1) throw new IllegalArgumentException("everyNSteps should be at least 1, but was " + everyNSteps);
+        if (phase < 0 || phase >= everyNSteps) throw new IllegalArgumentException("phase should be in the range 0.." + (everyNSteps - 1) + ", but was " + phase);
+
+        final Schedule schedule = new Schedule(everyNSteps, phase, deferrable);
+        schedules.add(schedule);
+        processor.setSchedule(this, schedule);
+    }
+
+    /**
+     * Call before processing the world for a simulation step.
+     */
+    public void beginStep() {
+        stepStartNanoseconds = System.nanoTime();
+    }
+
+    /**
+     * Call after processing the world for a simulation step.
+     */
+    public void endStep() {
+        lastStepDurationNanoseconds = System.nanoTime() - stepStartNanoseconds;
+        stepCount++;
+        if (lastStepDurationNanoseconds > stepBudgetNanoseconds) overBudgetStepCount++;
+    }
+
+    /**
+     * @return true if the processor with the specified schedule should run on this step.
+     */
+    boolean shouldRun(Schedule schedule) {
+        final boolean due = schedule.pending ||
+                            stepCount % schedule.everyNSteps == schedule.phase;
+
+        if (!due) return false;
+
+        if (deferringEnabled &&
+            schedule.deferrable &&
+            schedule.deferredSteps < maxDeferredSteps &&
+            isOverBudget()) {
+            // Postpone to the next step
+            schedule.pending = true;
+            schedule.deferredSteps++;
+            deferredCount++;
+            return false;
+        }
+
+        schedule.pending = false;
+        schedule.deferredSteps = 0;
+        return true;
+    }
+
+    /**
+     * @return number of steps since the processor with the specified schedule was last due, or 1 if it was not due
+     *         on an earlier step.  Used for the first run of a processor, e.g. in a world restored with setStepCount,
+     *         where the processor ran on the earlier steps before the world was saved.
+     */
+    int getStepsSincePreviousRun(Schedule schedule) {
+        return stepCount >= schedule.everyNSteps ? schedule.everyNSteps : 1;
+    }
+
+    private boolean isOverBudget() {
+        return lastStepDurationNanoseconds > stepBudgetNanoseconds ||
+               System.nanoTime() - stepStartNanoseconds > stepBudgetNanoseconds;
+    }
+
+    public boolean isDeferringEnabled() {
+        return deferringEnabled;
+    }
+
+    /**
+     * @param deferringEnabled false to never postpone deferrable processors.
+     *                         The step budget is measured in real time, so deferring makes runs unreproducible.
+     *                         Turning deferring off drops the runs that are postponed at the moment,
+     *                         so that the runs from then on only depend on the step count.
+     */
+    public void setDeferringEnabled(boolean deferringEnabled) {
+        this.deferringEnabled = deferringEnabled;
+
+        if (!deferringEnabled) {
+            for (Schedule schedule : schedules) {
+                schedule.pending = false;
+                schedule.deferredSteps = 0;
+            }
+        }
+    }
+
+    public double getStepBudgetSeconds() {
+        return stepBudgetNanoseconds / 1000000000.0;
+    }
+
+    public int getMaxDeferredSteps() {
+        return maxDeferredSteps;
+    }
+
+    /**
+     * @return duration of the last simulation step, in seconds.
+     */
+    public double getLastStepDurationSeconds() {
+        return lastStepDurationNanoseconds / 1000000000.0;
+    }
+
+    /**
+     * @return number of simulation steps that took longer than the budget.
+     */
+    public long getOverBudgetStepCount() {
+        return overBudgetStepCount;
+    }
+
+    /**
+     * @return number of simulation steps run.
+     */
+    public long getStepCount() {
+        return stepCount;
+    }
+
+    /**
+     * Sets the number of steps run, e.g. when a saved world is restored, so that processors keep their phases.
+     */
+    public void setStepCount(long stepCount) {
+        if (stepCount < 0) throw new IllegalArgumentException("stepCount should not be negative, but was " + stepCount);
+        this.stepCount = stepCount;
+    }
+
+    /**
+     * @return number of times a processor run was postponed to a later step.
+     */
+    public long getDeferredCount() {
+        return deferredCount;
+    }
+
+    /**
+     * Scheduling state of a processor.
+     */
+    static final class Schedule {
+        final int everyNSteps;
+        final int phase;
+        final boolean deferrable;
+
+        boolean pending = false;
+        int deferredSteps = 0;
+
+        Schedule(int everyNSteps, int phase, boolean deferrable) {
+            this.everyNSteps = everyNSteps;
+            this.phase = phase;
+            this.deferrable = deferrable;
+        }
+    }
+}
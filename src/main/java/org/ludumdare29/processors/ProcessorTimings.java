@@ -0,0 +1,169 @@
+package org.ludumdare29.processors;
+
+import java.util.Arrays;
+
+/**
+ * Time spent by a processor in preProcess, the entity loop, and postProcess, and the number of entities it processed.
+ * If allocation tracking is enabled for the processor, also the number of bytes it allocated.
+ * Keeps the total times of the latest runs for calculating percentiles.
+ * Should only be accessed from the thread that processes the world.
+ */
+public final class ProcessorTimings {
+
+    /**
+     * Number of latest runs that percentiles are calculated from.
+     */
+    public static final int SAMPLE_COUNT = 256;
+
+    private final long[] samples = new long[SAMPLE_COUNT];
+    private final long[] sortedSamples = new long[SAMPLE_COUNT];
+    private int nextSample = 0;
+    private int sampleCount = 0;
+    private boolean sorted = false;
+
+    private long lastPreProcessNanoseconds = 0;
+    private long lastLoopNanoseconds = 0;
+    private long lastPostProcessNanoseconds = 0;
+    private int lastEntityCount = 0;
+    private long lastAllocatedBytes = 0;
+
+    private long runCount = 0;
+    private long totalNanoseconds = 0;
+    private long maxNanoseconds = 0;
+    private long totalAllocatedBytes = 0;
+    private long maxAllocatedBytes = 0;
+
+    /**
+     * Records the timings of one processor run.
+     */
+    void record(long preProcessNanoseconds, long loopNanoseconds, long postProcessNanoseconds, int entityCount, long allocatedBytes) {
+        lastPreProcessNanoseconds = preProcessNanoseconds;
+        lastLoopNanoseconds = loopNanoseconds;
+        lastPostProcessNanoseconds = postProcessNanoseconds;
+        lastEntityCount = entityCount;
+        lastAllocatedBytes = allocatedBytes;
+        totalAllocatedBytes += allocatedBytes;
+        if (allocatedBytes > maxAllocatedBytes) maxAllocatedBytes = allocatedBytes;
+
+        final long total = preProcessNanoseconds + loopNanoseconds + postProcessNanoseconds;
+        runCount++;
+        totalNanoseconds += total;
+        if (total > maxNanoseconds) maxNanoseconds = total;
+
+        samples[nextSample] = total;
+        nextSample = (nextSample + 1) % SAMPLE_COUNT;
+        if (sampleCount < SAMPLE_COUNT) sampleCount++;
+        sorted = false;
+    }
+
+    /**
+     * Clears the recorded timings.
+     */
+    public void reset() {
+        nextSample = 0;
+        sampleCount = 0;
+        sorted = false;
+        lastPreProcessNanoseconds = 0;
+        lastLoopNanoseconds = 0;
+        lastPostProcessNanoseconds = 0;
+        lastEntityCount = 0;
+        lastAllocatedBytes = 0;
+        runCount = 0;
+        totalNanoseconds = 0;
+        maxNanoseconds = 0;
+        totalAllocatedBytes = 0;
+        maxAllocatedBytes = 0;
+    }
+
+    /**
+     * @param percentile 0..100
+     * @return total run time at the specified percentile of the latest runs, or 0 if there are none.
+     */
+    public long getPercentileNanoseconds(double percentile) {
+        if (sampleCount == 0) return 0;
+
+        if (!sorted) {
+            System.arraycopy(samples, 0, sortedSamples, 0, sampleCount);
+            Arrays.sort(sortedSamples, 0, sampleCount);
+            sorted = true;
+        }
+
+        final int index = (int) Math.ceil(percentile / 100.0 * sampleCount) - 1;
+        return sortedSamples[Math.max(0, Math.min(sampleCount - 1, index))];
+    }
+
+    public long getLastPreProcessNanoseconds() {
+        return lastPreProcessNanoseconds;
+    }
+
+    public long getLastLoopNanoseconds() {
+        return lastLoopNanoseconds;
+    }
+
+    public long getLastPostProcessNanoseconds() {
+        return lastPostProcessNanoseconds;
+    }
+
+    /**
+     * @return total time of the last run.
+     */
+    public long getLastNanoseconds() {
+        return lastPreProcessNanoseconds + lastLoopNanoseconds + lastPostProcessNanoseconds;
+    }
+
+    /**
+     * @return number of entities processed on the last run.
+     */
+    public int getLastEntityCount() {
+        return lastEntityCount;
+    }
+
+    /**
+     * @return bytes allocated on the last run, or 0 if allocation tracking is not enabled.
+     */
+    public long getLastAllocatedBytes() {
+        return lastAllocatedBytes;
+    }
+
+    /**
+     * @return bytes allocated since the start or the last reset, while allocation tracking was enabled.
+     */
+    public long getTotalAllocatedBytes() {
+        return totalAllocatedBytes;
+    }
+
+    /**
+     * @return most bytes allocated on one run since the start or the last reset.
+     */
+    public long getMaxAllocatedBytes() {
+        return maxAllocatedBytes;
+    }
+
+    /**
+     * @return average bytes allocated per run since the start or the last reset.
+     */
+    public double getAverageAllocatedBytes() {
+        return runCount == 0 ? 0 : (double) totalAllocatedBytes / runCount;
+    }
+
+    /**
+     * @return number of runs recorded since the start or the last reset.
+     */
+    public long getRunCount() {
+        return runCount;
+    }
+
+    /**
+     * @return average total time of the runs since the start or the last reset.
+     */
+    public double getAverageNanoseconds() {
+        return runCount == 0 ? 0 : (double) totalNanoseconds / runCount;
+    }
+
+    /**
+     * @return longest total time of a run since the start or the last reset.
+     */
+    public long getMaxNanoseconds() {
+        return maxNanoseconds;
+    }
+}
@@ -0,0 +1,38 @@
+package org.ludumdare29.processors;
+
+import org.entityflow.entity.Entity;
+import org.flowutils.time.Time;
+import org.ludumdare29.ComponentPools;
+import org.ludumdare29.components.BubbleComponent;
+import org.ludumdare29.components.ExplodingComponent;
+import org.ludumdare29.components.LocationComponent;
+
+/**
+ * Returns the components of deleted short lived entities (bubbles and torpedoes) to the component pools.
+ *
+ * Longer lived entities such as submarines are not recycled,
+ * as other entities may still refer to their components after they are deleted.
+ */
+public class RecyclingProcessor extends GameProcessor {
+
+    private final ComponentPools componentPools;
+
+    public RecyclingProcessor(ComponentPools componentPools) {
+        super(RecyclingProcessor.class, LocationComponent.class);
+
+        this.componentPools = componentPools;
+    }
+
+    @Override protected boolean shouldHandle(Entity entity) {
+        return entity.containsComponent(BubbleComponent.class) ||
+               entity.containsComponent(ExplodingComponent.class);
+    }
+
+    @Override protected void handleRemovedEntity(Entity entity) {
+        componentPools.recycle(entity);
+    }
+
+    @Override protected void onProcessEntity(Time time, Entity entity) {
+        // Nothing to do until the entity is removed
+    }
+}
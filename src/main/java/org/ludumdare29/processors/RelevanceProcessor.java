@@ -0,0 +1,144 @@
+package org.ludumdare29.processors;
+
+import org.entityflow.entity.Entity;
+import org.flowutils.time.Time;
+import org.ludumdare29.components.LocationComponent;
+import org.ludumdare29.components.RelevanceComponent;
+import org.ludumdare29.components.RelevanceTier;
+
+/**
+ * Sorts entities into relevance tiers by their distance to the viewer, usually the current camera,
+ * and decides which of them are updated on each step.
+ *
+ * Entities in the far tiers are updated every few steps, with the time accumulated since their last update, so no
+ * simulated time is lost.  An entity that moves to a nearer tier is updated right away, and an entity has to move a
+ * bit past a tier boundary before it is moved to a further tier, so that entities at a boundary do not flicker between tiers.
+ *
+ * Without a viewer, e.g. in headless runs, or with the tiers disabled, e.g. while recording a replay, all entities are
+ * near and updated every step.
+ * Should run before the processors that check whether an entity is due.
+ */
+public final class RelevanceProcessor extends GameProcessor {
+
+    /**
+     * How far past the start of a further tier an entity has to be before it is moved to it.
+     */
+    private static final float DEMOTION_MARGIN = 1.1f;
+
+    private static final RelevanceTier[] TIERS = RelevanceTier.values();
+
+    private final ProcessorScheduler scheduler;
+
+    private Entity viewer = null;
+    private LocationComponent viewerLocation = null;
+    private boolean tiersEnabled = true;
+    private int nextPhase = 0;
+
+    private double secondsSinceStart;
+    private float stepSeconds;
+    private long step;
+
+    /**
+     * @param scheduler scheduler whose step count is used to spread the updates of far entities over the steps.
+     */
+    public RelevanceProcessor(ProcessorScheduler scheduler) {
+        super(RelevanceProcessor.class, LocationComponent.class, RelevanceComponent.class);
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * @return the entity distances are measured from, or null if all entities are near.
+     */
+    public Entity getViewer() {
+        return viewer;
+    }
+
+    /**
+     * @param viewer entity with a location to measure distances from, e.g. the current camera, or null to treat all entities as near.
+     */
+    public void setViewer(Entity viewer) {
+        this.viewer = viewer;
+        viewerLocation = viewer != null ? viewer.getComponent(LocationComponent.class) : null;
+    }
+
+    public boolean isTiersEnabled() {
+        return tiersEnabled;
+    }
+
+    /**
+     * @param tiersEnabled false to treat all entities as near whatever the viewer, e.g. while recording a replay,
+     *                     as replays are played back without a viewer.
+     */
+    public void setTiersEnabled(boolean tiersEnabled) {
+        this.tiersEnabled = tiersEnabled;
+    }
+
+    /**
+     * @return phase given to the next added entity.
+     */
+    public int getNextPhase() {
+        return nextPhase;
+    }
+
+    /**
+     * @param nextPhase phase to give to the next added entity, e.g. when restoring saved state.
+     */
+    public void setNextPhase(int nextPhase) {
+        this.nextPhase = nextPhase;
+    }
+
+    @Override protected void handleAddedEntity(Entity entity) {
+        // Entities restored from a snapshot keep their phase
+        final RelevanceComponent relevance = entity.getComponent(RelevanceComponent.class);
+        if (relevance.phase == RelevanceComponent.NO_PHASE) {
+            relevance.phase = nextPhase++ & 0xFFFF;
+            relevance.lastUpdateSeconds = Double.NaN;
+        }
+    }
+
+    @Override protected void onPreProcess(Time time) {
+        secondsSinceStart = time.getSecondsSinceStart();
+        stepSeconds = (float) time.getSecondsSinceLastStep();
+        step = scheduler.getStepCount();
+    }
+
+    @Override protected void onProcessEntity(Time time, Entity entity) {
+        final RelevanceComponent relevance = entity.getComponent(RelevanceComponent.class);
+
+        // Pick the tier
+        final RelevanceTier oldTier = relevance.tier;
+        final RelevanceTier tier = viewerLocation != null && tiersEnabled ?
+                                   selectTier(oldTier, entity.getComponent(LocationComponent.class).position.dst(viewerLocation.position)) :
+                                   RelevanceTier.NEAR;
+        relevance.tier = tier;
+
+        // Update when the interval of the tier is reached, or right away when moving closer
+        final int interval = tier.getUpdateIntervalSteps();
+        relevance.due = interval == 1 ||
+                        tier.ordinal() < oldTier.ordinal() ||
+                        (step + relevance.phase) % interval == 0;
+
+        // Newly added entities continue from the previous step
+        if (Double.isNaN(relevance.lastUpdateSeconds)) relevance.lastUpdateSeconds = secondsSinceStart - stepSeconds;
+
+        if (relevance.due) {
+            relevance.deltaSeconds = (float) (secondsSinceStart - relevance.lastUpdateSeconds);
+            relevance.lastUpdateSeconds = secondsSinceStart;
+        }
+    }
+
+    private static RelevanceTier selectTier(RelevanceTier currentTier, float distance_m) {
+        // Nearest tier that the distance is in
+        int tier = TIERS.length - 1;
+        while (tier > 0 && distance_m < TIERS[tier].getMinDistance_m()) {
+            tier--;
+        }
+
+        // Only move further away once past the margin
+        if (tier > currentTier.ordinal() && distance_m < TIERS[tier].getMinDistance_m() * DEMOTION_MARGIN) {
+            tier = Math.max(currentTier.ordinal(), tier - 1);
+        }
+
+        return TIERS[tier];
+    }
+}
@@ -12,19 +12,20 @@ import com.badlogic.gdx.graphics.g3d.environment.DirectionalLight;
 import com.badlogic.gdx.graphics.g3d.utils.CameraInputController;
 import com.badlogic.gdx.graphics.g3d.utils.ModelBuilder;
 import org.entityflow.entity.Entity;
-import org.entityflow.system.BaseEntityProcessor;
 import org.flowutils.time.Time;
 import org.ludumdare29.Sea;
 import org.ludumdare29.shader.SpecialAttribute;
 import org.ludumdare29.components.LocationComponent;
 import org.ludumdare29.components.appearance.AppearanceComponent;
+import org.ludumdare29.particles.BubbleBatcher;
+import org.ludumdare29.particles.BubbleParticles;
 
 import java.util.List;
 
 /**
  *
  */
-public class RenderingProcessor extends BaseEntityProcessor {
+public class RenderingProcessor extends GameProcessor {
 
     private static final int ATTRIBUTES = VertexAttributes.Usage.Position |
     VertexAttributes.Usage.Normal |
@@ -45,10 +46,22 @@ public class RenderingProcessor extends BaseEntityProcessor {
     private ModelInstance waterSurface;
     private ModelInstance waterUnderside;
 
+    private final BubbleParticles bubbleParticles;
+    private BubbleBatcher bubbleBatcher;
+    private float interpolationAlpha = 1f;
+
     public RenderingProcessor(Shader shader, Sea sea) {
+        this(shader, sea, null);
+    }
+
+    /**
+     * @param bubbleParticles bubble particles to render, or null if none.
+     */
+    public RenderingProcessor(Shader shader, Sea sea, BubbleParticles bubbleParticles) {
         super(RenderingProcessor.class, AppearanceComponent.class, LocationComponent.class);
         this.shader = shader;
         this.sea = sea;
+        this.bubbleParticles = bubbleParticles;
     }
 
     @Override protected void onInit() {
@@ -92,6 +105,11 @@ public class RenderingProcessor extends BaseEntityProcessor {
                                                          SpecialAttribute.waterUnderside()));
 
 
+        // Setup bubble particle rendering
+        if (bubbleParticles != null) {
+            bubbleBatcher = new BubbleBatcher(bubbleParticles);
+        }
+
         // Setup camera control
         //camController = new CameraInputController(camera);
         //Gdx.input.setInputProcessor(camController);
@@ -117,7 +135,7 @@ public class RenderingProcessor extends BaseEntityProcessor {
         return rect;
     }
 
-    @Override protected void preProcess(Time time) {
+    @Override protected void onPreProcess(Time time) {
         // Clear screen
         Gdx.gl.glViewport(0, 0, Gdx.graphics.getWidth(), Gdx.graphics.getHeight());
         Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT | GL20.GL_DEPTH_BUFFER_BIT);
@@ -140,7 +158,7 @@ public class RenderingProcessor extends BaseEntityProcessor {
         modelBatch.render(skySphere, shader);
     }
 
-    @Override protected void processEntity(Time time, Entity entity) {
+    @Override protected void onProcessEntity(Time time, Entity entity) {
         final LocationComponent location = entity.getComponent(LocationComponent.class);
         final AppearanceComponent appearance = entity.getComponent(AppearanceComponent.class);
 
@@ -153,12 +171,12 @@ public class RenderingProcessor extends BaseEntityProcessor {
             for (ModelInstance modelInstance : modelInstances) {
                 // Apply direction
                 modelInstance.transform.idt();
-                modelInstance.transform.rotate(location.direction);
+                modelInstance.transform.rotate(location.renderDirection);
 
                 // Update position
-                final float x = location.position.x + appearance.getOffset().x;
-                final float y = location.position.y + appearance.getOffset().y;
-                final float z = location.position.z + appearance.getOffset().z;
+                final float x = location.renderPosition.x + appearance.getOffset().x;
+                final float y = location.renderPosition.y + appearance.getOffset().y;
+                final float z = location.renderPosition.z + appearance.getOffset().z;
                 modelInstance.transform.setTranslation(x, y, z);
 
                 // Apply scaling
@@ -171,15 +189,29 @@ public class RenderingProcessor extends BaseEntityProcessor {
         }
     }
 
-    @Override protected void postProcess(Time time) {
+    @Override protected void onPostProcess(Time time) {
+        // Render all bubble particles with one mesh
+        if (bubbleBatcher != null) {
+            bubbleBatcher.update(camera, interpolationAlpha);
+            modelBatch.render(bubbleBatcher, shader);
+        }
+
         modelBatch.end();
     }
 
     @Override public void shutdown() {
+        if (bubbleBatcher != null) bubbleBatcher.dispose();
         modelBatch.dispose();
         shader.dispose();
     }
 
+    /**
+     * @param interpolationAlpha position between the previous and the current simulation step to render particles at, 0..1.
+     */
+    public void setInterpolationAlpha(float interpolationAlpha) {
+        this.interpolationAlpha = interpolationAlpha;
+    }
+
     public Entity getCameraHostEntity() {
         return cameraHostEntity;
     }
@@ -0,0 +1,166 @@
+package org.ludumdare29.processors;
+
+import org.entityflow.entity.Entity;
+import org.flowutils.time.Time;
+import org.ludumdare29.components.LocationComponent;
+import org.ludumdare29.components.ShipComponent;
+import org.ludumdare29.components.SubmarineComponent;
+import org.ludumdare29.components.TorpedoTubeComponent;
+import org.ludumdare29.parts.Controllable;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gives the entities that can be controlled by the player or the AI ids that stay the same when a run is replayed,
+ * so that recorded control events can be applied to the same entities.  Ids are assigned in the order the entities
+ * are added, which is the same in a deterministic simulation.  Does no processing of its own, so it can stay disabled.
+ *
+ * The controllables of an entity are numbered with the ones of the ship component first, then the ones of the
+ * submarine component.
+ */
+public final class ReplayProcessor extends GameProcessor {
+
+    public static final int NO_ID = -1;
+
+    private final Map<Entity, Integer> ids = new IdentityHashMap<>();
+    private final List<Entity> entities = new ArrayList<>();
+    private int nextId = 0;
+
+    private Listener listener = null;
+
+    public ReplayProcessor() {
+        super(ReplayProcessor.class, LocationComponent.class);
+        setEnabled(false);
+    }
+
+    /**
+     * @return true if the entity can be controlled, and is given an id.
+     */
+    public static boolean isControlled(Entity entity) {
+        return entity.containsComponent(ShipComponent.class) ||
+               entity.containsComponent(SubmarineComponent.class) ||
+               entity.containsComponent(TorpedoTubeComponent.class);
+    }
+
+    /**
+     * @return number of controllables of the entity.
+     */
+    public static int getControllableCount(Entity entity) {
+        final ShipComponent ship = entity.getComponent(ShipComponent.class);
+        final SubmarineComponent submarine = entity.getComponent(SubmarineComponent.class);
+        return (ship != null ? ship.getControllables().size() : 0) +
+               (submarine != null ? submarine.getControllables().size() : 0);
+    }
+
+    /**
+     * @return the controllable with the specified number, or null if the entity has no such controllable.
+     */
+    public static Controllable getControllable(Entity entity, int index) {
+        final ShipComponent ship = entity.getComponent(ShipComponent.class);
+        if (ship != null) {
+            if (index < ship.getControllables().size()) return ship.getControllables().get(index);
+            index -= ship.getControllables().size();
+        }
+
+        final SubmarineComponent submarine = entity.getComponent(SubmarineComponent.class);
+        if (submarine != null && index < submarine.getControllables().size()) return submarine.getControllables().get(index);
+
+        return null;
+    }
+
+    /**
+     * @return id of the entity, or NO_ID if it is not a controlled entity in the world.
+     */
+    public int getId(Entity entity) {
+        final Integer id = ids.get(entity);
+        return id != null ? id : NO_ID;
+    }
+
+    /**
+     * @return the entity with the specified id, or null if there is none, e.g. because it has been removed.
+     */
+    public Entity getEntity(int id) {
+        return id >= 0 && id < entities.size() ? entities.get(id) : null;
+    }
+
+    /**
+     * @return the id the next added entity gets.
+     */
+    public int getNextId() {
+        return nextId;
+    }
+
+    /**
+     * Gives an entity the specified id, e.g. when restoring a saved world, instead of the next free id.
+     * Replaces any id the entity was already given.
+     */
+    public void setId(Entity entity, int id) {
+        if (id < 0) throw new IllegalArgumentException("id should not be negative, but was " + id);
+
+        // Release any id the entity already had
+        final Integer oldId = ids.put(entity, id);
+        if (oldId != null && oldId != id) entities.set(oldId, null);
+
+        while (entities.size() <= id) entities.add(null);
+        entities.set(id, entity);
+        if (id >= nextId) nextId = id + 1;
+    }
+
+    /**
+     * @param nextId id to give to the next added entity.
+     */
+    public void setNextId(int nextId) {
+        this.nextId = nextId;
+    }
+
+    public Listener getListener() {
+        return listener;
+    }
+
+    /**
+     * @param listener notified when controlled entities are added and removed, or null for none.
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override protected boolean shouldHandle(Entity entity) {
+        return isControlled(entity);
+    }
+
+    @Override protected void handleAddedEntity(Entity entity) {
+        int id = getId(entity);
+        if (id == NO_ID) {
+            id = nextId;
+            setId(entity, id);
+        }
+
+        if (listener != null) listener.onEntityAdded(id, entity);
+    }
+
+    @Override protected void handleRemovedEntity(Entity entity) {
+        final int id = getId(entity);
+        if (id == NO_ID) return;
+
+        ids.remove(entity);
+        entities.set(id, null);
+
+        if (listener != null) listener.onEntityRemoved(id, entity);
+    }
+
+    @Override protected void onProcessEntity(Time time, Entity entity) {
+        // Nothing to do, the entities are only tracked
+    }
+
+    /**
+     * Notified when controlled entities are added to and removed from the world.
+     */
+    public interface Listener {
+        void onEntityAdded(int id, Entity entity);
+
+        void onEntityRemoved(int id, Entity entity);
+    }
+}
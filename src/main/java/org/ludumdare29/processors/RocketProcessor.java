@@ -3,7 +3,6 @@ package org.ludumdare29.processors;
 import com.badlogic.gdx.math.Quaternion;
 import com.badlogic.gdx.math.Vector3;
 import org.entityflow.entity.Entity;
-import org.entityflow.system.BaseEntityProcessor;
 import org.flowutils.MathUtils;
 import org.flowutils.time.Time;
 import org.ludumdare29.components.LocationComponent;
@@ -15,7 +14,7 @@ import static org.flowutils.MathUtils.TauFloat;
 /**
  *
  */
-public class RocketProcessor extends BaseEntityProcessor {
+public class RocketProcessor extends GameProcessor {
 
 
     private final Vector3 temp = new Vector3();
@@ -26,12 +25,12 @@ public class RocketProcessor extends BaseEntityProcessor {
     }
 
 
-    @Override protected void processEntity(Time time, Entity entity) {
+    @Override protected void onProcessEntity(Time time, Entity entity) {
         final LocationComponent location = entity.getComponent(LocationComponent.class);
         final PhysicalComponent physical = entity.getComponent(PhysicalComponent.class);
         final RocketComponent rocket = entity.getComponent(RocketComponent.class);
 
-        final float secondsSinceLastStep = (float) time.getSecondsSinceLastStep();
+        final float secondsSinceLastStep = (float) getSecondsSinceLastRun();
 
         // Update controls etc
         rocket.update(secondsSinceLastStep);
@@ -3,17 +3,17 @@ package org.ludumdare29.processors;
 import com.badlogic.gdx.math.Quaternion;
 import com.badlogic.gdx.math.Vector3;
 import org.entityflow.entity.Entity;
-import org.entityflow.system.BaseEntityProcessor;
 import org.flowutils.MathUtils;
 import org.flowutils.time.Time;
 import org.ludumdare29.components.LocationComponent;
 import org.ludumdare29.components.PhysicalComponent;
+import org.ludumdare29.components.RelevanceComponent;
 import org.ludumdare29.components.ShipComponent;
 
 /**
  *
  */
-public class ShipProcessor extends BaseEntityProcessor {
+public class ShipProcessor extends GameProcessor {
 
     private final Vector3 temp = new Vector3();
     private final Quaternion tempQ = new Quaternion();
@@ -22,9 +22,12 @@ public class ShipProcessor extends BaseEntityProcessor {
         super(ShipProcessor.class, ShipComponent.class, LocationComponent.class, PhysicalComponent.class);
     }
 
-    @Override protected void processEntity(Time time, Entity entity) {
+    @Override protected void onProcessEntity(Time time, Entity entity) {
 
-        final float secondsSinceLastStep = (float) time.getSecondsSinceLastStep();
+        // Far away entities are updated less often, with the time since their last update
+        final RelevanceComponent relevance = entity.getComponent(RelevanceComponent.class);
+        if (relevance != null && !relevance.due) return;
+        final float secondsSinceLastStep = relevance != null ? relevance.deltaSeconds : (float) getSecondsSinceLastRun();
 
         final ShipComponent ship = entity.getComponent(ShipComponent.class);
         final PhysicalComponent physical = entity.getComponent(PhysicalComponent.class);
@@ -0,0 +1,80 @@
+package org.ludumdare29.processors;
+
+import org.entityflow.entity.Entity;
+import org.flowutils.time.Time;
+import org.ludumdare29.components.CameraComponent;
+import org.ludumdare29.components.LocationComponent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Keeps track of the entities that are included in world snapshots, see SnapshotWriter,
+ * and runs the tasks that take snapshots at the start of the next simulation step.
+ *
+ * The world only adds and removes the entities created and deleted on a step when it is processed the next time,
+ * so a snapshot taken right after a step would leave out the new entities and include the deleted ones.
+ * Tasks run before the other simulation processors, so they see the state before the step.
+ * Should be added to the world before the simulation processors.
+ *
+ * Cameras are not included, as they belong to the view of the player rather than to the simulated world.
+ */
+public final class SnapshotProcessor extends GameProcessor {
+
+    private final List<Runnable> pendingTasks = new ArrayList<>();
+    private final List<Runnable> runningTasks = new ArrayList<>();
+
+    public SnapshotProcessor() {
+        super(SnapshotProcessor.class, LocationComponent.class);
+        setEnabled(false);
+    }
+
+    @Override protected boolean shouldHandle(Entity entity) {
+        return entity.containsComponent(LocationComponent.class) &&
+               !entity.containsComponent(CameraComponent.class);
+    }
+
+    /**
+     * @return the entities to include in a snapshot.  Should not be modified.
+     */
+    public Collection<Entity> getEntities() {
+        return getHandledEntities();
+    }
+
+    /**
+     * Runs the task at the start of the next simulation step, once the entity changes of the previous step are applied.
+     */
+    public void runAtStepStart(Runnable task) {
+        if (task == null) throw new IllegalArgumentException("task should not be null");
+        pendingTasks.add(task);
+    }
+
+    /**
+     * Call before processing the world for a simulation step.  Enables the processor if there are tasks to run.
+     */
+    public void beginSimulationStep() {
+        setEnabled(!pendingTasks.isEmpty());
+    }
+
+    @Override protected void onPreProcess(Time time) {
+        // Tasks added by the running tasks run on the following step
+        runningTasks.addAll(pendingTasks);
+        pendingTasks.clear();
+        try {
+            for (Runnable task : runningTasks) {
+                task.run();
+            }
+        } finally {
+            runningTasks.clear();
+        }
+    }
+
+    @Override protected void onProcessEntity(Time time, Entity entity) {
+        // Nothing to do, the entities are only tracked
+    }
+
+    @Override protected void onPostProcess(Time time) {
+        setEnabled(false);
+    }
+}
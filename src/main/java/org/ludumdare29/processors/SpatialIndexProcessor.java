@@ -0,0 +1,206 @@
+package org.ludumdare29.processors;
+
+import com.badlogic.gdx.math.Vector3;
+import org.entityflow.component.BaseComponent;
+import org.entityflow.entity.Entity;
+import org.flowutils.time.Time;
+import org.ludumdare29.components.BubbleComponent;
+import org.ludumdare29.components.LocationComponent;
+import org.ludumdare29.components.PhysicalComponent;
+import org.ludumdare29.utils.SpatialHashGrid;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps a spatial index of located entities, and answers "what is near X" queries for other processors.
+ * Should be added after the PhysicsProcessor, so that the index reflects the positions after movement.
+ *
+ * Bubbles are not indexed, as they are numerous, short lived, and not interesting for gameplay queries.
+ *
+ * Query results are added to caller supplied lists, so callers can reuse their buffers between steps.
+ */
+public class SpatialIndexProcessor extends GameProcessor {
+
+    public static final float DEFAULT_CELL_SIZE_M = 32f;
+    private static final int GRID_BUCKET_BITS = 14;
+
+    private final SpatialHashGrid<Entity> grid;
+    private final float minCellSize_m;
+    // Insertion ordered, so that a rebuild adds the entities in the same order on every run, whatever their hash codes
+    private final Map<Entity, Integer> slots = new LinkedHashMap<>();
+
+    private final List<Entity> candidates = new ArrayList<>();
+    private float[] candidateDistances = new float[64];
+
+    public SpatialIndexProcessor() {
+        this(DEFAULT_CELL_SIZE_M);
+    }
+
+    /**
+     * @param minCellSize_m smallest cell size to use.  Should be around the typical query radius.
+     *                      Cells are made larger if needed so that the largest entity fits in a cell.
+     */
+    public SpatialIndexProcessor(float minCellSize_m) {
+        super(SpatialIndexProcessor.class, LocationComponent.class);
+        this.minCellSize_m = minCellSize_m;
+        grid = new SpatialHashGrid<>(minCellSize_m, GRID_BUCKET_BITS);
+    }
+
+    @Override protected boolean shouldHandle(Entity entity) {
+        return entity.containsComponent(LocationComponent.class) &&
+               !entity.containsComponent(BubbleComponent.class);
+    }
+
+    @Override protected void handleAddedEntity(Entity entity) {
+        final LocationComponent location = entity.getComponent(LocationComponent.class);
+        slots.put(entity, grid.add(entity, location.position, getRadius_m(entity)));
+    }
+
+    @Override protected void handleRemovedEntity(Entity entity) {
+        final Integer slot = slots.remove(entity);
+        if (slot != null) grid.remove(slot);
+    }
+
+    @Override protected void onPreProcess(Time time) {
+        // Grow the cells if some entity has grown too large for them
+        if (grid.getMaxRadius_m() * 2 > grid.getCellSize_m()) {
+            rebuild(Math.max(minCellSize_m, grid.getMaxRadius_m() * 2));
+        }
+    }
+
+    @Override protected void onProcessEntity(Time time, Entity entity) {
+        final Integer slot = slots.get(entity);
+        if (slot != null) {
+            final LocationComponent location = entity.getComponent(LocationComponent.class);
+            grid.move(slot, location.position, getRadius_m(entity));
+        }
+    }
+
+    /**
+     * @return number of indexed entities.
+     */
+    public int getIndexedEntityCount() {
+        return grid.size();
+    }
+
+    /**
+     * Adds entities whose bounding sphere intersects the specified sphere to the result list.
+     *
+     * @param center center of the query sphere.
+     * @param radius_m radius of the query sphere.
+     * @param requiredComponent only entities with this component are returned, or null to return all entities.
+     * @param resultOut list to add the entities to.  It is not cleared first.
+     * @return number of entities added.
+     */
+    public int getEntitiesNear(Vector3 center,
+                               float radius_m,
+                               Class<? extends BaseComponent> requiredComponent,
+                               List<Entity> resultOut) {
+        candidates.clear();
+        grid.getItemsNear(center, radius_m, candidates);
+        return filter(candidates, requiredComponent, resultOut);
+    }
+
+    /**
+     * Adds entities whose bounding sphere intersects the specified axis aligned box to the result list.
+     *
+     * @param min corner of the box with the smallest coordinates.
+     * @param max corner of the box with the largest coordinates.
+     * @param requiredComponent only entities with this component are returned, or null to return all entities.
+     * @param resultOut list to add the entities to.  It is not cleared first.
+     * @return number of entities added.
+     */
+    public int getEntitiesInBox(Vector3 min,
+                                Vector3 max,
+                                Class<? extends BaseComponent> requiredComponent,
+                                List<Entity> resultOut) {
+        candidates.clear();
+        grid.getItemsInBox(min, max, candidates);
+        return filter(candidates, requiredComponent, resultOut);
+    }
+
+    /**
+     * Adds up to k entities closest to the specified position to the result list, closest first.
+     *
+     * @param center position to measure distance from.
+     * @param k maximum number of entities to return.
+     * @param maxDistance_m only entities closer than this are considered.
+     * @param requiredComponent only entities with this component are returned, or null to return all entities.
+     * @param entityToSkip entity not to return, e.g. the entity doing the query, or null.
+     * @param resultOut list to add the entities to.  It is not cleared first.
+     * @return number of entities added.
+     */
+    public int getNearestEntities(Vector3 center,
+                                  int k,
+                                  float maxDistance_m,
+                                  Class<? extends BaseComponent> requiredComponent,
+                                  Entity entityToSkip,
+                                  List<Entity> resultOut) {
+        candidates.clear();
+        grid.getItemsNear(center, maxDistance_m, candidates);
+
+        // Drop filtered out candidates and calculate distances for the rest
+        int count = 0;
+        for (int i = 0; i < candidates.size(); i++) {
+            final Entity entity = candidates.get(i);
+            if (entity != entityToSkip &&
+                (requiredComponent == null || entity.containsComponent(requiredComponent))) {
+                if (count == candidateDistances.length) {
+                    candidateDistances = Arrays.copyOf(candidateDistances, count * 2);
+                }
+                candidateDistances[count] = entity.getComponent(LocationComponent.class).position.dst2(center);
+                candidates.set(count, entity);
+                count++;
+            }
+        }
+
+        // Partial selection sort of the k closest
+        final int resultCount = Math.min(k, count);
+        for (int i = 0; i < resultCount; i++) {
+            int closest = i;
+            for (int j = i + 1; j < count; j++) {
+                if (candidateDistances[j] < candidateDistances[closest]) closest = j;
+            }
+
+            final Entity closestEntity = candidates.get(closest);
+            candidates.set(closest, candidates.get(i));
+            candidateDistances[closest] = candidateDistances[i];
+
+            resultOut.add(closestEntity);
+        }
+
+        return resultCount;
+    }
+
+    private int filter(List<Entity> entities, Class<? extends BaseComponent> requiredComponent, List<Entity> resultOut) {
+        int count = 0;
+        for (int i = 0; i < entities.size(); i++) {
+            final Entity entity = entities.get(i);
+            if (requiredComponent == null || entity.containsComponent(requiredComponent)) {
+                resultOut.add(entity);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void rebuild(float cellSize_m) {
+        grid.clear();
+        grid.setCellSize_m(cellSize_m);
+
+        for (Map.Entry<Entity, Integer> entry : slots.entrySet()) {
+            final Entity entity = entry.getKey();
+            final LocationComponent location = entity.getComponent(LocationComponent.class);
+            entry.setValue(grid.add(entity, location.position, getRadius_m(entity)));
+        }
+    }
+
+    private float getRadius_m(Entity entity) {
+        final PhysicalComponent physical = entity.getComponent(PhysicalComponent.class);
+        return physical != null ? physical.getRadius_m() : 0;
+    }
+}
@@ -0,0 +1,100 @@
+package org.ludumdare29.processors;
+
+import com.badlogic.gdx.math.Quaternion;
+import com.badlogic.gdx.math.Vector3;
+import org.entityflow.entity.Entity;
+import org.flowutils.time.Time;
+import org.ludumdare29.components.LocationComponent;
+import org.ludumdare29.components.PhysicalComponent;
+import org.ludumdare29.particles.BubbleParticles;
+import org.ludumdare29.physics.PhysicsState;
+import org.ludumdare29.utils.RandomStreams;
+
+/**
+ * Calculates a hash of the simulation state after each step, for checking that two runs with the same seed
+ * stay in sync.  Should be added after the other simulation processors.
+ *
+ * Covers the position, direction and velocity of located entities, and the positions and velocities of bubble particles.
+ * The entity hashes are summed, so the order the entities are processed in does not matter,
+ * while the bubble particles are hashed in index order, as their order is part of the simulation state.
+ * Floats are hashed by their exact bits, so any difference shows up.
+ */
+public final class StateHashProcessor extends GameProcessor {
+
+    private final BubbleParticles bubbleParticles;
+
+    private long entityHash;
+    private long lastHash = 0;
+
+    /**
+     * @param bubbleParticles bubble particles to include in the hash, or null for none.
+     */
+    public StateHashProcessor(BubbleParticles bubbleParticles) {
+        super(StateHashProcessor.class, LocationComponent.class);
+        this.bubbleParticles = bubbleParticles;
+    }
+
+    /**
+     * @return hash of the simulation state after the last step this processor ran on.
+     */
+    public long getLastHash() {
+        return lastHash;
+    }
+
+    @Override protected void onPreProcess(Time time) {
+        entityHash = 0;
+    }
+
+    @Override protected void onProcessEntity(Time time, Entity entity) {
+        final LocationComponent location = entity.getComponent(LocationComponent.class);
+        final PhysicalComponent physical = entity.getComponent(PhysicalComponent.class);
+
+        long hash = 1;
+        hash = hash(hash, location.position);
+        hash = hash(hash, location.direction);
+        if (physical != null) hash = hash(hash, physical.velocity);
+
+        entityHash += RandomStreams.mix(hash);
+    }
+
+    @Override protected void onPostProcess(Time time) {
+        long hash = RandomStreams.mix(entityHash);
+
+        if (bubbleParticles != null) {
+            final PhysicsState state = bubbleParticles.getPhysicsState();
+            final int size = bubbleParticles.size();
+            hash = hash(hash, size);
+            for (int i = 0; i < size; i++) {
+                hash = hash(hash, state.posX[i]);
+                hash = hash(hash, state.posY[i]);
+                hash = hash(hash, state.posZ[i]);
+                hash = hash(hash, state.velX[i]);
+                hash = hash(hash, state.velY[i]);
+                hash = hash(hash, state.velZ[i]);
+            }
+        }
+
+        lastHash = hash;
+    }
+
+    private static long hash(long hash, Vector3 v) {
+        hash = hash(hash, v.x);
+        hash = hash(hash, v.y);
+        return hash(hash, v.z);
+    }
+
+    private static long hash(long hash, Quaternion q) {
+        hash = hash(hash, q.x);
+        hash = hash(hash, q.y);
+        hash = hash(hash, q.z);
+        return hash(hash, q.w);
+    }
+
+    private static long hash(long hash, float value) {
+        return hash(hash, Float.floatToRawIntBits(value));
+    }
+
+    private static long hash(long hash, int value) {
+        return RandomStreams.mix(hash + value);
+    }
+}
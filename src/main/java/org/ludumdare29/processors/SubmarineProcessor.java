@@ -3,12 +3,12 @@ package org.ludumdare29.processors;
 import com.badlogic.gdx.math.Quaternion;
 import com.badlogic.gdx.math.Vector3;
 import org.entityflow.entity.Entity;
-import org.entityflow.system.BaseEntityProcessor;
 import org.flowutils.MathUtils;
 import org.flowutils.time.Time;
 import org.ludumdare29.Sea;
 import org.ludumdare29.components.LocationComponent;
 import org.ludumdare29.components.PhysicalComponent;
+import org.ludumdare29.components.RelevanceComponent;
 import org.ludumdare29.components.ShipComponent;
 import org.ludumdare29.components.SubmarineComponent;
 import org.ludumdare29.parts.AlarmStatus;
@@ -18,7 +18,7 @@ import static org.flowutils.MathUtils.*;
 /**
  *
  */
-public class SubmarineProcessor extends BaseEntityProcessor {
+public class SubmarineProcessor extends GameProcessor {
 
     private final Vector3 temp = new Vector3();
     private final Quaternion tempQ = new Quaternion();
@@ -31,9 +31,12 @@ public class SubmarineProcessor extends BaseEntityProcessor {
         this.sea = sea;
     }
 
-    @Override protected void processEntity(Time time, Entity entity) {
+    @Override protected void onProcessEntity(Time time, Entity entity) {
 
-        final float secondsSinceLastStep = (float) time.getSecondsSinceLastStep();
+        // Far away entities are updated less often, with the time since their last update
+        final RelevanceComponent relevance = entity.getComponent(RelevanceComponent.class);
+        if (relevance != null && !relevance.due) return;
+        final float secondsSinceLastStep = relevance != null ? relevance.deltaSeconds : (float) getSecondsSinceLastRun();
         final float hoursSinceLastStep = secondsSinceLastStep / (60*60);
 
         final ShipComponent ship = entity.getComponent(ShipComponent.class);
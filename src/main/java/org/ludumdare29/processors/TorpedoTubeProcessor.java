@@ -1,7 +1,6 @@
 package org.ludumdare29.processors;
 
 import org.entityflow.entity.Entity;
-import org.entityflow.system.BaseEntityProcessor;
 import org.flowutils.time.Time;
 import org.ludumdare29.EntityFactory;
 import org.ludumdare29.components.ColorAccented;
@@ -11,7 +10,7 @@ import org.ludumdare29.components.TorpedoTubeComponent;
 /**
  *
  */
-public class TorpedoTubeProcessor extends BaseEntityProcessor {
+public class TorpedoTubeProcessor extends GameProcessor {
 
     private final EntityFactory entityFactory;
 
@@ -20,12 +19,12 @@ public class TorpedoTubeProcessor extends BaseEntityProcessor {
         this.entityFactory = entityFactory;
     }
 
-    @Override protected void processEntity(Time time, Entity entity) {
+    @Override protected void onProcessEntity(Time time, Entity entity) {
         final LocationComponent location = entity.getComponent(LocationComponent.class);
         final TorpedoTubeComponent tube = entity.getComponent(TorpedoTubeComponent.class);
         final ColorAccented colorAccented = entity.getComponent(ColorAccented.class);
 
-        tube.secondsUntilReloaded -= time.getLastStepDurationSeconds();
+        tube.secondsUntilReloaded -= getSecondsSinceLastRun();
 
         if (tube.isLaunchRequested() && tube.isReadyToFire()) {
             entityFactory.createTorpedo(entity, location.position, location.direction, tube.torpedoSizeFactor, tube.torpedoSpeedFactor, colorAccented.accentColor);
@@ -3,7 +3,6 @@ package org.ludumdare29.processors;
 import com.badlogic.gdx.math.Quaternion;
 import com.badlogic.gdx.math.Vector3;
 import org.entityflow.entity.Entity;
-import org.entityflow.system.BaseEntityProcessor;
 import org.flowutils.time.Time;
 import org.ludumdare29.components.LocationComponent;
 import org.ludumdare29.components.TrackingComponent;
@@ -11,7 +10,7 @@ import org.ludumdare29.components.TrackingComponent;
 /**
  *
  */
-public final class TrackingProcessor extends BaseEntityProcessor {
+public final class TrackingProcessor extends GameProcessor {
 
     private final Vector3 tempV = new Vector3();
     private final Quaternion tempQ = new Quaternion();
@@ -21,7 +20,7 @@ public final class TrackingProcessor extends BaseEntityProcessor {
         super(TrackingProcessor.class, TrackingComponent.class, LocationComponent.class);
     }
 
-    @Override protected void processEntity(Time time, Entity entity) {
+    @Override protected void onProcessEntity(Time time, Entity entity) {
         final TrackingComponent tracking = entity.getComponent(TrackingComponent.class);
         final LocationComponent location = entity.getComponent(LocationComponent.class);
 
@@ -4,6 +4,8 @@ import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.PerspectiveCamera;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.g3d.*;
 import com.badlogic.gdx.graphics.g3d.attributes.ColorAttribute;
 import com.badlogic.gdx.graphics.g3d.environment.DirectionalLight;
@@ -11,11 +13,11 @@ import com.badlogic.gdx.graphics.g3d.environment.PointLight;
 import com.badlogic.gdx.math.Quaternion;
 import com.badlogic.gdx.math.Vector3;
 import org.entityflow.entity.Entity;
-import org.entityflow.system.BaseEntityProcessor;
 import org.flowutils.time.Time;
 import org.ludumdare29.components.UiComponent;
 import org.ludumdare29.components.appearance.AppearanceComponent;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.flowutils.MathUtils.*;
@@ -23,7 +25,7 @@ import static org.flowutils.MathUtils.*;
 /**
  * Renders the UI
  */
-public class UiProcessor extends BaseEntityProcessor {
+public class UiProcessor extends GameProcessor {
 
     private static final Color AMBIENT_LIGHT = new Color(0.1f, 0.2f, 0.3f, 1f);
     private static final Color CABIN_LIGHT1_COLOR = new Color(0.6f, 0.35f, 0.3f, 1f);
@@ -39,11 +41,19 @@ public class UiProcessor extends BaseEntityProcessor {
     private static final Color DIRECTIONAL_LIGHT_COLOR = new Color(0.7f, 0.6f, 0.4f, 1f);
     private static final Vector3 DIRECTIONAL_LIGHT_DIRECTION = new Vector3(0.1f, -1f, 0.3f).nor();
 
+    private static final Color TIMING_OVERLAY_COLOR = new Color(0.8f, 1f, 0.8f, 1f);
+    private static final float TIMING_OVERLAY_MARGIN = 10f;
+
     public PerspectiveCamera camera;
     public ModelBatch modelBatch;
     public Environment environment;
 
     public boolean uiVisible = true;
+    public boolean timingOverlayVisible = false;
+
+    private final List<GameProcessor> timedProcessors = new ArrayList<GameProcessor>();
+    private SpriteBatch spriteBatch;
+    private BitmapFont font;
 
     private final Quaternion tempQ = new Quaternion();
 
@@ -62,6 +72,25 @@ public class UiProcessor extends BaseEntityProcessor {
         this.uiVisible = uiVisible;
     }
 
+    public boolean isTimingOverlayVisible() {
+        return timingOverlayVisible;
+    }
+
+    /**
+     * @param timingOverlayVisible true to show the timings of the timed processors on top of the UI.
+     */
+    public void setTimingOverlayVisible(boolean timingOverlayVisible) {
+        this.timingOverlayVisible = timingOverlayVisible;
+    }
+
+    /**
+     * @param processors processors whose timings are shown in the timing overlay.
+     */
+    public void setTimedProcessors(List<? extends GameProcessor> processors) {
+        timedProcessors.clear();
+        timedProcessors.addAll(processors);
+    }
+
     @Override protected void onInit() {
         // Setup model batching
         modelBatch = new ModelBatch();
@@ -81,9 +110,14 @@ public class UiProcessor extends BaseEntityProcessor {
         environment.add(new PointLight().set(CABIN_LIGHT1_COLOR, CABIN_LIGHT1_POS, CABIN_LIGHT1_INTENSITY));
         environment.add(new PointLight().set(CABIN_LIGHT2_COLOR, CABIN_LIGHT2_POS, CABIN_LIGHT2_INTENSITY));
         environment.add(new PointLight().set(CABIN_LIGHT3_COLOR, CABIN_LIGHT3_POS, CABIN_LIGHT3_INTENSITY));
+
+        // Setup timing overlay
+        spriteBatch = new SpriteBatch();
+        font = new BitmapFont();
+        font.setColor(TIMING_OVERLAY_COLOR);
     }
 
-    @Override protected void preProcess(Time time) {
+    @Override protected void onPreProcess(Time time) {
         // Clear depth
         //Gdx.gl.glViewport(0, 0, Gdx.graphics.getWidth(), Gdx.graphics.getHeight());
         Gdx.gl.glClear(GL20.GL_DEPTH_BUFFER_BIT);
@@ -93,7 +127,7 @@ public class UiProcessor extends BaseEntityProcessor {
     }
 
 
-    @Override protected void processEntity(Time time, Entity entity) {
+    @Override protected void onProcessEntity(Time time, Entity entity) {
         final UiComponent ui = entity.getComponent(UiComponent.class);
         final AppearanceComponent appearance = entity.getComponent(AppearanceComponent.class);
 
@@ -132,12 +166,41 @@ public class UiProcessor extends BaseEntityProcessor {
 
     }
 
-    @Override protected void postProcess(Time time) {
+    @Override protected void onPostProcess(Time time) {
         modelBatch.end();
+
+        if (timingOverlayVisible) renderTimingOverlay();
+    }
+
+    private void renderTimingOverlay() {
+        final float lineHeight = font.getLineHeight();
+        float y = Gdx.graphics.getHeight() - TIMING_OVERLAY_MARGIN;
+
+        spriteBatch.begin();
+        font.draw(spriteBatch, "processor               entities     pre us    loop us    post us     p50 us     p95 us     p99 us    bytes", TIMING_OVERLAY_MARGIN, y);
+        for (GameProcessor processor : timedProcessors) {
+            y -= lineHeight;
+            final ProcessorTimings timings = processor.getTimings();
+            font.draw(spriteBatch,
+                      String.format("%-24s %8d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f %8d",
+                                    processor.getClass().getSimpleName(),
+                                    timings.getLastEntityCount(),
+                                    timings.getLastPreProcessNanoseconds() / 1000.0,
+                                    timings.getLastLoopNanoseconds() / 1000.0,
+                                    timings.getLastPostProcessNanoseconds() / 1000.0,
+                                    timings.getPercentileNanoseconds(50) / 1000.0,
+                                    timings.getPercentileNanoseconds(95) / 1000.0,
+                                    timings.getPercentileNanoseconds(99) / 1000.0,
+                                    timings.getLastAllocatedBytes()),
+                      TIMING_OVERLAY_MARGIN, y);
+        }
+        spriteBatch.end();
     }
 
     @Override public void shutdown() {
         modelBatch.dispose();
+        spriteBatch.dispose();
+        font.dispose();
     }
 
 }
@@ -0,0 +1,76 @@
+package org.ludumdare29.replay;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Layout of the binary replay files.
+ *
+ * Header: magic, version, master seed, step milliseconds, keyframe interval in steps.
+ * Then a sequence of records, each starting with a tag byte, and ending with an END record.
+ *
+ * An EVENTS record has the control events applied before one step: the step as a varint difference to the step of
+ * the previous record, the byte length of the events as a varint, the event count as a varint, and the events.
+ * Each event has the replay id of the entity as a zigzag varint difference to the id of the previous event,
+ * a byte with the event type in the two highest bits and the number of the control in the lower bits,
+ * and a value that depends on the type: a varint key code for key events, a float for targets, and none for launches.
+ *
+ * A KEYFRAME record has the complete state before a step: the step as a long, the byte length of the rest of the
+ * record as an int, the length of the world snapshot as an int, the snapshot as written by SnapshotWriter,
+ * the state of the random number streams, the count of entities in the snapshot as an int,
+ * the replay id of each snapshot entity as an int, or -1 if it has none, and the next free replay id as an int.
+ *
+ * The END record has the step after the last recorded step as a long.
+ */
+final class ReplayFormat {
+
+    /**
+     * "LDRP" in ASCII.
+     */
+    static final int MAGIC = 0x4c445250;
+    static final int VERSION = 1;
+
+    static final int HEADER_BYTES = 4 + 4 + 8 + 4 + 4;
+
+    // Record tags
+    static final byte EVENTS = 1;
+    static final byte KEYFRAME = 2;
+    static final byte END = 3;
+
+    static final int EVENT_TYPE_SHIFT = 6;
+    static final int MAX_CONTROL_INDEX = (1 << EVENT_TYPE_SHIFT) - 1;
+
+    private ReplayFormat() {
+    }
+
+    static void writeVarint(DataOutput output, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            output.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        output.writeByte((int) value);
+    }
+
+    static long readVarint(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (shift > 63) throw new IllegalArgumentException("Too long varint in the replay");
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+}
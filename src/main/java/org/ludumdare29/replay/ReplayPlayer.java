@@ -0,0 +1,320 @@
+package org.ludumdare29.replay;
+
+import org.entityflow.entity.Entity;
+import org.ludumdare29.Simulation;
+import org.ludumdare29.components.TorpedoTubeComponent;
+import org.ludumdare29.parts.ControlListener;
+import org.ludumdare29.parts.Controllable;
+import org.ludumdare29.processors.ReplayProcessor;
+import org.ludumdare29.snapshot.SnapshotReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static org.ludumdare29.replay.ReplayFormat.*;
+
+/**
+ * Plays a replay file written by ReplayRecorder in a headless simulation.
+ *
+ * The simulation starts from the first keyframe of the replay, and the recorded control events are applied before
+ * the steps they were recorded for.  The enemy processor makes no decisions of its own, they come from the replay.
+ *
+ * Seeking to a step restores the nearest keyframe at or before it into a new simulation, and plays forward from there.
+ * The file is memory mapped, and indexed when opened.
+ */
+public final class ReplayPlayer {
+
+    private final File file;
+    private final ByteBuffer buffer;
+    private final long masterSeed;
+    private final int stepMilliseconds;
+    private final int keyframeIntervalSteps;
+
+    // Steps and file positions of the keyframes, in order
+    private final List<Long> keyframeSteps = new ArrayList<>();
+    private final List<Integer> keyframePositions = new ArrayList<>();
+    private long lastStep;
+
+    private final List<Entity> restoredEntities = new ArrayList<>();
+    private Simulation simulation = null;
+    private int position;
+    private long previousRecordStep;
+
+    /**
+     * Opens and indexes the replay, and restores its first keyframe.
+     *
+     * @throws IOException if the file could not be read, or is not a valid replay.
+     */
+    public ReplayPlayer(File file) throws IOException {
+        this.file = file;
+        try (FileChannel channel = FileChannel.open(file.toPath(), READ)) {
+            final MappedByteBuffer mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer = mappedBuffer;
+        }
+
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) throw new IOException("Not a replay: " + file);
+        final int version = buffer.getInt();
+        if (version != VERSION) throw new IOException("Unsupported replay version " + version + ", expected " + VERSION + ": " + file);
+        masterSeed = buffer.getLong();
+        stepMilliseconds = buffer.getInt();
+        keyframeIntervalSteps = buffer.getInt();
+
+        index();
+        if (keyframeSteps.isEmpty()) throw new IOException("The replay has no keyframes: " + file);
+
+        restoreKeyframe(0);
+    }
+
+    /**
+     * Applies the recorded events of the current step, and runs the step.
+     */
+    public void step() {
+        applyEvents();
+        simulation.step();
+    }
+
+    /**
+     * Moves the replay to the state before the specified step.
+     * Plays forward from the current step, or from the nearest keyframe if it is closer or the step is earlier.
+     *
+     * @param step step to move to, between the first and last step of the replay.
+     */
+    public void seek(long step) throws IOException {
+        if (step < getFirstStep() || step > lastStep) throw new IllegalArgumentException("Step " + step + " is outside the replay, which has steps " + getFirstStep() + " to " + lastStep);
+
+        final int keyframe = findKeyframe(step);
+        final long currentStep = getStep();
+        if (step < currentStep || keyframeSteps.get(keyframe) > currentStep) {
+            restoreKeyframe(keyframe);
+        }
+
+        while (getStep() < step) {
+            step();
+        }
+    }
+
+    /**
+     * Shuts down the world of the current simulation.
+     */
+    public void shutdown() {
+        if (simulation != null) {
+            simulation.getWorld().shutdown();
+            simulation = null;
+        }
+    }
+
+    /**
+     * @return the simulation the replay is played in.  A new simulation is created when seeking backwards,
+     *         or forward past a keyframe.
+     */
+    public Simulation getSimulation() {
+        return simulation;
+    }
+
+    /**
+     * @return the step that runs next.
+     */
+    public long getStep() {
+        return simulation.getScheduler().getStepCount();
+    }
+
+    /**
+     * @return the step of the first keyframe, where the replay starts.
+     */
+    public long getFirstStep() {
+        return keyframeSteps.get(0);
+    }
+
+    /**
+     * @return the step after the last recorded step.
+     */
+    public long getLastStep() {
+        return lastStep;
+    }
+
+    /**
+     * @return true if all recorded steps have been played.
+     */
+    public boolean isFinished() {
+        return getStep() >= lastStep;
+    }
+
+    public long getMasterSeed() {
+        return masterSeed;
+    }
+
+    public int getStepMilliseconds() {
+        return stepMilliseconds;
+    }
+
+    public int getKeyframeIntervalSteps() {
+        return keyframeIntervalSteps;
+    }
+
+    /**
+     * @return number of keyframes in the replay.
+     */
+    public int getKeyframeCount() {
+        return keyframeSteps.size();
+    }
+
+    private void index() throws IOException {
+        long recordStep = 0;
+        try {
+            while (buffer.hasRemaining()) {
+                final int recordPosition = buffer.position();
+                final byte tag = buffer.get();
+                if (tag == END) {
+                    lastStep = Math.max(lastStep, buffer.getLong());
+                    break;
+                }
+                else if (tag == KEYFRAME) {
+                    recordStep = buffer.getLong();
+                    final int length = buffer.getInt();
+                    buffer.position(buffer.position() + length);
+                    keyframeSteps.add(recordStep);
+                    keyframePositions.add(recordPosition);
+                    lastStep = Math.max(lastStep, recordStep);
+                }
+                else if (tag == EVENTS) {
+                    recordStep += readVarint(buffer);
+                    final int length = (int) readVarint(buffer);
+                    readVarint(buffer);
+                    buffer.position(buffer.position() + length);
+                    lastStep = Math.max(lastStep, recordStep + 1);
+                }
+                else throw new IOException("Unknown record " + tag + " at " + recordPosition + " in the replay " + file);
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            // The recording was cut off, e.g. by a crash, play what was recorded
+        }
+    }
+
+    /**
+     * @return index of the last keyframe at or before the step.
+     */
+    private int findKeyframe(long step) {
+        int keyframe = 0;
+        while (keyframe + 1 < keyframeSteps.size() && keyframeSteps.get(keyframe + 1) <= step) {
+            keyframe++;
+        }
+        return keyframe;
+    }
+
+    private void restoreKeyframe(int keyframe) throws IOException {
+        shutdown();
+
+        simulation = new Simulation(stepMilliseconds, false, masterSeed);
+        simulation.getWorld().init();
+        simulation.getEnemyProcessor().setDecisionsEnabled(false);
+
+        buffer.position(keyframePositions.get(keyframe));
+        try {
+            buffer.get();
+            final long step = buffer.getLong();
+            buffer.getInt();
+
+            // World
+            final int snapshotLength = buffer.getInt();
+            final ByteBuffer snapshot = buffer.slice();
+            snapshot.limit(snapshotLength);
+            restoredEntities.clear();
+            new SnapshotReader().read(snapshot, simulation, restoredEntities);
+            buffer.position(buffer.position() + snapshotLength);
+
+            // Random number streams and scheduler phase
+            simulation.getRandomStreams().readState(buffer);
+            simulation.getScheduler().setStepCount(step);
+
+            // Replay ids
+            final ReplayProcessor replayProcessor = simulation.getReplayProcessor();
+            final int entityCount = buffer.getInt();
+            if (entityCount != restoredEntities.size()) throw new IOException("The keyframe at step " + step + " has ids for " + entityCount + " entities, but " + restoredEntities.size() + " were restored");
+            for (int i = 0; i < entityCount; i++) {
+                final int id = buffer.getInt();
+                if (id != ReplayProcessor.NO_ID) replayProcessor.setId(restoredEntities.get(i), id);
+            }
+            replayProcessor.setNextId(buffer.getInt());
+            restoredEntities.clear();
+
+            position = buffer.position();
+            previousRecordStep = step;
+        }
+        catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Invalid keyframe at step " + keyframeSteps.get(keyframe) + " in the replay " + file, e);
+        }
+    }
+
+    /**
+     * Applies the events recorded for the current step, and skips past keyframes already reached.
+     */
+    private void applyEvents() {
+        final long currentStep = getStep();
+        buffer.position(position);
+        while (buffer.hasRemaining()) {
+            final byte tag = buffer.get();
+            if (tag == KEYFRAME) {
+                final long step = buffer.getLong();
+                if (step > currentStep) break;
+                final int length = buffer.getInt();
+                buffer.position(buffer.position() + length);
+                previousRecordStep = step;
+            }
+            else if (tag == EVENTS) {
+                final long step = previousRecordStep + readVarint(buffer);
+                if (step > currentStep) break;
+                final int length = (int) readVarint(buffer);
+                final int eventCount = (int) readVarint(buffer);
+                if (step == currentStep) applyEvents(eventCount);
+                else buffer.position(buffer.position() + length);
+                previousRecordStep = step;
+            }
+            else break;
+
+            position = buffer.position();
+        }
+    }
+
+    private void applyEvents(int eventCount) {
+        final ReplayProcessor replayProcessor = simulation.getReplayProcessor();
+        int id = 0;
+        for (int i = 0; i < eventCount; i++) {
+            id += (int) unzigzag(readVarint(buffer));
+            final int typeAndIndex = buffer.get() & 0xFF;
+            final int event = typeAndIndex >>> EVENT_TYPE_SHIFT;
+            final int controlIndex = typeAndIndex & MAX_CONTROL_INDEX;
+
+            final Entity entity = replayProcessor.getEntity(id);
+            switch (event) {
+                case ControlListener.KEY_DOWN:
+                case ControlListener.KEY_UP: {
+                    final int keycode = (int) readVarint(buffer);
+                    final Controllable controllable = entity != null ? ReplayProcessor.getControllable(entity, controlIndex) : null;
+                    if (controllable != null) {
+                        if (event == ControlListener.KEY_DOWN) controllable.keyDown(keycode);
+                        else controllable.keyUp(keycode);
+                    }
+                    break;
+                }
+                case ControlListener.TARGET: {
+                    final float target = buffer.getFloat();
+                    final Controllable controllable = entity != null ? ReplayProcessor.getControllable(entity, controlIndex) : null;
+                    if (controllable != null) controllable.setTarget(target);
+                    break;
+                }
+                default: {
+                    final TorpedoTubeComponent tube = entity != null ? entity.getComponent(TorpedoTubeComponent.class) : null;
+                    if (tube != null) tube.requestLaunch();
+                    break;
+                }
+            }
+        }
+    }
+}
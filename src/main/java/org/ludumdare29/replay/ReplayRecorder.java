@@ -0,0 +1,249 @@
+package org.ludumdare29.replay;
+
+import org.entityflow.entity.Entity;
+import org.ludumdare29.Simulation;
+import org.ludumdare29.components.TorpedoTubeComponent;
+import org.ludumdare29.parts.ControlListener;
+import org.ludumdare29.processors.ReplayProcessor;
+import org.ludumdare29.snapshot.SnapshotWriter;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.ludumdare29.replay.ReplayFormat.*;
+
+/**
+ * Records the control events of the player and the AI in a simulation to a replay file, see ReplayFormat.
+ *
+ * Listens to the controls of all entities with a replay id, and records the events made between steps, by the player,
+ * and the events made by the enemy processor during steps.  Events made by the other processors are left out,
+ * as they are made again when the replay is played.
+ *
+ * Keyframes are written at the start of the step they are for, see SnapshotProcessor, so that they include the entity
+ * changes of the previous step.  The events made between steps before a keyframe are applied again after it when
+ * playing, which leaves the controls the same.
+ *
+ * Created by Simulation.startRecording, which calls beginStep and endStep around each step.
+ */
+public final class ReplayRecorder implements ReplayProcessor.Listener {
+
+    private final Simulation simulation;
+    private final ReplayProcessor replayProcessor;
+    private final int keyframeIntervalSteps;
+    private final DataOutputStream output;
+    private final SnapshotWriter snapshotWriter = new SnapshotWriter();
+    private final List<Entity> snapshotEntities = new ArrayList<>();
+
+    private final ByteArrayOutputStream eventBytes = new ByteArrayOutputStream();
+    private final DataOutputStream eventOutput = new DataOutputStream(eventBytes);
+    private int eventCount = 0;
+    private int previousEventId = 0;
+    private long previousRecordStep;
+    private boolean inStep = false;
+    private boolean keyframePending = false;
+    private boolean closed = false;
+
+    private final Runnable keyframeTask = new Runnable() {
+        @Override public void run() {
+            keyframePending = false;
+            if (closed) return;
+            try {
+                writeKeyframe(simulation.getScheduler().getStepCount());
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not write to the replay: " + e.getMessage(), e);
+            }
+        }
+    };
+
+    /**
+     * Starts recording, writes the header, and writes a keyframe at the start of the next step.
+     *
+     * @param keyframeIntervalSteps number of steps between keyframes.
+     */
+    public ReplayRecorder(Simulation simulation, File file, int keyframeIntervalSteps) throws IOException {
+        if (keyframeIntervalSteps <= 0) throw new IllegalArgumentException("keyframeIntervalSteps should be positive, but was " + keyframeIntervalSteps);
+
+        this.simulation = simulation;
+        this.keyframeIntervalSteps = keyframeIntervalSteps;
+        replayProcessor = simulation.getReplayProcessor();
+        output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+
+        try {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(simulation.getRandomStreams().getMasterSeed());
+            output.writeInt(simulation.getStepMilliseconds());
+            output.writeInt(keyframeIntervalSteps);
+        } catch (IOException e) {
+            output.close();
+            throw e;
+        }
+
+        // Listen to the controls of the entities that exist already, and the ones added later
+        for (int id = 0; id < replayProcessor.getNextId(); id++) {
+            final Entity entity = replayProcessor.getEntity(id);
+            if (entity != null) onEntityAdded(id, entity);
+        }
+        replayProcessor.setListener(this);
+        requestKeyframe();
+    }
+
+    /**
+     * Called by the simulation before a step is processed.
+     */
+    public void beginStep() {
+        inStep = true;
+    }
+
+    /**
+     * Called by the simulation after a step is processed.  Writes the events of the step,
+     * and requests a keyframe at the start of the next step if it is due.
+     */
+    public void endStep() {
+        inStep = false;
+
+        // The scheduler has already counted the processed step
+        final long nextStep = simulation.getScheduler().getStepCount();
+        try {
+            if (eventCount > 0) writeEvents(nextStep - 1);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write to the replay: " + e.getMessage(), e);
+        }
+        if (nextStep % keyframeIntervalSteps == 0) requestKeyframe();
+    }
+
+    /**
+     * Stops listening to the controls, writes the end of the replay, and closes the file.
+     * A keyframe that has not been written yet is left out.
+     */
+    public void close() throws IOException {
+        closed = true;
+        replayProcessor.setListener(null);
+        for (int id = 0; id < replayProcessor.getNextId(); id++) {
+            final Entity entity = replayProcessor.getEntity(id);
+            if (entity != null) onEntityRemoved(id, entity);
+        }
+
+        try {
+            // Events made after the last step are left out, as there is no step to apply them to
+            output.writeByte(END);
+            output.writeLong(simulation.getScheduler().getStepCount());
+        } finally {
+            output.close();
+        }
+    }
+
+    @Override public void onEntityAdded(int id, Entity entity) {
+        final int controllableCount = ReplayProcessor.getControllableCount(entity);
+        for (int i = 0; i < controllableCount; i++) {
+            ReplayProcessor.getControllable(entity, i).setControlListener(new RecordingListener(id, i));
+        }
+
+        final TorpedoTubeComponent tube = entity.getComponent(TorpedoTubeComponent.class);
+        if (tube != null) tube.controlListener = new RecordingListener(id, 0);
+    }
+
+    @Override public void onEntityRemoved(int id, Entity entity) {
+        final int controllableCount = ReplayProcessor.getControllableCount(entity);
+        for (int i = 0; i < controllableCount; i++) {
+            ReplayProcessor.getControllable(entity, i).setControlListener(null);
+        }
+
+        final TorpedoTubeComponent tube = entity.getComponent(TorpedoTubeComponent.class);
+        if (tube != null) tube.controlListener = null;
+    }
+
+    private void requestKeyframe() {
+        if (!keyframePending) {
+            keyframePending = true;
+            simulation.getSnapshotProcessor().runAtStepStart(keyframeTask);
+        }
+    }
+
+    private void recordEvent(int id, int controlIndex, int event, float value) {
+        // Leave out changes made by the processors, other than the AI, during steps
+        if (inStep && !simulation.getEnemyProcessor().isProcessing()) return;
+
+        try {
+            writeVarint(eventOutput, zigzag(id - previousEventId));
+            eventOutput.writeByte((event << EVENT_TYPE_SHIFT) | controlIndex);
+            switch (event) {
+                case ControlListener.KEY_DOWN:
+                case ControlListener.KEY_UP:
+                    writeVarint(eventOutput, (int) value);
+                    break;
+                case ControlListener.TARGET:
+                    eventOutput.writeFloat(value);
+                    break;
+                default:
+                    break;
+            }
+        } catch (IOException e) {
+            // Not thrown when writing to a byte array
+            throw new IllegalStateException(e);
+        }
+
+        previousEventId = id;
+        eventCount++;
+    }
+
+    private void writeEvents(long step) throws IOException {
+        output.writeByte(EVENTS);
+        writeVarint(output, step - previousRecordStep);
+        writeVarint(output, eventBytes.size());
+        writeVarint(output, eventCount);
+        eventBytes.writeTo(output);
+
+        eventBytes.reset();
+        eventCount = 0;
+        previousEventId = 0;
+        previousRecordStep = step;
+    }
+
+    private void writeKeyframe(long step) throws IOException {
+        // World snapshot
+        final ByteArrayOutputStream snapshotBytes = new ByteArrayOutputStream();
+        snapshotEntities.clear();
+        snapshotWriter.write(simulation, Channels.newChannel(snapshotBytes), snapshotEntities);
+
+        // Random number streams and replay ids
+        final ByteBuffer state = ByteBuffer.allocate(simulation.getRandomStreams().getStateBytes() + 4 + snapshotEntities.size() * 4 + 4);
+        simulation.getRandomStreams().writeState(state);
+        state.putInt(snapshotEntities.size());
+        for (Entity entity : snapshotEntities) {
+            state.putInt(replayProcessor.getId(entity));
+        }
+        state.putInt(replayProcessor.getNextId());
+        snapshotEntities.clear();
+
+        output.writeByte(KEYFRAME);
+        output.writeLong(step);
+        output.writeInt(4 + snapshotBytes.size() + state.position());
+        output.writeInt(snapshotBytes.size());
+        snapshotBytes.writeTo(output);
+        output.write(state.array(), 0, state.position());
+
+        previousRecordStep = step;
+    }
+
+    /**
+     * Records the events of one control of an entity.
+     */
+    private final class RecordingListener implements ControlListener {
+        private final int id;
+        private final int controlIndex;
+
+        private RecordingListener(int id, int controlIndex) {
+            if (controlIndex > MAX_CONTROL_INDEX) throw new IllegalArgumentException("Too many controls in an entity for the replay format");
+            this.id = id;
+            this.controlIndex = controlIndex;
+        }
+
+        @Override public void onControl(int event, float value) {
+            recordEvent(id, controlIndex, event, value);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package org.ludumdare29.snapshot;
+
+/**
+ * Layout of the binary world snapshot files.
+ *
+ * Header: magic, version, master seed of the random number streams, simulated milliseconds,
+ * next phase of the RelevanceProcessor, entity count.
+ * The seed decides the sea currents, so a snapshot can only be read into a simulation created with the same seed.
+ * Then for each entity a bit mask of its components, followed by the components in the order of the bits.
+ * Links to other entities, such as tracked entities, are stored as indexes of the entities in the file, or NO_ENTITY.
+ * The submarine of the player, that the enemies react to, is marked with the PLAYER bit, which has no data.
+ * Last the bubble particle count, followed by the particles as written by BubbleParticles.writeBubble.
+ */
+final class SnapshotFormat {
+
+    /**
+     * "LD29" in ASCII.
+     */
+    static final int MAGIC = 0x4c443239;
+    static final int VERSION = 4;
+
+    static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 4 + 4;
+
+    /**
+     * Upper limit for the size of one entity record, used for sizing the write buffer.
+     */
+    static final int MAX_ENTITY_BYTES = 4096;
+
+    static final int NO_ENTITY = -1;
+
+    // Component bits
+    static final int LOCATION = 1;
+    static final int PHYSICAL = 1 << 1;
+    static final int SHIP = 1 << 2;
+    static final int SUBMARINE = 1 << 3;
+    static final int ROCKET = 1 << 4;
+    static final int DAMAGEABLE = 1 << 5;
+    static final int EXPLODING = 1 << 6;
+    static final int BUBBLE = 1 << 7;
+    static final int BUBBLING = 1 << 8;
+    static final int TORPEDO_TUBE = 1 << 9;
+    static final int TRACKING = 1 << 10;
+    static final int ENEMY_AI = 1 << 11;
+    static final int COLOR_ACCENTED = 1 << 12;
+    static final int SUBMARINE_APPEARANCE = 1 << 13;
+    static final int TORPEDO_APPEARANCE = 1 << 14;
+    static final int BUBBLE_APPEARANCE = 1 << 15;
+    static final int PLAYER = 1 << 16;
+    static final int RELEVANCE = 1 << 17;
+
+    private SnapshotFormat() {
+    }
+}
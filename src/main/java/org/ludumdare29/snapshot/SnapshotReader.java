@@ -0,0 +1,407 @@
+package org.ludumdare29.snapshot;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.math.Quaternion;
+import com.badlogic.gdx.math.Vector3;
+import org.entityflow.component.BaseComponent;
+import org.entityflow.component.Component;
+import org.entityflow.entity.Entity;
+import org.ludumdare29.ComponentPools;
+import org.ludumdare29.Simulation;
+import org.ludumdare29.components.*;
+import org.ludumdare29.components.appearance.SubmarineAppearance;
+import org.ludumdare29.components.appearance.TorpedoAppearance;
+import org.ludumdare29.particles.BubbleParticles;
+import org.ludumdare29.parts.Controllable;
+import org.ludumdare29.parts.Tank;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static org.ludumdare29.snapshot.SnapshotFormat.*;
+
+/**
+ * Restores a simulation from a snapshot file written by SnapshotWriter.
+ * The file is memory mapped and the entities are created directly from the mapped buffer.
+ *
+ * The snapshot should be read into a new, initialized simulation, before it has been stepped or populated.
+ * Components of bubbles and torpedoes are taken from the component pools of the simulation, as when they are created.
+ */
+public final class SnapshotReader {
+
+    private final List<Component> components = new ArrayList<>();
+    private ComponentPools componentPools;
+    private ByteBuffer buffer;
+
+    private TrackingComponent[] trackings;
+    private int[] trackedIndexes;
+    private ExplodingComponent[] explodings;
+    private int[] ignoredIndexes;
+
+    /**
+     * @return master seed of the simulation the snapshot file was saved from, to create the simulation to read it into.
+     * @throws IOException if the file could not be read, or is not a valid snapshot.
+     */
+    public static long readMasterSeed(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), READ)) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Read until the header is complete or the file ends
+            }
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC) throw new IOException("Not a world snapshot: " + file);
+            final int version = header.getInt();
+            if (version != VERSION) throw new IOException("Unsupported snapshot version " + version + ", expected " + VERSION + ": " + file);
+            return header.getLong();
+        }
+    }
+
+    /**
+     * Creates the entities and bubble particles of the snapshot file in the simulation, and advances its time to the
+     * time of the snapshot.
+     *
+     * @return number of restored entities.
+     * @throws IOException if the file could not be read, is not a valid snapshot, or was saved with another master seed.
+     */
+    public int read(File file, Simulation simulation) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), READ)) {
+            final MappedByteBuffer mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(mappedBuffer, simulation, null);
+        }
+    }
+
+    /**
+     * Creates the entities and bubble particles of a snapshot in the simulation, and advances its time to the
+     * time of the snapshot.
+     *
+     * @param snapshot buffer positioned at the start of the snapshot.  Is left positioned after the snapshot.
+     * @param restoredEntities if not null, the created entities are added to it, in the order they were written.
+     * @return number of restored entities.
+     * @throws IOException if the buffer does not contain a valid snapshot, or it was saved with another master seed.
+     */
+    public int read(ByteBuffer snapshot, Simulation simulation, List<Entity> restoredEntities) throws IOException {
+        if (simulation.getTime().getSecondsSinceStart() != 0) throw new IllegalStateException("Snapshots can only be read into a new simulation");
+
+        componentPools = simulation.getEntityFactory().getComponentPools();
+        buffer = snapshot;
+        try {
+            if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) throw new IOException("Not a world snapshot");
+            final int version = buffer.getInt();
+            if (version != VERSION) throw new IOException("Unsupported snapshot version " + version + ", expected " + VERSION);
+            final long masterSeed = buffer.getLong();
+            if (masterSeed != simulation.getRandomStreams().getMasterSeed()) {
+                throw new IOException("The snapshot was saved with the master seed " + masterSeed + ", but the simulation has the seed " + simulation.getRandomStreams().getMasterSeed());
+            }
+
+            final long simulatedMilliseconds = buffer.getLong();
+            final int nextRelevancePhase = buffer.getInt();
+            final int entityCount = buffer.getInt();
+            if (entityCount < 0) throw new IOException("Invalid entity count " + entityCount + " in the snapshot");
+
+            // Create the entities
+            final Entity[] entities = new Entity[entityCount];
+            trackings = new TrackingComponent[entityCount];
+            trackedIndexes = new int[entityCount];
+            explodings = new ExplodingComponent[entityCount];
+            ignoredIndexes = new int[entityCount];
+            for (int i = 0; i < entityCount; i++) {
+                entities[i] = readEntity(simulation, i);
+            }
+
+            // Link them together, now that all exist
+            for (int i = 0; i < entityCount; i++) {
+                if (trackings[i] != null) trackings[i].trackedEntity = getEntity(entities, trackedIndexes[i]);
+                if (explodings[i] != null) explodings[i].entityToIgnoreForProximity = getEntity(entities, ignoredIndexes[i]);
+            }
+
+            // Bubble particles
+            final BubbleParticles bubbleParticles = simulation.getBubbleParticles();
+            final int bubbleCount = buffer.getInt();
+            for (int i = 0; i < bubbleCount; i++) {
+                bubbleParticles.readBubble(buffer);
+            }
+
+            // Continue from the time of the snapshot
+            simulation.getRelevanceProcessor().setNextPhase(nextRelevancePhase);
+            simulation.getTime().advanceTime(simulatedMilliseconds);
+            simulation.getTime().nextStep();
+
+            if (restoredEntities != null) Collections.addAll(restoredEntities, entities);
+            return entityCount;
+        }
+        catch (BufferUnderflowException e) {
+            throw new IOException("The snapshot ends unexpectedly", e);
+        }
+        finally {
+            buffer = null;
+            componentPools = null;
+            components.clear();
+            trackings = null;
+            trackedIndexes = null;
+            explodings = null;
+            ignoredIndexes = null;
+        }
+    }
+
+    private Entity readEntity(Simulation simulation, int index) throws IOException {
+        final int mask = buffer.getInt();
+        final boolean pooled = (mask & (BUBBLE | EXPLODING)) != 0;
+        components.clear();
+
+        if ((mask & LOCATION) != 0) {
+            final LocationComponent location = pooled ? componentPools.locations.obtain() : new LocationComponent();
+            getVector(location.position);
+            getQuaternion(location.direction);
+            location.resetInterpolation();
+            components.add(location);
+        }
+
+        if ((mask & PHYSICAL) != 0) {
+            final PhysicalComponent physical = pooled ? componentPools.physicals.obtain() : new PhysicalComponent();
+            getVector(physical.velocity);
+            getVector(physical.thrust);
+            getQuaternion(physical.rotation);
+            getQuaternion(physical.torque);
+            final float mass_kg = buffer.getFloat();
+            final float density_kg_per_m3 = buffer.getFloat();
+            final float radius_m = buffer.getFloat();
+            physical.setAll(mass_kg, density_kg_per_m3, radius_m, buffer.getFloat());
+            components.add(physical);
+        }
+
+        if ((mask & SHIP) != 0) {
+            final ShipComponent ship = new ShipComponent();
+            getSystem(ship);
+            ship.dieselConsumptionAtFullThrottle_l_per_s = buffer.getFloat();
+            components.add(ship);
+        }
+
+        if ((mask & SUBMARINE) != 0) {
+            final SubmarineComponent submarine = new SubmarineComponent();
+            getSystem(submarine);
+            submarine.motorElectricityConsumptionAtFullThrottle_W = buffer.getFloat();
+            submarine.pumpElectricityConsumption_W = buffer.getFloat();
+            submarine.lifeSupportElectricityConsumption_W = buffer.getFloat();
+            submarine.dieselConsumptionWhenCharging_l_per_s = buffer.getFloat();
+            submarine.minDensity_kg_per_m3 = buffer.getFloat();
+            submarine.maxDensity_kg_per_m3 = buffer.getFloat();
+            submarine.realignTime_s = buffer.getFloat();
+            submarine.diveDepth_m = buffer.getFloat();
+            submarine.diveDepth = getBoolean();
+            components.add(submarine);
+        }
+
+        if ((mask & ROCKET) != 0) {
+            // The thrust range is restored with the controllables
+            final RocketComponent rocket = new RocketComponent(0);
+            getSystem(rocket);
+            rocket.propellantUsedOnFullThrust_l_per_s = buffer.getFloat();
+            components.add(rocket);
+        }
+
+        if ((mask & DAMAGEABLE) != 0) {
+            // The hitpoints are restored with the tanks
+            final DamageableComponent damageable = new DamageableComponent(0, 0, 0);
+            getSystem(damageable);
+            damageable.debrisAmountOnDestruction = buffer.getFloat();
+            components.add(damageable);
+        }
+
+        if ((mask & EXPLODING) != 0) {
+            final float secondsUntilArmed = buffer.getFloat();
+            final float secondsUntilExplode = buffer.getFloat();
+            final float proximityTriggerRadius_m = buffer.getFloat();
+            final float explosiveDamage = buffer.getFloat();
+            final float damageRadius_m = buffer.getFloat();
+            final ExplodingComponent exploding = new ExplodingComponent(null,
+                                                                        secondsUntilExplode,
+                                                                        secondsUntilArmed,
+                                                                        proximityTriggerRadius_m,
+                                                                        explosiveDamage,
+                                                                        damageRadius_m);
+            ignoredIndexes[index] = buffer.getInt();
+            exploding.proximityTriggerComponentType = getComponentType();
+            explodings[index] = exploding;
+            components.add(exploding);
+        }
+
+        if ((mask & BUBBLE) != 0) {
+            final BubbleComponent bubble = componentPools.bubbles.obtain();
+            bubble.wobbleStart = buffer.getDouble();
+            bubble.lifeTime_seconds = buffer.getFloat();
+            bubble.age_seconds = buffer.getFloat();
+            bubble.floating = getBoolean();
+            components.add(bubble);
+        }
+
+        if ((mask & BUBBLING) != 0) {
+            final int bubbleCount = buffer.getInt();
+            final float bubbleDiam = buffer.getFloat();
+            final float bubbleCloudDiam = buffer.getFloat();
+            final boolean varyingBubbleSizes = getBoolean();
+            final boolean varyingBubbleCount = getBoolean();
+            final float bubblingInterval_seconds = buffer.getFloat();
+            final float bubbleLifetime_seconds = buffer.getFloat();
+            final boolean varyingInterval = getBoolean();
+            final boolean clusterBubbles = getBoolean();
+            final BubblingComponent bubbling = new BubblingComponent(bubblingInterval_seconds,
+                                                                     bubbleCount,
+                                                                     bubbleDiam,
+                                                                     bubbleCloudDiam,
+                                                                     bubbleLifetime_seconds,
+                                                                     varyingBubbleSizes,
+                                                                     varyingBubbleCount,
+                                                                     varyingInterval,
+                                                                     clusterBubbles);
+            getVector(bubbling.bubblingPosOffset);
+            bubbling.secondsUntilNextBubbles = buffer.getFloat();
+            bubbling.started = getBoolean();
+            components.add(bubbling);
+        }
+
+        if ((mask & TORPEDO_TUBE) != 0) {
+            final float reloadTime_s = buffer.getFloat();
+            final float torpedoSizeFactor = buffer.getFloat();
+            final float torpedoSpeedFactor = buffer.getFloat();
+            final TorpedoTubeComponent torpedoTube = new TorpedoTubeComponent(reloadTime_s, torpedoSizeFactor, torpedoSpeedFactor);
+            torpedoTube.secondsUntilReloaded = buffer.getFloat();
+            torpedoTube.launchKeyCode = buffer.getInt();
+            torpedoTube.launchRequested = getBoolean();
+            components.add(torpedoTube);
+        }
+
+        if ((mask & TRACKING) != 0) {
+            final TrackingComponent tracking = new TrackingComponent(null);
+            trackedIndexes[index] = buffer.getInt();
+            getVector(tracking.relativePosition);
+            getQuaternion(tracking.relativeDirection);
+            trackings[index] = tracking;
+            components.add(tracking);
+        }
+
+        if ((mask & ENEMY_AI) != 0) {
+            components.add(new EnemyAi());
+        }
+
+        if ((mask & COLOR_ACCENTED) != 0) {
+            components.add(new ColorAccented(getColor()));
+        }
+
+        if ((mask & SUBMARINE_APPEARANCE) != 0) {
+            final float length = buffer.getFloat();
+            final float width = buffer.getFloat();
+            final Color color = getColor();
+            final Color accentColor = getColor();
+            components.add(new SubmarineAppearance(length, width, color, accentColor, buffer.getLong()));
+        }
+
+        if ((mask & TORPEDO_APPEARANCE) != 0) {
+            final float length = buffer.getFloat();
+            final float width = buffer.getFloat();
+            final Color color = getColor();
+            components.add(new TorpedoAppearance(length, width, color, getColor()));
+        }
+
+        if ((mask & BUBBLE_APPEARANCE) != 0) {
+            components.add(componentPools.bubbleAppearances.obtain());
+        }
+
+        if ((mask & RELEVANCE) != 0) {
+            final RelevanceComponent relevance = new RelevanceComponent();
+            final int tier = buffer.get();
+            if (tier < 0 || tier >= RelevanceTier.values().length) throw new IOException("Invalid relevance tier " + tier + " in the snapshot");
+            relevance.tier = RelevanceTier.values()[tier];
+            relevance.phase = buffer.getInt();
+            relevance.lastUpdateSeconds = buffer.getDouble();
+            components.add(relevance);
+        }
+
+        final Entity entity = simulation.getWorld().createEntity(components.toArray(new Component[components.size()]));
+        if ((mask & PLAYER) != 0) simulation.getEnemyProcessor().setPlayer(entity);
+        return entity;
+    }
+
+    private void getSystem(SystemComponent system) throws IOException {
+        final List<Controllable> controllables = system.getControllables();
+        final int controllableCount = buffer.getInt();
+        if (controllableCount != controllables.size()) {
+            throw new IOException("The snapshot has " + controllableCount + " controllables for a " + system.getClass().getSimpleName() +
+                                  ", but it has " + controllables.size());
+        }
+        for (Controllable controllable : controllables) {
+            final float minValue = buffer.getFloat();
+            final float zeroValue = buffer.getFloat();
+            final float maxValue = buffer.getFloat();
+            final boolean allowNegativeTargetPos = getBoolean();
+            final float targetPos = buffer.getFloat();
+            final float currentPos = buffer.getFloat();
+            controllable.restoreState(minValue, zeroValue, maxValue, allowNegativeTargetPos, targetPos, currentPos);
+            controllable.setFunctional(getBoolean());
+            controllable.setJammed(getBoolean());
+            final boolean increaseKeyPressed = getBoolean();
+            final boolean decreaseKeyPressed = getBoolean();
+            controllable.restoreKeyState(increaseKeyPressed, decreaseKeyPressed, buffer.getFloat());
+        }
+
+        final List<Tank> tanks = system.getTanks();
+        final int tankCount = buffer.getInt();
+        if (tankCount != tanks.size()) {
+            throw new IOException("The snapshot has " + tankCount + " tanks for a " + system.getClass().getSimpleName() +
+                                  ", but it has " + tanks.size());
+        }
+        for (Tank tank : tanks) {
+            tank.setMaxCapacity(buffer.getFloat());
+            tank.setCurrentAmount(buffer.getFloat());
+            tank.setChange_per_second(buffer.getFloat());
+        }
+    }
+
+    private Class<? extends BaseComponent> getComponentType() throws IOException {
+        final byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        final String className = new String(bytes, SnapshotWriter.CHARSET);
+        try {
+            return Class.forName(className).asSubclass(BaseComponent.class);
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Unknown component type " + className + " in the snapshot", e);
+        }
+    }
+
+    private static Entity getEntity(Entity[] entities, int index) throws IOException {
+        if (index == NO_ENTITY) return null;
+        if (index < 0 || index >= entities.length) throw new IOException("Invalid entity link " + index + " in the snapshot");
+        return entities[index];
+    }
+
+    private void getVector(Vector3 out) {
+        out.x = buffer.getFloat();
+        out.y = buffer.getFloat();
+        out.z = buffer.getFloat();
+    }
+
+    private void getQuaternion(Quaternion out) {
+        out.x = buffer.getFloat();
+        out.y = buffer.getFloat();
+        out.z = buffer.getFloat();
+        out.w = buffer.getFloat();
+    }
+
+    private Color getColor() {
+        final float r = buffer.getFloat();
+        final float g = buffer.getFloat();
+        final float b = buffer.getFloat();
+        return new Color(r, g, b, buffer.getFloat());
+    }
+
+    private boolean getBoolean() {
+        return buffer.get() != 0;
+    }
+}
@@ -0,0 +1,347 @@
+package org.ludumdare29.snapshot;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.math.Quaternion;
+import com.badlogic.gdx.math.Vector3;
+import org.entityflow.entity.Entity;
+import org.ludumdare29.Simulation;
+import org.ludumdare29.components.*;
+import org.ludumdare29.components.appearance.AppearanceComponent;
+import org.ludumdare29.components.appearance.BubbleAppearance;
+import org.ludumdare29.components.appearance.SubmarineAppearance;
+import org.ludumdare29.components.appearance.TorpedoAppearance;
+import org.ludumdare29.particles.BubbleParticles;
+import org.ludumdare29.parts.Controllable;
+import org.ludumdare29.parts.Tank;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.file.StandardOpenOption.*;
+import static org.ludumdare29.snapshot.SnapshotFormat.*;
+
+/**
+ * Writes the entities and bubble particles of a simulation to a binary snapshot file, see SnapshotFormat.
+ * The data is collected in a direct buffer and written to a file channel whenever the buffer fills up.
+ * The writer can be reused, but should only be used by one thread at a time.
+ */
+public final class SnapshotWriter {
+
+    private static final int BUFFER_BYTES = 256 * 1024;
+    static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final List<Entity> entities = new ArrayList<>();
+    private final Map<Entity, Integer> entityIndexes = new IdentityHashMap<>();
+
+    private WritableByteChannel channel;
+    private Entity player;
+    private long bytesWritten;
+
+    /**
+     * Writes a snapshot of the simulation to the file, replacing any earlier content.
+     * Should be called at the start of a step, see SnapshotProcessor.runAtStepStart, as the entity changes of the
+     * previous step are not yet applied between steps.
+     *
+     * @return number of bytes written.
+     */
+    public long write(Simulation simulation, File file) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(file.toPath(), WRITE, CREATE, TRUNCATE_EXISTING)) {
+            return write(simulation, fileChannel, null);
+        }
+    }
+
+    /**
+     * Writes a snapshot of the simulation to the channel, starting at its current position.
+     * Should be called at the start of a step, see SnapshotProcessor.runAtStepStart.
+     *
+     * @param writtenEntities if not null, the written entities are added to it, in the order they were written.
+     * @return number of bytes written.
+     */
+    public long write(Simulation simulation, WritableByteChannel channel, List<Entity> writtenEntities) throws IOException {
+        // Number the entities, so that links between them can be written as indexes
+        entities.clear();
+        entityIndexes.clear();
+        for (Entity entity : simulation.getSnapshotProcessor().getEntities()) {
+            entityIndexes.put(entity, entities.size());
+            entities.add(entity);
+        }
+        if (writtenEntities != null) writtenEntities.addAll(entities);
+
+        bytesWritten = 0;
+        buffer.clear();
+        this.channel = channel;
+        player = simulation.getEnemyProcessor().getPlayer();
+        try {
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putLong(simulation.getRandomStreams().getMasterSeed());
+            buffer.putLong(simulation.getStepStartMilliseconds());
+            buffer.putInt(simulation.getRelevanceProcessor().getNextPhase());
+            buffer.putInt(entities.size());
+
+            for (Entity entity : entities) {
+                ensureSpace(MAX_ENTITY_BYTES);
+                writeEntity(entity);
+            }
+
+            final BubbleParticles bubbleParticles = simulation.getBubbleParticles();
+            final int bubbleCount = bubbleParticles.size();
+            ensureSpace(4);
+            buffer.putInt(bubbleCount);
+            for (int i = 0; i < bubbleCount; i++) {
+                ensureSpace(BubbleParticles.SAVED_BUBBLE_BYTES);
+                bubbleParticles.writeBubble(i, buffer);
+            }
+
+            flush();
+        }
+        finally {
+            this.channel = null;
+            player = null;
+            entities.clear();
+            entityIndexes.clear();
+        }
+
+        return bytesWritten;
+    }
+
+    private void writeEntity(Entity entity) {
+        final AppearanceComponent appearance = entity.getComponent(AppearanceComponent.class);
+
+        int mask = 0;
+        if (entity.containsComponent(LocationComponent.class)) mask |= LOCATION;
+        if (entity.containsComponent(PhysicalComponent.class)) mask |= PHYSICAL;
+        if (entity.containsComponent(ShipComponent.class)) mask |= SHIP;
+        if (entity.containsComponent(SubmarineComponent.class)) mask |= SUBMARINE;
+        if (entity.containsComponent(RocketComponent.class)) mask |= ROCKET;
+        if (entity.containsComponent(DamageableComponent.class)) mask |= DAMAGEABLE;
+        if (entity.containsComponent(ExplodingComponent.class)) mask |= EXPLODING;
+        if (entity.containsComponent(BubbleComponent.class)) mask |= BUBBLE;
+        if (entity.containsComponent(BubblingComponent.class)) mask |= BUBBLING;
+        if (entity.containsComponent(TorpedoTubeComponent.class)) mask |= TORPEDO_TUBE;
+        if (entity.containsComponent(TrackingComponent.class)) mask |= TRACKING;
+        if (entity.containsComponent(EnemyAi.class)) mask |= ENEMY_AI;
+        if (entity.containsComponent(ColorAccented.class)) mask |= COLOR_ACCENTED;
+        if (appearance instanceof SubmarineAppearance) mask |= SUBMARINE_APPEARANCE;
+        if (appearance instanceof TorpedoAppearance) mask |= TORPEDO_APPEARANCE;
+        if (appearance instanceof BubbleAppearance) mask |= BUBBLE_APPEARANCE;
+        if (entity == player) mask |= PLAYER;
+        if (entity.containsComponent(RelevanceComponent.class)) mask |= RELEVANCE;
+        buffer.putInt(mask);
+
+        if ((mask & LOCATION) != 0) {
+            final LocationComponent location = entity.getComponent(LocationComponent.class);
+            putVector(location.position);
+            putQuaternion(location.direction);
+        }
+
+        if ((mask & PHYSICAL) != 0) {
+            final PhysicalComponent physical = entity.getComponent(PhysicalComponent.class);
+            putVector(physical.velocity);
+            putVector(physical.thrust);
+            putQuaternion(physical.rotation);
+            putQuaternion(physical.torque);
+            buffer.putFloat(physical.getMass_kg());
+            buffer.putFloat(physical.getDensity_kg_per_m3());
+            buffer.putFloat(physical.getRadius_m());
+            buffer.putFloat(physical.dragCoefficient);
+        }
+
+        if ((mask & SHIP) != 0) {
+            final ShipComponent ship = entity.getComponent(ShipComponent.class);
+            putSystem(ship);
+            buffer.putFloat(ship.dieselConsumptionAtFullThrottle_l_per_s);
+        }
+
+        if ((mask & SUBMARINE) != 0) {
+            final SubmarineComponent submarine = entity.getComponent(SubmarineComponent.class);
+            putSystem(submarine);
+            buffer.putFloat(submarine.motorElectricityConsumptionAtFullThrottle_W);
+            buffer.putFloat(submarine.pumpElectricityConsumption_W);
+            buffer.putFloat(submarine.lifeSupportElectricityConsumption_W);
+            buffer.putFloat(submarine.dieselConsumptionWhenCharging_l_per_s);
+            buffer.putFloat(submarine.minDensity_kg_per_m3);
+            buffer.putFloat(submarine.maxDensity_kg_per_m3);
+            buffer.putFloat(submarine.realignTime_s);
+            buffer.putFloat(submarine.diveDepth_m);
+            putBoolean(submarine.diveDepth);
+        }
+
+        if ((mask & ROCKET) != 0) {
+            final RocketComponent rocket = entity.getComponent(RocketComponent.class);
+            putSystem(rocket);
+            buffer.putFloat(rocket.propellantUsedOnFullThrust_l_per_s);
+        }
+
+        if ((mask & DAMAGEABLE) != 0) {
+            final DamageableComponent damageable = entity.getComponent(DamageableComponent.class);
+            putSystem(damageable);
+            buffer.putFloat(damageable.debrisAmountOnDestruction);
+        }
+
+        if ((mask & EXPLODING) != 0) {
+            final ExplodingComponent exploding = entity.getComponent(ExplodingComponent.class);
+            buffer.putFloat(exploding.secondsUntilArmed);
+            buffer.putFloat(exploding.secondsUntilExplode);
+            buffer.putFloat(exploding.proximityTriggerRadius_m);
+            buffer.putFloat(exploding.explosiveDamage);
+            buffer.putFloat(exploding.damageRadius_m);
+            buffer.putInt(getIndex(exploding.entityToIgnoreForProximity));
+            putString(exploding.proximityTriggerComponentType.getName());
+        }
+
+        if ((mask & BUBBLE) != 0) {
+            final BubbleComponent bubble = entity.getComponent(BubbleComponent.class);
+            buffer.putDouble(bubble.wobbleStart);
+            buffer.putFloat(bubble.lifeTime_seconds);
+            buffer.putFloat(bubble.age_seconds);
+            putBoolean(bubble.floating);
+        }
+
+        if ((mask & BUBBLING) != 0) {
+            final BubblingComponent bubbling = entity.getComponent(BubblingComponent.class);
+            buffer.putInt(bubbling.bubbleCount);
+            buffer.putFloat(bubbling.bubbleDiam);
+            buffer.putFloat(bubbling.bubbleCloudDiam);
+            putBoolean(bubbling.varyingBubbleSizes);
+            putBoolean(bubbling.varyingBubbleCount);
+            buffer.putFloat(bubbling.bubblingInterval_seconds);
+            buffer.putFloat(bubbling.bubbleLifetime_seconds);
+            putBoolean(bubbling.varyingInterval);
+            putBoolean(bubbling.clusterBubbles);
+            putVector(bubbling.bubblingPosOffset);
+            buffer.putFloat(bubbling.secondsUntilNextBubbles);
+            putBoolean(bubbling.started);
+        }
+
+        if ((mask & TORPEDO_TUBE) != 0) {
+            final TorpedoTubeComponent torpedoTube = entity.getComponent(TorpedoTubeComponent.class);
+            buffer.putFloat(torpedoTube.reloadTime_s);
+            buffer.putFloat(torpedoTube.torpedoSizeFactor);
+            buffer.putFloat(torpedoTube.torpedoSpeedFactor);
+            buffer.putFloat(torpedoTube.secondsUntilReloaded);
+            buffer.putInt(torpedoTube.launchKeyCode);
+            putBoolean(torpedoTube.launchRequested);
+        }
+
+        if ((mask & TRACKING) != 0) {
+            final TrackingComponent tracking = entity.getComponent(TrackingComponent.class);
+            buffer.putInt(getIndex(tracking.trackedEntity));
+            putVector(tracking.relativePosition);
+            putQuaternion(tracking.relativeDirection);
+        }
+
+        if ((mask & COLOR_ACCENTED) != 0) {
+            putColor(entity.getComponent(ColorAccented.class).accentColor);
+        }
+
+        if ((mask & SUBMARINE_APPEARANCE) != 0) {
+            final SubmarineAppearance submarineAppearance = (SubmarineAppearance) appearance;
+            buffer.putFloat(submarineAppearance.length);
+            buffer.putFloat(submarineAppearance.width);
+            putColor(submarineAppearance.getColor());
+            putColor(submarineAppearance.getAccentColor());
+            buffer.putLong(submarineAppearance.getShapeSeed());
+        }
+
+        if ((mask & TORPEDO_APPEARANCE) != 0) {
+            final TorpedoAppearance torpedoAppearance = (TorpedoAppearance) appearance;
+            buffer.putFloat(torpedoAppearance.length);
+            buffer.putFloat(torpedoAppearance.width);
+            putColor(torpedoAppearance.getColor());
+            putColor(torpedoAppearance.getAccentColor());
+        }
+
+        if ((mask & RELEVANCE) != 0) {
+            final RelevanceComponent relevance = entity.getComponent(RelevanceComponent.class);
+            buffer.put((byte) relevance.tier.ordinal());
+            buffer.putInt(relevance.phase);
+            buffer.putDouble(relevance.lastUpdateSeconds);
+        }
+    }
+
+    private void putSystem(SystemComponent system) {
+        final List<Controllable> controllables = system.getControllables();
+        buffer.putInt(controllables.size());
+        for (Controllable controllable : controllables) {
+            buffer.putFloat(controllable.getMinValue());
+            buffer.putFloat(controllable.getZeroValue());
+            buffer.putFloat(controllable.getMaxValue());
+            putBoolean(controllable.getMinPos() < 0);
+            buffer.putFloat(controllable.getTargetPos());
+            buffer.putFloat(controllable.getCurrentPos());
+            putBoolean(controllable.isFunctional());
+            putBoolean(controllable.isJammed());
+            putBoolean(controllable.isIncreaseKeyPressed());
+            putBoolean(controllable.isDecreaseKeyPressed());
+            buffer.putFloat(controllable.getSecondsUntilNextControlStep());
+        }
+
+        final List<Tank> tanks = system.getTanks();
+        buffer.putInt(tanks.size());
+        for (Tank tank : tanks) {
+            buffer.putFloat(tank.getMaxCapacity());
+            buffer.putFloat(tank.getCurrentAmount());
+            buffer.putFloat(tank.getChange_per_second());
+        }
+    }
+
+    private int getIndex(Entity entity) {
+        if (entity == null) return NO_ENTITY;
+
+        // Links to entities that are not in the snapshot, such as cameras, are dropped
+        final Integer index = entityIndexes.get(entity);
+        return index != null ? index : NO_ENTITY;
+    }
+
+    private void putVector(Vector3 v) {
+        buffer.putFloat(v.x);
+        buffer.putFloat(v.y);
+        buffer.putFloat(v.z);
+    }
+
+    private void putQuaternion(Quaternion q) {
+        buffer.putFloat(q.x);
+        buffer.putFloat(q.y);
+        buffer.putFloat(q.z);
+        buffer.putFloat(q.w);
+    }
+
+    private void putColor(Color color) {
+        buffer.putFloat(color.r);
+        buffer.putFloat(color.g);
+        buffer.putFloat(color.b);
+        buffer.putFloat(color.a);
+    }
+
+    private void putBoolean(boolean value) {
+        buffer.put(value ? (byte) 1 : (byte) 0);
+    }
+
+    private void putString(String value) {
+        final byte[] bytes = value.getBytes(CHARSET);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private void ensureSpace(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) flush();
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            bytesWritten += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
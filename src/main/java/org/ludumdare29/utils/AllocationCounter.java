@@ -0,0 +1,69 @@
+package org.ludumdare29.utils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Reads the number of bytes allocated on the heap by the current thread, using the thread allocation counters of the JVM.
+ * Not all JVMs support them, in that case isSupported returns false and the counter always returns zero.
+ */
+public final class AllocationCounter {
+
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN = findThreadBean();
+
+    /**
+     * Bytes the counter reports as allocated by reading it twice in a row, subtracted from measurements.
+     */
+    private static final long MEASUREMENT_OVERHEAD_BYTES = calibrate();
+
+    /**
+     * @return true if the JVM supports counting allocated bytes per thread, and counting is enabled.
+     */
+    public static boolean isSupported() {
+        return THREAD_BEAN != null;
+    }
+
+    /**
+     * @return total bytes allocated by the current thread so far, or 0 if not supported.
+     */
+    public static long getAllocatedBytes() {
+        if (THREAD_BEAN == null) return 0;
+        return THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * @param allocatedBytesAtStart value of getAllocatedBytes at the start of the measured code.
+     * @return bytes allocated by the current thread since the start value was read, excluding the measurement itself.
+     */
+    public static long getAllocatedBytesSince(long allocatedBytesAtStart) {
+        if (THREAD_BEAN == null) return 0;
+        return Math.max(0, getAllocatedBytes() - allocatedBytesAtStart - MEASUREMENT_OVERHEAD_BYTES);
+    }
+
+    private static com.sun.management.ThreadMXBean findThreadBean() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+
+        final com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+        if (!sunBean.isThreadAllocatedMemorySupported()) return null;
+
+        if (!sunBean.isThreadAllocatedMemoryEnabled()) sunBean.setThreadAllocatedMemoryEnabled(true);
+
+        return sunBean;
+    }
+
+    private static long calibrate() {
+        if (THREAD_BEAN == null) return 0;
+
+        // Use the smallest overhead seen, later reads should not allocate more than that
+        long overhead = Long.MAX_VALUE;
+        for (int i = 0; i < 100; i++) {
+            final long start = getAllocatedBytes();
+            overhead = Math.min(overhead, getAllocatedBytes() - start);
+        }
+        return overhead;
+    }
+
+    private AllocationCounter() {
+    }
+}
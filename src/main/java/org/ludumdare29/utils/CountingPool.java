@@ -0,0 +1,41 @@
+package org.ludumdare29.utils;
+
+import com.badlogic.gdx.utils.Pool;
+
+/**
+ * Pool that counts how often objects are reused from it (hits), and how often new objects have to be created (misses).
+ * Objects implementing Poolable are reset when they are freed.
+ */
+public abstract class CountingPool<T> extends Pool<T> {
+
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * @param max maximum number of free objects to keep.
+     */
+    protected CountingPool(int max) {
+        super(16, max);
+    }
+
+    @Override public T obtain() {
+        if (getFree() > 0) hits++;
+        else misses++;
+
+        return super.obtain();
+    }
+
+    /**
+     * @return number of obtained objects that were reused.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of obtained objects that had to be created.
+     */
+    public long getMisses() {
+        return misses;
+    }
+}
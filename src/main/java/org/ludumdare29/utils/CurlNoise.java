@@ -8,10 +8,9 @@ import java.util.Random;
 
 /**
  * Noise for incompressible 2D flow.
+ * Does not keep any per call state in the instance, so it can be sampled from several threads at once.
  */
-public final class CurlNoise {
-
-    private static final Random RANDOM = new Random();
+public final class CurlNoise implements FlowField {
 
     private final double roughXOffset;
     private final double roughYOffset;
@@ -27,12 +26,17 @@ public final class CurlNoise {
     private final double mediumAmplitude;
     private final double fineAmplitude;
 
-    private final double[] roughGradientOut = new double[2];
-    private final double[] mediumGradientOut = new double[2];
-    private final double[] fineGradientOut = new double[2];
+    /**
+     * Scratch arrays for the noise gradients, one set per thread so that the noise can be sampled in parallel.
+     */
+    private static final ThreadLocal<Gradients> GRADIENTS = new ThreadLocal<Gradients>() {
+        @Override protected Gradients initialValue() {
+            return new Gradients();
+        }
+    };
 
     public CurlNoise() {
-        this(RANDOM);
+        this(new Random());
     }
 
     public CurlNoise(Random random) {
@@ -63,44 +67,65 @@ public final class CurlNoise {
     }
 
     public void getXY(Vector2 pos, Vector2 flowOut) {
-        SimplexGradientNoise.sdnoise2(pos.x * roughScale + roughXOffset,
-                                      pos.y * roughScale + roughYOffset,
-                                      roughGradientOut);
-        SimplexGradientNoise.sdnoise2(pos.x * mediumScale + mediumXOffset,
-                                      pos.y * mediumScale + mediumYOffset,
-                                      mediumGradientOut);
-        SimplexGradientNoise.sdnoise2(pos.x * fineScale + fineXOffset,
-                                      pos.y * fineScale + fineYOffset,
-                                      fineGradientOut);
-
-        // Rotate gradient 90 degrees to get incompressible flow perpendicular to the gradient slopes
-        flowOut.x = (float) (roughGradientOut[1] * roughAmplitude +
-                             mediumGradientOut[1] * mediumAmplitude +
-                             fineGradientOut[1] * fineAmplitude);
-        flowOut.y = - (float) (roughGradientOut[0] * roughAmplitude +
-                               mediumGradientOut[0] * mediumAmplitude +
-                               fineGradientOut[0] * fineAmplitude);
+        final Gradients gradients = GRADIENTS.get();
+        sampleGradients(pos.x, pos.y, gradients);
+
+        flowOut.x = getFlowX(gradients);
+        flowOut.y = getFlowY(gradients);
     }
 
-    public void getXZ(Vector3 pos, Vector3 flowOut) {
-        SimplexGradientNoise.sdnoise2(pos.x * roughScale + roughXOffset,
-                                      pos.y * roughScale + roughYOffset,
-                                      roughGradientOut);
-        SimplexGradientNoise.sdnoise2(pos.x * mediumScale + mediumXOffset,
-                                      pos.y * mediumScale + mediumYOffset,
-                                      mediumGradientOut);
-        SimplexGradientNoise.sdnoise2(pos.x * fineScale + fineXOffset,
-                                      pos.y * fineScale + fineYOffset,
-                                      fineGradientOut);
-
-        // Rotate gradient 90 degrees to get incompressible flow perpendicular to the gradient slopes
-        flowOut.x = (float) (roughGradientOut[1] * roughAmplitude +
-                             mediumGradientOut[1] * mediumAmplitude +
-                             fineGradientOut[1] * fineAmplitude);
+    @Override public void getXZ(Vector3 pos, Vector3 flowOut) {
+        final Gradients gradients = GRADIENTS.get();
+        sampleGradients(pos.x, pos.y, gradients);
+
+        flowOut.x = getFlowX(gradients);
         flowOut.y = 0;
-        flowOut.z = - (float) (roughGradientOut[0] * roughAmplitude +
-                               mediumGradientOut[0] * mediumAmplitude +
-                               fineGradientOut[0] * fineAmplitude);
+        flowOut.z = getFlowY(gradients);
+    }
+
+    @Override public void getXZ(float[] posX, float[] posY, float[] posZ, float[] flowXOut, float[] flowZOut, int start, int end) {
+        final Gradients gradients = GRADIENTS.get();
+        for (int i = start; i < end; i++) {
+            sampleGradients(posX[i], posY[i], gradients);
+
+            flowXOut[i] = getFlowX(gradients);
+            flowZOut[i] = getFlowY(gradients);
+        }
+    }
+
+    private void sampleGradients(float x, float y, Gradients gradients) {
+        SimplexGradientNoise.sdnoise2(x * roughScale + roughXOffset,
+                                      y * roughScale + roughYOffset,
+                                      gradients.rough);
+        SimplexGradientNoise.sdnoise2(x * mediumScale + mediumXOffset,
+                                      y * mediumScale + mediumYOffset,
+                                      gradients.medium);
+        SimplexGradientNoise.sdnoise2(x * fineScale + fineXOffset,
+                                      y * fineScale + fineYOffset,
+                                      gradients.fine);
+    }
+
+    // Rotate gradient 90 degrees to get incompressible flow perpendicular to the gradient slopes
+
+    private float getFlowX(Gradients gradients) {
+        return (float) (gradients.rough[1] * roughAmplitude +
+                        gradients.medium[1] * mediumAmplitude +
+                        gradients.fine[1] * fineAmplitude);
+    }
+
+    private float getFlowY(Gradients gradients) {
+        return - (float) (gradients.rough[0] * roughAmplitude +
+                          gradients.medium[0] * mediumAmplitude +
+                          gradients.fine[0] * fineAmplitude);
+    }
+
+    /**
+     * Gradients of the noise octaves at a point.
+     */
+    private static final class Gradients {
+        final double[] rough = new double[2];
+        final double[] medium = new double[2];
+        final double[] fine = new double[2];
     }
 
 }
@@ -0,0 +1,118 @@
+package org.ludumdare29.utils;
+
+/**
+ * Accumulates real time between rendered frames, and tells how many fixed length simulation steps to run each frame.
+ *
+ * If the simulation falls too far behind, the number of steps per frame is capped,
+ * and the time that could not be caught up with is dropped, so that the game slows down instead of freezing.
+ * The time left over after the steps gives the interpolation position between the last two simulation states.
+ */
+public final class FixedStepAccumulator {
+
+    private final double stepSeconds;
+    private final int maxStepsPerFrame;
+
+    private double accumulatedSeconds = 0;
+
+    private int lastStepCount = 0;
+    private long totalStepCount = 0;
+    private long frameCount = 0;
+    private long droppingFrameCount = 0;
+    private double droppedSeconds = 0;
+
+    /**
+     * @param stepSeconds length of a simulation step.
+     * @param maxStepsPerFrame maximum number of simulation steps to run for one frame.
+     */
+    public FixedStepAccumulator(double stepSeconds, int maxStepsPerFrame) {
+        if (stepSeconds <= 0) throw new IllegalArgumentException("stepSeconds should be positive, but was " + stepSeconds);
+        if (maxStepsPerFrame < 1) throw new IllegalArgumentException("maxStepsPerFrame should be at least 1, but was " + maxStepsPerFrame);
+
+        this.stepSeconds = stepSeconds;
+        this.maxStepsPerFrame = maxStepsPerFrame;
+    }
+
+    /**
+     * Adds the time taken by a frame.
+     *
+     * @param frameSeconds real time since the previous frame.
+     * @return number of simulation steps to run for this frame.
+     */
+    public int advance(double frameSeconds) {
+        if (frameSeconds > 0) accumulatedSeconds += frameSeconds;
+
+        int steps = (int) Math.floor(accumulatedSeconds / stepSeconds);
+        if (steps > maxStepsPerFrame) {
+            // Too far behind, drop the time we can not catch up with
+            final double dropped = (steps - maxStepsPerFrame) * stepSeconds;
+            accumulatedSeconds -= dropped;
+            droppedSeconds += dropped;
+            droppingFrameCount++;
+            steps = maxStepsPerFrame;
+        }
+        accumulatedSeconds -= steps * stepSeconds;
+
+        lastStepCount = steps;
+        totalStepCount += steps;
+        frameCount++;
+
+        return steps;
+    }
+
+    /**
+     * @return position between the previous and the current simulation state to render at, 0..1.
+     */
+    public float getInterpolationAlpha() {
+        return (float) Math.min(1.0, accumulatedSeconds / stepSeconds);
+    }
+
+    public double getStepSeconds() {
+        return stepSeconds;
+    }
+
+    public int getMaxStepsPerFrame() {
+        return maxStepsPerFrame;
+    }
+
+    /**
+     * @return number of simulation steps run for the last frame.
+     */
+    public int getLastStepCount() {
+        return lastStepCount;
+    }
+
+    /**
+     * @return number of simulation steps run in total.
+     */
+    public long getTotalStepCount() {
+        return totalStepCount;
+    }
+
+    /**
+     * @return number of frames in total.
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * @return average number of simulation steps run per frame.
+     */
+    public double getAverageStepsPerFrame() {
+        return frameCount == 0 ? 0 : (double) totalStepCount / frameCount;
+    }
+
+    /**
+     * @return number of frames where time was dropped because the simulation fell too far behind.
+     */
+    public long getDroppingFrameCount() {
+        return droppingFrameCount;
+    }
+
+    /**
+     * @return total real time that was not simulated because the simulation fell too far behind.
+     */
+    public double getDroppedSeconds() {
+        return droppedSeconds;
+    }
+}
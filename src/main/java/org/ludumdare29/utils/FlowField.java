@@ -0,0 +1,31 @@
+package org.ludumdare29.utils;
+
+import com.badlogic.gdx.math.Vector3;
+
+/**
+ * A field of horizontal flow velocities.
+ * Implementations should be safe to call from several threads at the same time.
+ */
+public interface FlowField {
+
+    /**
+     * @param pos position to get the flow at.
+     * @param flowOut vector to store the flow velocity in.  The y component is set to zero.
+     */
+    void getXZ(Vector3 pos, Vector3 flowOut);
+
+    /**
+     * Gets the flow at several positions at once.
+     * The positions and flows are stored in separate arrays for each coordinate, and the range start until end is used.
+     *
+     * @param posX x coordinates of the positions.
+     * @param posY y coordinates of the positions.
+     * @param posZ z coordinates of the positions.
+     * @param flowXOut array to store the x components of the flow velocities in.
+     * @param flowZOut array to store the z components of the flow velocities in.
+     * @param start first index to calculate.
+     * @param end index after the last index to calculate.
+     */
+    void getXZ(float[] posX, float[] posY, float[] posZ, float[] flowXOut, float[] flowZOut, int start, int end);
+
+}
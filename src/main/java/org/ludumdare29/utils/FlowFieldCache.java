@@ -0,0 +1,307 @@
+package org.ludumdare29.utils;
+
+import com.badlogic.gdx.math.Vector3;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches a static flow field on a regular grid, and returns bilinearly interpolated values from it.
+ *
+ * The grid is stored in square tiles that are sampled from the source when first needed,
+ * the least recently used tiles are dropped when there are too many.
+ * Lookups do not lock, and tiles are sampled outside of any lock, so threads only wait for each other when
+ * dropping tiles.  Two threads that miss the same tile at once may both sample it, the first one added is kept.
+ * The grid spacing is chosen at construction so that the interpolation error, compared with evaluating the
+ * source directly, stays below a given bound at a set of probe points.
+ *
+ * The cached plane is spanned by the x and y coordinates of the position, which are the coordinates CurlNoise samples,
+ * so the source must not depend on the z coordinate.
+ *
+ * Can be used from several threads at once, if the source can.
+ */
+public final class FlowFieldCache implements FlowField {
+
+    public static final float DEFAULT_MAX_CELL_SIZE_M = 16f;
+    public static final float DEFAULT_MIN_CELL_SIZE_M = 0.125f;
+
+    private static final int TILE_CELL_BITS = 4;
+    private static final int TILE_CELLS = 1 << TILE_CELL_BITS;
+    private static final int TILE_SAMPLES = TILE_CELLS + 1;
+    private static final int PROBE_COUNT = 256;
+    private static final float PROBE_AREA_SIZE_M = 2000f;
+
+    private final FlowField source;
+    private final float cellSize_m;
+    private final float invCellSize;
+    private final float measuredMaxError;
+
+    private final int maxTiles;
+    private final ConcurrentHashMap<TileKey, Tile> tiles;
+    private final Object evictionLock = new Object();
+    private final ThreadLocal<TileKey> lookupKeys = new ThreadLocal<TileKey>() {
+        @Override protected TileKey initialValue() {
+            return new TileKey(0, 0);
+        }
+    };
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param source flow field to cache.  Should not change over time.
+     * @param maxError largest allowed difference between the cached and directly evaluated flow velocity,
+     *                 measured along each axis.
+     * @param maxTiles maximum number of tiles to keep.
+     */
+    public FlowFieldCache(FlowField source, float maxError, int maxTiles) {
+        this(source, maxError, maxTiles, DEFAULT_MIN_CELL_SIZE_M, DEFAULT_MAX_CELL_SIZE_M);
+    }
+
+    /**
+     * @param source flow field to cache.  Should not change over time.
+     * @param maxError largest allowed difference between the cached and directly evaluated flow velocity,
+     *                 measured along each axis.
+     * @param maxTiles maximum number of tiles to keep.
+     * @param minCellSize_m smallest grid spacing to use, even if the error bound is not met with it.
+     * @param maxCellSize_m largest grid spacing to try.
+     */
+    public FlowFieldCache(FlowField source, float maxError, int maxTiles, float minCellSize_m, float maxCellSize_m) {
+        if (maxError <= 0) throw new IllegalArgumentException("maxError should be positive, but was " + maxError);
+        if (maxTiles <= 0) throw new IllegalArgumentException("maxTiles should be positive, but was " + maxTiles);
+
+        this.source = source;
+        this.maxTiles = maxTiles;
+
+        // Halve the spacing until the interpolation error is small enough
+        float cellSize = maxCellSize_m;
+        float error = measureMaxError(cellSize);
+        while (error > maxError && cellSize * 0.5f >= minCellSize_m) {
+            cellSize *= 0.5f;
+            error = measureMaxError(cellSize);
+        }
+        cellSize_m = cellSize;
+        invCellSize = 1f / cellSize;
+        measuredMaxError = error;
+
+        tiles = new ConcurrentHashMap<>(maxTiles * 2);
+    }
+
+    /**
+     * @return spacing of the cached grid.
+     */
+    public float getCellSize_m() {
+        return cellSize_m;
+    }
+
+    /**
+     * @return largest per axis difference between cached and direct flow velocity seen at the probe points.
+     */
+    public float getMeasuredMaxError() {
+        return measuredMaxError;
+    }
+
+    /**
+     * @return number of lookups that found their tile in the cache.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of lookups that had to sample a new tile.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override public void getXZ(Vector3 pos, Vector3 flowOut) {
+        final float gridX = pos.x * invCellSize;
+        final float gridY = pos.y * invCellSize;
+        final int cellX = (int) Math.floor(gridX);
+        final int cellY = (int) Math.floor(gridY);
+
+        final Tile tile = getTile(cellX >> TILE_CELL_BITS, cellY >> TILE_CELL_BITS);
+
+        final int index = getSampleIndex(cellX, cellY);
+        final float fx = gridX - cellX;
+        final float fy = gridY - cellY;
+        flowOut.x = bilinear(tile.flowX, index, fx, fy);
+        flowOut.y = 0;
+        flowOut.z = bilinear(tile.flowZ, index, fx, fy);
+    }
+
+    @Override public void getXZ(float[] posX, float[] posY, float[] posZ, float[] flowXOut, float[] flowZOut, int start, int end) {
+        // Nearby positions usually fall in the same tile, so only look up the tile when it changes
+        Tile tile = null;
+        int tileX = 0;
+        int tileY = 0;
+
+        for (int i = start; i < end; i++) {
+            final float gridX = posX[i] * invCellSize;
+            final float gridY = posY[i] * invCellSize;
+            final int cellX = (int) Math.floor(gridX);
+            final int cellY = (int) Math.floor(gridY);
+
+            if (tile == null || tileX != cellX >> TILE_CELL_BITS || tileY != cellY >> TILE_CELL_BITS) {
+                tileX = cellX >> TILE_CELL_BITS;
+                tileY = cellY >> TILE_CELL_BITS;
+                tile = getTile(tileX, tileY);
+            }
+
+            final int index = getSampleIndex(cellX, cellY);
+            final float fx = gridX - cellX;
+            final float fy = gridY - cellY;
+            flowXOut[i] = bilinear(tile.flowX, index, fx, fy);
+            flowZOut[i] = bilinear(tile.flowZ, index, fx, fy);
+        }
+    }
+
+    /**
+     * @return index of the sample at the lower corner of the specified cell, in the tile containing the cell.
+     */
+    private static int getSampleIndex(int cellX, int cellY) {
+        return (cellY & (TILE_CELLS - 1)) * TILE_SAMPLES + (cellX & (TILE_CELLS - 1));
+    }
+
+    /**
+     * Tiles are filled in completely before they are added to the cache, and not changed after that,
+     * so they can be read without locking.
+     */
+    private Tile getTile(int tileX, int tileY) {
+        final TileKey lookupKey = lookupKeys.get();
+        lookupKey.x = tileX;
+        lookupKey.y = tileY;
+        Tile tile = tiles.get(lookupKey);
+        if (tile != null) {
+            hits.incrementAndGet();
+
+            // The miss count serves as the clock for the least recently used order, only written when it has moved on
+            final long now = misses.get();
+            if (tile.lastUsed != now) tile.lastUsed = now;
+            return tile;
+        }
+
+        final long now = misses.incrementAndGet();
+        tile = createTile(tileX, tileY);
+        tile.lastUsed = now;
+        final Tile existing = tiles.putIfAbsent(new TileKey(tileX, tileY), tile);
+        if (existing != null) return existing;
+
+        if (tiles.size() > maxTiles) dropLeastRecentlyUsed();
+        return tile;
+    }
+
+    private void dropLeastRecentlyUsed() {
+        synchronized (evictionLock) {
+            while (tiles.size() > maxTiles) {
+                Map.Entry<TileKey, Tile> oldest = null;
+                for (Map.Entry<TileKey, Tile> entry : tiles.entrySet()) {
+                    if (oldest == null || entry.getValue().lastUsed < oldest.getValue().lastUsed) oldest = entry;
+                }
+                if (oldest == null) break;
+                tiles.remove(oldest.getKey(), oldest.getValue());
+            }
+        }
+    }
+
+    private Tile createTile(int tileX, int tileY) {
+        final Vector3 samplePos = new Vector3();
+        final Vector3 sampleFlow = new Vector3();
+        final Tile tile = new Tile();
+        final int firstCellX = tileX * TILE_CELLS;
+        final int firstCellY = tileY * TILE_CELLS;
+        for (int y = 0; y < TILE_SAMPLES; y++) {
+            for (int x = 0; x < TILE_SAMPLES; x++) {
+                samplePos.set((firstCellX + x) * cellSize_m, (firstCellY + y) * cellSize_m, 0);
+                source.getXZ(samplePos, sampleFlow);
+                final int index = y * TILE_SAMPLES + x;
+                tile.flowX[index] = sampleFlow.x;
+                tile.flowZ[index] = sampleFlow.z;
+            }
+        }
+        return tile;
+    }
+
+    private static float bilinear(float[] values, int index, float fx, float fy) {
+        final float top = values[index] + (values[index + 1] - values[index]) * fx;
+        final float bottom = values[index + TILE_SAMPLES] + (values[index + TILE_SAMPLES + 1] - values[index + TILE_SAMPLES]) * fx;
+        return top + (bottom - top) * fy;
+    }
+
+    /**
+     * Compares bilinear interpolation from a grid with the specified spacing with direct evaluation,
+     * at probe points spread over an area with a low discrepancy sequence.
+     */
+    private float measureMaxError(float cellSize) {
+        final Vector3 corner = new Vector3();
+        final Vector3 c00 = new Vector3();
+        final Vector3 c10 = new Vector3();
+        final Vector3 c01 = new Vector3();
+        final Vector3 c11 = new Vector3();
+        final Vector3 direct = new Vector3();
+        final Vector3 probe = new Vector3();
+
+        float maxError = 0;
+        for (int i = 0; i < PROBE_COUNT; i++) {
+            // Weyl sequence based on the plastic number, covers the area evenly
+            final float u = (float) ((0.5 + i * 0.7548776662466927) % 1.0);
+            final float v = (float) ((0.5 + i * 0.5698402909980532) % 1.0);
+            probe.set((u - 0.5f) * PROBE_AREA_SIZE_M, (v - 0.5f) * PROBE_AREA_SIZE_M, 0);
+
+            final float cellX = (float) Math.floor(probe.x / cellSize);
+            final float cellY = (float) Math.floor(probe.y / cellSize);
+            final float fx = probe.x / cellSize - cellX;
+            final float fy = probe.y / cellSize - cellY;
+
+            source.getXZ(corner.set(cellX * cellSize, cellY * cellSize, 0), c00);
+            source.getXZ(corner.set((cellX + 1) * cellSize, cellY * cellSize, 0), c10);
+            source.getXZ(corner.set(cellX * cellSize, (cellY + 1) * cellSize, 0), c01);
+            source.getXZ(corner.set((cellX + 1) * cellSize, (cellY + 1) * cellSize, 0), c11);
+            source.getXZ(probe, direct);
+
+            final float topX = c00.x + (c10.x - c00.x) * fx;
+            final float bottomX = c01.x + (c11.x - c01.x) * fx;
+            final float topZ = c00.z + (c10.z - c00.z) * fx;
+            final float bottomZ = c01.z + (c11.z - c01.z) * fx;
+
+            maxError = Math.max(maxError, Math.abs(topX + (bottomX - topX) * fy - direct.x));
+            maxError = Math.max(maxError, Math.abs(topZ + (bottomZ - topZ) * fy - direct.z));
+        }
+
+        return maxError;
+    }
+
+    private static final class Tile {
+        final float[] flowX = new float[TILE_SAMPLES * TILE_SAMPLES];
+        final float[] flowZ = new float[TILE_SAMPLES * TILE_SAMPLES];
+
+        /**
+         * Value of the miss count when the tile was last used.
+         */
+        volatile long lastUsed;
+    }
+
+    private static final class TileKey {
+        int x;
+        int y;
+
+        TileKey(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            TileKey tileKey = (TileKey) o;
+            return x == tileKey.x && y == tileKey.y;
+        }
+
+        @Override public int hashCode() {
+            return 31 * x + y;
+        }
+    }
+}
@@ -2,20 +2,23 @@ package org.ludumdare29.utils;
 
 import com.badlogic.gdx.math.Vector3;
 import org.flowutils.MathUtils;
-import org.ludumdare29.utils.CurlNoise;
 
 import java.util.Random;
 
 /**
  * Layer cake of flows.
+ * Can be sampled from several threads at once, scratch space is kept per thread.
  */
 public final class LayeredFlow {
 
-    private final CurlNoise[] flows;
+    private final FlowField[] flows;
     private final float[] flowDepths;
 
-    private final Vector3 prevLayerFlow = new Vector3();
-    private final Vector3 nextLayerFlow = new Vector3();
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+        @Override protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
 
     public LayeredFlow(Random random,
                        double surfaceRoughSize_m,
@@ -35,7 +38,7 @@ public final class LayeredFlow {
         int flowCount = flowDepths.length;
 
         this.flowDepths = flowDepths;
-        flows = new CurlNoise[flowCount];
+        flows = new FlowField[flowCount];
         for (int i = 0; i < flowCount; i++) {
             double relPos = flowCount == 1 ? 0.5 : i / (flowCount-1);
             flows[i] = new CurlNoise(random,
@@ -48,20 +51,34 @@ public final class LayeredFlow {
         }
     }
 
-    public void getFlowXZ(Vector3 pos, Vector3 flowOut) {
-        float depth = pos.y;
-        int i = 0;
-        while (i < flowDepths.length && depth > flowDepths[i]) {
-            i++;
+    /**
+     * Replaces the flow of each layer with a cached, interpolated version of it.
+     * Should be called during setup, before the flow is sampled.
+     *
+     * @param maxError largest allowed difference between the cached and directly calculated flow velocity.
+     * @param maxTilesPerLayer maximum number of cache tiles to keep for each layer.
+     */
+    public void enableCache(float maxError, int maxTilesPerLayer) {
+        for (int i = 0; i < flows.length; i++) {
+            if (!(flows[i] instanceof FlowFieldCache)) {
+                flows[i] = new FlowFieldCache(flows[i], maxError, maxTilesPerLayer);
+            }
         }
+    }
+
+    public void getFlowXZ(Vector3 pos, Vector3 flowOut) {
+        final float depth = pos.y;
+        final int i = getLayerIndex(depth);
 
         if (i == 0 || i >= flowDepths.length) {
             // Top or bottom layer
-            if (i >= flowDepths.length) i = flowDepths.length - 1;
-            flows[i].getXZ(pos, flowOut);
+            flows[Math.min(i, flowDepths.length - 1)].getXZ(pos, flowOut);
         }
         else {
             // Mix previous and next layer
+            final Scratch scratch = SCRATCH.get();
+            final Vector3 prevLayerFlow = scratch.prevLayerFlow;
+            final Vector3 nextLayerFlow = scratch.nextLayerFlow;
 
             flows[i - 1].getXZ(pos, prevLayerFlow);
             flows[i].getXZ(pos, nextLayerFlow);
@@ -73,7 +90,76 @@ public final class LayeredFlow {
             flowOut.y = 0;
             flowOut.z = MathUtils.map(depth, prevDepth, nextDepth, prevLayerFlow.z, nextLayerFlow.z);
         }
+    }
+
+    /**
+     * Gets the flow at several positions at once, see FlowField.getXZ.
+     * Consecutive positions that are in the same layer are passed to the layer flows as one batch.
+     */
+    public void getFlowXZ(float[] posX, float[] posY, float[] posZ, float[] flowXOut, float[] flowZOut, int start, int end) {
+        int runStart = start;
+        while (runStart < end) {
+            // Find run of positions in the same layer
+            final int i = getLayerIndex(posY[runStart]);
+            int runEnd = runStart + 1;
+            while (runEnd < end && getLayerIndex(posY[runEnd]) == i) {
+                runEnd++;
+            }
+
+            if (i == 0 || i >= flowDepths.length) {
+                // Top or bottom layer
+                flows[Math.min(i, flowDepths.length - 1)].getXZ(posX, posY, posZ, flowXOut, flowZOut, runStart, runEnd);
+            }
+            else {
+                // Mix previous and next layer
+                final Scratch scratch = SCRATCH.get();
+                scratch.ensureCapacity(runEnd);
+                final float[] nextFlowX = scratch.nextFlowX;
+                final float[] nextFlowZ = scratch.nextFlowZ;
+
+                flows[i - 1].getXZ(posX, posY, posZ, flowXOut, flowZOut, runStart, runEnd);
+                flows[i].getXZ(posX, posY, posZ, nextFlowX, nextFlowZ, runStart, runEnd);
+
+                float prevDepth = flowDepths[i-1];
+                float nextDepth = flowDepths[i];
+
+                for (int p = runStart; p < runEnd; p++) {
+                    flowXOut[p] = MathUtils.map(posY[p], prevDepth, nextDepth, flowXOut[p], nextFlowX[p]);
+                    flowZOut[p] = MathUtils.map(posY[p], prevDepth, nextDepth, flowZOut[p], nextFlowZ[p]);
+                }
+            }
+
+            runStart = runEnd;
+        }
+    }
 
+    /**
+     * @return index of the first layer that is deeper than the specified depth, or the number of layers if there is none.
+     */
+    private int getLayerIndex(float depth) {
+        int i = 0;
+        while (i < flowDepths.length && depth > flowDepths[i]) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Per thread scratch space for mixing layers.
+     */
+    private static final class Scratch {
+        final Vector3 prevLayerFlow = new Vector3();
+        final Vector3 nextLayerFlow = new Vector3();
+
+        float[] nextFlowX = new float[0];
+        float[] nextFlowZ = new float[0];
+
+        void ensureCapacity(int capacity) {
+            if (nextFlowX.length < capacity) {
+                nextFlowX = new float[capacity];
+                nextFlowZ = new float[capacity];
+            }
+        }
     }
 
 }
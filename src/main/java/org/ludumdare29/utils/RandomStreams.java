@@ -0,0 +1,101 @@
+package org.ludumdare29.utils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Derives independent random number streams for the different systems of the game from one master seed.
+ *
+ * Each stream is identified by a name, and its seed only depends on the master seed and the name,
+ * so adding or removing one system does not change the random numbers of the others.
+ * With the same master seed, and the same order of calls within each system, a run can be reproduced exactly.
+ *
+ * The state of all streams created so far can be saved and restored, e.g. together with a world snapshot.
+ */
+public final class RandomStreams {
+
+    private final long masterSeed;
+    private final List<SplitMixRandom> streams = new ArrayList<>();
+
+    /**
+     * Creates streams with a master seed based on the current time, for runs that need not be reproduced.
+     * The seed can still be read with getMasterSeed, to reproduce a run afterwards.
+     */
+    public RandomStreams() {
+        this(mix(System.nanoTime() ^ System.currentTimeMillis()));
+    }
+
+    /**
+     * @param masterSeed seed that all the streams are derived from.
+     */
+    public RandomStreams(long masterSeed) {
+        this.masterSeed = masterSeed;
+    }
+
+    public long getMasterSeed() {
+        return masterSeed;
+    }
+
+    /**
+     * @param name name of the system that uses the stream, e.g. "EntityFactory".
+     * @return a new random number generator for the named stream, starting from the beginning of the stream.
+     */
+    public Random get(String name) {
+        final SplitMixRandom stream = new SplitMixRandom(getSeed(name));
+        streams.add(stream);
+        return stream;
+    }
+
+    /**
+     * @param name name of the system that uses the stream.
+     * @return seed of the named stream.
+     */
+    public long getSeed(String name) {
+        long hash = masterSeed;
+        for (int i = 0; i < name.length(); i++) {
+            hash = mix(hash + name.charAt(i));
+        }
+        return mix(hash + name.length());
+    }
+
+    /**
+     * @return bytes needed by writeState.
+     */
+    public int getStateBytes() {
+        return 4 + streams.size() * SplitMixRandom.STATE_BYTES;
+    }
+
+    /**
+     * Writes the state of all streams created so far, in the order they were created.
+     */
+    public void writeState(ByteBuffer buffer) {
+        buffer.putInt(streams.size());
+        for (SplitMixRandom stream : streams) {
+            stream.writeState(buffer);
+        }
+    }
+
+    /**
+     * Restores the state of the streams from a state written with writeState.
+     * The same streams should have been created in the same order as when the state was written.
+     */
+    public void readState(ByteBuffer buffer) {
+        final int count = buffer.getInt();
+        if (count != streams.size()) throw new IllegalArgumentException("The saved state has " + count + " random streams, but " + streams.size() + " have been created");
+
+        for (SplitMixRandom stream : streams) {
+            stream.readState(buffer);
+        }
+    }
+
+    /**
+     * Scrambles the bits of the value, using the finalizer of the SplitMix64 generator.
+     */
+    public static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+}
@@ -0,0 +1,349 @@
+package org.ludumdare29.utils;
+
+import com.badlogic.gdx.math.Vector3;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Uniform grid of cubic cells, hashed into a fixed bucket table, for finding items near a point.
+ * Items are stored with a position and a radius, queries return the items whose sphere intersects the query volume.
+ * The cost of a query is proportional to the number of items in the cells it covers, not the total number of items.
+ *
+ * Items are identified by the slot returned when they are added, the slot stays the same until the item is removed,
+ * so the grid can be updated incrementally as items move.
+ */
+public final class SpatialHashGrid<T> {
+
+    private static final int EMPTY = -1;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private float cellSize_m;
+    private float invCellSize;
+
+    private final int[] bucketHeads;
+    private final int bucketMask;
+
+    private Object[] items = new Object[INITIAL_CAPACITY];
+    private float[] xs = new float[INITIAL_CAPACITY];
+    private float[] ys = new float[INITIAL_CAPACITY];
+    private float[] zs = new float[INITIAL_CAPACITY];
+    private float[] radii = new float[INITIAL_CAPACITY];
+    private int[] cellXs = new int[INITIAL_CAPACITY];
+    private int[] cellYs = new int[INITIAL_CAPACITY];
+    private int[] cellZs = new int[INITIAL_CAPACITY];
+    private int[] next = new int[INITIAL_CAPACITY];
+
+    /**
+     * Number of slots in use or on the free list.
+     */
+    private int slotCount = 0;
+    private int size = 0;
+    private int freeListHead = EMPTY;
+
+    private float maxRadius_m = 0;
+
+    /**
+     * @param cellSize_m size of each grid cell along each axis.  Should be around the typical query radius.
+     * @param bucketCountPowerOfTwo the grid uses 2^bucketCountPowerOfTwo hash buckets.
+     */
+    public SpatialHashGrid(float cellSize_m, int bucketCountPowerOfTwo) {
+        setCellSize_m(cellSize_m);
+
+        bucketHeads = new int[1 << bucketCountPowerOfTwo];
+        bucketMask = bucketHeads.length - 1;
+        Arrays.fill(bucketHeads, EMPTY);
+    }
+
+    public float getCellSize_m() {
+        return cellSize_m;
+    }
+
+    /**
+     * Changes the cell size.  Can only be done when the grid is empty.
+     */
+    public void setCellSize_m(float cellSize_m) {
+        if (cellSize_m <= 0) throw new IllegalArgumentException("cellSize_m should be positive, but was " + cellSize_m);
+        if (size > 0) throw new IllegalStateException("Can not change the cell size of a non-empty grid");
+
+        this.cellSize_m = cellSize_m;
+        invCellSize = 1f / cellSize_m;
+    }
+
+    /**
+     * @return number of items in the grid.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return radius of the largest item added or moved since the grid was last cleared.
+     *         Removing items does not decrease it.
+     */
+    public float getMaxRadius_m() {
+        return maxRadius_m;
+    }
+
+    /**
+     * Removes all items from the grid.
+     */
+    public void clear() {
+        Arrays.fill(bucketHeads, EMPTY);
+        Arrays.fill(items, 0, slotCount, null);
+        slotCount = 0;
+        size = 0;
+        freeListHead = EMPTY;
+        maxRadius_m = 0;
+    }
+
+    /**
+     * Adds an item to the grid.
+     * @param item item to add.
+     * @param position center of the item.  The value is copied.
+     * @param radius_m radius of the item.
+     * @return slot of the item, used to move or remove it later.
+     */
+    public int add(T item, Vector3 position, float radius_m) {
+        if (item == null) throw new IllegalArgumentException("item should not be null");
+
+        final int slot;
+        if (freeListHead != EMPTY) {
+            slot = freeListHead;
+            freeListHead = next[slot];
+        }
+        else {
+            if (slotCount == items.length) grow();
+            slot = slotCount++;
+        }
+
+        items[slot] = item;
+        size++;
+        place(slot, position, radius_m);
+        link(slot);
+
+        return slot;
+    }
+
+    /**
+     * Updates the position and radius of the item in the specified slot.
+     * Only relinks the item if it moved to a different cell.
+     */
+    public void move(int slot, Vector3 position, float radius_m) {
+        final int oldCellX = cellXs[slot];
+        final int oldCellY = cellYs[slot];
+        final int oldCellZ = cellZs[slot];
+
+        final int cellX = cellCoordinate(position.x);
+        final int cellY = cellCoordinate(position.y);
+        final int cellZ = cellCoordinate(position.z);
+
+        if (cellX != oldCellX || cellY != oldCellY || cellZ != oldCellZ) {
+            unlink(slot);
+            place(slot, position, radius_m);
+            link(slot);
+        }
+        else {
+            place(slot, position, radius_m);
+        }
+    }
+
+    /**
+     * Removes the item in the specified slot.  The slot may be reused by later additions.
+     */
+    public void remove(int slot) {
+        unlink(slot);
+
+        items[slot] = null;
+        next[slot] = freeListHead;
+        freeListHead = slot;
+        size--;
+    }
+
+    /**
+     * @return the item in the specified slot, or null if the slot is not in use.
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int slot) {
+        return (T) items[slot];
+    }
+
+    /**
+     * Adds all items whose sphere intersects the sphere at the specified center and radius to the result list.
+     * The result list is not cleared first.
+     *
+     * @return number of items added to the result list.
+     */
+    @SuppressWarnings("unchecked")
+    public int getItemsNear(Vector3 center, float radius_m, List<T> resultOut) {
+        if (size == 0) return 0;
+
+        final float searchRadius = radius_m + maxRadius_m;
+        final int minX = cellCoordinate(center.x - searchRadius);
+        final int minY = cellCoordinate(center.y - searchRadius);
+        final int minZ = cellCoordinate(center.z - searchRadius);
+        final int maxX = cellCoordinate(center.x + searchRadius);
+        final int maxY = cellCoordinate(center.y + searchRadius);
+        final int maxZ = cellCoordinate(center.z + searchRadius);
+
+        int found = 0;
+
+        if (cellCount(minX, minY, minZ, maxX, maxY, maxZ) > size) {
+            // Visiting all cells would cost more than checking every item directly
+            for (int i = 0; i < slotCount; i++) {
+                if (items[i] != null && intersectsSphere(i, center, radius_m)) {
+                    resultOut.add((T) items[i]);
+                    found++;
+                }
+            }
+        }
+        else {
+            for (int cellX = minX; cellX <= maxX; cellX++) {
+                for (int cellY = minY; cellY <= maxY; cellY++) {
+                    for (int cellZ = minZ; cellZ <= maxZ; cellZ++) {
+                        int i = bucketHeads[bucket(cellX, cellY, cellZ)];
+                        while (i != EMPTY) {
+                            // Several cells may share a bucket, only accept items from the cell being visited
+                            if (isInCell(i, cellX, cellY, cellZ) && intersectsSphere(i, center, radius_m)) {
+                                resultOut.add((T) items[i]);
+                                found++;
+                            }
+                            i = next[i];
+                        }
+                    }
+                }
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Adds all items whose sphere intersects the axis aligned box between the specified corners to the result list.
+     * The result list is not cleared first.
+     *
+     * @return number of items added to the result list.
+     */
+    @SuppressWarnings("unchecked")
+    public int getItemsInBox(Vector3 min, Vector3 max, List<T> resultOut) {
+        if (size == 0) return 0;
+
+        final int minX = cellCoordinate(min.x - maxRadius_m);
+        final int minY = cellCoordinate(min.y - maxRadius_m);
+        final int minZ = cellCoordinate(min.z - maxRadius_m);
+        final int maxX = cellCoordinate(max.x + maxRadius_m);
+        final int maxY = cellCoordinate(max.y + maxRadius_m);
+        final int maxZ = cellCoordinate(max.z + maxRadius_m);
+
+        int found = 0;
+
+        if (cellCount(minX, minY, minZ, maxX, maxY, maxZ) > size) {
+            for (int i = 0; i < slotCount; i++) {
+                if (items[i] != null && intersectsBox(i, min, max)) {
+                    resultOut.add((T) items[i]);
+                    found++;
+                }
+            }
+        }
+        else {
+            for (int cellX = minX; cellX <= maxX; cellX++) {
+                for (int cellY = minY; cellY <= maxY; cellY++) {
+                    for (int cellZ = minZ; cellZ <= maxZ; cellZ++) {
+                        int i = bucketHeads[bucket(cellX, cellY, cellZ)];
+                        while (i != EMPTY) {
+                            if (isInCell(i, cellX, cellY, cellZ) && intersectsBox(i, min, max)) {
+                                resultOut.add((T) items[i]);
+                                found++;
+                            }
+                            i = next[i];
+                        }
+                    }
+                }
+            }
+        }
+
+        return found;
+    }
+
+    private void place(int slot, Vector3 position, float radius_m) {
+        xs[slot] = position.x;
+        ys[slot] = position.y;
+        zs[slot] = position.z;
+        radii[slot] = radius_m;
+        if (radius_m > maxRadius_m) maxRadius_m = radius_m;
+
+        cellXs[slot] = cellCoordinate(position.x);
+        cellYs[slot] = cellCoordinate(position.y);
+        cellZs[slot] = cellCoordinate(position.z);
+    }
+
+    private void link(int slot) {
+        final int bucket = bucket(cellXs[slot], cellYs[slot], cellZs[slot]);
+        next[slot] = bucketHeads[bucket];
+        bucketHeads[bucket] = slot;
+    }
+
+    private void unlink(int slot) {
+        final int bucket = bucket(cellXs[slot], cellYs[slot], cellZs[slot]);
+        int i = bucketHeads[bucket];
+        if (i == slot) {
+            bucketHeads[bucket] = next[slot];
+        }
+        else {
+            while (i != EMPTY) {
+                if (next[i] == slot) {
+                    next[i] = next[slot];
+                    break;
+                }
+                i = next[i];
+            }
+        }
+        next[slot] = EMPTY;
+    }
+
+    private boolean isInCell(int index, int cellX, int cellY, int cellZ) {
+        return cellXs[index] == cellX &&
+               cellYs[index] == cellY &&
+               cellZs[index] == cellZ;
+    }
+
+    private boolean intersectsSphere(int index, Vector3 center, float radius_m) {
+        final float dx = xs[index] - center.x;
+        final float dy = ys[index] - center.y;
+        final float dz = zs[index] - center.z;
+        final float reach = radius_m + radii[index];
+        return dx * dx + dy * dy + dz * dz <= reach * reach;
+    }
+
+    private boolean intersectsBox(int index, Vector3 min, Vector3 max) {
+        final float radius = radii[index];
+        return xs[index] + radius >= min.x && xs[index] - radius <= max.x &&
+               ys[index] + radius >= min.y && ys[index] - radius <= max.y &&
+               zs[index] + radius >= min.z && zs[index] - radius <= max.z;
+    }
+
+    private long cellCount(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        return (long) (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1);
+    }
+
+    private int cellCoordinate(float coordinate) {
+        return (int) Math.floor(coordinate * invCellSize);
+    }
+
+    private int bucket(int cellX, int cellY, int cellZ) {
+        return ((cellX * 73856093) ^ (cellY * 19349663) ^ (cellZ * 83492791)) & bucketMask;
+    }
+
+    private void grow() {
+        final int capacity = items.length * 2;
+        items = Arrays.copyOf(items, capacity);
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        zs = Arrays.copyOf(zs, capacity);
+        radii = Arrays.copyOf(radii, capacity);
+        cellXs = Arrays.copyOf(cellXs, capacity);
+        cellYs = Arrays.copyOf(cellYs, capacity);
+        cellZs = Arrays.copyOf(cellZs, capacity);
+        next = Arrays.copyOf(next, capacity);
+    }
+}
@@ -0,0 +1,77 @@
+package org.ludumdare29.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Random number generator based on SplitMix64, whose complete state can be saved and restored,
+ * so that a restored simulation continues with the same random numbers as the original.
+ */
+public final class SplitMixRandom extends Random {
+
+    /**
+     * Bytes used by the state, see writeState.
+     */
+    public static final int STATE_BYTES = 8 + 1 + 8;
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    // Not initialized in the declarations, as the Random constructor sets them through setSeed
+    private long state;
+    private boolean haveNextGaussian;
+    private double nextGaussian;
+
+    public SplitMixRandom(long seed) {
+        super(seed);
+    }
+
+    @Override public synchronized void setSeed(long seed) {
+        state = seed;
+        haveNextGaussian = false;
+    }
+
+    @Override protected int next(int bits) {
+        state += GOLDEN_GAMMA;
+        return (int) (RandomStreams.mix(state) >>> (64 - bits));
+    }
+
+    /**
+     * Same algorithm as Random.nextGaussian, but with the cached value kept here, so that it is part of the saved state.
+     */
+    @Override public synchronized double nextGaussian() {
+        if (haveNextGaussian) {
+            haveNextGaussian = false;
+            return nextGaussian;
+        }
+
+        double v1, v2, s;
+        do {
+            v1 = 2 * nextDouble() - 1;
+            v2 = 2 * nextDouble() - 1;
+            s = v1 * v1 + v2 * v2;
+        } while (s >= 1 || s == 0);
+
+        final double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+        nextGaussian = v2 * multiplier;
+        haveNextGaussian = true;
+        return v1 * multiplier;
+    }
+
+    /**
+     * Writes the state of the generator, using STATE_BYTES bytes.
+     */
+    public synchronized void writeState(ByteBuffer buffer) {
+        buffer.putLong(state);
+        buffer.put(haveNextGaussian ? (byte) 1 : (byte) 0);
+        buffer.putDouble(nextGaussian);
+    }
+
+    /**
+     * Restores a state written with writeState.
+     */
+    public synchronized void readState(ByteBuffer buffer) {
+        state = buffer.getLong();
+        haveNextGaussian = buffer.get() != 0;
+        nextGaussian = buffer.getDouble();
+    }
+}
@@ -0,0 +1,159 @@
+package org.ludumdare29.physics;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import org.ludumdare29.Sea;
+
+/**
+ * Integration kernel that advances as many bodies at a time as fit in the preferred vector size, using the Vector API.
+ *
+ * Does the same float operations in the same order as ScalarIntegrationKernel, without fused multiply-adds,
+ * so the results are identical.  The bodies left over at the end of a range are advanced by the scalar kernel.
+ *
+ * Only compiled with the vector profile, into the Java 17 part of the multi-release jar,
+ * and loaded by PhysicsIntegrator when jdk.incubator.vector is available.
+ */
+final class VectorIntegrationKernel implements IntegrationKernel {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private static final ScalarIntegrationKernel SCALAR_KERNEL = new ScalarIntegrationKernel();
+
+    @Override public void integrateVelocities(PhysicsState state, IntegratorType type, int start, int end) {
+        final int vectorEnd = start + SPECIES.loopBound(end - start);
+        if (type == IntegratorType.SEMI_IMPLICIT) integrateSemiImplicitVelocities(state, start, vectorEnd);
+        else integrateExplicitVelocities(state, start, vectorEnd);
+
+        SCALAR_KERNEL.integrateVelocities(state, type, vectorEnd, end);
+    }
+
+    @Override public void integratePositions(PhysicsState state, int start, int end) {
+        final int vectorEnd = start + SPECIES.loopBound(end - start);
+        for (int i = start; i < vectorEnd; i += SPECIES.length()) {
+            final FloatVector deltaTime = FloatVector.fromArray(SPECIES, state.deltaTime, i);
+            final VectorMask<Float> active = deltaTime.compare(VectorOperators.NE, 0f);
+            if (!active.anyTrue()) continue;
+
+            movePositions(state.posX, state.velX, deltaTime, active, i);
+            movePositions(state.posY, state.velY, deltaTime, active, i);
+            movePositions(state.posZ, state.velZ, deltaTime, active, i);
+        }
+
+        SCALAR_KERNEL.integratePositions(state, vectorEnd, end);
+    }
+
+    private static void integrateExplicitVelocities(PhysicsState state, int start, int end) {
+        for (int i = start; i < end; i += SPECIES.length()) {
+            final FloatVector deltaTime = FloatVector.fromArray(SPECIES, state.deltaTime, i);
+            final VectorMask<Float> active = deltaTime.compare(VectorOperators.NE, 0f);
+            if (!active.anyTrue()) continue;
+
+            final FloatVector surroundingDensity = FloatVector.fromArray(SPECIES, state.surroundingDensity, i);
+            final FloatVector crossArea = FloatVector.fromArray(SPECIES, state.crossArea_m2, i);
+            final FloatVector mass = FloatVector.fromArray(SPECIES, state.mass_kg, i);
+
+            final FloatVector velX = FloatVector.fromArray(SPECIES, state.velX, i);
+            final FloatVector velY = FloatVector.fromArray(SPECIES, state.velY, i);
+            final FloatVector velZ = FloatVector.fromArray(SPECIES, state.velZ, i);
+            final FloatVector relativeX = velX.sub(FloatVector.fromArray(SPECIES, state.fluidVelX, i));
+            final FloatVector relativeY = velY.sub(FloatVector.fromArray(SPECIES, state.fluidVelY, i));
+            final FloatVector relativeZ = velZ.sub(FloatVector.fromArray(SPECIES, state.fluidVelZ, i));
+
+            // Forces
+            final FloatVector velocityScale = velocityScale(surroundingDensity, crossArea, mass, deltaTime);
+            final FloatVector forceY = forceY(state, surroundingDensity, mass, i);
+            FloatVector newVelX = velX.add(FloatVector.fromArray(SPECIES, state.thrustX, i).mul(velocityScale));
+            FloatVector newVelY = velY.add(forceY.mul(velocityScale));
+            FloatVector newVelZ = velZ.add(FloatVector.fromArray(SPECIES, state.thrustZ, i).mul(velocityScale));
+
+            // Drag, clamped so that it doesn't reverse the direction of travel
+            final FloatVector relativeSpeed2 = relativeX.mul(relativeX).add(relativeY.mul(relativeY)).add(relativeZ.mul(relativeZ));
+            FloatVector dragMagnitude = relativeSpeed2.mul(0.5f)
+                                                      .mul(surroundingDensity)
+                                                      .mul(FloatVector.fromArray(SPECIES, state.dragCoefficient, i))
+                                                      .mul(crossArea);
+            dragMagnitude = dragMagnitude.mul(deltaTime.div(mass));
+            final FloatVector relativeSpeed = relativeSpeed2.sqrt();
+            dragMagnitude = dragMagnitude.blend(relativeSpeed, dragMagnitude.compare(VectorOperators.GT, relativeSpeed));
+
+            // The scalar kernel only normalizes nonzero relative velocities that are not already of unit length,
+            // scaling the others by exactly one gives the same result
+            final FloatVector dragScale = dragMagnitude.neg();
+            final VectorMask<Float> normalize = relativeSpeed2.compare(VectorOperators.NE, 0f)
+                                                              .and(relativeSpeed2.compare(VectorOperators.NE, 1f));
+            final FloatVector one = FloatVector.broadcast(SPECIES, 1f);
+            final FloatVector normalizeScale = one.blend(one.div(relativeSpeed), normalize);
+            newVelX = newVelX.add(relativeX.mul(normalizeScale).mul(dragScale));
+            newVelY = newVelY.add(relativeY.mul(normalizeScale).mul(dragScale));
+            newVelZ = newVelZ.add(relativeZ.mul(normalizeScale).mul(dragScale));
+
+            velX.blend(newVelX, active).intoArray(state.velX, i);
+            velY.blend(newVelY, active).intoArray(state.velY, i);
+            velZ.blend(newVelZ, active).intoArray(state.velZ, i);
+        }
+    }
+
+    private static void integrateSemiImplicitVelocities(PhysicsState state, int start, int end) {
+        for (int i = start; i < end; i += SPECIES.length()) {
+            final FloatVector deltaTime = FloatVector.fromArray(SPECIES, state.deltaTime, i);
+            final VectorMask<Float> active = deltaTime.compare(VectorOperators.NE, 0f);
+            if (!active.anyTrue()) continue;
+
+            final FloatVector surroundingDensity = FloatVector.fromArray(SPECIES, state.surroundingDensity, i);
+            final FloatVector crossArea = FloatVector.fromArray(SPECIES, state.crossArea_m2, i);
+            final FloatVector mass = FloatVector.fromArray(SPECIES, state.mass_kg, i);
+
+            final FloatVector velX = FloatVector.fromArray(SPECIES, state.velX, i);
+            final FloatVector velY = FloatVector.fromArray(SPECIES, state.velY, i);
+            final FloatVector velZ = FloatVector.fromArray(SPECIES, state.velZ, i);
+            final FloatVector fluidVelX = FloatVector.fromArray(SPECIES, state.fluidVelX, i);
+            final FloatVector fluidVelY = FloatVector.fromArray(SPECIES, state.fluidVelY, i);
+            final FloatVector fluidVelZ = FloatVector.fromArray(SPECIES, state.fluidVelZ, i);
+
+            // Relative velocity in the fluid after the forces
+            final FloatVector velocityScale = velocityScale(surroundingDensity, crossArea, mass, deltaTime);
+            final FloatVector forceY = forceY(state, surroundingDensity, mass, i);
+            final FloatVector forcedX = velX.sub(fluidVelX).add(FloatVector.fromArray(SPECIES, state.thrustX, i).mul(velocityScale));
+            final FloatVector forcedY = velY.sub(fluidVelY).add(forceY.mul(velocityScale));
+            final FloatVector forcedZ = velZ.sub(fluidVelZ).add(FloatVector.fromArray(SPECIES, state.thrustZ, i).mul(velocityScale));
+            final FloatVector forcedSpeed = forcedX.mul(forcedX).add(forcedY.mul(forcedY)).add(forcedZ.mul(forcedZ)).sqrt();
+
+            // Drag solved at the end of the step, see ScalarIntegrationKernel
+            final FloatVector dragFactor = surroundingDensity.mul(0.5f)
+                                                             .mul(FloatVector.fromArray(SPECIES, state.dragCoefficient, i))
+                                                             .mul(crossArea)
+                                                             .mul(deltaTime.div(mass));
+            final FloatVector speedScale = FloatVector.broadcast(SPECIES, 2f)
+                                                      .div(dragFactor.mul(4f).mul(forcedSpeed).add(1f).sqrt().add(1f));
+
+            velX.blend(fluidVelX.add(forcedX.mul(speedScale)), active).intoArray(state.velX, i);
+            velY.blend(fluidVelY.add(forcedY.mul(speedScale)), active).intoArray(state.velY, i);
+            velZ.blend(fluidVelZ.add(forcedZ.mul(speedScale)), active).intoArray(state.velZ, i);
+        }
+    }
+
+    /**
+     * @return deltaTime / movedMass, where the moved mass includes some of the mass of the displaced medium.
+     */
+    private static FloatVector velocityScale(FloatVector surroundingDensity, FloatVector crossArea, FloatVector mass, FloatVector deltaTime) {
+        final FloatVector movedMass = mass.add(crossArea.mul(0.01f).mul(surroundingDensity));
+        return deltaTime.div(movedMass);
+    }
+
+    /**
+     * @return vertical thrust, buoyancy and gravitation.
+     */
+    private static FloatVector forceY(PhysicsState state, FloatVector surroundingDensity, FloatVector mass, int i) {
+        final FloatVector buoyancyForce = surroundingDensity.mul(FloatVector.fromArray(SPECIES, state.volume_m3, i))
+                                                           .mul(Sea.GRAVITY_AT_SEA_LEVEL);
+        final FloatVector gravitationForce = mass.mul(Sea.GRAVITY_AT_SEA_LEVEL);
+        return FloatVector.fromArray(SPECIES, state.thrustY, i).add(buoyancyForce).add(gravitationForce.neg());
+    }
+
+    private static void movePositions(float[] pos, float[] vel, FloatVector deltaTime, VectorMask<Float> active, int i) {
+        final FloatVector position = FloatVector.fromArray(SPECIES, pos, i);
+        position.blend(position.add(FloatVector.fromArray(SPECIES, vel, i).mul(deltaTime)), active).intoArray(pos, i);
+    }
+}
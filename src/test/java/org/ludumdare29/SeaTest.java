@@ -0,0 +1,129 @@
+package org.ludumdare29;
+
+import com.badlogic.gdx.math.Vector3;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SeaTest {
+
+    private static final float[] RESOLUTIONS_M = {0.25f, 1f, 3f, 10f};
+
+    /**
+     * The measured error is sampled at a few points between table entries, so it can miss the peak of the error,
+     * e.g. where the bubble gas density stops being clamped at about 11 m.
+     */
+    private static final float MEASURED_ERROR_MARGIN = 1.5f;
+
+    /**
+     * Error allowed where the water properties change linearly with depth, e.g. at the ends of the tables.
+     */
+    private static final float LINEAR_RELATIVE_ERROR = 1e-4f;
+
+    private Sea analyticSea;
+    private final Vector3 pos = new Vector3();
+
+    @Before
+    public void setUp() {
+        analyticSea = new Sea(new Random(42), 0);
+    }
+
+    @Test
+    public void tableLookupsStayWithinTheMeasuredError() {
+        for (float resolution : RESOLUTIONS_M) {
+            final Sea sea = new Sea(new Random(42), resolution);
+            final float maxError = sea.getMaxRelativeTableError() * MEASURED_ERROR_MARGIN;
+            for (float depth = 0.01f; depth < Sea.TABLE_MAX_DEPTH_M + 20; depth += 0.0731f) {
+                assertMatchesAnalytic(sea, depth, maxError);
+            }
+        }
+    }
+
+    @Test
+    public void tableLookupsMatchTheAnalyticValuesAtTheTableBoundaries() {
+        for (float resolution : RESOLUTIONS_M) {
+            final Sea sea = new Sea(new Random(42), resolution);
+            final float lastEntryDepth = (float) Math.ceil(Sea.TABLE_MAX_DEPTH_M / resolution) * resolution;
+            final float[] depths = {
+                    0.001f,
+                    resolution,
+                    Sea.TABLE_MAX_DEPTH_M,
+                    lastEntryDepth - 0.01f,
+                    lastEntryDepth,
+                    lastEntryDepth + 0.01f,
+                    Sea.TABLE_MAX_DEPTH_M * 2
+            };
+            for (float depth : depths) {
+                assertMatchesAnalytic(sea, depth, LINEAR_RELATIVE_ERROR);
+            }
+        }
+    }
+
+    @Test
+    public void airValuesDoNotUseTheTables() {
+        final Sea sea = new Sea(new Random(42), Sea.DEFAULT_TABLE_RESOLUTION_M);
+        pos.set(0, 10, 0);
+
+        assertEquals(analyticSea.getDensity(pos), sea.getDensity(pos), 0);
+        assertEquals(analyticSea.getPressure(pos), sea.getPressure(pos), 0);
+        assertEquals(analyticSea.getTemperature_K(pos), sea.getTemperature_K(pos), 0);
+        assertEquals(analyticSea.getBubbleGasDensity(pos), sea.getBubbleGasDensity(pos), 0);
+    }
+
+    @Test
+    public void defaultResolutionIsAccurateToOnePercent() {
+        final float error = new Sea(new Random(42), Sea.DEFAULT_TABLE_RESOLUTION_M).getMaxRelativeTableError();
+        assertTrue("Error " + error, error > 0 && error < 0.01f);
+        assertEquals(0, analyticSea.getMaxRelativeTableError(), 0);
+    }
+
+    @Test
+    public void measuredErrorGrowsWithTheResolution() {
+        float previousError = 0;
+        for (float resolution : RESOLUTIONS_M) {
+            final float error = new Sea(new Random(42), resolution).getMaxRelativeTableError();
+            assertTrue("Error " + error + " at resolution " + resolution, error > previousError);
+            previousError = error;
+        }
+    }
+
+    @Test
+    public void cachedCurrentsStayNearTheDirectlyCalculatedOnes() {
+        final Sea directSea = new Sea(new Random(42), Sea.DEFAULT_TABLE_RESOLUTION_M, 0, 1);
+        final Sea cachedSea = new Sea(new Random(42), Sea.DEFAULT_TABLE_RESOLUTION_M,
+                                      Sea.DEFAULT_CURRENT_CACHE_MAX_ERROR, Sea.DEFAULT_CURRENT_CACHE_MAX_TILES_PER_LAYER);
+        final float maxError = Sea.DEFAULT_CURRENT_CACHE_MAX_ERROR * MEASURED_ERROR_MARGIN;
+
+        final Random random = new Random(7);
+        final Vector3 direct = new Vector3();
+        final Vector3 cached = new Vector3();
+        for (int i = 0; i < 1000; i++) {
+            pos.set(random.nextFloat() * 2000 - 1000, -random.nextFloat() * 500, random.nextFloat() * 2000 - 1000);
+            directSea.getCurrent(pos, direct);
+            cachedSea.getCurrent(pos, cached);
+            assertEquals("x at " + pos, direct.x, cached.x, maxError);
+            assertEquals("z at " + pos, direct.z, cached.z, maxError);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void currentCacheErrorShouldNotBeNegative() {
+        new Sea(new Random(42), Sea.DEFAULT_TABLE_RESOLUTION_M, -1, Sea.DEFAULT_CURRENT_CACHE_MAX_TILES_PER_LAYER);
+    }
+
+    private void assertMatchesAnalytic(Sea sea, float depth, float maxRelativeError) {
+        pos.set(0, -depth, 0);
+        final String message = "at depth " + depth + " with resolution " + sea.getTableResolution_m();
+        assertRelativelyEquals(message, analyticSea.getDensity(pos), sea.getDensity(pos), maxRelativeError);
+        assertRelativelyEquals(message, analyticSea.getPressure(pos), sea.getPressure(pos), maxRelativeError);
+        assertRelativelyEquals(message, analyticSea.getTemperature_K(pos), sea.getTemperature_K(pos), maxRelativeError);
+        assertRelativelyEquals(message, analyticSea.getBubbleGasDensity(pos), sea.getBubbleGasDensity(pos), maxRelativeError);
+    }
+
+    private static void assertRelativelyEquals(String message, float expected, float actual, float maxRelativeError) {
+        assertEquals(message, expected, actual, Math.abs(expected) * maxRelativeError);
+    }
+}
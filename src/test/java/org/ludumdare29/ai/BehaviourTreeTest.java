@@ -0,0 +1,198 @@
+package org.ludumdare29.ai;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BehaviourTreeTest {
+
+    private final List<String> log = new ArrayList<>();
+    private BehaviourContext context;
+
+    @Before
+    public void setUp() {
+        context = new BehaviourContext();
+    }
+
+    @Test
+    public void selectorReturnsTheFirstChildThatDoesNotFail() {
+        final BehaviourTree tree = new BehaviourTreeBuilder()
+                .selector()
+                    .action(action("a", BehaviourStatus.FAILURE))
+                    .action(action("b", BehaviourStatus.SUCCESS))
+                    .action(action("c", BehaviourStatus.SUCCESS))
+                .end()
+                .build();
+
+        assertEquals(BehaviourStatus.SUCCESS, tree.evaluate(context));
+        assertLog("a", "b");
+    }
+
+    @Test
+    public void selectorFailsWhenAllChildrenFail() {
+        final BehaviourTree tree = new BehaviourTreeBuilder()
+                .selector()
+                    .condition(condition("a", false))
+                    .action(action("b", BehaviourStatus.FAILURE))
+                .end()
+                .build();
+
+        assertEquals(BehaviourStatus.FAILURE, tree.evaluate(context));
+        assertLog("a", "b");
+    }
+
+    @Test
+    public void sequenceReturnsTheFirstChildThatDoesNotSucceed() {
+        final BehaviourTree tree = new BehaviourTreeBuilder()
+                .sequence()
+                    .condition(condition("a", true))
+                    .action(action("b", BehaviourStatus.RUNNING))
+                    .action(action("c", BehaviourStatus.SUCCESS))
+                .end()
+                .build();
+
+        assertEquals(BehaviourStatus.RUNNING, tree.evaluate(context));
+        assertLog("a", "b");
+    }
+
+    @Test
+    public void sequenceSucceedsWhenAllChildrenSucceed() {
+        final BehaviourTree tree = new BehaviourTreeBuilder()
+                .sequence()
+                    .condition(condition("a", true))
+                    .action(action("b", BehaviourStatus.SUCCESS))
+                .end()
+                .build();
+
+        assertEquals(BehaviourStatus.SUCCESS, tree.evaluate(context));
+        assertLog("a", "b");
+    }
+
+    @Test
+    public void inverterSwapsSuccessAndFailure() {
+        assertEquals(BehaviourStatus.FAILURE, invert(BehaviourStatus.SUCCESS));
+        assertEquals(BehaviourStatus.SUCCESS, invert(BehaviourStatus.FAILURE));
+        assertEquals(BehaviourStatus.RUNNING, invert(BehaviourStatus.RUNNING));
+    }
+
+    @Test
+    public void succeederSucceedsAfterEvaluatingItsChild() {
+        final BehaviourTree tree = new BehaviourTreeBuilder()
+                .sequence()
+                    .succeeder().action(action("a", BehaviourStatus.FAILURE)).end()
+                    .action(action("b", BehaviourStatus.RUNNING))
+                .end()
+                .build();
+
+        assertEquals(BehaviourStatus.RUNNING, tree.evaluate(context));
+        assertLog("a", "b");
+    }
+
+    @Test
+    public void nestedNodesSkipTheSubtreesOfTheirSiblings() {
+        final BehaviourTree tree = new BehaviourTreeBuilder()
+                .selector()
+                    .sequence()
+                        .condition(condition("a", true))
+                        .sequence().condition(condition("b", false)).action(action("skipped", BehaviourStatus.SUCCESS)).end()
+                    .end()
+                    .sequence()
+                        .inverter().condition(condition("c", true)).end()
+                        .action(action("skipped", BehaviourStatus.SUCCESS))
+                    .end()
+                    .selector()
+                        .condition(condition("d", false))
+                        .action(action("e", BehaviourStatus.RUNNING))
+                    .end()
+                    .action(action("skipped", BehaviourStatus.SUCCESS))
+                .end()
+                .build();
+
+        assertEquals(14, tree.getNodeCount());
+        assertEquals(BehaviourStatus.RUNNING, tree.evaluate(context));
+        assertLog("a", "b", "c", "d", "e");
+    }
+
+    @Test
+    public void treeCanBeEvaluatedRepeatedly() {
+        final BehaviourTree tree = new BehaviourTreeBuilder()
+                .sequence().condition(condition("a", true)).action(action("b", BehaviourStatus.RUNNING)).end()
+                .build();
+
+        tree.evaluate(context);
+        tree.evaluate(context);
+        assertLog("a", "b", "a", "b");
+    }
+
+    @Test
+    public void submarineTreeBuilds() {
+        assertEquals(24, SubmarineBehaviours.createTree().getNodeCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void endWithoutOpenNodeFails() {
+        new BehaviourTreeBuilder().action(action("a", BehaviourStatus.SUCCESS)).end();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void decoratorWithTwoChildrenFails() {
+        new BehaviourTreeBuilder()
+                .inverter().condition(condition("a", true)).condition(condition("b", true)).end();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void compositeWithoutChildrenFails() {
+        new BehaviourTreeBuilder().selector().end();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void secondRootFails() {
+        new BehaviourTreeBuilder()
+                .action(action("a", BehaviourStatus.SUCCESS))
+                .action(action("b", BehaviourStatus.SUCCESS));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void unendedNodeFails() {
+        new BehaviourTreeBuilder().sequence().condition(condition("a", true)).build();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void emptyTreeFails() {
+        new BehaviourTreeBuilder().build();
+    }
+
+    private BehaviourStatus invert(BehaviourStatus childStatus) {
+        return new BehaviourTreeBuilder()
+                .inverter().action(action("a", childStatus)).end()
+                .build()
+                .evaluate(context);
+    }
+
+    private void assertLog(String... expected) {
+        assertEquals(Arrays.asList(expected), log);
+    }
+
+    private Condition condition(final String name, final boolean result) {
+        return new Condition() {
+            @Override public boolean test(BehaviourContext context) {
+                log.add(name);
+                return result;
+            }
+        };
+    }
+
+    private Action action(final String name, final BehaviourStatus status) {
+        return new Action() {
+            @Override public BehaviourStatus run(BehaviourContext context) {
+                log.add(name);
+                return status;
+            }
+        };
+    }
+}
@@ -0,0 +1,134 @@
+package org.ludumdare29.ai;
+
+import com.badlogic.gdx.math.Vector3;
+import org.entityflow.entity.Entity;
+import org.ludumdare29.Simulation;
+import org.ludumdare29.components.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the enemy processor of a simulation with one enemy, heading along the x axis at its patrol depth,
+ * and the player placed around it, and checks the controls the enemy decides on.
+ */
+public class SubmarineBehavioursTest {
+
+    private static final long SEED = 42;
+    private static final int STEP_MILLISECONDS = 5;
+
+    /**
+     * Long enough for the enemy processor to run at least once.
+     */
+    private static final int STEPS = 30;
+
+    private static final float DEPTH_M = SubmarineBehaviours.PATROL_DEPTH_M;
+
+    private Simulation simulation;
+    private Entity player;
+    private Entity enemy;
+
+    @Before
+    public void setUp() {
+        simulation = new Simulation(STEP_MILLISECONDS, false, SEED);
+        simulation.getWorld().init();
+        player = simulation.createPlayer(null);
+        enemy = simulation.getEntityFactory().createEnemySubmarine(new Vector3(0, -DEPTH_M, 0), 0.5f, 0.5f);
+        enemy.getComponent(LocationComponent.class).direction.idt();
+    }
+
+    @After
+    public void tearDown() {
+        simulation.getWorld().shutdown();
+    }
+
+    @Test
+    public void playerIsCreatedForTheEnemies() {
+        assertSame(player, simulation.getEnemyProcessor().getPlayer());
+    }
+
+    @Test
+    public void enemiesPatrolWithoutAPlayer() {
+        simulation.getEnemyProcessor().setPlayer(null);
+        placePlayer(0, 0, 0);
+        run();
+
+        assertEquals(0.3f, getSubmarine().electricalMotorThrust_N.getTargetPos(), 0);
+        assertTrue(getTube().isReadyToFire());
+    }
+
+    @Test
+    public void enemiesPatrolOutsideTheDetectionRange() {
+        placePlayer(SubmarineBehaviours.DETECTION_RANGE_M + 100, -DEPTH_M, 0);
+        run();
+
+        assertEquals(0.3f, getSubmarine().electricalMotorThrust_N.getTargetPos(), 0);
+    }
+
+    @Test
+    public void enemiesApproachADetectedPlayer() {
+        // Ahead and to the negative z side, which positive rudder turns towards
+        placePlayer(600, -DEPTH_M, -300);
+        run();
+
+        assertEquals(1f, getSubmarine().electricalMotorThrust_N.getTargetPos(), 0);
+        assertTrue(getShip().rudder_turns_per_second.getTargetPos() > 0);
+        assertTrue(getTube().isReadyToFire());
+    }
+
+    @Test
+    public void enemiesFireAtAPlayerInFront() {
+        placePlayer(300, -DEPTH_M, 0);
+        run();
+
+        assertFalse(getTube().isReadyToFire());
+        assertEquals(0.5f, getSubmarine().electricalMotorThrust_N.getTargetPos(), 0);
+    }
+
+    @Test
+    public void enemiesEvadeAPlayerClosingIn() {
+        placePlayer(100, -DEPTH_M, 0);
+        player.getComponent(PhysicalComponent.class).velocity.set(-20, 0, 0);
+        run();
+
+        // Turns all the way away from the player, and dives below it, filling the ballast tank
+        assertEquals(1f, Math.abs(getShip().rudder_turns_per_second.getTargetPos()), 0);
+        assertEquals(1f, getSubmarine().electricalMotorThrust_N.getTargetPos(), 0);
+        assertEquals(-1f, getSubmarine().altitudeTankPumpSpeed_m3_per_s.getTargetPos(), 0);
+    }
+
+    @Test
+    public void enemiesIgnoreADestroyedPlayer() {
+        placePlayer(300, -DEPTH_M, 0);
+        final DamageableComponent damageable = player.getComponent(DamageableComponent.class);
+        damageable.addDamage(damageable.hitpoints.getMaxCapacity());
+        run();
+
+        assertEquals(0.3f, getSubmarine().electricalMotorThrust_N.getTargetPos(), 0);
+        assertTrue(getTube().isReadyToFire());
+    }
+
+    private void placePlayer(float x, float y, float z) {
+        player.getComponent(LocationComponent.class).position.set(x, y, z);
+    }
+
+    private void run() {
+        for (int i = 0; i < STEPS; i++) {
+            simulation.step();
+        }
+    }
+
+    private ShipComponent getShip() {
+        return enemy.getComponent(ShipComponent.class);
+    }
+
+    private SubmarineComponent getSubmarine() {
+        return enemy.getComponent(SubmarineComponent.class);
+    }
+
+    private TorpedoTubeComponent getTube() {
+        return enemy.getComponent(TorpedoTubeComponent.class);
+    }
+}
@@ -0,0 +1,238 @@
+package org.ludumdare29.particles;
+
+import com.badlogic.gdx.graphics.PerspectiveCamera;
+import com.badlogic.gdx.math.Plane;
+import com.badlogic.gdx.math.Vector3;
+import org.flowutils.time.ManualTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.ludumdare29.Sea;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.ludumdare29.particles.BubbleVertexBuilder.*;
+import static org.junit.Assert.*;
+
+/**
+ * Builds quads for bubbles placed around a camera at a known position, looking along the negative z axis,
+ * and checks which bubbles get quads, and the corners, normals, texture coordinates, and indices of the quads.
+ *
+ * The frustum of the camera is set up directly, with a 90 degree field of view, as updating the camera uses native code.
+ */
+public class BubbleVertexBuilderTest {
+
+    private static final float CAMERA_DEPTH_M = 50;
+    private static final float NEAR_M = 1;
+    private static final float FAR_M = 200;
+    private static final float EPSILON = 1e-5f;
+
+    private static final float LIFE_TIME_SECONDS = 100;
+    private static final float MID_LIFE_SECONDS = 50;
+
+    private static final float[] CORNER_X = {-1,  1, 1, -1};
+    private static final float[] CORNER_Y = {-1, -1, 1,  1};
+    private static final float[] CORNER_U = { 0,  1, 1,  0};
+    private static final float[] CORNER_V = { 1,  1, 0,  0};
+
+    private static final Vector3 RIGHT = new Vector3(1, 0, 0);
+    private static final Vector3 UP = new Vector3(0, 1, 0);
+    private static final Vector3 TOWARDS_CAMERA = new Vector3(0, 0, 1);
+
+    private BubbleParticles bubbles;
+    private PerspectiveCamera camera;
+
+    @Before
+    public void setUp() {
+        bubbles = new BubbleParticles(new Sea(new Random(42), 0), 16);
+
+        camera = new PerspectiveCamera();
+        camera.position.set(0, -CAMERA_DEPTH_M, 0);
+        camera.direction.set(0, 0, -1);
+        camera.up.set(0, 1, 0);
+        camera.near = NEAR_M;
+        camera.far = FAR_M;
+
+        // Planes with the normals pointing inwards: near, far, left, right, bottom, top
+        final Plane[] planes = camera.frustum.planes;
+        planes[0].set(new Vector3(0, 0, -NEAR_M).add(camera.position), new Vector3(0, 0, -1));
+        planes[1].set(new Vector3(0, 0, -FAR_M).add(camera.position), new Vector3(0, 0, 1));
+        planes[2].set(camera.position, new Vector3(1, 0, -1).nor());
+        planes[3].set(camera.position, new Vector3(-1, 0, -1).nor());
+        planes[4].set(camera.position, new Vector3(0, 1, -1).nor());
+        planes[5].set(camera.position, new Vector3(0, -1, -1).nor());
+    }
+
+    @Test
+    public void visibleBubblesGetQuads() {
+        addBubble(0, 0, -20, 0.5f, MID_LIFE_SECONDS);
+        addBubble(5, 2, -30, 0.2f, MID_LIFE_SECONDS);
+
+        final BubbleVertexBuilder builder = new BubbleVertexBuilder(16);
+        assertEquals(2, builder.build(bubbles, camera, 1));
+        assertEquals(2, builder.getQuadCount());
+        assertEquals(2 * VERTICES_PER_QUAD * VERTEX_SIZE, builder.getVertexFloatCount());
+        assertEquals(2 * INDICES_PER_QUAD, builder.getIndexCount());
+
+        assertQuad(builder, 0, 0);
+        assertQuad(builder, 1, 1);
+    }
+
+    @Test
+    public void bubblesOutsideTheFrustumAreCulled() {
+        addBubble(0, 0, 20, 0.5f, MID_LIFE_SECONDS);         // Behind the camera
+        addBubble(0, 0, -20, 0.5f, MID_LIFE_SECONDS);
+        addBubble(200, 0, -20, 0.5f, MID_LIFE_SECONDS);      // Far to the right
+        addBubble(0, 0, -(FAR_M + 50), 0.5f, MID_LIFE_SECONDS); // Beyond the far plane
+        addBubble(0, 0, -0.5f, 0.1f, MID_LIFE_SECONDS);      // Closer than the near plane
+
+        final BubbleVertexBuilder builder = new BubbleVertexBuilder(16);
+        assertEquals(1, builder.build(bubbles, camera, 1));
+        assertQuad(builder, 0, 1);
+    }
+
+    @Test
+    public void tooSmallBubblesAreCulled() {
+        addBubble(0, 0, -10, 0.5f, 0);                      // Just spawned, not yet faded in
+        addBubble(0, 0, -20, 0.5f, LIFE_TIME_SECONDS);      // Dissipated
+        addBubble(0, 0, -30, 0.5f, MID_LIFE_SECONDS);
+
+        final BubbleVertexBuilder builder = new BubbleVertexBuilder(16);
+        assertEquals(1, builder.build(bubbles, camera, 1));
+        assertQuad(builder, 0, 2);
+    }
+
+    @Test
+    public void bubblesPastTheMaximumQuadsAreSkipped() {
+        addBubble(0, 0, -20, 0.5f, MID_LIFE_SECONDS);
+        addBubble(1, 0, -20, 0.5f, MID_LIFE_SECONDS);
+        addBubble(2, 0, -20, 0.5f, MID_LIFE_SECONDS);
+
+        final BubbleVertexBuilder builder = new BubbleVertexBuilder(2);
+        assertEquals(2, builder.build(bubbles, camera, 1));
+        assertQuad(builder, 0, 0);
+        assertQuad(builder, 1, 1);
+    }
+
+    @Test
+    public void indicesFormTwoTrianglesFacingTheCameraPerQuad() {
+        addBubble(0, 0, -20, 0.5f, MID_LIFE_SECONDS);
+
+        final BubbleVertexBuilder builder = new BubbleVertexBuilder(3);
+        builder.build(bubbles, camera, 1);
+
+        final short[] indices = builder.getIndices();
+        assertEquals(3 * INDICES_PER_QUAD, indices.length);
+        for (int quad = 0; quad < 3; quad++) {
+            final int firstVertex = quad * VERTICES_PER_QUAD;
+            final int[] expected = {firstVertex, firstVertex + 1, firstVertex + 2,
+                                    firstVertex + 2, firstVertex + 3, firstVertex};
+            for (int i = 0; i < INDICES_PER_QUAD; i++) {
+                assertEquals("Index " + i + " of quad " + quad, expected[i], indices[quad * INDICES_PER_QUAD + i]);
+            }
+        }
+
+        // Counter clockwise as seen from the camera
+        for (int triangle = 0; triangle < 2; triangle++) {
+            final Vector3 a = getCorner(builder, indices[triangle * 3]);
+            final Vector3 b = getCorner(builder, indices[triangle * 3 + 1]);
+            final Vector3 c = getCorner(builder, indices[triangle * 3 + 2]);
+            final Vector3 normal = b.sub(a).crs(c.sub(a));
+            assertTrue("Triangle " + triangle + " should face the camera", normal.dot(TOWARDS_CAMERA) > 0);
+        }
+    }
+
+    @Test
+    public void bubblesArePlacedBetweenTheSteps() {
+        addBubble(0, 0, -20, 0.5f, MID_LIFE_SECONDS);
+        final Vector3 previous = new Vector3();
+        bubbles.getRenderPosition(0, 1, previous);
+
+        // The bubble starts to rise
+        final ManualTime time = new ManualTime();
+        time.advanceTime(100);
+        time.nextStep();
+        bubbles.update(time, 0.1f);
+        final Vector3 current = new Vector3();
+        bubbles.getRenderPosition(0, 1, current);
+        assertTrue(current.y > previous.y);
+
+        final BubbleVertexBuilder builder = new BubbleVertexBuilder(1);
+        builder.build(bubbles, camera, 0.5f);
+        final Vector3 halfway = previous.lerp(current, 0.5f);
+        final float halfSize = bubbles.getVisibleScale(0) * 0.5f;
+        assertVector(halfway.x - halfSize, halfway.y - halfSize, halfway.z, getCorner(builder, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxQuadsShouldBePositive() {
+        new BubbleVertexBuilder(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxQuadsShouldFitShortIndices() {
+        new BubbleVertexBuilder(MAX_QUADS + 1);
+    }
+
+    /**
+     * Adds a bubble at rest, relative to the camera, that has not moved since the previous update.
+     */
+    private void addBubble(float x, float y, float z, float radius_m, float age_seconds) {
+        final ByteBuffer buffer = ByteBuffer.allocate(BubbleParticles.SAVED_BUBBLE_BYTES);
+        buffer.putFloat(x);
+        buffer.putFloat(y - CAMERA_DEPTH_M);
+        buffer.putFloat(z);
+        buffer.putFloat(0);
+        buffer.putFloat(0);
+        buffer.putFloat(0);
+        buffer.putFloat(0.001f);
+        buffer.putFloat(radius_m);
+        buffer.putFloat(age_seconds);
+        buffer.putFloat(LIFE_TIME_SECONDS);
+        buffer.putDouble(0);
+        buffer.put((byte) 0);
+        buffer.flip();
+        assertTrue(bubbles.readBubble(buffer));
+    }
+
+    /**
+     * Checks that the quad has corners at the center of the bubble plus or minus half its visible size along the
+     * right and up axes of the camera, normals bent outwards from the direction towards the camera, and the texture
+     * corners.
+     */
+    private void assertQuad(BubbleVertexBuilder builder, int quad, int bubble) {
+        final Vector3 center = new Vector3();
+        bubbles.getRenderPosition(bubble, 1, center);
+        final float halfSize = bubbles.getVisibleScale(bubble) * 0.5f;
+        assertTrue(halfSize > 0);
+
+        final float[] vertices = builder.getVertices();
+        for (int corner = 0; corner < VERTICES_PER_QUAD; corner++) {
+            final int v = (quad * VERTICES_PER_QUAD + corner) * VERTEX_SIZE;
+            final Vector3 offset = new Vector3(RIGHT).scl(CORNER_X[corner]).mulAdd(UP, CORNER_Y[corner]);
+
+            assertVector(center.x + offset.x * halfSize,
+                         center.y + offset.y * halfSize,
+                         center.z + offset.z * halfSize,
+                         new Vector3(vertices[v], vertices[v + 1], vertices[v + 2]));
+            assertVector(offset.x + TOWARDS_CAMERA.x,
+                         offset.y + TOWARDS_CAMERA.y,
+                         offset.z + TOWARDS_CAMERA.z,
+                         new Vector3(vertices[v + 3], vertices[v + 4], vertices[v + 5]));
+            assertEquals(CORNER_U[corner], vertices[v + 6], 0);
+            assertEquals(CORNER_V[corner], vertices[v + 7], 0);
+        }
+    }
+
+    private static Vector3 getCorner(BubbleVertexBuilder builder, int vertex) {
+        final float[] vertices = builder.getVertices();
+        final int v = vertex * VERTEX_SIZE;
+        return new Vector3(vertices[v], vertices[v + 1], vertices[v + 2]);
+    }
+
+    private static void assertVector(float x, float y, float z, Vector3 actual) {
+        assertEquals(x, actual.x, EPSILON);
+        assertEquals(y, actual.y, EPSILON);
+        assertEquals(z, actual.z, EPSILON);
+    }
+}
@@ -0,0 +1,105 @@
+package org.ludumdare29.physics;
+
+import org.ludumdare29.Sea;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks that the vector kernel gives bit for bit the same results as the scalar kernel.
+ * Only runs when the vector kernel is available, see PhysicsIntegrator.
+ */
+public class IntegrationKernelTest {
+
+    private static final int BODY_COUNT = 1003;
+    private static final int START = 3;
+    private static final int END = 1000;
+    private static final int STEPS = 200;
+
+    private Sea sea;
+
+    @Before
+    public void setUp() {
+        assumeTrue(PhysicsIntegrator.isVectorKernelAvailable());
+        sea = new Sea(new Random(42), Sea.DEFAULT_TABLE_RESOLUTION_M);
+    }
+
+    @Test
+    public void explicitEulerIsIdenticalWithTheVectorKernel() {
+        checkKernelsAreIdentical(IntegratorType.EXPLICIT_EULER);
+    }
+
+    @Test
+    public void semiImplicitIsIdenticalWithTheVectorKernel() {
+        checkKernelsAreIdentical(IntegratorType.SEMI_IMPLICIT);
+    }
+
+    private void checkKernelsAreIdentical(IntegratorType type) {
+        final PhysicsState scalarState = createBodies();
+        final PhysicsState vectorState = createBodies();
+
+        final PhysicsIntegrator scalarIntegrator = new PhysicsIntegrator();
+        scalarIntegrator.setType(type);
+        scalarIntegrator.setVectorKernelEnabled(false);
+        final PhysicsIntegrator vectorIntegrator = new PhysicsIntegrator();
+        vectorIntegrator.setType(type);
+        vectorIntegrator.setVectorKernelEnabled(true);
+        assertTrue(vectorIntegrator.isVectorKernelEnabled());
+
+        for (int step = 0; step < STEPS; step++) {
+            scalarIntegrator.integrateGathered(scalarState, sea, START, END);
+            vectorIntegrator.integrateGathered(vectorState, sea, START, END);
+        }
+
+        for (int i = 0; i < BODY_COUNT; i++) {
+            assertBitsEqual("posX", i, scalarState.posX[i], vectorState.posX[i]);
+            assertBitsEqual("posY", i, scalarState.posY[i], vectorState.posY[i]);
+            assertBitsEqual("posZ", i, scalarState.posZ[i], vectorState.posZ[i]);
+            assertBitsEqual("velX", i, scalarState.velX[i], vectorState.velX[i]);
+            assertBitsEqual("velY", i, scalarState.velY[i], vectorState.velY[i]);
+            assertBitsEqual("velZ", i, scalarState.velZ[i], vectorState.velZ[i]);
+        }
+    }
+
+    /**
+     * Bodies in and above the water, with fixed currents, and every fifth one skipped as if it was asleep.
+     */
+    private static PhysicsState createBodies() {
+        final Random random = new Random(7);
+        final PhysicsState state = new PhysicsState();
+        for (int i = 0; i < BODY_COUNT; i++) {
+            state.add();
+            state.posX[i] = random.nextFloat() * 2000 - 1000;
+            state.posY[i] = random.nextFloat() * 220 - 200;
+            state.posZ[i] = random.nextFloat() * 2000 - 1000;
+            state.velX[i] = random.nextFloat() * 4 - 2;
+            state.velY[i] = random.nextFloat() * 4 - 2;
+            state.velZ[i] = random.nextFloat() * 4 - 2;
+            state.thrustX[i] = i % 4 == 0 ? random.nextFloat() * 100 : 0;
+            state.thrustY[i] = 0;
+            state.thrustZ[i] = i % 4 == 0 ? random.nextFloat() * 100 : 0;
+
+            final float radius = 0.05f + random.nextFloat() * 3;
+            final float volume = radius * radius * radius * 4.18879f;
+            state.radius_m[i] = radius;
+            state.volume_m3[i] = volume;
+            state.crossArea_m2[i] = radius * radius * 3.14159f;
+            state.mass_kg[i] = volume * (i % 3 == 0 ? 1.3f : 500 + random.nextFloat() * 2000);
+            state.dragCoefficient[i] = 0.47f;
+
+            state.fluidVelX[i] = random.nextFloat() - 0.5f;
+            state.fluidVelY[i] = random.nextFloat() * 0.1f;
+            state.fluidVelZ[i] = random.nextFloat() - 0.5f;
+            state.deltaTime[i] = i % 5 == 0 ? 0 : 0.005f + random.nextFloat() * 0.02f;
+        }
+        return state;
+    }
+
+    private static void assertBitsEqual(String name, int body, float expected, float actual) {
+        assertEquals(name + " of body " + body, Float.floatToIntBits(expected), Float.floatToIntBits(actual));
+    }
+}
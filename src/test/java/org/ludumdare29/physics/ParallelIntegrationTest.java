@@ -0,0 +1,136 @@
+package org.ludumdare29.physics;
+
+import org.ludumdare29.Simulation;
+import org.ludumdare29.components.LocationComponent;
+import org.ludumdare29.components.PhysicalComponent;
+import org.ludumdare29.processors.PhysicsProcessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs two simulations with the same seed and the same bodies, one with a serial PhysicsProcessor and one with a
+ * parallel one, and checks that the state hashes match after every step, and that the bodies end up bit for bit
+ * the same.
+ */
+public class ParallelIntegrationTest {
+
+    private static final long SEED = 42;
+    private static final int STEP_MILLISECONDS = 5;
+
+    /**
+     * Enough bodies to be split into several chunks by the parallel processor.
+     */
+    private static final int BODY_COUNT = 3000;
+    private static final int THREAD_COUNT = 4;
+    private static final int STEPS = 400;
+
+    private Simulation serial;
+    private Simulation parallel;
+    private List<PhysicalComponent> serialBodies;
+    private List<PhysicalComponent> parallelBodies;
+
+    @Before
+    public void setUp() {
+        serial = new Simulation(STEP_MILLISECONDS, false, SEED);
+        parallel = new Simulation(STEP_MILLISECONDS, false, SEED);
+        serial.getPhysicsProcessor().setParallelism(1);
+        parallel.getPhysicsProcessor().setParallelism(THREAD_COUNT);
+
+        serialBodies = createBodies(serial);
+        parallelBodies = createBodies(parallel);
+    }
+
+    @After
+    public void tearDown() {
+        serial.getWorld().shutdown();
+        parallel.getWorld().shutdown();
+    }
+
+    @Test
+    public void explicitEulerIsIdenticalInParallel() {
+        checkParallelIsIdentical(IntegratorType.EXPLICIT_EULER);
+    }
+
+    @Test
+    public void semiImplicitIsIdenticalInParallel() {
+        checkParallelIsIdentical(IntegratorType.SEMI_IMPLICIT);
+    }
+
+    private void checkParallelIsIdentical(IntegratorType type) {
+        serial.setIntegratorType(type);
+        parallel.setIntegratorType(type);
+        assertFalse(serial.getPhysicsProcessor().isParallel());
+        assertTrue(parallel.getPhysicsProcessor().isParallel());
+
+        for (int step = 0; step < STEPS; step++) {
+            pushBodies(serialBodies, step);
+            pushBodies(parallelBodies, step);
+            serial.step();
+            parallel.step();
+
+            assertEquals("State hash after step " + step, serial.getStateHash(), parallel.getStateHash());
+        }
+
+        final PhysicsProcessor physicsProcessor = serial.getPhysicsProcessor();
+        assertTrue(physicsProcessor.getState().size() >= BODY_COUNT);
+        assertTrue("Some bodies should fall asleep", physicsProcessor.getSleepingCount() > 0);
+        assertTrue("Some bodies should stay awake", physicsProcessor.getSleepingCount() < BODY_COUNT);
+        assertIdentical(physicsProcessor.getState(), parallel.getPhysicsProcessor().getState());
+    }
+
+    /**
+     * Adds bubbles, neutral bodies that fall asleep, and heavy ones that sink, some of them held in place.
+     */
+    private static List<PhysicalComponent> createBodies(Simulation simulation) {
+        simulation.getWorld().init();
+
+        final Random random = new Random(7);
+        final List<PhysicalComponent> bodies = new ArrayList<PhysicalComponent>();
+        for (int i = 0; i < BODY_COUNT; i++) {
+            final LocationComponent location = new LocationComponent();
+            location.position.set(random.nextFloat() * 2000 - 1000,
+                                  random.nextFloat() * 220 - 200,
+                                  random.nextFloat() * 2000 - 1000);
+
+            final float density = i % 3 == 0 ? 1.3f : i % 3 == 1 ? 1026 + 0.004f * -location.position.y : 3000;
+            final PhysicalComponent physical = PhysicalComponent.fromRadiusAndDensity(0.05f + random.nextFloat() * 3, density);
+            physical.velocity.set(random.nextFloat() - 0.5f, random.nextFloat() - 0.5f, random.nextFloat() - 0.5f);
+            physical.held = i % 7 == 0;
+
+            simulation.getWorld().createEntity(location, physical);
+            bodies.add(physical);
+        }
+        return bodies;
+    }
+
+    private static void pushBodies(List<PhysicalComponent> bodies, int step) {
+        for (int i = 0; i < bodies.size(); i += 5) {
+            if ((i + step) % 50 == 0) bodies.get(i).thrust.set(100, -50, 20);
+        }
+    }
+
+    private static void assertIdentical(PhysicsState expected, PhysicsState actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertBitsEqual("posX", i, expected.posX[i], actual.posX[i]);
+            assertBitsEqual("posY", i, expected.posY[i], actual.posY[i]);
+            assertBitsEqual("posZ", i, expected.posZ[i], actual.posZ[i]);
+            assertBitsEqual("velX", i, expected.velX[i], actual.velX[i]);
+            assertBitsEqual("velY", i, expected.velY[i], actual.velY[i]);
+            assertBitsEqual("velZ", i, expected.velZ[i], actual.velZ[i]);
+            assertBitsEqual("restSeconds", i, expected.restSeconds[i], actual.restSeconds[i]);
+            assertEquals("sleeping of body " + i, expected.sleeping[i], actual.sleeping[i]);
+        }
+    }
+
+    private static void assertBitsEqual(String name, int body, float expected, float actual) {
+        assertEquals(name + " of body " + body, Float.floatToIntBits(expected), Float.floatToIntBits(actual));
+    }
+}
@@ -0,0 +1,154 @@
+package org.ludumdare29.physics;
+
+import com.badlogic.gdx.math.Vector3;
+import org.ludumdare29.Sea;
+import org.ludumdare29.components.LocationComponent;
+import org.ludumdare29.components.PhysicalComponent;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PhysicsIntegratorTest {
+
+    private static final float STEP_SECONDS = 0.005f;
+    private static final float BUBBLE_RADIUS_M = 0.1f;
+    private static final float BUBBLE_GAS_DENSITY = 1.3f;
+
+    private static final float REFERENCE_STEP_SECONDS = 0.005f;
+    private static final float[] LONG_STEP_SECONDS = {0.02f, 0.05f};
+    private static final float START_DEPTH_M = 100;
+    private static final int TRAJECTORY_SECONDS = 10;
+
+    /**
+     * Allowed difference to the reference trajectory, the long steps reach the terminal velocity at different times.
+     */
+    private static final float MAX_POSITION_ERROR_M = 0.2f;
+    private static final float MAX_RELATIVE_TERMINAL_VELOCITY_ERROR = 0.001f;
+
+    private Sea sea;
+    private PhysicsState state;
+    private PhysicsIntegrator integrator;
+
+    @Before
+    public void setUp() {
+        sea = new Sea(new Random(42), Sea.DEFAULT_TABLE_RESOLUTION_M);
+        state = new PhysicsState();
+        integrator = new PhysicsIntegrator();
+    }
+
+    @Test
+    public void heldBubblesAtTheSurfaceFallAsleep() {
+        final PhysicalComponent physical = addBubble(-0.05f);
+        physical.held = true;
+
+        run(PhysicsIntegrator.SLEEP_DELAY_SECONDS * 2);
+
+        assertEquals(1, state.getSleepingCount());
+        assertTrue(physical.velocity.isZero());
+    }
+
+    @Test
+    public void risingBubblesStayAwake() {
+        addBubble(-50);
+
+        run(PhysicsIntegrator.SLEEP_DELAY_SECONDS * 2);
+
+        assertEquals(0, state.getSleepingCount());
+    }
+
+    @Test
+    public void thrustWakesHeldBodies() {
+        final PhysicalComponent physical = addBubble(-0.05f);
+        physical.held = true;
+        run(PhysicsIntegrator.SLEEP_DELAY_SECONDS * 2);
+        assertEquals(1, state.getSleepingCount());
+
+        physical.thrust.set(1, 0, 0);
+        run(STEP_SECONDS);
+
+        assertEquals(0, state.getSleepingCount());
+    }
+
+    @Test
+    public void semiImplicitFollowsTheReferenceTrajectoryOfARisingFloatAtLongSteps() {
+        // Light enough that the moved mass, with the displaced water, is about twice the mass of the float
+        checkLongStepsFollowTheReferenceTrajectory(0.3f, 20);
+    }
+
+    @Test
+    public void semiImplicitFollowsTheReferenceTrajectoryOfASinkingBodyAtLongSteps() {
+        checkLongStepsFollowTheReferenceTrajectory(0.5f, 3000);
+    }
+
+    /**
+     * Compares the semi-implicit integrator at long steps to the explicit one at the step of the game,
+     * which is accurate for bodies this heavy, once per second, and at the end, when the bodies have reached their
+     * terminal velocity.
+     */
+    private void checkLongStepsFollowTheReferenceTrajectory(float radius_m, float density_kg_per_m3) {
+        final Vector3[] expected = runTrajectory(IntegratorType.EXPLICIT_EULER, REFERENCE_STEP_SECONDS, radius_m, density_kg_per_m3);
+        final Vector3 expectedVelocity = expected[TRAJECTORY_SECONDS + 1];
+        assertTrue("The body should move", Math.abs(expectedVelocity.y) > 1);
+
+        for (float stepSeconds : LONG_STEP_SECONDS) {
+            final Vector3[] actual = runTrajectory(IntegratorType.SEMI_IMPLICIT, stepSeconds, radius_m, density_kg_per_m3);
+            for (int second = 0; second <= TRAJECTORY_SECONDS; second++) {
+                assertEquals("Position after " + second + " s with " + stepSeconds + " s steps, expected " + expected[second] + " but was " + actual[second],
+                             0, expected[second].dst(actual[second]), MAX_POSITION_ERROR_M);
+            }
+            assertEquals("Terminal velocity with " + stepSeconds + " s steps",
+                         expectedVelocity.y, actual[TRAJECTORY_SECONDS + 1].y,
+                         Math.abs(expectedVelocity.y) * MAX_RELATIVE_TERMINAL_VELOCITY_ERROR);
+        }
+    }
+
+    /**
+     * @return the position of a body starting at rest at each second, followed by its final velocity.
+     */
+    private Vector3[] runTrajectory(IntegratorType type, float stepSeconds, float radius_m, float density_kg_per_m3) {
+        final PhysicsState bodyState = new PhysicsState();
+        final PhysicsIntegrator bodyIntegrator = new PhysicsIntegrator();
+        bodyIntegrator.setType(type);
+
+        final LocationComponent location = new LocationComponent();
+        location.position.set(0, -START_DEPTH_M, 0);
+        final PhysicalComponent physical = PhysicalComponent.fromRadiusAndDensity(radius_m, density_kg_per_m3);
+        bodyState.add(null, location, physical, null);
+
+        final Vector3[] trajectory = new Vector3[TRAJECTORY_SECONDS + 2];
+        final int stepsPerSecond = Math.round(1 / stepSeconds);
+        trajectory[0] = location.position.cpy();
+        for (int second = 1; second <= TRAJECTORY_SECONDS; second++) {
+            for (int step = 0; step < stepsPerSecond; step++) {
+                bodyState.gather(0, 1, stepSeconds);
+                bodyIntegrator.sampleCurrentsGathered(bodyState, sea, 0, 1);
+                bodyIntegrator.integrateGathered(bodyState, sea, 0, 1);
+                bodyState.scatter(0, 1);
+            }
+            trajectory[second] = location.position.cpy();
+        }
+        trajectory[TRAJECTORY_SECONDS + 1] = physical.velocity.cpy();
+        return trajectory;
+    }
+
+    private PhysicalComponent addBubble(float y) {
+        final LocationComponent location = new LocationComponent();
+        location.position.set(0, y, 0);
+        final PhysicalComponent physical = PhysicalComponent.fromRadiusAndDensity(BUBBLE_RADIUS_M, BUBBLE_GAS_DENSITY);
+        state.add(null, location, physical, null);
+        return physical;
+    }
+
+    private void run(float seconds) {
+        final int steps = Math.round(seconds / STEP_SECONDS);
+        for (int step = 0; step < steps; step++) {
+            state.gather(0, state.size(), STEP_SECONDS);
+            integrator.sampleCurrentsGathered(state, sea, 0, state.size());
+            integrator.integrateGathered(state, sea, 0, state.size());
+            state.scatter(0, state.size());
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package org.ludumdare29.replay;
+
+import org.entityflow.entity.Entity;
+import org.ludumdare29.Simulation;
+import org.ludumdare29.components.SubmarineComponent;
+import org.ludumdare29.parts.Controllable;
+import org.ludumdare29.processors.ReplayProcessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * Records a deterministic simulation, with control changes made between steps as the player would,
+ * and checks that playing and seeking the replay gives the same state hash after each step.
+ * The recording of the held key case is made with the player as the viewer, and the motor key of the player held across a keyframe.
+ */
+public class ReplayTest {
+
+    private static final long SEED = 42;
+    private static final int STEP_MILLISECONDS = 5;
+    private static final int KEYFRAME_INTERVAL_STEPS = 150;
+    private static final int STEPS = 500;
+
+    /**
+     * Steps the key of the held key case is pressed and released on, around the second keyframe.
+     */
+    private static final int KEY_DOWN_STEP = KEYFRAME_INTERVAL_STEPS - 30;
+    private static final int KEY_UP_STEP = KEYFRAME_INTERVAL_STEPS + 100;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private final long[] recordedHashes = new long[STEPS];
+    private ReplayPlayer player;
+
+    @Before
+    public void setUp() throws Exception {
+        file = folder.newFile("replay.bin");
+    }
+
+    @After
+    public void tearDown() {
+        if (player != null) player.shutdown();
+    }
+
+    @Test
+    public void playbackMatchesTheRecording() throws Exception {
+        record(false);
+        player = new ReplayPlayer(file);
+        assertEquals(SEED, player.getMasterSeed());
+        assertEquals(STEP_MILLISECONDS, player.getStepMilliseconds());
+        assertEquals(0, player.getFirstStep());
+        assertEquals(STEPS, player.getLastStep());
+        assertEquals(4, player.getKeyframeCount());
+
+        while (!player.isFinished()) {
+            playAndCheckStep();
+        }
+    }
+
+    @Test
+    public void seekingMatchesTheRecording() throws Exception {
+        record(false);
+        player = new ReplayPlayer(file);
+
+        // Forward past keyframes, backwards to a keyframe, and backwards between keyframes
+        final long[] seekSteps = {320, KEYFRAME_INTERVAL_STEPS, 77, 451};
+        for (long step : seekSteps) {
+            player.seek(step);
+            assertEquals(step, player.getStep());
+            for (int i = 0; i < 20; i++) {
+                playAndCheckStep();
+            }
+        }
+    }
+
+    @Test
+    public void heldKeysAndFarEntitiesMatchTheRecording() throws Exception {
+        record(true);
+        player = new ReplayPlayer(file);
+
+        // From the start, and from the keyframe the key is held across
+        while (!player.isFinished()) {
+            playAndCheckStep();
+        }
+        player.seek(KEYFRAME_INTERVAL_STEPS);
+        while (player.getStep() < KEY_UP_STEP + 20) {
+            playAndCheckStep();
+        }
+    }
+
+    /**
+     * Records STEPS steps of a new simulation to the replay file, and the state hash after each step.
+     *
+     * @param withViewerAndKey if true, the player is the viewer, so that far enemies would be simulated at a reduced rate,
+     *                         and the motor key of the player is held from KEY_DOWN_STEP to KEY_UP_STEP.
+     */
+    private void record(boolean withViewerAndKey) throws Exception {
+        final Simulation simulation = new Simulation(STEP_MILLISECONDS, false, SEED);
+        simulation.getWorld().init();
+        Entity playerSubmarine = null;
+        if (withViewerAndKey) {
+            playerSubmarine = simulation.createPlayer(null);
+            simulation.getRelevanceProcessor().setViewer(playerSubmarine);
+        }
+        simulation.populate(5, 10);
+        try {
+            simulation.startRecording(file, KEYFRAME_INTERVAL_STEPS);
+            for (int step = 0; step < STEPS; step++) {
+                if (step % 37 == 5) steer(simulation, step);
+                if (playerSubmarine != null && (step == KEY_DOWN_STEP || step == KEY_UP_STEP)) {
+                    final Controllable motor = playerSubmarine.getComponent(SubmarineComponent.class).electricalMotorThrust_N;
+                    if (step == KEY_DOWN_STEP) motor.keyDown(motor.getIncreaseKeyCode());
+                    else motor.keyUp(motor.getIncreaseKeyCode());
+                }
+                simulation.step();
+                recordedHashes[step] = simulation.getStateHash();
+            }
+            simulation.stopRecording();
+        } finally {
+            simulation.getWorld().shutdown();
+        }
+    }
+
+    private void playAndCheckStep() {
+        final long step = player.getStep();
+        player.step();
+        assertEquals("State hash after step " + step, recordedHashes[(int) step], player.getSimulation().getStateHash());
+    }
+
+    /**
+     * Turns the rudder of one of the controlled entities, between steps, as the player would.
+     */
+    private static void steer(Simulation simulation, int step) {
+        final ReplayProcessor replayProcessor = simulation.getReplayProcessor();
+        final Entity entity = replayProcessor.getEntity(step % replayProcessor.getNextId());
+        if (entity == null) return;
+
+        final Controllable controllable = ReplayProcessor.getControllable(entity, 0);
+        if (controllable != null) controllable.setTarget((step % 3) - 1);
+    }
+}
@@ -0,0 +1,212 @@
+package org.ludumdare29.snapshot;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.math.Quaternion;
+import com.badlogic.gdx.math.Vector3;
+import org.entityflow.component.Component;
+import org.entityflow.entity.Entity;
+import org.ludumdare29.Simulation;
+import org.ludumdare29.components.*;
+import org.ludumdare29.components.appearance.AppearanceComponent;
+import org.ludumdare29.particles.BubbleParticles;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Saves a snapshot of a populated and stepped simulation, with a torpedo that ignores the submarine that fired it
+ * and an entity that tracks the player, reads it into a new simulation, and checks that the entities, their components,
+ * the links between them, and the bubble particles are restored.  Also checks that corrupt snapshots and snapshots
+ * of another seed or version are rejected.
+ */
+public class SnapshotTest {
+
+    private static final long SEED = 42;
+    private static final int STEP_MILLISECONDS = 5;
+    private static final int STEPS = 200;
+    private static final int BUBBLE_CLOUDS = 5;
+    private static final int ENEMIES = 5;
+
+    private static final List<Class<? extends Component>> COMPONENT_TYPES = Arrays.<Class<? extends Component>>asList(
+            LocationComponent.class, PhysicalComponent.class, ShipComponent.class, SubmarineComponent.class,
+            RocketComponent.class, DamageableComponent.class, ExplodingComponent.class, BubbleComponent.class,
+            BubblingComponent.class, TorpedoTubeComponent.class, TrackingComponent.class, EnemyAi.class,
+            ColorAccented.class, RelevanceComponent.class, AppearanceComponent.class);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private Simulation saved;
+    private Simulation restored;
+    private Entity player;
+    private Entity torpedo;
+    private Entity tracker;
+
+    private final List<Entity> savedEntities = new ArrayList<Entity>();
+    private final List<Vector3> savedPositions = new ArrayList<Vector3>();
+    private ByteBuffer savedBubbles;
+
+    @Before
+    public void setUp() throws Exception {
+        file = folder.newFile("snapshot.bin");
+
+        saved = new Simulation(STEP_MILLISECONDS, false, SEED);
+        saved.getWorld().init();
+        player = saved.createPlayer(null);
+        saved.populate(BUBBLE_CLOUDS, ENEMIES);
+        for (int i = 0; i < STEPS; i++) {
+            saved.step();
+        }
+
+        // Entities linked to others
+        final Entity enemy = saved.getEntityFactory().createEnemySubmarine(new Vector3(0, -100, 0), 0.5f, 0.5f);
+        torpedo = saved.getEntityFactory().createTorpedo(enemy, new Vector3(0, -100, 20), new Quaternion(), 0.5f, 0.5f, Color.RED);
+        tracker = saved.getWorld().createEntity(new LocationComponent(), new TrackingComponent(player, new Vector3(0, 10, 0)));
+
+        // Save, and note the entities and bubbles as they are written
+        saved.saveSnapshot(file);
+        saved.getSnapshotProcessor().runAtStepStart(new Runnable() {
+            @Override public void run() {
+                for (Entity entity : saved.getSnapshotProcessor().getEntities()) {
+                    final LocationComponent location = entity.getComponent(LocationComponent.class);
+                    savedEntities.add(entity);
+                    savedPositions.add(location != null ? location.position.cpy() : null);
+                }
+                savedBubbles = writeBubbles(saved.getBubbleParticles());
+            }
+        });
+        saved.step();
+    }
+
+    @After
+    public void tearDown() {
+        saved.getWorld().shutdown();
+        if (restored != null) restored.getWorld().shutdown();
+    }
+
+    @Test
+    public void entitiesAreRestored() throws Exception {
+        final List<Entity> restoredEntities = new ArrayList<Entity>();
+        final ByteBuffer snapshot = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        final int entityCount = new SnapshotReader().read(snapshot, createRestored(SEED), restoredEntities);
+        assertFalse("The snapshot should be read to the end", snapshot.hasRemaining());
+
+        assertTrue(savedEntities.contains(torpedo));
+        assertTrue(savedEntities.contains(tracker));
+        assertEquals(savedEntities.size(), entityCount);
+        assertEquals(savedEntities.size(), restoredEntities.size());
+
+        for (int i = 0; i < savedEntities.size(); i++) {
+            final Entity expected = savedEntities.get(i);
+            final Entity actual = restoredEntities.get(i);
+
+            for (Class<? extends Component> type : COMPONENT_TYPES) {
+                assertEquals(type.getSimpleName() + " of entity " + i, expected.containsComponent(type), actual.containsComponent(type));
+            }
+            if (expected.containsComponent(AppearanceComponent.class)) {
+                assertSame(expected.getComponent(AppearanceComponent.class).getClass(),
+                           actual.getComponent(AppearanceComponent.class).getClass());
+            }
+            if (expected.containsComponent(LocationComponent.class)) {
+                assertEquals(savedPositions.get(i), actual.getComponent(LocationComponent.class).position);
+            }
+
+            // Links point to the entities at the same place in the snapshot
+            if (expected.containsComponent(TrackingComponent.class)) {
+                assertLinked(expected.getComponent(TrackingComponent.class).trackedEntity, restoredEntities,
+                             actual.getComponent(TrackingComponent.class).trackedEntity);
+            }
+            if (expected.containsComponent(ExplodingComponent.class)) {
+                assertLinked(expected.getComponent(ExplodingComponent.class).entityToIgnoreForProximity, restoredEntities,
+                             actual.getComponent(ExplodingComponent.class).entityToIgnoreForProximity);
+            }
+        }
+
+        assertNotNull(torpedo.getComponent(ExplodingComponent.class).entityToIgnoreForProximity);
+        assertLinked(player, restoredEntities, restored.getEnemyProcessor().getPlayer());
+    }
+
+    @Test
+    public void bubbleParticlesAreRestored() throws Exception {
+        restored = createRestored(SEED);
+        restored.loadSnapshot(file);
+
+        assertTrue(savedBubbles.remaining() > 0);
+        assertEquals(savedBubbles, writeBubbles(restored.getBubbleParticles()));
+    }
+
+    @Test
+    public void masterSeedIsReadFromTheHeader() throws Exception {
+        assertEquals(SEED, SnapshotReader.readMasterSeed(file));
+    }
+
+    @Test(expected = IOException.class)
+    public void snapshotsOfAnotherSeedAreRejected() throws Exception {
+        createRestored(SEED + 1).loadSnapshot(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void snapshotsOfAnotherVersionAreRejected() throws Exception {
+        final byte[] bytes = Files.readAllBytes(file.toPath());
+        ByteBuffer.wrap(bytes).putInt(4, SnapshotFormat.VERSION + 1);
+        Files.write(file.toPath(), bytes);
+
+        createRestored(SEED).loadSnapshot(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptSnapshotsAreRejected() throws Exception {
+        final byte[] bytes = Files.readAllBytes(file.toPath());
+        ByteBuffer.wrap(bytes).putInt(0, 0);
+        Files.write(file.toPath(), bytes);
+
+        createRestored(SEED).loadSnapshot(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedSnapshotsAreRejected() throws Exception {
+        final byte[] bytes = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length / 2));
+
+        createRestored(SEED).loadSnapshot(file);
+    }
+
+    private Simulation createRestored(long seed) {
+        restored = new Simulation(STEP_MILLISECONDS, false, seed);
+        restored.getWorld().init();
+        return restored;
+    }
+
+    private void assertLinked(Entity expected, List<Entity> restoredEntities, Entity actual) {
+        if (expected == null) {
+            assertNull(actual);
+        }
+        else {
+            final int index = savedEntities.indexOf(expected);
+            assertTrue("Linked entity should be in the snapshot", index >= 0);
+            assertSame(restoredEntities.get(index), actual);
+        }
+    }
+
+    private static ByteBuffer writeBubbles(BubbleParticles bubbles) {
+        final ByteBuffer buffer = ByteBuffer.allocate(bubbles.size() * BubbleParticles.SAVED_BUBBLE_BYTES);
+        for (int i = 0; i < bubbles.size(); i++) {
+            bubbles.writeBubble(i, buffer);
+        }
+        buffer.flip();
+        return buffer;
+    }
+}